@@ -0,0 +1,105 @@
+package com.monzo.web_crawler.crawler.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Compares collecting 100k processed pages, appended by concurrent workers, in the {@link CopyOnWriteArrayList}
+ * crawls used to collect them in against the lock-free {@link LinkGraph.Builder} and a bare {@link AppendOnlyList}.
+ * Every page links to the same navigation urls plus a few of its own, like the pages of a real site. Run with
+ * {@code -prof gc} to compare the garbage produced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessedPagesBenchmark {
+
+    private static final int PAGE_COUNT = 100_000;
+
+    @Param({"8"})
+    public int threads;
+
+    private List<Page> pages;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        List<URI> navigation = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            navigation.add(URI.create("https://monzo.com/nav/" + i));
+        }
+        pages = new ArrayList<>(PAGE_COUNT);
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            Set<URI> children = new LinkedHashSet<>(navigation);
+            for (int j = 1; j <= 5; j++) {
+                children.add(URI.create("https://monzo.com/page/" + (i * 5 + j)));
+            }
+            pages.add(new Page(URI.create("https://monzo.com/page/" + i), children));
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int copyOnWriteArrayList() throws Exception {
+        List<Page> processedPages = new CopyOnWriteArrayList<>();
+        appendConcurrently(processedPages::add);
+        return processedPages.size();
+    }
+
+    @Benchmark
+    public int linkGraphBuilder() throws Exception {
+        LinkGraph.Builder processedPages = new LinkGraph.Builder();
+        appendConcurrently(processedPages::addPage);
+        return processedPages.build().getLinkCount();
+    }
+
+    @Benchmark
+    public int appendOnlyList() throws Exception {
+        AppendOnlyList<Page> processedPages = new AppendOnlyList<>();
+        appendConcurrently(processedPages::add);
+        return processedPages.size();
+    }
+
+    private void appendConcurrently(Consumer<Page> sink) throws InterruptedException, ExecutionException {
+        List<Future<?>> workers = new ArrayList<>(threads);
+        int pagesPerThread = PAGE_COUNT / threads;
+        for (int thread = 0; thread < threads; thread++) {
+            List<Page> slice = pages.subList(thread * pagesPerThread, thread == threads - 1 ? PAGE_COUNT : (thread + 1) * pagesPerThread);
+            workers.add(executor.submit(() -> slice.forEach(sink)));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch throughput of the {@link CrawlerManager}: a {@link SyntheticSite} is crawled through a
+ * {@link WebService} answering every page straight from memory, so the time taken is spent queueing, checking
+ * seen urls, dispatching crawlers and collecting pages rather than fetching. Divide the page count by the time of
+ * a crawl for pages per second, and run with {@code -prof gc} for the allocation per crawl.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlerDispatchBenchmark {
+
+    @Param({"10000"})
+    public int pages;
+
+    @Param({"20"})
+    public int linksPerPage;
+
+    @Param({"PLATFORM", "VIRTUAL", "ASYNC"})
+    public CrawlExecutionMode executionMode;
+
+    private SyntheticSite site;
+    private CrawlerService crawlerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        site = SyntheticSite.builder().pages(pages).linksPerPage(linksPerPage).build();
+        WebService webService = new WebService(null, new PageCache(false, System.getProperty("java.io.tmpdir"))) {
+            @Override
+            public FetchedDocument fetchDocument(String path, CrawlStatistics statistics) {
+                return FetchedDocument.of(site.links(path));
+            }
+
+            @Override
+            public CompletableFuture<FetchedDocument> fetchDocumentAsync(String path, CrawlStatistics statistics) {
+                return CompletableFuture.completedFuture(FetchedDocument.of(site.links(path)));
+            }
+        };
+        crawlerService = crawlerService(webService, executionMode);
+    }
+
+    @Benchmark
+    public LinkGraph crawl() {
+        LinkGraph graph = crawlerService.crawl(URI.create(site.getBaseUrl()));
+        if (graph.getPageCount() != pages) {
+            throw new IllegalStateException("Crawled " + graph.getPageCount() + " of " + pages + " pages");
+        }
+        return graph;
+    }
+
+    /**
+     * A crawler service without checkpoints, robots.txt or sitemaps, whose politeness never holds requests back.
+     */
+    static CrawlerService crawlerService(WebService webService, CrawlExecutionMode executionMode) {
+        String directory = System.getProperty("java.io.tmpdir");
+        PolitenessScheduler politeness = new PolitenessScheduler(1_000_000, 1_000_000, 256, 256, 1_000, 60, 3);
+        return new CrawlerService(webService,
+                new SeenUrlSetFactory(SeenUrlSetType.FINGERPRINT, directory, 1_000_000, 0.001, new SimpleMeterRegistry()),
+                new FrontierFactory(FrontierType.MEMORY, directory, 10_000, 64, FrontierPriority.DEPTH),
+                new CrawlCheckpointStore(directory, 0),
+                politeness,
+                new RobotsTxtCache(webService, politeness, false, "web-crawler", 1440),
+                new SitemapReader(webService, politeness, false, 1000),
+                new FetchScheduler(256, 8, 8, 10, new SimpleMeterRegistry()),
+                new CrawlMetrics(new SimpleMeterRegistry()),
+                32, 10, 600, executionMode, 256);
+    }
+}
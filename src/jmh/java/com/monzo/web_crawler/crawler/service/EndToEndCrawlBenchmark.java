@@ -0,0 +1,85 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a {@link SyntheticSite} served over http in the same JVM, through the whole pipeline: fetching, link
+ * extraction, canonicalisation and dispatch. The size, link density and page size of the site and the median
+ * latency of its responses are parameters, e.g. {@code -p pages=20000 -p linksPerPage=50 -p latencyMillis=20}, the
+ * 99th percentile latency being five times the median. Run with {@code -prof gc} for the allocation per crawl.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndCrawlBenchmark {
+
+    @Param({"2000"})
+    public int pages;
+
+    @Param({"20"})
+    public int linksPerPage;
+
+    @Param({"0"})
+    public int pageSize;
+
+    @Param({"0"})
+    public int latencyMillis;
+
+    @Param({"http-client", "jsoup"})
+    public String fetcher;
+
+    private SyntheticSite site;
+    private CrawlerService crawlerService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        site = SyntheticSite.builder()
+                .pages(pages)
+                .linksPerPage(linksPerPage)
+                .pageSize(pageSize)
+                .latency(Duration.ofMillis(latencyMillis), Duration.ofMillis(latencyMillis * 5L))
+                .build()
+                .start();
+        CrawlMetrics metrics = new CrawlMetrics(new SimpleMeterRegistry());
+        PageFetcher pageFetcher = fetcher.equals("jsoup") ? new JsoupPageFetcher(3000, metrics) : new HttpClientPageFetcher(3000, 10, 10 * 1024 * 1024, metrics);
+        WebService webService = new WebService(pageFetcher, new PageCache(false, System.getProperty("java.io.tmpdir")));
+        crawlerService = CrawlerDispatchBenchmark.crawlerService(webService,
+                fetcher.equals("jsoup") ? CrawlExecutionMode.VIRTUAL : CrawlExecutionMode.ASYNC);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        site.close();
+    }
+
+    @Benchmark
+    public LinkGraph crawl() {
+        LinkGraph graph = crawlerService.crawl(URI.create(site.getBaseUrl()));
+        if (graph.getPageCount() != pages) {
+            throw new IllegalStateException("Crawled " + graph.getPageCount() + " of " + pages + " pages");
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,65 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares extracting the links of a page with the {@link StreamingLinkExtractor} against building the full
+ * Jsoup DOM. The page is either the monzo_page.html fixture or a link-heavy {@link SyntheticSite} page of
+ * {@code syntheticLinks} links. Run with {@code -prof gc} to compare allocation per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LinkExtractorBenchmark {
+
+    private static final String BASE_URI = "https://monzo.com/";
+
+    @Param({"monzo", "synthetic"})
+    public String input;
+
+    @Param({"2000"})
+    public int syntheticLinks;
+
+    private byte[] monzoPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (input.equals("synthetic")) {
+            monzoPage = SyntheticSite.builder().pages(Integer.MAX_VALUE).linksPerPage(syntheticLinks).baseUrl("https://monzo.com").build().html(1).getBytes(StandardCharsets.UTF_8);
+            return;
+        }
+        try (InputStream page = LinkExtractorBenchmark.class.getResourceAsStream("/service/monzo_page.html")) {
+            monzoPage = page.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public List<String> streamingExtractor() throws IOException {
+        return LinkExtractor.extractLinks(new ByteArrayInputStream(monzoPage), "UTF-8", BASE_URI);
+    }
+
+    @Benchmark
+    public List<String> jsoupDom() throws IOException {
+        return LinkExtractor.extractLinksFromDom(new ByteArrayInputStream(monzoPage), "UTF-8", BASE_URI);
+    }
+}
@@ -0,0 +1,73 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares canonicalizing all links of a page with the {@link UrlCanonicalizer} against the original
+ * {@link URI#create} and Apache {@code URIBuilder} implementation. The page is either the monzo_page.html
+ * fixture or a link-heavy {@link SyntheticSite} page of {@code syntheticLinks} links. Run with
+ * {@code -prof gc} to compare allocation per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class URIUtilsBenchmark {
+
+    private static final URI BASE_URI = URI.create("https://monzo.com/help/");
+
+    @Param({"monzo", "synthetic"})
+    public String input;
+
+    @Param({"2000"})
+    public int syntheticLinks;
+
+    private List<String> links;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (input.equals("synthetic")) {
+            String page = SyntheticSite.builder().pages(Integer.MAX_VALUE).linksPerPage(syntheticLinks).baseUrl("https://monzo.com").build().html(1);
+            links = LinkExtractor.extractLinks(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), "UTF-8", BASE_URI.toString());
+            return;
+        }
+        try (InputStream page = URIUtilsBenchmark.class.getResourceAsStream("/service/monzo_page.html")) {
+            links = LinkExtractor.extractLinks(page, "UTF-8", BASE_URI.toString());
+        }
+    }
+
+    @Benchmark
+    public void canonicalizer(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(URIUtils.createUri(BASE_URI, link));
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String link : links) {
+            blackhole.consume(LegacyURIUtils.createUri(BASE_URI, link));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.monzo.web_crawler.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+@Configuration
+public class WebMvcConfiguration implements WebMvcConfigurer {
+
+    // time left to write the pages processed just before the crawl finished
+    private static final Duration STREAM_DRAIN_TIME = Duration.ofSeconds(30);
+
+    private final Duration streamTimeout;
+
+    public WebMvcConfiguration(@Value("${crawler.manager-timeout-seconds:120}") int crawlerManagerTimeout,
+                               @Value("${crawler.scheduler.admission-timeout-seconds:30}") int admissionTimeoutSeconds) {
+        // a crawl waits at most the admission timeout for fetch slots and then runs for at most the manager timeout,
+        // so a stream of its pages cannot legitimately outlast both
+        this.streamTimeout = Duration.ofSeconds(admissionTimeoutSeconds + crawlerManagerTimeout).plus(STREAM_DRAIN_TIME);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // streamed responses block while waiting for pages, so each gets a virtual thread rather than a pooled one
+        configurer.setTaskExecutor(new VirtualThreadTaskExecutor("response-stream-"));
+        configurer.setDefaultTimeout(streamTimeout.toMillis());
+    }
+}
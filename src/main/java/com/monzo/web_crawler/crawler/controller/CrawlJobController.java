@@ -0,0 +1,103 @@
+package com.monzo.web_crawler.crawler.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monzo.web_crawler.crawler.model.Page;
+import com.monzo.web_crawler.crawler.service.CrawlJob;
+import com.monzo.web_crawler.crawler.service.CrawlJobService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Crawls run as background jobs: starting a crawl returns its ID straight away, its progress can be polled
+ * and its pages streamed as newline delimited JSON while the crawl is still running.
+ */
+@RestController
+@RequestMapping("/api/v2/crawls")
+public class CrawlJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlJobController.class);
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final CrawlJobService crawlJobService;
+    private final ObjectMapper objectMapper;
+
+    public CrawlJobController(CrawlJobService crawlJobService, ObjectMapper objectMapper) {
+        this.crawlJobService = crawlJobService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CrawlJobResponse> start(@RequestBody @Valid CrawlRequest crawlRequest) {
+        URI domain = URI.create(crawlRequest.getDomain());
+        if (!"https".equalsIgnoreCase(domain.getScheme()) && !"http".equalsIgnoreCase(domain.getScheme())) {
+            logger.error("Invalid scheme for URL: {}", crawlRequest.getDomain());
+            return ResponseEntity.badRequest().body(null);
+        }
+        CrawlJob job = crawlJobService.submit(domain, crawlRequest.toBudget(), crawlRequest.getWeight());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v2/crawls/" + job.getId()))
+                .body(new CrawlJobResponse(job));
+    }
+
+    @GetMapping("/{crawlId}")
+    public ResponseEntity<CrawlJobResponse> status(@PathVariable String crawlId) {
+        return crawlJobService.find(crawlId)
+                .map(job -> ResponseEntity.ok(new CrawlJobResponse(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Streams every page of the crawl, one JSON object per line, as soon as it has been processed. The stream
+     * starts with the pages already processed and ends when the crawl finishes.
+     */
+    @GetMapping(value = "/{crawlId}/pages", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> pages(@PathVariable String crawlId) {
+        Optional<CrawlJob> job = crawlJobService.find(crawlId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+                .body(out -> streamPages(job.get(), out));
+    }
+
+    private void streamPages(CrawlJob job, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            // lines are separated by the newline written after each page
+            generator.setRootValueSeparator(null);
+            int written = 0;
+            List<Page> pages;
+            while (!(pages = job.awaitPages(written)).isEmpty()) {
+                for (Page page : pages) {
+                    generator.writeObject(page);
+                    generator.writeRaw('\n');
+                }
+                // flushed per batch rather than per page, pages processed while writing are sent together
+                generator.flush();
+                written += pages.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming pages of crawl " + job.getId());
+        }
+    }
+}
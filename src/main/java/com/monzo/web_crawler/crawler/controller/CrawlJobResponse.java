@@ -0,0 +1,28 @@
+package com.monzo.web_crawler.crawler.controller;
+
+import com.monzo.web_crawler.crawler.service.CrawlJob;
+import com.monzo.web_crawler.crawler.service.CrawlJobStatus;
+import lombok.Getter;
+
+import java.net.URI;
+import java.time.Instant;
+
+@Getter
+public class CrawlJobResponse {
+
+    private final String crawlId;
+    private final URI rootPage;
+    private final CrawlJobStatus status;
+    private final int pageCount;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+
+    public CrawlJobResponse(CrawlJob job) {
+        this.crawlId = job.getId();
+        this.rootPage = job.getRootPage();
+        this.status = job.getStatus();
+        this.pageCount = job.getPageCount();
+        this.startedAt = job.getStartedAt();
+        this.finishedAt = job.getFinishedAt();
+    }
+}
@@ -0,0 +1,170 @@
+package com.monzo.web_crawler.crawler.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monzo.web_crawler.crawler.model.Page;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the output of a crawl to the response and to an output file in {@code crawler.output.directory}.
+ * <p>
+ * The output is written once, a page at a time, through a single {@link JsonGenerator} whose bytes go to both
+ * streams, so no copy of the whole output is ever held in memory. Each crawl gets its own file, optionally gzip
+ * compressed, and only the newest {@code crawler.output.max-files} files are kept. A file is only moved into
+ * place once the whole output has been written, a crawl whose response fails leaves no partial file behind.
+ */
+@Component
+public class CrawlOutputWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlOutputWriter.class);
+
+    private static final String FILE_PREFIX = "crawl-";
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path directory;
+    private final boolean gzip;
+    private final int maxFiles;
+
+    public CrawlOutputWriter(ObjectMapper objectMapper,
+                             @Value("${crawler.output.enabled:true}") boolean enabled,
+                             @Value("${crawler.output.directory:logs}") String directory,
+                             @Value("${crawler.output.gzip:false}") boolean gzip,
+                             @Value("${crawler.output.max-files:100}") int maxFiles) {
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("crawler.output.max-files must be at least 1");
+        }
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.gzip = gzip;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Writes the crawl as JSON to the response body and, if enabled, to its output file.
+     */
+    public void write(CrawlResponse crawlResponse, OutputStream responseBody) throws IOException {
+        if (!enabled) {
+            writeJson(crawlResponse, responseBody);
+            return;
+        }
+        Path file = outputFile(crawlResponse.getCrawlId());
+        Path temporary = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        Files.createDirectories(directory);
+        try {
+            try (OutputStream fileOut = openFile(temporary)) {
+                writeJson(crawlResponse, new TeeOutputStream(responseBody, fileOut));
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Crawl output written to {}", file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        deleteOldFiles();
+    }
+
+    Path outputFile(String crawlId) {
+        return directory.resolve(FILE_PREFIX + crawlId + (gzip ? ".json.gz" : ".json"));
+    }
+
+    private OutputStream openFile(Path file) throws IOException {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+        return gzip ? new GZIPOutputStream(out, 8192) : out;
+    }
+
+    private void writeJson(CrawlResponse crawlResponse, OutputStream out) throws IOException {
+        // the response body is closed by the servlet container, the file by the caller
+        try (JsonGenerator generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartObject();
+            generator.writeStringField("crawlId", crawlResponse.getCrawlId());
+            generator.writeNumberField("pageCount", crawlResponse.getPageCount());
+            generator.writeArrayFieldStart("pages");
+            for (Page page : crawlResponse.getPages()) {
+                generator.writeObject(page);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    private void deleteOldFiles() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.filter(CrawlOutputWriter::isOutputFile).forEach(files::add);
+        } catch (IOException e) {
+            logger.warn("Failed to list crawl output files in {}", directory, e);
+            return;
+        }
+        if (files.size() <= maxFiles) {
+            return;
+        }
+        files.sort(Comparator.comparing(CrawlOutputWriter::lastModified).reversed());
+        for (Path file : files.subList(maxFiles, files.size())) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete old crawl output {}", file, e);
+            }
+        }
+    }
+
+    private static boolean isOutputFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && (name.endsWith(".json") || name.endsWith(".json.gz"));
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            // deleted in the meantime, sorts as the oldest
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            first.write(bytes, offset, length);
+            second.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+}
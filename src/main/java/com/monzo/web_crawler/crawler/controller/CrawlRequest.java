@@ -1,7 +1,12 @@
 package com.monzo.web_crawler.crawler.controller;
 
+import com.monzo.web_crawler.crawler.service.CrawlBudget;
+import com.monzo.web_crawler.crawler.service.FetchScheduler;
 import io.swagger.v3.oas.annotations.Parameter;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Getter;
 import org.hibernate.validator.constraints.URL;
 
@@ -13,4 +18,29 @@ public class CrawlRequest {
     @URL(message = "Invalid URI format")
     @NotNull
     private String domain;
+
+    @Parameter(name="maxDepth", description = "Links to follow from the domain, 0 crawls the domain only; unlimited if omitted", example = "3")
+    @PositiveOrZero
+    private Integer maxDepth;
+
+    @Parameter(name="maxPages", description = "Pages to crawl before stopping; unlimited if omitted", example = "1000")
+    @Positive
+    private Long maxPages;
+
+    @Parameter(name="maxBytes", description = "Bytes to download before stopping; unlimited if omitted", example = "104857600")
+    @Positive
+    private Long maxBytes;
+
+    @Parameter(name="weight", description = "Share of the fetch capacity relative to other running crawls; 1 if omitted", example = "2")
+    @Positive
+    @Max(100)
+    private Integer weight;
+
+    public int getWeight() {
+        return weight == null ? FetchScheduler.DEFAULT_WEIGHT : weight;
+    }
+
+    public CrawlBudget toBudget() {
+        return CrawlBudget.of(maxDepth, maxPages, maxBytes);
+    }
 }
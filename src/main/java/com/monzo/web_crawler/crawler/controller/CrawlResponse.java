@@ -1,5 +1,6 @@
 package com.monzo.web_crawler.crawler.controller;
 
+import com.monzo.web_crawler.crawler.model.LinkGraph;
 import com.monzo.web_crawler.crawler.model.Page;
 import lombok.Getter;
 
@@ -8,11 +9,14 @@ import java.util.List;
 @Getter
 public class CrawlResponse {
 
+    private final String crawlId;
     private final int pageCount;
     private final List<Page> pages;
 
-    public CrawlResponse(List<Page> crawledPages) {
-        this.pages = crawledPages;
-        this.pageCount = crawledPages.size();
+    public CrawlResponse(String crawlId, LinkGraph crawledPages) {
+        this.crawlId = crawlId;
+        // each page is created from the graph as it is serialised
+        this.pages = crawledPages.getPages();
+        this.pageCount = crawledPages.getPageCount();
     }
 }
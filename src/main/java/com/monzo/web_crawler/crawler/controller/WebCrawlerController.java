@@ -1,20 +1,25 @@
 package com.monzo.web_crawler.crawler.controller;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.monzo.web_crawler.crawler.model.Page;
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.service.CrawlCheckpointStore;
+import com.monzo.web_crawler.crawler.service.CrawlRejectedException;
+import com.monzo.web_crawler.crawler.service.CrawlResultCache;
 import com.monzo.web_crawler.crawler.service.CrawlerService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.net.URI;
-import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api")
@@ -24,31 +29,57 @@ public class WebCrawlerController {
 
 
     private final CrawlerService crawlerService;
+    private final CrawlResultCache resultCache;
+    private final CrawlOutputWriter outputWriter;
 
-    public WebCrawlerController(CrawlerService crawlerService) {
+    public WebCrawlerController(CrawlerService crawlerService, CrawlResultCache resultCache, CrawlOutputWriter outputWriter) {
         this.crawlerService = crawlerService;
+        this.resultCache = resultCache;
+        this.outputWriter = outputWriter;
     }
 
     @PostMapping(value = "/v1/crawl", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> crawl(@RequestBody @Valid CrawlRequest crawlRequest) {
+    public ResponseEntity<StreamingResponseBody> crawl(@RequestBody @Valid CrawlRequest crawlRequest) {
         try {
             URI domain = URI.create(crawlRequest.getDomain());
             if (!"https".equalsIgnoreCase(domain.getScheme()) && !"http".equalsIgnoreCase(domain.getScheme())) {
                 logger.error("Invalid scheme for URL: {}", crawlRequest.getDomain());
                 return ResponseEntity.badRequest().body(null);
             }
-            List<Page> crawledPages = crawlerService.crawl(domain);
-            CrawlResponse crawlResponse = new CrawlResponse(crawledPages);
-
-            // just to use the logger to print it into a file
-            LoggerFactory.getLogger("OutputLog").info(new ObjectMapper().writeValueAsString(crawlResponse));
-            logger.info("Crawl output logged to /logs/output.log");
-
-            return ResponseEntity.ok(crawlResponse);
+            CrawlResultCache.Result result = resultCache.crawl(domain, crawlRequest.toBudget(), crawlRequest.getWeight());
+            return output(new CrawlResponse(result.crawlId(), result.graph()));
+        } catch (CrawlRejectedException e) {
+            logger.warn("Crawl of {} rejected: {}", crawlRequest.getDomain(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             logger.error("Failed to crawl url {}", crawlRequest.getDomain(), e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    @PostMapping(value = "/v1/crawl/{crawlId}/resume")
+    public ResponseEntity<StreamingResponseBody> resume(@PathVariable String crawlId) {
+        if (!CrawlCheckpointStore.isValidCrawlId(crawlId)) {
+            logger.error("Invalid crawl ID: {}", crawlId);
+            return ResponseEntity.badRequest().body(null);
+        }
+        try {
+            Optional<LinkGraph> crawledPages = crawlerService.resume(crawlId);
+            if (crawledPages.isEmpty()) {
+                logger.error("No checkpoint found for crawl {}", crawlId);
+                return ResponseEntity.notFound().build();
+            }
+            return output(new CrawlResponse(crawlId, crawledPages.get()));
+        } catch (Exception e) {
+            logger.error("Failed to resume crawl {}", crawlId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> output(CrawlResponse crawlResponse) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> outputWriter.write(crawlResponse, out));
+    }
+
 }
@@ -0,0 +1,73 @@
+package com.monzo.web_crawler.crawler.model;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A list which elements can only be appended to, by any number of threads without locking.
+ * <p>
+ * Elements are kept in chunks which double in size, chunk {@code k} holding {@code 32 << k} elements, so
+ * appending never copies the elements already added. An append reserves its index with a single atomic
+ * increment, allocates the chunk of the index if it is the first one to reach it, then publishes its element.
+ * {@link #size()} counts reserved indexes, reading an element whose append is still under way waits for it
+ * to be published, which is only ever a few instructions away.
+ */
+public final class AppendOnlyList<T> {
+
+    private static final int FIRST_CHUNK_BITS = 5;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+    // the chunk of the largest index, Integer.MAX_VALUE - FIRST_CHUNK_SIZE, is chunk 25
+    private static final int CHUNK_COUNT = Integer.SIZE - 1 - FIRST_CHUNK_BITS;
+    private static final int MAX_SIZE = Integer.MAX_VALUE - FIRST_CHUNK_SIZE;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @return the index of the element
+     */
+    public int add(T element) {
+        Objects.requireNonNull(element, "element");
+        int index = size.getAndIncrement();
+        if (index < 0 || index >= MAX_SIZE) {
+            size.set(MAX_SIZE);
+            throw new IllegalStateException("List is full at " + MAX_SIZE + " elements");
+        }
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        chunk(chunk).set(position - (FIRST_CHUNK_SIZE << chunk), element);
+        return index;
+    }
+
+    public T get(int index) {
+        Objects.checkIndex(index, size());
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        AtomicReferenceArray<T> elements = chunk(chunk);
+        int offset = position - (FIRST_CHUNK_SIZE << chunk);
+        T element;
+        while ((element = elements.get(offset)) == null) {
+            // reserved by an append which has not published its element yet
+            Thread.onSpinWait();
+        }
+        return element;
+    }
+
+    public int size() {
+        return Math.min(size.get(), MAX_SIZE);
+    }
+
+    private static int chunkOf(int position) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(position) - FIRST_CHUNK_BITS;
+    }
+
+    private AtomicReferenceArray<T> chunk(int chunk) {
+        AtomicReferenceArray<T> elements = chunks.get(chunk);
+        if (elements == null) {
+            chunks.compareAndSet(chunk, null, new AtomicReferenceArray<>(FIRST_CHUNK_SIZE << chunk));
+            elements = chunks.get(chunk);
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,375 @@
+package com.monzo.web_crawler.crawler.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The pages of a crawl and the links between them, stored as a graph of int IDs.
+ * <p>
+ * Every distinct url, crawled or only linked to, is kept once as a string in a dictionary and given the
+ * next free ID, found again through an open addressing table of IDs. The links of the crawled pages are kept
+ * in compressed sparse row form: the url IDs of the children of page {@code i} are
+ * {@code edges[offsets[i]]} up to {@code edges[offsets[i + 1]]}. A link shared by every page, such as a
+ * navigation link, then costs 4 bytes per page rather than a {@link URI} and a set entry. The reverse
+ * adjacency, for in-links, is built the first time it is asked for.
+ * <p>
+ * {@link #getPages()} presents the graph as the list of {@link Page}s it was built from, creating each page
+ * when it is read. Graphs are immutable, they are built while crawling with a lock-free {@link Builder}.
+ */
+public final class LinkGraph {
+
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private final String[] urls;
+    // url ID + 1 of each url, at the slot of its hash, 0 for an empty slot
+    private final int[] slots;
+    private final int[] pageUrlIds;
+    private final int[] offsets;
+    private final int[] edges;
+    // index of the page of each url ID, -1 for urls which were not crawled
+    private final int[] pageIndexes;
+
+    private volatile InLinks inLinks;
+
+    private LinkGraph(String[] urls, int[] slots, int[] pageUrlIds, int[] offsets, int[] edges) {
+        this.urls = urls;
+        this.slots = slots;
+        this.pageUrlIds = pageUrlIds;
+        this.offsets = offsets;
+        this.edges = edges;
+        this.pageIndexes = new int[urls.length];
+        Arrays.fill(pageIndexes, -1);
+        for (int i = 0; i < pageUrlIds.length; i++) {
+            pageIndexes[pageUrlIds[i]] = i;
+        }
+    }
+
+    public static LinkGraph empty() {
+        return new Builder().build();
+    }
+
+    public static LinkGraph of(Collection<Page> pages) {
+        Builder builder = new Builder();
+        pages.forEach(builder::addPage);
+        return builder.build();
+    }
+
+    public int getPageCount() {
+        return pageUrlIds.length;
+    }
+
+    public int getUrlCount() {
+        return urls.length;
+    }
+
+    public int getLinkCount() {
+        return edges.length;
+    }
+
+    /**
+     * @return the ID of the url, or -1 if the graph does not contain it
+     */
+    public int getUrlId(String url) {
+        return find(urls, slots, url);
+    }
+
+    public String getUrl(int urlId) {
+        return urls[urlId];
+    }
+
+    /**
+     * @return whether the url was crawled, rather than only linked to
+     */
+    public boolean isPage(String url) {
+        int urlId = getUrlId(url);
+        return urlId >= 0 && pageIndexes[urlId] >= 0;
+    }
+
+    /**
+     * @return the IDs of the urls the page of the url links to, empty if the url was not crawled
+     */
+    public int[] getOutLinks(int urlId) {
+        int page = pageIndexes[urlId];
+        return page < 0 ? new int[0] : Arrays.copyOfRange(edges, offsets[page], offsets[page + 1]);
+    }
+
+    /**
+     * @return the IDs of the crawled pages linking to the url
+     */
+    public int[] getInLinks(int urlId) {
+        InLinks reverse = inLinks();
+        return Arrays.copyOfRange(reverse.edges, reverse.offsets[urlId], reverse.offsets[urlId + 1]);
+    }
+
+    public List<URI> getOutLinks(URI url) {
+        int urlId = getUrlId(url.toString());
+        return urlId < 0 ? List.of() : toUris(getOutLinks(urlId));
+    }
+
+    public List<URI> getInLinks(URI url) {
+        int urlId = getUrlId(url.toString());
+        return urlId < 0 ? List.of() : toUris(getInLinks(urlId));
+    }
+
+    public Page getPage(int pageIndex) {
+        return toPage(urls, pageUrlIds, offsets, edges, pageIndex);
+    }
+
+    /**
+     * @return the crawled pages in the order they were added, each created as it is read
+     */
+    public List<Page> getPages() {
+        return new AbstractList<>() {
+            @Override
+            public Page get(int index) {
+                return getPage(index);
+            }
+
+            @Override
+            public int size() {
+                return pageUrlIds.length;
+            }
+        };
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(urls.length);
+        for (String url : urls) {
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(pageUrlIds.length);
+        for (int i = 0; i < pageUrlIds.length; i++) {
+            out.writeInt(pageUrlIds[i]);
+            out.writeInt(offsets[i + 1] - offsets[i]);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                out.writeInt(edges[j]);
+            }
+        }
+    }
+
+    public static LinkGraph readFrom(DataInput in) throws IOException {
+        Builder builder = new Builder();
+        int urlCount = in.readInt();
+        for (int i = 0; i < urlCount; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_STRING_BYTES) {
+                throw new IOException("Corrupt link graph, url of " + length + " bytes");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            if (builder.intern(new String(bytes, StandardCharsets.UTF_8)) != i) {
+                throw new IOException("Corrupt link graph, duplicate url " + i);
+            }
+        }
+        int pageCount = in.readInt();
+        for (int i = 0; i < pageCount; i++) {
+            int pageUrlId = checkUrlId(in.readInt(), urlCount);
+            int childCount = in.readInt();
+            if (childCount < 0 || childCount > urlCount) {
+                throw new IOException("Corrupt link graph, page with " + childCount + " links out of " + urlCount + " urls");
+            }
+            int[] entry = new int[childCount + 1];
+            entry[0] = pageUrlId;
+            for (int j = 1; j <= childCount; j++) {
+                entry[j] = checkUrlId(in.readInt(), urlCount);
+            }
+            builder.pages.add(entry);
+        }
+        return builder.build();
+    }
+
+    private static int checkUrlId(int urlId, int urlCount) throws IOException {
+        if (urlId < 0 || urlId >= urlCount) {
+            throw new IOException("Corrupt link graph, url ID " + urlId + " out of " + urlCount);
+        }
+        return urlId;
+    }
+
+    private List<URI> toUris(int[] urlIds) {
+        return Arrays.stream(urlIds).mapToObj(urlId -> URI.create(urls[urlId])).toList();
+    }
+
+    private InLinks inLinks() {
+        InLinks reverse = inLinks;
+        if (reverse == null) {
+            synchronized (this) {
+                reverse = inLinks;
+                if (reverse == null) {
+                    reverse = new InLinks();
+                    inLinks = reverse;
+                }
+            }
+        }
+        return reverse;
+    }
+
+    /**
+     * The transposed adjacency: for every url ID, the url IDs of the pages linking to it.
+     */
+    private final class InLinks {
+
+        private final int[] offsets = new int[urls.length + 1];
+        private final int[] edges = new int[LinkGraph.this.edges.length];
+
+        private InLinks() {
+            for (int target : LinkGraph.this.edges) {
+                offsets[target + 1]++;
+            }
+            for (int i = 0; i < urls.length; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] next = Arrays.copyOf(offsets, urls.length);
+            for (int page = 0; page < pageUrlIds.length; page++) {
+                for (int i = LinkGraph.this.offsets[page]; i < LinkGraph.this.offsets[page + 1]; i++) {
+                    edges[next[LinkGraph.this.edges[i]]++] = pageUrlIds[page];
+                }
+            }
+        }
+    }
+
+    private static Page toPage(String[] urls, int[] pageUrlIds, int[] offsets, int[] edges, int pageIndex) {
+        Set<URI> children = new LinkedHashSet<>();
+        for (int i = offsets[pageIndex]; i < offsets[pageIndex + 1]; i++) {
+            children.add(URI.create(urls[edges[i]]));
+        }
+        return new Page(URI.create(urls[pageUrlIds[pageIndex]]), children);
+    }
+
+    private static int find(String[] urls, int[] slots, String url) {
+        int mask = slots.length - 1;
+        for (int slot = spread(url.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (urls[slots[slot] - 1].equals(url)) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Builds a {@link LinkGraph} from pages added as they are crawled. All methods are thread safe and
+     * none of them lock: urls are given their IDs through a {@link ConcurrentHashMap} and pages are appended
+     * to an {@link AppendOnlyList} as arrays of url IDs, which are only laid out as a graph by {@link #build()}.
+     */
+    public static final class Builder {
+
+        private final ConcurrentHashMap<String, Integer> urlIds = new ConcurrentHashMap<>();
+        private final AppendOnlyList<String> urls = new AppendOnlyList<>();
+        // the url ID of each page followed by the url IDs of its children
+        private final AppendOnlyList<int[]> pages = new AppendOnlyList<>();
+
+        /**
+         * Adds a crawled page with its links.
+         *
+         * @return the index of the page
+         */
+        public int addPage(Page page) {
+            int[] entry = new int[page.getChildren().size() + 1];
+            entry[0] = intern(page.getUrl().toString());
+            int i = 1;
+            for (URI child : page.getChildren()) {
+                entry[i++] = intern(child.toString());
+            }
+            return pages.add(entry);
+        }
+
+        /**
+         * Adds all pages of the graph, after the pages already added.
+         */
+        public void addAll(LinkGraph graph) {
+            int[] urlIds = new int[graph.urls.length];
+            for (int i = 0; i < graph.urls.length; i++) {
+                urlIds[i] = intern(graph.urls[i]);
+            }
+            for (int page = 0; page < graph.pageUrlIds.length; page++) {
+                int childCount = graph.offsets[page + 1] - graph.offsets[page];
+                int[] entry = new int[childCount + 1];
+                entry[0] = urlIds[graph.pageUrlIds[page]];
+                for (int i = 0; i < childCount; i++) {
+                    entry[i + 1] = urlIds[graph.edges[graph.offsets[page] + i]];
+                }
+                pages.add(entry);
+            }
+        }
+
+        public int getPageCount() {
+            return pages.size();
+        }
+
+        /**
+         * @return the pages from {@code fromIndex}, inclusive, to {@code toIndex}, exclusive
+         */
+        public List<Page> getPages(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, pages.size());
+            List<Page> result = new ArrayList<>(toIndex - fromIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                int[] entry = pages.get(i);
+                Set<URI> children = new LinkedHashSet<>();
+                for (int j = 1; j < entry.length; j++) {
+                    children.add(URI.create(urls.get(entry[j])));
+                }
+                result.add(new Page(URI.create(urls.get(entry[0])), children));
+            }
+            return result;
+        }
+
+        /**
+         * @return a graph of the pages added so far, unaffected by pages added later
+         */
+        public LinkGraph build() {
+            int pageCount = pages.size();
+            int[] pageUrlIds = new int[pageCount];
+            int[] offsets = new int[pageCount + 1];
+            int[][] entries = new int[pageCount][];
+            for (int i = 0; i < pageCount; i++) {
+                entries[i] = pages.get(i);
+                pageUrlIds[i] = entries[i][0];
+                offsets[i + 1] = offsets[i] + entries[i].length - 1;
+            }
+            int[] edges = new int[offsets[pageCount]];
+            for (int i = 0; i < pageCount; i++) {
+                System.arraycopy(entries[i], 1, edges, offsets[i], entries[i].length - 1);
+            }
+            // read after the pages, so it covers every url they link to
+            String[] urlArray = new String[urls.size()];
+            // kept at most half full, so probe sequences stay short
+            int[] slots = new int[Math.max(16, Integer.highestOneBit(Math.max(1, urlArray.length)) << 2)];
+            for (int urlId = 0; urlId < urlArray.length; urlId++) {
+                urlArray[urlId] = urls.get(urlId);
+                insert(slots, urlArray[urlId], urlId);
+            }
+            return new LinkGraph(urlArray, slots, pageUrlIds, offsets, edges);
+        }
+
+        private int intern(String url) {
+            Integer urlId = urlIds.get(url);
+            return urlId != null ? urlId : urlIds.computeIfAbsent(url, urls::add);
+        }
+
+        private static void insert(int[] slots, String url, int urlId) {
+            int mask = slots.length - 1;
+            int slot = spread(url.hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = urlId + 1;
+        }
+    }
+}
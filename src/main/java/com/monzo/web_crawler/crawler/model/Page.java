@@ -1,12 +1,14 @@
 package com.monzo.web_crawler.crawler.model;
 
 
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 import java.net.URI;
 import java.util.Set;
 
 @Getter
+@EqualsAndHashCode
 public class Page {
 
     private final URI url;
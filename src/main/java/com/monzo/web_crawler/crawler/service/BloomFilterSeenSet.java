@@ -0,0 +1,275 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Seen-set for crawls of very large sites, a scalable Bloom filter whose bits live in a memory-mapped
+ * temporary file rather than on the heap. Heap usage stays flat however many urls are added, the bits
+ * are paged in and out by the operating system.
+ * <p>
+ * The filter starts sized for {@code initialCapacity} urls. Once that many urls have been added a new
+ * filter holding twice as many urls is appended, with a tighter false positive probability, so that the
+ * compound false positive probability of all filters stays below the configured one. A false positive
+ * means a url that has not been seen is reported as seen and is never crawled.
+ * <p>
+ * Adding a url is synchronized, checking and setting its bits is a single atomic step.
+ */
+public class BloomFilterSeenSet implements SeenUrlSet {
+
+    // each filter appended holds this many times more urls than the previous one...
+    private static final int GROWTH_FACTOR = 2;
+    // ...with its false positive probability multiplied by this ratio, so the sum of all of them converges
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    // a single mapping is limited to 2GB
+    private static final long MAX_FILTER_BYTES = Integer.MAX_VALUE & ~7L;
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    // bits are copied to and from checkpoints in chunks of this many bytes
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Consumer<BloomFilterSeenSet> closeListener;
+    private final List<Filter> filters = new ArrayList<>();
+    private long mappedBytes;
+    private long size;
+
+    /**
+     * @param directory                directory the file backing the filter is created in, it is deleted on close
+     * @param initialCapacity          number of urls the first filter is sized for
+     * @param falsePositiveProbability upper bound of the probability of an unseen url being reported as seen
+     * @param closeListener            called when the filter is closed
+     */
+    public BloomFilterSeenSet(Path directory, long initialCapacity, double falsePositiveProbability,
+                              Consumer<BloomFilterSeenSet> closeListener) throws IOException {
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1, was " + falsePositiveProbability);
+        }
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("Initial capacity must be positive, was " + initialCapacity);
+        }
+        this.channel = openFile(directory);
+        this.closeListener = closeListener;
+        addFilter(initialCapacity, falsePositiveProbability * (1 - TIGHTENING_RATIO));
+    }
+
+    private BloomFilterSeenSet(Path directory, Consumer<BloomFilterSeenSet> closeListener) throws IOException {
+        this.channel = openFile(directory);
+        this.closeListener = closeListener;
+    }
+
+    private static FileChannel openFile(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "seen-urls-", ".bloom");
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    @Override
+    public synchronized boolean add(URI url) {
+        long fingerprint = FingerprintSeenSet.fingerprint(url.toString());
+        for (Filter filter : filters) {
+            if (filter.mightContain(fingerprint)) {
+                return false;
+            }
+        }
+        Filter current = filters.getLast();
+        if (current.count >= current.capacity) {
+            current = addFilter(current.capacity * GROWTH_FACTOR, current.falsePositiveProbability * TIGHTENING_RATIO);
+        }
+        current.put(fingerprint);
+        size++;
+        return true;
+    }
+
+    /**
+     * @return the number of urls added, urls rejected as false positives are not counted
+     */
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public SeenUrlSetType type() {
+        return SeenUrlSetType.BLOOM_FILTER;
+    }
+
+    /**
+     * Writes the parameters and bits of every filter.
+     */
+    @Override
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(size);
+        out.writeInt(filters.size());
+        byte[] chunk = new byte[COPY_CHUNK_SIZE];
+        for (Filter filter : filters) {
+            out.writeLong(filter.bitCount);
+            out.writeInt(filter.hashCount);
+            out.writeLong(filter.capacity);
+            out.writeDouble(filter.falsePositiveProbability);
+            out.writeLong(filter.count);
+            out.writeLong(filter.setBits);
+            int bytes = filter.bits.capacity();
+            for (int position = 0; position < bytes; position += chunk.length) {
+                int length = Math.min(chunk.length, bytes - position);
+                filter.bits.get(position, chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    /**
+     * Reads back a filter written by {@link #writeTo(DataOutputStream)} into a new file in the directory.
+     */
+    public static BloomFilterSeenSet readFrom(DataInputStream in, Path directory, Consumer<BloomFilterSeenSet> closeListener) throws IOException {
+        BloomFilterSeenSet seenSet = new BloomFilterSeenSet(directory, closeListener);
+        seenSet.size = in.readLong();
+        int filterCount = in.readInt();
+        byte[] chunk = new byte[COPY_CHUNK_SIZE];
+        for (int i = 0; i < filterCount; i++) {
+            Filter filter = seenSet.mapFilter(in.readLong(), in.readInt(), in.readLong(), in.readDouble());
+            filter.count = in.readLong();
+            filter.setBits = in.readLong();
+            int bytes = filter.bits.capacity();
+            for (int position = 0; position < bytes; position += chunk.length) {
+                int length = Math.min(chunk.length, bytes - position);
+                in.readFully(chunk, 0, length);
+                filter.bits.put(position, chunk, 0, length);
+            }
+        }
+        return seenSet;
+    }
+
+    /**
+     * @return the fraction of all bits of the filter which are set
+     */
+    public synchronized double fillRatio() {
+        long setBits = 0;
+        long bitCount = 0;
+        for (Filter filter : filters) {
+            setBits += filter.setBits;
+            bitCount += filter.bitCount;
+        }
+        return (double) setBits / bitCount;
+    }
+
+    /**
+     * @return the probability of the next unseen url being reported as seen, estimated from the bits set so far
+     */
+    public synchronized double estimatedFalsePositiveProbability() {
+        double trueNegative = 1;
+        for (Filter filter : filters) {
+            trueNegative *= 1 - Math.pow((double) filter.setBits / filter.bitCount, filter.hashCount);
+        }
+        return 1 - trueNegative;
+    }
+
+    /**
+     * @return the number of bytes of the file backing the filter
+     */
+    public synchronized long mappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * Closes and deletes the file backing the filter. The mapped pages are released by the operating
+     * system once the buffers are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close bloom filter file", e);
+        } finally {
+            closeListener.accept(this);
+        }
+    }
+
+    private Filter addFilter(long capacity, double falsePositiveProbability) {
+        long bitCount = (long) Math.ceil(-capacity * Math.log(falsePositiveProbability) / LN2_SQUARED);
+        long bytes = Math.min((bitCount + 63) / 64 * 8, MAX_FILTER_BYTES);
+        bitCount = bytes * 8;
+        // a filter capped by the size of a mapping holds fewer urls
+        capacity = Math.min(capacity, (long) (bitCount * LN2_SQUARED / -Math.log(falsePositiveProbability)));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        return mapFilter(bitCount, hashCount, capacity, falsePositiveProbability);
+    }
+
+    private Filter mapFilter(long bitCount, int hashCount, long capacity, double falsePositiveProbability) {
+        long bytes = bitCount / 8;
+        try {
+            MappedByteBuffer bits = channel.map(FileChannel.MapMode.READ_WRITE, mappedBytes, bytes);
+            mappedBytes += bytes;
+            Filter filter = new Filter(bits, bitCount, hashCount, capacity, falsePositiveProbability);
+            filters.add(filter);
+            return filter;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to map %d bytes for bloom filter".formatted(bytes), e);
+        }
+    }
+
+    /**
+     * A classic Bloom filter. The bit positions of a url are derived from the two halves of its
+     * 64-bit fingerprint by double hashing.
+     */
+    private static final class Filter {
+
+        private final MappedByteBuffer bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private final double falsePositiveProbability;
+        private long count;
+        private long setBits;
+
+        private Filter(MappedByteBuffer bits, long bitCount, int hashCount, long capacity, double falsePositiveProbability) {
+            this.bits = bits;
+            this.bitCount = bitCount;
+            this.hashCount = hashCount;
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        private boolean mightContain(long fingerprint) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = bitIndex(fingerprint, i);
+                if ((bits.get((int) (index >>> 3)) & (1 << (index & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void put(long fingerprint) {
+            for (int i = 0; i < hashCount; i++) {
+                long index = bitIndex(fingerprint, i);
+                int byteIndex = (int) (index >>> 3);
+                byte current = bits.get(byteIndex);
+                byte updated = (byte) (current | (1 << (index & 7)));
+                if (updated != current) {
+                    bits.put(byteIndex, updated);
+                    setBits++;
+                }
+            }
+            count++;
+        }
+
+        private long bitIndex(long fingerprint, int i) {
+            long hash1 = (int) fingerprint;
+            long hash2 = (int) (fingerprint >>> 32);
+            return Math.floorMod(hash1 + i * hash2, bitCount);
+        }
+    }
+}
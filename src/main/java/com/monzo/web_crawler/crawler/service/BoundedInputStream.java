@@ -0,0 +1,77 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream wrapper which ends the stream once a maximum number of bytes has been read from the underlying
+ * stream, so that a parser reading an endless or oversized body stops there. Whether the body was cut short is
+ * remembered, the underlying stream is left to the caller to close.
+ */
+class BoundedInputStream extends FilterInputStream {
+
+    private long remaining;
+    private boolean truncated;
+
+    BoundedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.remaining = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return endOfLimit();
+        }
+        int result = super.read();
+        if (result != -1) {
+            remaining--;
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return endOfLimit();
+        }
+        int result = super.read(b, off, (int) Math.min(len, remaining));
+        if (result > 0) {
+            remaining -= result;
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(Math.min(n, remaining));
+        remaining -= result;
+        return result;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private int endOfLimit() throws IOException {
+        // the body only counts as cut short if there was more of it
+        if (!truncated && super.read() != -1) {
+            truncated = true;
+        }
+        return -1;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,20 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.util.List;
+
+/**
+ * A page as it was when last fetched, kept by the {@link PageCache}. Its validators are sent with the next
+ * request of the page, and its links reused if the server answers that the page has not changed.
+ *
+ * @param url          canonical url of the page
+ * @param etag         value of the {@code ETag} header, sent as {@code If-None-Match}, or null
+ * @param lastModified value of the {@code Last-Modified} header, sent as {@code If-Modified-Since}, or null
+ * @param links        absolute urls of all hyperlinks within the page
+ * @param canonicalUrl absolute url the page declared as canonical, or null
+ */
+public record CachedPage(String url, String etag, String lastModified, List<String> links, String canonicalUrl) {
+
+    public CachedPage(String url, String etag, String lastModified, List<String> links) {
+        this(url, etag, lastModified, links, null);
+    }
+}
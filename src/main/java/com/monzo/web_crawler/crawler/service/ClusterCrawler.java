@@ -0,0 +1,123 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates a crawl distributed over the nodes of a cluster.
+ * <p>
+ * Every node crawls the urls the {@link ConsistentHashRing} of the cluster assigns to it and forwards the others to
+ * their owner, see {@link ClusterNode}. The crawl is done once no node has work left and no url is on its way to
+ * another node. The coordinator polls the status of every node and applies the four counter method: two rounds in
+ * a row must find every node idle, as many urls received as sent, and the same counts in both rounds, so a url sent
+ * or received between two reads of the same round cannot go unnoticed. The pages crawled by every node are then
+ * merged into a single graph.
+ */
+public class ClusterCrawler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterCrawler.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final ClusterTransport transport;
+    private final List<String> nodeIds;
+    private final int timeoutSeconds;
+
+    public ClusterCrawler(ClusterTransport transport, List<String> nodeIds, int timeoutSeconds) {
+        if (nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        this.transport = transport;
+        this.nodeIds = List.copyOf(nodeIds);
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * @return the pages crawled by all nodes, or empty if the crawl did not complete within the timeout or failed on
+     * a node
+     */
+    public Optional<LinkGraph> crawl(String crawlId, URI rootPage) throws IOException, InterruptedException {
+        String rootOwner = new ConsistentHashRing(nodeIds, ConsistentHashRing.DEFAULT_VIRTUAL_NODES).ownerOf(rootPage);
+        List<String> started = new ArrayList<>();
+        boolean completed;
+        try {
+            // the owner of the root page starts last, by then every node it forwards links to can receive them
+            for (String nodeId : nodeIds) {
+                if (!nodeId.equals(rootOwner)) {
+                    transport.startCrawl(nodeId, crawlId, rootPage, nodeIds);
+                    started.add(nodeId);
+                }
+            }
+            transport.startCrawl(rootOwner, crawlId, rootPage, nodeIds);
+            started.add(rootOwner);
+            completed = awaitQuiescence(crawlId);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            finish(started, crawlId);
+            throw e;
+        }
+        Optional<LinkGraph> graph = finish(started, crawlId);
+        if (!completed || graph.isEmpty()) {
+            logger.error("Cluster crawl {} of {} did not complete", crawlId, rootPage);
+            return Optional.empty();
+        }
+        logger.info("Cluster crawl {} of {} completed on {} nodes with {} pages", crawlId, rootPage, nodeIds.size(), graph.get().getPageCount());
+        return graph;
+    }
+
+    private boolean awaitQuiescence(String crawlId) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        long[] previousCounts = null;
+        while (System.nanoTime() < deadline) {
+            boolean allIdle = true;
+            long sent = 0;
+            long received = 0;
+            for (String nodeId : nodeIds) {
+                ClusterNodeStatus status = transport.getStatus(nodeId, crawlId);
+                if (status.stopped()) {
+                    logger.error("Node {} stopped before crawl {} completed", nodeId, crawlId);
+                    return false;
+                }
+                allIdle &= status.idle();
+                sent += status.sentUrls();
+                received += status.receivedUrls();
+            }
+            long[] counts = allIdle && sent == received ? new long[]{sent, received} : null;
+            if (counts != null && previousCounts != null && counts[0] == previousCounts[0] && counts[1] == previousCounts[1]) {
+                return true;
+            }
+            previousCounts = counts;
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+        logger.error("Cluster crawl {} did not complete within {} seconds", crawlId, timeoutSeconds);
+        return false;
+    }
+
+    /**
+     * Finishes the crawl on every node and merges the pages they crawled.
+     *
+     * @return the merged pages, or empty if the crawl did not complete on every node
+     */
+    private Optional<LinkGraph> finish(List<String> started, String crawlId) {
+        LinkGraph.Builder merged = new LinkGraph.Builder();
+        boolean complete = true;
+        for (String nodeId : started) {
+            try {
+                Optional<LinkGraph> nodePages = transport.finishCrawl(nodeId, crawlId);
+                nodePages.ifPresent(merged::addAll);
+                complete &= nodePages.isPresent();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to finish crawl {} on node {}", crawlId, nodeId, e);
+                complete = false;
+            }
+        }
+        return complete ? Optional.of(merged.build()) : Optional.empty();
+    }
+}
@@ -0,0 +1,119 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One crawler instance of a cluster, handling the messages its {@link ClusterTransport} delivers to it.
+ * <p>
+ * For every distributed crawl the node runs a crawl of its own through its {@link CrawlerService}, with its own
+ * frontier and seen-set, restricted to the urls its {@link ClusterPartition} owns. The crawl keeps running, waiting
+ * for urls from other nodes, until the coordinator finishes it, see {@link ClusterCrawler}.
+ */
+public class ClusterNode {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterNode.class);
+
+    private static final int START_TIMEOUT_SECONDS = 30;
+
+    private final String nodeId;
+    private final CrawlerService crawlerService;
+    private final ClusterTransport transport;
+    private final int batchSize;
+
+    private final Map<String, NodeCrawl> crawls = new ConcurrentHashMap<>();
+
+    public ClusterNode(String nodeId, CrawlerService crawlerService, ClusterTransport transport, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
+        this.nodeId = nodeId;
+        this.crawlerService = crawlerService;
+        this.transport = transport;
+        this.batchSize = batchSize;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Starts the part of the crawl owned by this node, returning once the node can receive urls.
+     */
+    public void startCrawl(String crawlId, URI rootPage, List<String> nodeIds) throws IOException {
+        ClusterPartition partition = new ClusterPartition(nodeId, crawlId,
+                new ConsistentHashRing(nodeIds, ConsistentHashRing.DEFAULT_VIRTUAL_NODES), transport, batchSize);
+        CompletableFuture<Optional<LinkGraph>> result = new CompletableFuture<>();
+        if (crawls.putIfAbsent(crawlId, new NodeCrawl(partition, result)) != null) {
+            throw new IOException("Crawl " + crawlId + " is already running on node " + nodeId);
+        }
+        Thread.ofVirtual().name("cluster-crawl-" + nodeId + "-" + crawlId).start(() -> {
+            try {
+                result.complete(crawlerService.crawlPartition(crawlId, rootPage, partition));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            if (!partition.awaitStarted(START_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Crawl " + crawlId + " did not start on node " + nodeId + " within " + START_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while starting crawl " + crawlId + " on node " + nodeId);
+        }
+        logger.info("Node {} started its part of crawl {} of {}", nodeId, crawlId, rootPage);
+    }
+
+    public void receiveUrls(String crawlId, List<URI> urls) throws IOException {
+        crawl(crawlId).partition().receive(urls);
+    }
+
+    public ClusterNodeStatus getStatus(String crawlId) throws IOException {
+        NodeCrawl crawl = crawl(crawlId);
+        return crawl.partition().getStatus(crawl.result().isDone());
+    }
+
+    /**
+     * Stops the part of the crawl owned by this node and waits for its crawlers to complete.
+     *
+     * @return the pages crawled by this node, or empty if its part of the crawl did not complete
+     */
+    public Optional<LinkGraph> finishCrawl(String crawlId) throws IOException {
+        NodeCrawl crawl = crawl(crawlId);
+        crawl.partition().finish();
+        try {
+            return crawl.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing crawl " + crawlId + " on node " + nodeId);
+        } catch (ExecutionException e) {
+            throw new IOException("Crawl " + crawlId + " failed on node " + nodeId, e.getCause());
+        } finally {
+            crawls.remove(crawlId);
+        }
+    }
+
+    private NodeCrawl crawl(String crawlId) throws IOException {
+        NodeCrawl crawl = crawls.get(crawlId);
+        if (crawl == null) {
+            throw new IOException("Crawl " + crawlId + " is not running on node " + nodeId);
+        }
+        return crawl;
+    }
+
+    private record NodeCrawl(ClusterPartition partition, CompletableFuture<Optional<LinkGraph>> result) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * The state of the part of a crawl owned by one node of a cluster.
+ *
+ * @param idle         whether the node has no urls queued, none being crawled and none waiting to be forwarded
+ * @param stopped      whether the part of the crawl stopped before it was finished, after timing out or failing
+ * @param sentUrls     number of urls forwarded to other nodes so far
+ * @param receivedUrls number of urls received from other nodes and queued so far
+ */
+public record ClusterNodeStatus(boolean idle, boolean stopped, long sentUrls, long receivedUrls) {
+}
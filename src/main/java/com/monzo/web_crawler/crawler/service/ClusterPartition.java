@@ -0,0 +1,177 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The part of a distributed crawl owned by one node: the urls the {@link ConsistentHashRing} assigns to it.
+ * <p>
+ * The {@link CrawlerManager} of the node queues the links it finds which the node owns, and forwards the others
+ * through the partition. They are buffered per owner and sent in batches of {@code batchSize}, or as they are
+ * whenever the node runs out of urls of its own, so no url waits on a batch while its owner has nothing to do.
+ * The last {@value #MAX_SENT_URLS} urls forwarded are remembered and not forwarded again; the owner skips urls it
+ * has seen anyway, so a url forgotten since is only sent once more.
+ * <p>
+ * The counts of urls sent and received, and whether the node is idle, let the coordinator tell when the whole
+ * crawl is done, see {@link ClusterCrawler}.
+ */
+public class ClusterPartition {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterPartition.class);
+
+    static final int MAX_SENT_URLS = 64 * 1024;
+
+    private final String nodeId;
+    private final String crawlId;
+    private final ConsistentHashRing ring;
+    private final ClusterTransport transport;
+    private final int batchSize;
+
+    // urls waiting to be sent, per owner, guarded by the map
+    private final Map<String, List<URI>> outbox = new HashMap<>();
+    // urls already forwarded, least recently forwarded first, guarded by the outbox
+    private final Map<URI, Boolean> sent = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, Boolean> eldest) {
+            return size() > MAX_SENT_URLS;
+        }
+    };
+    private final AtomicLong sentUrls = new AtomicLong();
+    private final AtomicLong receivedUrls = new AtomicLong();
+    // the received count at which the node was last seen idle, -1 if it was not
+    private volatile long idleAtReceived = -1;
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile Consumer<List<URI>> receiver;
+    private volatile boolean finished;
+
+    public ClusterPartition(String nodeId, String crawlId, ConsistentHashRing ring, ClusterTransport transport, int batchSize) {
+        this.nodeId = nodeId;
+        this.crawlId = crawlId;
+        this.ring = ring;
+        this.transport = transport;
+        this.batchSize = batchSize;
+    }
+
+    public boolean isLocal(URI url) {
+        return nodeId.equals(ring.ownerOf(url));
+    }
+
+    /**
+     * Buffers a url owned by another node, sending the batch of its owner once it is full. Urls already forwarded
+     * are skipped.
+     */
+    public void forward(URI url) {
+        String owner = ring.ownerOf(url);
+        List<URI> batch;
+        synchronized (outbox) {
+            if (sent.put(url, Boolean.TRUE) != null) {
+                return;
+            }
+            List<URI> pending = outbox.computeIfAbsent(owner, ignored -> new ArrayList<>());
+            pending.add(url);
+            if (pending.size() < batchSize) {
+                return;
+            }
+            batch = outbox.remove(owner);
+        }
+        send(owner, batch);
+    }
+
+    /**
+     * Sends every buffered url, whether or not its batch is full.
+     */
+    public void flush() {
+        Map<String, List<URI>> batches;
+        synchronized (outbox) {
+            if (outbox.isEmpty()) {
+                return;
+            }
+            batches = new HashMap<>(outbox);
+            outbox.clear();
+        }
+        batches.forEach(this::send);
+    }
+
+    private void send(String owner, List<URI> batch) {
+        // counted before it is sent, so a batch in transit is never missing from both counts
+        sentUrls.addAndGet(batch.size());
+        try {
+            transport.sendUrls(owner, crawlId, batch);
+        } catch (IOException | RuntimeException e) {
+            sentUrls.addAndGet(-batch.size());
+            synchronized (outbox) {
+                batch.forEach(sent::remove);
+            }
+            logger.error("Failed to forward {} urls of crawl {} to node {}, they are not crawled", batch.size(), crawlId, owner, e);
+        }
+    }
+
+    /**
+     * Queues urls forwarded by other nodes. Only counted once they have been queued, see {@link #updateIdle}.
+     */
+    public void receive(List<URI> urls) {
+        receiver.accept(urls);
+        receivedUrls.addAndGet(urls.size());
+    }
+
+    /**
+     * Checks whether the node is idle. Called by the manager of the node while it waits for the partition to finish.
+     * <p>
+     * The received count is read before the check, and the node is only reported idle while it has not changed.
+     * A url received while checking is queued before the count goes up, so it is either seen by the check or
+     * makes the result stale. Crawlers forward the links they found before they complete, so the outbox is only
+     * checked once there is no local work left.
+     */
+    void updateIdle(BooleanSupplier noLocalWork) {
+        long received = receivedUrls.get();
+        boolean idle = noLocalWork.getAsBoolean();
+        if (idle) {
+            synchronized (outbox) {
+                idle = outbox.isEmpty();
+            }
+        }
+        idleAtReceived = idle ? received : -1;
+    }
+
+    public ClusterNodeStatus getStatus(boolean stopped) {
+        return new ClusterNodeStatus(idleAtReceived == receivedUrls.get(), stopped, sentUrls.get(), receivedUrls.get());
+    }
+
+    /**
+     * Called by the manager of the node once it can queue urls.
+     */
+    void start(Consumer<List<URI>> receiver) {
+        this.receiver = receiver;
+        started.countDown();
+    }
+
+    boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return started.await(timeout, unit);
+    }
+
+    public void finish() {
+        finished = true;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
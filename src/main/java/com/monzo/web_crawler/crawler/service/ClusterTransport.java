@@ -0,0 +1,40 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Carries the messages of a distributed crawl between the nodes of a crawler cluster, see {@link ClusterNode}.
+ * <p>
+ * Implementations decide how nodes are reached. Everything sent is plain data: urls, counters and link graphs,
+ * which a network transport can send in the form of {@link LinkGraph#writeTo}. {@link LoopbackClusterTransport}
+ * delivers the messages to nodes in the same JVM.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Starts the part of the crawl owned by the node. The node only starts crawling urls it is sent, unless it
+     * owns the root page.
+     *
+     * @param nodeIds all nodes of the crawl, from which every node builds the same {@link ConsistentHashRing}
+     */
+    void startCrawl(String nodeId, String crawlId, URI rootPage, List<String> nodeIds) throws IOException;
+
+    /**
+     * Hands a batch of discovered urls to the node owning them.
+     */
+    void sendUrls(String nodeId, String crawlId, List<URI> urls) throws IOException;
+
+    ClusterNodeStatus getStatus(String nodeId, String crawlId) throws IOException;
+
+    /**
+     * Stops the part of the crawl owned by the node.
+     *
+     * @return the pages crawled by the node, or empty if its part of the crawl did not complete
+     */
+    Optional<LinkGraph> finishCrawl(String nodeId, String crawlId) throws IOException;
+}
@@ -0,0 +1,61 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Assigns every url to one node of a crawler cluster by consistent hashing of its canonical form.
+ * <p>
+ * Each node is placed on a ring of 64-bit hashes at {@code virtualNodes} points, and a url belongs to the node of
+ * the first point at or after the hash of the url. Spreading every node over many points evens out the share of
+ * urls each node gets, and adding or removing a node only moves the urls of the points it gains or loses. Every
+ * node built from the same node IDs assigns every url to the same owner.
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final List<String> nodeIds;
+    // hashes of the points, sorted, and the node of each point
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be positive, was " + virtualNodes);
+        }
+        this.nodeIds = List.copyOf(nodeIds);
+        long[][] ring = new long[this.nodeIds.size() * virtualNodes][];
+        int point = 0;
+        for (int node = 0; node < this.nodeIds.size(); node++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring[point++] = new long[]{FingerprintSeenSet.fingerprint(this.nodeIds.get(node) + "#" + i), node};
+            }
+        }
+        Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : this.nodeIds.get((int) a[1]).compareTo(this.nodeIds.get((int) b[1])));
+        points = new long[ring.length];
+        owners = new String[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = ring[i][0];
+            owners[i] = this.nodeIds.get((int) ring[i][1]);
+        }
+    }
+
+    public List<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    public String ownerOf(URI url) {
+        int point = Arrays.binarySearch(points, FingerprintSeenSet.fingerprint(url.toString()));
+        if (point < 0) {
+            point = -point - 1;
+        }
+        // past the last point the ring wraps around to the first
+        return owners[point == points.length ? 0 : point];
+    }
+}
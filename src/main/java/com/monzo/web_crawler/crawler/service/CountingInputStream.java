@@ -0,0 +1,44 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream wrapper which records every byte read from the underlying stream
+ * against the crawl statistics.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private final CrawlStatistics statistics;
+
+    CountingInputStream(InputStream in, CrawlStatistics statistics) {
+        super(in);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        if (result != -1) {
+            statistics.recordBytes(1);
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = super.read(b, off, len);
+        if (result > 0) {
+            statistics.recordBytes(result);
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long result = super.skip(n);
+        statistics.recordBytes(result);
+        return result;
+    }
+}
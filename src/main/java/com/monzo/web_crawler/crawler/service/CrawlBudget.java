@@ -0,0 +1,36 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Limits on how much of a site a crawl fetches. Once the page or byte budget is spent the crawl stops dispatching,
+ * drops the urls still queued and finishes with the pages processed so far.
+ *
+ * @param maxDepth the number of links followed from the root page, urls further away are not queued
+ * @param maxPages the number of pages processed, pages which fail do not count
+ * @param maxBytes the number of bytes downloaded. It is checked before each page is fetched, so the pages in flight
+ *                 when it runs out may take the crawl past it
+ */
+public record CrawlBudget(int maxDepth, long maxPages, long maxBytes) {
+
+    public static final CrawlBudget UNLIMITED = new CrawlBudget(Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    public CrawlBudget {
+        if (maxDepth < 0 || maxPages <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid crawl budget: depth %d, pages %d, bytes %d".formatted(maxDepth, maxPages, maxBytes));
+        }
+    }
+
+    /**
+     * @param maxDepth the depth limit, or null for none
+     * @param maxPages the page limit, or null for none
+     * @param maxBytes the byte limit, or null for none
+     */
+    public static CrawlBudget of(Integer maxDepth, Long maxPages, Long maxBytes) {
+        return new CrawlBudget(maxDepth == null ? Integer.MAX_VALUE : maxDepth,
+                maxPages == null ? Long.MAX_VALUE : maxPages,
+                maxBytes == null ? Long.MAX_VALUE : maxBytes);
+    }
+
+    public boolean isUnlimited() {
+        return equals(UNLIMITED);
+    }
+}
@@ -0,0 +1,17 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+
+import java.net.URI;
+
+/**
+ * The state of a crawl read back from its last checkpoint, see {@link CrawlCheckpointStore}.
+ *
+ * @param rootPage  the page the crawl started from
+ * @param budget    the budget of the crawl
+ * @param pages     the pages processed before the checkpoint and their links
+ * @param seenUrls  the urls seen before the checkpoint
+ * @param frontier  the urls queued or being crawled at the time of the checkpoint
+ */
+public record CrawlCheckpoint(URI rootPage, CrawlBudget budget, LinkGraph pages, SeenUrlSet seenUrls, Frontier frontier) {
+}
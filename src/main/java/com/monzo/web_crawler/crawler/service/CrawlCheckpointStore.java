@@ -0,0 +1,187 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Stores checkpoints of running crawls in {@code crawler.checkpoint.directory}, one file per crawl ID,
+ * so that a crawl which timed out or was lost to a restart can be resumed rather than started over.
+ * <p>
+ * A checkpoint holds the root page and budget, the processed pages, the urls queued or being crawled with their
+ * depth and priority, and the seen-set of the crawl. It is written to a temporary file which then replaces the previous checkpoint,
+ * so a crash while writing leaves the previous checkpoint intact. Crawls write a checkpoint every
+ * {@code crawler.checkpoint.interval-seconds}, setting it to 0 disables checkpoints.
+ */
+@Component
+public class CrawlCheckpointStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlCheckpointStore.class);
+
+    // version 2 stores the processed pages as a link graph, version 3 the budget and the depth and priority of queued urls
+    private static final int FORMAT_VERSION = 3;
+
+    // crawl IDs become file names, so only simple IDs such as UUIDs are accepted
+    private static final Pattern CRAWL_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+
+    private final Path directory;
+    private final int intervalSeconds;
+
+    public CrawlCheckpointStore(@Value("${crawler.checkpoint.directory:${java.io.tmpdir}/web-crawler-checkpoints}") String directory,
+                                @Value("${crawler.checkpoint.interval-seconds:60}") int intervalSeconds) {
+        this.directory = Path.of(directory);
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public static String newCrawlId() {
+        return UUID.randomUUID().toString();
+    }
+
+    public static boolean isValidCrawlId(String crawlId) {
+        return crawlId != null && CRAWL_ID.matcher(crawlId).matches();
+    }
+
+    public boolean isEnabled() {
+        return intervalSeconds > 0;
+    }
+
+    public int getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Replaces the checkpoint of the crawl. The checkpoint is only consistent if the frontier and seen-set do not
+     * change while they are written.
+     *
+     * @param inFlightUrls urls being crawled, written to the checkpoint as queued so they are crawled again on resume
+     */
+    public void write(String crawlId, URI rootPage, CrawlBudget budget, LinkGraph pages, Frontier frontier,
+                      Collection<QueuedUrl> inFlightUrls, SeenUrlSet seenUrls) throws IOException {
+        Files.createDirectories(directory);
+        Path file = checkpointFile(crawlId);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, rootPage.toString());
+            out.writeInt(budget.maxDepth());
+            out.writeLong(budget.maxPages());
+            out.writeLong(budget.maxBytes());
+            pages.writeTo(out);
+
+            // queued urls are written one by one as the frontier may be too large to copy, each preceded by a marker
+            try {
+                frontier.forEach(url -> writeQueuedUrl(out, url));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (QueuedUrl url : inFlightUrls) {
+                writeQueuedUrl(out, url);
+            }
+            out.writeBoolean(false);
+
+            out.writeUTF(seenUrls.type().name());
+            seenUrls.writeTo(out);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.debug("Wrote checkpoint of crawl {} with {} pages to {}", crawlId, pages.getPageCount(), file);
+    }
+
+    /**
+     * Reads back the last checkpoint of the crawl, restoring its frontier and seen-set with the given factories.
+     *
+     * @return the checkpoint, or empty if the crawl has no checkpoint
+     */
+    public Optional<CrawlCheckpoint> read(String crawlId, SeenUrlSetFactory seenUrlSetFactory, FrontierFactory frontierFactory) throws IOException {
+        Path file = checkpointFile(crawlId);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint version %d in %s".formatted(version, file));
+            }
+            URI rootPage = URI.create(readString(in));
+            CrawlBudget budget = new CrawlBudget(in.readInt(), in.readLong(), in.readLong());
+            LinkGraph pages = LinkGraph.readFrom(in);
+
+            Frontier frontier = frontierFactory.create();
+            try {
+                while (in.readBoolean()) {
+                    String url = readString(in);
+                    int depth = in.readInt();
+                    float priority = in.readFloat();
+                    // a crawler may have finished its page while the checkpoint of a cancelled crawl was written
+                    if (!pages.isPage(url)) {
+                        frontier.add(new QueuedUrl(URI.create(url), depth, priority));
+                    }
+                }
+                SeenUrlSetType seenUrlsType = SeenUrlSetType.valueOf(in.readUTF());
+                SeenUrlSet seenUrls = seenUrlSetFactory.restore(seenUrlsType, in);
+                return Optional.of(new CrawlCheckpoint(rootPage, budget, pages, seenUrls, frontier));
+            } catch (IOException | RuntimeException e) {
+                frontier.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Deletes the checkpoint of a crawl which has completed.
+     */
+    public void delete(String crawlId) {
+        try {
+            Files.deleteIfExists(checkpointFile(crawlId));
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint of crawl {}", crawlId, e);
+        }
+    }
+
+    private Path checkpointFile(String crawlId) {
+        if (!isValidCrawlId(crawlId)) {
+            throw new IllegalArgumentException("Invalid crawl ID " + crawlId);
+        }
+        return directory.resolve(crawlId + ".checkpoint");
+    }
+
+    private static void writeQueuedUrl(DataOutputStream out, QueuedUrl url) {
+        try {
+            out.writeBoolean(true);
+            writeString(out, url.url().toString());
+            out.writeInt(url.depth());
+            out.writeFloat(url.priority());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,25 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Determines how the {@link CrawlerManager} runs its page crawlers.
+ */
+public enum CrawlExecutionMode {
+
+    /**
+     * Crawlers run on a fixed pool of {@code crawler.thread-pool-size} platform threads.
+     */
+    PLATFORM,
+
+    /**
+     * Every crawler runs on its own virtual thread. In-flight fetches are bounded by
+     * {@code crawler.max-concurrency} permits rather than by a thread count.
+     */
+    VIRTUAL,
+
+    /**
+     * Crawls are driven as a chain of futures on top of {@link WebService#fetchDocumentAsync},
+     * so no thread is parked per request when a non-blocking {@link PageFetcher} is configured.
+     * In-flight fetches are bounded by {@code crawler.max-concurrency} permits.
+     */
+    ASYNC
+}
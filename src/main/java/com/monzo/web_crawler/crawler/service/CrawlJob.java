@@ -0,0 +1,102 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.model.Page;
+import lombok.Getter;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A crawl running in the background, see {@link CrawlJobService}. Pages are added by the crawler threads as
+ * soon as they are processed and can be read while the crawl is still running with {@link #awaitPages(int)}.
+ * <p>
+ * Pages are added to the lock-free {@link LinkGraph.Builder}; the lock is only held to wait for pages and to wake
+ * the readers waiting, never while pages are read, so a reader catching up on a large crawl holds up no crawler.
+ * It is a {@link ReentrantLock} rather than a monitor so that the virtual threads of the crawlers do not pin their
+ * carriers on it.
+ */
+public class CrawlJob {
+
+    @Getter
+    private final String id;
+    @Getter
+    private final URI rootPage;
+    @Getter
+    private final Instant startedAt = Instant.now();
+
+    private final LinkGraph.Builder pages = new LinkGraph.Builder();
+    private volatile CrawlJobStatus status = CrawlJobStatus.RUNNING;
+    private volatile Instant finishedAt;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pagesAdded = lock.newCondition();
+
+    public CrawlJob(String id, URI rootPage) {
+        this.id = id;
+        this.rootPage = rootPage;
+    }
+
+    public CrawlJobStatus getStatus() {
+        return status;
+    }
+
+    public int getPageCount() {
+        return pages.getPageCount();
+    }
+
+    /**
+     * @return when the crawl finished, or null while it is running
+     */
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status != CrawlJobStatus.RUNNING;
+    }
+
+    /**
+     * Waits until pages beyond the first {@code fromIndex} have been processed, or the crawl has finished.
+     *
+     * @return the pages processed after the first {@code fromIndex}, empty only once the crawl has finished
+     */
+    public List<Page> awaitPages(int fromIndex) throws InterruptedException {
+        int pageCount;
+        lock.lockInterruptibly();
+        try {
+            while ((pageCount = pages.getPageCount()) <= fromIndex && status == CrawlJobStatus.RUNNING) {
+                pagesAdded.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        // the builder is thread safe, the pages are only read once the lock is released
+        return fromIndex < pageCount ? pages.getPages(fromIndex, pageCount) : List.of();
+    }
+
+    void addPage(Page page) {
+        pages.addPage(page);
+        // the page is added before the lock is taken, so a reader either counts it or is waiting to be woken
+        lock.lock();
+        try {
+            pagesAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finish(CrawlJobStatus finalStatus) {
+        lock.lock();
+        try {
+            finishedAt = Instant.now();
+            status = finalStatus;
+            pagesAdded.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.monzo.web_crawler.crawler.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs crawls in the background so that the request starting a crawl returns straight away. Each crawl is
+ * tracked as a {@link CrawlJob} which reports its progress and hands out its pages as they are processed.
+ * <p>
+ * Finished jobs, and the pages they hold, are kept for {@code crawler.jobs.retention-minutes} and then
+ * dropped the next time a crawl is started.
+ */
+@Service
+public class CrawlJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlJobService.class);
+
+    private final CrawlerService crawlerService;
+    private final Duration retention;
+
+    private final Map<String, CrawlJob> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService jobExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public CrawlJobService(CrawlerService crawlerService,
+                           @Value("${crawler.jobs.retention-minutes:60}") int retentionMinutes) {
+        this.crawlerService = crawlerService;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    /**
+     * Starts crawling the site of the root page in the background, within the budget. The crawl may wait to be
+     * admitted by the {@link FetchScheduler} first, and its job is rejected if it is not.
+     *
+     * @param weight the share of the fetch capacity the crawl gets relative to other running crawls
+     * @return the job of the crawl, which has only just started
+     */
+    public CrawlJob submit(URI rootPage, CrawlBudget budget, int weight) {
+        evictFinishedJobs();
+        CrawlJob job = new CrawlJob(CrawlCheckpointStore.newCrawlId(), rootPage);
+        jobs.put(job.getId(), job);
+        jobExecutor.submit(() -> run(job, budget, weight));
+        return job;
+    }
+
+    public Optional<CrawlJob> find(String crawlId) {
+        return Optional.ofNullable(jobs.get(crawlId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // interrupting the jobs cancels their crawls, which checkpoint so they can be resumed after a restart
+        jobExecutor.shutdownNow();
+    }
+
+    private void run(CrawlJob job, CrawlBudget budget, int weight) {
+        try {
+            boolean completed = crawlerService.crawl(job.getId(), job.getRootPage(), budget, weight, job::addPage).isPresent();
+            job.finish(completed ? CrawlJobStatus.COMPLETED : CrawlJobStatus.INCOMPLETE);
+        } catch (CrawlRejectedException e) {
+            logger.warn("Crawl {} of {} rejected: {}", job.getId(), job.getRootPage(), e.getMessage());
+            job.finish(CrawlJobStatus.REJECTED);
+        } catch (RuntimeException e) {
+            logger.error("Crawl {} of {} failed", job.getId(), job.getRootPage(), e);
+            job.finish(CrawlJobStatus.FAILED);
+        }
+    }
+
+    private void evictFinishedJobs() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(expiry));
+    }
+}
@@ -0,0 +1,11 @@
+package com.monzo.web_crawler.crawler.service;
+
+public enum CrawlJobStatus {
+    RUNNING,
+    COMPLETED,
+    // the crawl timed out or was interrupted, it can be resumed from its last checkpoint
+    INCOMPLETE,
+    // too many crawls were running or waiting to start, see FetchScheduler
+    REJECTED,
+    FAILED
+}
@@ -0,0 +1,149 @@
+package com.monzo.web_crawler.crawler.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Micrometer meters of the crawl pipeline, exported with the other application metrics, e.g. on
+ * {@code /actuator/prometheus}.
+ * <p>
+ * The time spent in each phase of a page fetch is recorded as a timer with a percentile histogram:
+ * <ul>
+ *     <li>{@code crawler.fetch.time-to-first-byte}: from sending the request until its response headers arrive. Neither
+ *     http client exposes DNS resolution and connecting on their own, they are included whenever no pooled connection
+ *     to the host was available.</li>
+ *     <li>{@code crawler.fetch.download}: reading the response body.</li>
+ *     <li>{@code crawler.page.parse}: extracting the links from the body.</li>
+ *     <li>{@code crawler.links.canonicalization}: resolving and canonicalising the links of a page.</li>
+ *     <li>{@code crawler.host.wait}: from a url being taken from the frontier until its host accepts another request.
+ *     The time urls spend in the frontier itself is not measured, it is not kept when urls spill to disk.</li>
+ * </ul>
+ * The {@code crawler.frontier.size}, {@code crawler.seen-urls.size} and {@code crawler.requests.in-flight} gauges add up
+ * the running crawls, and {@code crawler.fetch.failures} counts failed and skipped fetches by {@link FailureCause}.
+ */
+@Component
+public class CrawlMetrics {
+
+    public enum FailureCause {
+        TIMEOUT("timeout"),
+        NON_HTML("non-html"),
+        CLIENT_ERROR("4xx"),
+        SERVER_ERROR("5xx"),
+        PARSE_ERROR("parse-error"),
+        OTHER("other");
+
+        private final String tag;
+
+        FailureCause(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return the cause of the failure, found along the chain of causes of the error
+         */
+        public static FailureCause of(Throwable error) {
+            for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                if (cause instanceof HttpErrorStatusException httpError) {
+                    return httpError.getStatusCode() < 500 ? CLIENT_ERROR : SERVER_ERROR;
+                } else if (cause instanceof PageParseException) {
+                    return PARSE_ERROR;
+                } else if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException
+                        || cause instanceof InterruptedIOException || cause instanceof InterruptedException) {
+                    // socket timeouts, and crawlers interrupted by the worker timeout
+                    return TIMEOUT;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private final Timer timeToFirstByte;
+    private final Timer download;
+    private final Timer parse;
+    private final Timer linkCanonicalization;
+    private final Timer hostWait;
+    private final Map<FailureCause, Counter> failures = new EnumMap<>(FailureCause.class);
+
+    private final Set<CrawlerManager> runningCrawls = ConcurrentHashMap.newKeySet();
+
+    public CrawlMetrics(MeterRegistry meterRegistry) {
+        this.timeToFirstByte = timer(meterRegistry, "crawler.fetch.time-to-first-byte", "Time from sending a page request until its response headers arrive");
+        this.download = timer(meterRegistry, "crawler.fetch.download", "Time spent reading the body of a page");
+        this.parse = timer(meterRegistry, "crawler.page.parse", "Time spent extracting the links of a page");
+        this.linkCanonicalization = timer(meterRegistry, "crawler.links.canonicalization", "Time spent resolving and canonicalising the links of a page");
+        this.hostWait = timer(meterRegistry, "crawler.host.wait", "Time from a url being taken from the frontier until its host accepts another request");
+        for (FailureCause cause : FailureCause.values()) {
+            failures.put(cause, Counter.builder("crawler.fetch.failures")
+                    .description("Page fetches which failed or were skipped")
+                    .tag("cause", cause.tag)
+                    .register(meterRegistry));
+        }
+
+        Gauge.builder("crawler.frontier.size", runningCrawls, total(CrawlerManager::getQueuedUrlCount))
+                .description("Urls waiting to be crawled by running crawls")
+                .register(meterRegistry);
+        Gauge.builder("crawler.seen-urls.size", runningCrawls, total(CrawlerManager::getSeenUrlCount))
+                .description("Urls seen by running crawls")
+                .register(meterRegistry);
+        Gauge.builder("crawler.requests.in-flight", runningCrawls, total(CrawlerManager::getInFlightCount))
+                .description("Pages being crawled by running crawls")
+                .register(meterRegistry);
+    }
+
+    public void recordTimeToFirstByte(long nanos) {
+        timeToFirstByte.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDownload(long nanos) {
+        download.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordParse(long nanos) {
+        parse.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLinkCanonicalization(long nanos) {
+        linkCanonicalization.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHostWait(long nanos) {
+        hostWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFailure(FailureCause cause) {
+        failures.get(cause).increment();
+    }
+
+    void crawlStarted(CrawlerManager crawlerManager) {
+        runningCrawls.add(crawlerManager);
+    }
+
+    void crawlFinished(CrawlerManager crawlerManager) {
+        runningCrawls.remove(crawlerManager);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static <T> ToDoubleFunction<Set<T>> total(ToLongFunction<T> value) {
+        return crawls -> crawls.stream().mapToLong(value).sum();
+    }
+}
@@ -0,0 +1,12 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Thrown when a crawl is not started because the {@link FetchScheduler} is running and queueing as many crawls as
+ * it allows. The crawl can be requested again once others have finished.
+ */
+public class CrawlRejectedException extends RuntimeException {
+
+    public CrawlRejectedException(String message) {
+        super(message);
+    }
+}
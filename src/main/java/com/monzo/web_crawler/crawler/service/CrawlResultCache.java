@@ -0,0 +1,298 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves repeated crawls of a site from the result of a recent crawl, kept on disk in
+ * {@code crawler.result-cache.directory}.
+ * <p>
+ * Results are keyed by the canonical url of the root page and the budget of the crawl, and expire
+ * {@code crawler.result-cache.ttl-minutes} after the crawl finished. The files of all results together are kept
+ * under {@code crawler.result-cache.max-size-bytes}, the least recently served results being evicted first. Only the
+ * index of the results is held in memory, a result is read back from its file each time it is served.
+ * <p>
+ * Requests for a result which is being crawled already wait for that crawl and share its result, rather than
+ * crawling the site again. Crawls which did not complete, and crawls which found no pages, are not cached.
+ */
+@Component
+public class CrawlResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlResultCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_SUFFIX = ".graph";
+
+    private final CrawlerService crawlerService;
+    private final boolean enabled;
+    private final Path directory;
+    private final Duration ttl;
+    private final long maxSizeBytes;
+
+    // least recently served first
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    private final Map<Key, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter joined;
+
+    public CrawlResultCache(CrawlerService crawlerService,
+                            @Value("${crawler.result-cache.enabled:true}") boolean enabled,
+                            @Value("${crawler.result-cache.directory:${java.io.tmpdir}/web-crawler-result-cache}") String directory,
+                            @Value("${crawler.result-cache.ttl-minutes:10}") int ttlMinutes,
+                            @Value("${crawler.result-cache.max-size-bytes:1073741824}") long maxSizeBytes,
+                            MeterRegistry meterRegistry) {
+        this.crawlerService = crawlerService;
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.maxSizeBytes = maxSizeBytes;
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.joined = counter(meterRegistry, "joined");
+        if (enabled) {
+            deleteResultFiles();
+        }
+    }
+
+    /**
+     * Crawls the site of the root page within the budget, or serves the result of a recent or running crawl of it.
+     *
+     * @param weight the share of the fetch capacity the crawl gets if one is started, see {@link FetchScheduler}
+     * @return the pages of the crawl, along with the ID of the crawl which found them
+     * @throws CrawlRejectedException if the crawl was not admitted, see {@link FetchScheduler}
+     */
+    public Result crawl(URI rootPage, CrawlBudget budget, int weight) {
+        if (!enabled) {
+            String crawlId = CrawlCheckpointStore.newCrawlId();
+            return new Result(crawlId, crawlerService.crawl(crawlId, rootPage, budget, weight));
+        }
+        Key key = Key.of(rootPage, budget);
+        Result cached = read(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        CompletableFuture<Result> flight = new CompletableFuture<>();
+        CompletableFuture<Result> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            joined.increment();
+            return join(running);
+        }
+        try {
+            // the crawl which was running when the cache was read may have stored its result since
+            Result result = read(key);
+            if (result == null) {
+                misses.increment();
+                String crawlId = CrawlCheckpointStore.newCrawlId();
+                result = new Result(crawlId, crawlerService.crawl(crawlId, rootPage, budget, weight));
+                if (result.graph().getPageCount() > 0) {
+                    write(key, result);
+                }
+            }
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Result join(CompletableFuture<Result> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the cached result, or null if the key has no result which has not expired
+     */
+    private Result read(Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (isExpired(entry)) {
+                remove(key);
+                return null;
+            }
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.file())))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown result cache format");
+            }
+            return new Result(entry.crawlId(), LinkGraph.readFrom(in));
+        } catch (NoSuchFileException e) {
+            // evicted since the index was read
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read cached result of crawl {} from {}", entry.crawlId(), entry.file(), e);
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    remove(key);
+                }
+            }
+            return null;
+        }
+    }
+
+    private void write(Key key, Result result) {
+        Path file = directory.resolve(result.crawlId() + FILE_SUFFIX);
+        Path temporary = directory.resolve(result.crawlId() + ".tmp");
+        long size;
+        try {
+            Files.createDirectories(directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                result.graph().writeTo(out);
+            }
+            size = Files.size(temporary);
+            if (size > maxSizeBytes) {
+                logger.info("Not caching result of crawl {}, {} bytes is more than the cache holds", result.crawlId(), size);
+                Files.delete(temporary);
+                return;
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to cache result of crawl {} in {}", result.crawlId(), file, e);
+            deleteQuietly(temporary);
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(result.crawlId(), file, size, Instant.now()));
+            sizeBytes += size;
+            evict();
+        }
+    }
+
+    /**
+     * Removes expired results, then the least recently served ones until the results fit in the cache.
+     */
+    private synchronized void evict() {
+        entries.values().removeIf(entry -> {
+            if (!isExpired(entry)) {
+                return false;
+            }
+            discard(entry);
+            return true;
+        });
+        Iterator<Entry> leastRecentlyServed = entries.values().iterator();
+        while (sizeBytes > maxSizeBytes && leastRecentlyServed.hasNext()) {
+            Entry entry = leastRecentlyServed.next();
+            leastRecentlyServed.remove();
+            discard(entry);
+        }
+    }
+
+    private synchronized void remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    private void discard(Entry entry) {
+        sizeBytes -= entry.sizeBytes();
+        // a request still reading the file keeps its content, the file is only unlinked
+        deleteQuietly(entry.file());
+    }
+
+    private boolean isExpired(Entry entry) {
+        return !Instant.now().isBefore(entry.createdAt().plus(ttl));
+    }
+
+    synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * The index of the cache is only held in memory, so results left behind by a previous run can never be served.
+     */
+    private void deleteResultFiles() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + ",.tmp}")) {
+            files.forEach(CrawlResultCache::deleteQuietly);
+        } catch (IOException e) {
+            logger.warn("Failed to clear result cache {}", directory, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete {}", file, e);
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("crawler.result-cache.requests")
+                .description("Crawl requests by whether they were served from the result cache, joined a running crawl or crawled")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The pages of a crawl along with the ID of the crawl which found them.
+     */
+    public record Result(String crawlId, LinkGraph graph) {
+    }
+
+    /**
+     * @param rootPage the canonical url of the root page, so that urls differing only in case, default ports or a
+     *                 trailing slash share their results
+     */
+    record Key(String rootPage, CrawlBudget budget) {
+
+        static Key of(URI rootPage, CrawlBudget budget) {
+            URI canonical = URIUtils.createUri(rootPage, rootPage.toString());
+            return new Key(canonical == null ? rootPage.toString() : canonical.toString(), budget);
+        }
+    }
+
+    private record Entry(String crawlId, Path file, long sizeBytes, Instant createdAt) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per crawl counters of the load put on the target site. A single instance is shared
+ * by every worker of a crawl so the totals reflect the whole crawl.
+ */
+public class CrawlStatistics {
+
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong bytesDownloaded = new AtomicLong(0);
+    // pages answered 304 Not Modified and served from the page cache, and pages downloaded in full
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+
+    public void recordRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    public void recordBytes(long bytes) {
+        bytesDownloaded.addAndGet(bytes);
+    }
+
+    public void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    public void recordCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the share of the pages fetched which were not modified since they were cached, 0 if none were fetched
+     */
+    public double getCacheHitRatio() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
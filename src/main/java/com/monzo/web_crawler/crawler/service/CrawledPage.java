@@ -0,0 +1,17 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.Page;
+
+import java.net.URI;
+
+/**
+ * A page as a {@link Crawler} found it, along with the other urls it is known by.
+ *
+ * @param page         the page, under the url it was requested with
+ * @param finalUrl     the canonical form of the url the page was served from once redirects were followed, or null
+ *                     if it was served from the url requested
+ * @param canonicalUrl the canonical form of the url the page declares as canonical with
+ *                     {@code <link rel="canonical">}, or null if it declares none or the url it was served from
+ */
+public record CrawledPage(Page page, URI finalUrl, URI canonicalUrl) {
+}
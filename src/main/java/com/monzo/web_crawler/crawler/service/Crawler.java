@@ -5,9 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
-import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -17,34 +17,77 @@ import java.util.stream.Collectors;
  * <p>
  * This class fetches a web page from a given URI and processes the document
  * to extract valid URLs, resolving relative paths and ensuring proper formatting.
+ * The url the page was redirected to and the url it declares as canonical are
+ * canonicalised the same way, see {@link CrawledPage}.
  */
 public class Crawler {
 
     private static final Logger logger = LoggerFactory.getLogger(Crawler.class);
 
     private final WebService webService;
+    private final CrawlStatistics statistics;
+    private final CrawlMetrics metrics;
 
 
-    public Crawler(WebService webService) {
+    public Crawler(WebService webService, CrawlStatistics statistics, CrawlMetrics metrics) {
         this.webService = webService;
+        this.statistics = statistics;
+        this.metrics = metrics;
     }
 
-    public Page crawl(URI currentPageUri) {
+    public CrawledPage crawl(URI currentPageUri) {
         logger.debug("Processing url {}", currentPageUri);
 
-        List<String> pageUrlStrings;
+        FetchedDocument document;
         try {
-            pageUrlStrings = webService.getDocumentLinks(currentPageUri.toString());
+            document = webService.fetchDocument(currentPageUri.toString(), statistics);
         } catch (Exception e) {
             throw new RuntimeException(String.format("Failed to get URIs from url %s", currentPageUri.toString()), e);
         }
 
-        Set<URI> pageLinks = pageUrlStrings.stream()
+        return toPage(currentPageUri, document);
+    }
+
+    /**
+     * Crawls the given page without blocking the calling thread.
+     *
+     * @return a future completed with the crawled page; cancelling it, or completing it exceptionally, such as
+     * with a timeout, cancels the fetch of the page
+     */
+    public CompletableFuture<CrawledPage> crawlAsync(URI currentPageUri) {
+        logger.debug("Processing url {} asynchronously", currentPageUri);
+        CompletableFuture<FetchedDocument> fetch = webService.fetchDocumentAsync(currentPageUri.toString(), statistics);
+        CompletableFuture<CrawledPage> crawl = fetch.thenApply(document -> toPage(currentPageUri, document));
+        crawl.whenComplete((page, error) -> {
+            if (error != null) {
+                fetch.cancel(true);
+            }
+        });
+        return crawl;
+    }
+
+    private CrawledPage toPage(URI currentPageUri, FetchedDocument document) {
+        long startTime = System.nanoTime();
+        Set<URI> pageLinks = document.links().stream()
                 .map(url -> URIUtils.createUri(currentPageUri, url))
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
+        URI finalUrl = alias(currentPageUri, document.url());
+        URI canonicalUrl = alias(finalUrl != null ? finalUrl : currentPageUri, document.canonicalUrl());
+        metrics.recordLinkCanonicalization(System.nanoTime() - startTime);
 
-        return new Page(currentPageUri, pageLinks);
+        return new CrawledPage(new Page(currentPageUri, pageLinks), finalUrl, canonicalUrl);
+    }
+
+    /**
+     * @return the canonical form of the other url of the page, or null if there is none or it is the same url
+     */
+    private static URI alias(URI pageUri, String url) {
+        if (url == null) {
+            return null;
+        }
+        URI alias = URIUtils.createUri(pageUri, url);
+        return pageUri.equals(alias) ? null : alias;
     }
 
 
@@ -1,16 +1,24 @@
 package com.monzo.web_crawler.crawler.service;
 
+import com.monzo.web_crawler.crawler.model.LinkGraph;
 import com.monzo.web_crawler.crawler.model.Page;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * The CrawlerManager class is responsible for managing the web crawling process.
@@ -19,80 +27,258 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Crawling is restricted to pages within the same host domain as the root page.
  * <p>
  * It maintains a thread-safe work queue for URLs to be processed, a list of processed pages,
- * and a set of seen URLs for tracking already-queued or processed URLs.
- * The class utilizes a thread pool for concurrent processing of pages.
+ * and a set of seen URLs for tracking already-queued or processed URLs. Links are checked against the
+ * seen set as they are discovered, so every URL is queued at most once.
+ * <p>
+ * A page is also known by the url it was redirected to and the url it declares as canonical. Both are marked as
+ * seen once the page is fetched, so links to them are never queued, and the page is recorded under the url it was
+ * served from. A page redirected to a url which was seen before is dropped, as that url is or was crawled itself.
+ * Aliases outside the main host domain, or owned by another node of a cluster, are left alone.
+ * <p>
+ * Crawlers either run on a fixed pool of platform threads, on one virtual thread each, or as a chain of futures,
+ * see {@link CrawlExecutionMode}. In all cases the number of in-flight crawlers is bounded by a semaphore, and each
+ * crawler also holds one of the fetch slots the {@link FetchScheduler} shares between all crawls of the process from
+ * the moment the host of its url accepts its request. Interrupting the thread running {@link #crawl(URI)} cancels
+ * all running crawlers.
+ * <p>
+ * There is no dispatcher thread. Crawlers filter the links they find and queue them themselves, and a queued url is
+ * started by whichever thread frees a crawler permit or queues it while one is free, see {@link #dispatchQueued()}.
+ * The urls queued or being crawled are counted, and the crawl is finished the moment the count drops to zero, so
+ * neither dispatching nor noticing the end of the crawl waits on a poll of the work queue.
+ * <p>
+ * Before a url is dispatched its host must accept another request, see {@link PolitenessScheduler}. Pages refused
+ * with 429 or 503 are queued again rather than failed, up to {@code crawler.politeness.max-retries} times.
+ * <p>
+ * Urls disallowed by the robots.txt of their host are never queued, see {@link RobotsTxtCache}. While the root page
+ * is crawled, the sitemaps listed in the robots.txt of the root host, or its /sitemap.xml, are streamed into
+ * the work queue by a separate thread, so the pages they list are crawled in parallel from the start.
+ * <p>
+ * The order in which queued urls are crawled is up to the {@link Frontier}, which can put the most valuable urls first,
+ * see {@link PriorityFrontier}. A crawl with a {@link CrawlBudget} does not queue urls further from the root page than
+ * its depth limit, and once it has processed its pages or downloaded its bytes it drops the urls still queued and
+ * finishes. Every dispatched page holds a place in the page budget until it fails, so no more pages are fetched at
+ * once than the budget has room for.
+ * <p>
+ * Every {@code crawler.checkpoint.interval-seconds}, and when the crawl is interrupted, the processed pages, queued
+ * urls and seen-set are written to a checkpoint from which the crawl can be resumed, see {@link CrawlCheckpointStore}.
+ * <p>
+ * In a cluster the manager of each node only crawls the urls its {@link ClusterPartition} owns, the links it finds
+ * owned by other nodes are forwarded to them, and it keeps waiting for urls from other nodes until the partition is
+ * finished. Such crawls are not checkpointed.
+ * <p>
+ * The time urls wait to be dispatched, failed fetches and the size of the crawl are published through
+ * {@link CrawlMetrics}. Progress is logged every {@value #PROGRESS_LOG_INTERVAL_SECONDS} seconds by a scheduled task
+ * rather than by the crawlers, so nothing is logged per page unless debug logging is on.
  */
 public class CrawlerManager {
 
     private static final Logger logger = LoggerFactory.getLogger(CrawlerManager.class);
 
+    private static final int PROGRESS_LOG_INTERVAL_SECONDS = 10;
+
+    // how often a node of a cluster checks whether it is idle and flushes the urls it forwards
+    private static final int CLUSTER_IDLE_CHECK_MILLIS = 100;
+
     private final WebService webService;
     private final int threadPoolSize;
+    private final CrawlExecutionMode executionMode;
+
+    // bounds the number of crawlers in flight at any time
+    private final Semaphore crawlerPermits;
+
+    // crawls started in ASYNC mode which have not completed yet, cancelled when the crawl is interrupted
+    private final Set<CompletableFuture<CrawledPage>> inFlightCrawls = ConcurrentHashMap.newKeySet();
+
+    // urls being crawled, written to the checkpoint of an interrupted crawl so they are crawled again on resume
+    private final Set<QueuedUrl> inFlightUrls = ConcurrentHashMap.newKeySet();
+
+    // urls whose host accepted another request, waiting for a fetch slot in the order their host accepted them
+    private final Queue<ReadyCrawler> readyCrawlers = new ConcurrentLinkedQueue<>();
+
+
+    // pages processed so far and the links between them, as a graph of url IDs
+    private final LinkGraph.Builder processedPages = new LinkGraph.Builder();
 
+    // thread safe work queue of urls waiting to be crawled, to allow for parallel crawling
+    private final Frontier workQueue;
 
-    private final List<Page> processedPages = new CopyOnWriteArrayList<>();
+    // to keep track of urls that have been seen. Urls are added when they are queued, so a url already in the
+    // work queue, being crawled or crawled is never queued again
+    private final SeenUrlSet seenUrls;
 
-    // setup thread safe work queue to allow for parallel crawling
-    private final LinkedBlockingQueue<URI> workQueue = new LinkedBlockingQueue<>();
+    // domain of the root page, only urls within it are crawled
+    private String mainHost;
 
-    // to keep track of urls that have been seen. Due to multithreaded nature url could have been queued for work and no longer in work queue
-    // this keeps track of urls that have been seen in general
-    private final Map<URI, URI> seenUrls = new ConcurrentHashMap<>();
+    // urls queued or being crawled, plus one for the sitemap seeder while it runs and one for the crawl while it is
+    // set up. A url is counted before it is queued and until its crawler completes, by which time the links it found
+    // are counted, so the count only drops to zero once there is nothing left to crawl
+    private final AtomicLong pendingWork = new AtomicLong(0);
+    private final ReentrantLock quiescenceLock = new ReentrantLock();
+    private final Condition quiescent = quiescenceLock.newCondition();
 
-    // to keep track of amount of jobs remaining / total / failed / etc for statistics
-    private final AtomicInteger remainingJobCount = new AtomicInteger(0);
+    // runs the crawlers, and the worker timeouts, checkpoints and progress logs of the crawl, set once it is started
+    private volatile ExecutorService pool;
+    private volatile ScheduledExecutorService watchdog;
+    // no crawler is started while a checkpoint is written, nor once the crawl is cancelled
+    private volatile boolean paused;
+    private volatile boolean cancelled;
+
+    // to keep track of amount of jobs total / failed / etc for statistics
     private final AtomicInteger totalJobCount = new AtomicInteger(0);
     private final AtomicInteger jobCompletions = new AtomicInteger(0);
     private final AtomicInteger failedJobCount = new AtomicInteger(0);
 
+    // to keep track of the requests made and bytes downloaded from the target site during this crawl
+    private final CrawlStatistics statistics = new CrawlStatistics();
+
     private final int crawlerWorkerTimeout;
 
-    public CrawlerManager(WebService webService, int threadPoolSize, int crawlerWorkerTimeout) {
+    private final String crawlId;
+    private final CrawlCheckpointStore checkpointStore;
+    private final int permitCount;
+
+    // called by the crawler threads with each page as soon as it has been processed
+    private final Consumer<Page> pageListener;
+
+    // paces the requests sent to each host, every crawler holds a permit of the host of its url
+    private final PolitenessScheduler politeness;
+    // number of times each url was refused by a throttling host, such urls are queued again up to the retry limit
+    private final Map<URI, Integer> throttledAttempts = new ConcurrentHashMap<>();
+    private final AtomicInteger throttledCount = new AtomicInteger(0);
+
+    private final RobotsTxtCache robots;
+    private final AtomicInteger disallowedCount = new AtomicInteger(0);
+
+    // streams the urls of the sitemaps of the root host into the work queue, counted as pending work while it runs
+    private final SitemapReader sitemapReader;
+    private volatile Thread sitemapSeeder;
+
+    // the urls owned by this node when crawling in a cluster, null otherwise
+    private final ClusterPartition partition;
+
+    private final CrawlBudget budget;
+    // pages processed or being crawled, a page which fails gives its place in the page budget back
+    private final AtomicLong budgetedPages = new AtomicLong(0);
+    private volatile boolean budgetSpent;
+    private final AtomicInteger droppedCount = new AtomicInteger(0);
+
+    // pages dropped as they were redirected to a url which was seen already
+    private final AtomicInteger aliasedCount = new AtomicInteger(0);
+
+    // the share of the fetch capacity of the process this crawl was admitted with
+    private final FetchScheduler.Tenant fetchSlots;
+
+    private final CrawlMetrics metrics;
+
+    public CrawlerManager(WebService webService, String crawlId, SeenUrlSet seenUrls, Frontier workQueue, CrawlCheckpointStore checkpointStore,
+                          Consumer<Page> pageListener, PolitenessScheduler politeness, RobotsTxtCache robots, SitemapReader sitemapReader,
+                          ClusterPartition partition, CrawlBudget budget, FetchScheduler.Tenant fetchSlots, CrawlMetrics metrics, int threadPoolSize, int crawlerWorkerTimeout, CrawlExecutionMode executionMode,
+                          int maxConcurrency) {
         this.webService = webService;
+        this.crawlId = crawlId;
+        this.seenUrls = seenUrls;
+        this.workQueue = workQueue;
+        this.checkpointStore = checkpointStore;
+        this.pageListener = pageListener;
+        this.politeness = politeness;
+        this.robots = robots;
+        this.sitemapReader = sitemapReader;
+        this.partition = partition;
+        this.budget = budget;
+        this.fetchSlots = fetchSlots;
+        this.metrics = metrics;
         this.threadPoolSize = threadPoolSize;
         this.crawlerWorkerTimeout = crawlerWorkerTimeout;
+        this.executionMode = executionMode;
+        this.permitCount = executionMode == CrawlExecutionMode.PLATFORM ? threadPoolSize : maxConcurrency;
+        this.crawlerPermits = new Semaphore(permitCount);
+        fetchSlots.onSlotFreed(this::startReadyCrawlers);
     }
 
     /**
      * Crawls the given root page and returns a list of all discovered pages
      * belonging to the same host domain as the root page. The method processes
-     * the URLs iteratively using a thread pool and ensures only pages within
+     * the URLs iteratively using the configured executor and ensures only pages within
      * the main host domain are processed.
      *
      * @param rootPage the URI of the root page to start the crawling process from
-     * @return a list of pages discovered during the crawling process, each containing its URL and child links
+     * @return the graph of the pages discovered during the crawling process and their child links
      */
-    public List<Page> crawl(URI rootPage) {
-        long startTime = System.currentTimeMillis();
-        String mainHost = getUrlDomain(rootPage.getHost());
-        workQueue.add(rootPage);
+    public LinkGraph crawl(URI rootPage) {
+        mainHost = getUrlDomain(rootPage.getHost());
+        if (partition != null) {
+            partition.start(this::enqueueAll);
+        }
+        if (ownsRootPage(rootPage) && !enqueue(rootPage, 0, QueuedUrl.DEFAULT_PRIORITY)) {
+            logger.warn("Root page {} is disallowed by its robots.txt", rootPage);
+        }
+        return run(rootPage);
+    }
 
-        try (ExecutorService pool = Executors.newFixedThreadPool(threadPoolSize)) {
+    private void enqueueAll(List<URI> urls) {
+        // the depth of a forwarded url is not known, cluster crawls have no depth limit
+        for (URI url : urls) {
+            enqueue(url, 1, QueuedUrl.DEFAULT_PRIORITY);
+        }
+        dispatchQueued();
+    }
 
-            while (!workQueue.isEmpty() || remainingJobCount.get() > 0) {
-                URI urlToCrawl;
-                try {
-                    urlToCrawl = workQueue.poll(1, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    logger.warn("Thread interrupted while waiting for work queue to poll");
-                    continue;
-                }
-                if (Objects.isNull(urlToCrawl)) {
-                    logger.debug("Thread received null url to crawl");
-                    continue;
-                }
+    /**
+     * Continues a crawl from its checkpoint. The seen-set and work queue the manager was created with
+     * must have been restored from the same checkpoint.
+     *
+     * @param rootPage       the URI of the root page the crawl started from
+     * @param processedPages the pages processed before the checkpoint, included in the result
+     * @return the graph of all pages discovered by the crawl, before and after the checkpoint
+     */
+    public LinkGraph resume(URI rootPage, LinkGraph processedPages) {
+        this.processedPages.addAll(processedPages);
+        budgetedPages.set(processedPages.getPageCount());
+        mainHost = getUrlDomain(rootPage.getHost());
+        pendingWork.addAndGet(workQueue.size());
+        return run(rootPage);
+    }
+
+    private LinkGraph run(URI rootPage) {
+        metrics.crawlStarted(this);
+        try {
+            return dispatch(rootPage);
+        } finally {
+            metrics.crawlFinished(this);
+        }
+    }
+
+    private LinkGraph dispatch(URI rootPage) {
+        long startTime = System.currentTimeMillis();
+        // keeps the crawl from finishing before it is set up
+        pendingWork.incrementAndGet();
 
-                if (seenUrls.containsKey(urlToCrawl)) {
-                    logger.trace("Skipping already seen url {}", urlToCrawl);
-                } else if (!StringUtils.equals(getUrlDomain(urlToCrawl.getHost()), mainHost)) {
-                    logger.trace("Skipping url {} as it is not within the main host domain {}", urlToCrawl, mainHost);
+        // two threads, as a checkpoint waits for the running crawlers while crawlers past their timeout are interrupted
+        try (ExecutorService pool = createExecutor();
+             ScheduledExecutorService watchdog = Executors.newScheduledThreadPool(2)) {
+            this.pool = pool;
+            this.watchdog = watchdog;
+            if (ownsRootPage(rootPage)) {
+                startSitemapSeeding(rootPage);
+            }
+            watchdog.scheduleWithFixedDelay(this::logProgress, PROGRESS_LOG_INTERVAL_SECONDS, PROGRESS_LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            if (isCheckpointing()) {
+                watchdog.scheduleWithFixedDelay(() -> checkpoint(rootPage), checkpointStore.getIntervalSeconds(),
+                        checkpointStore.getIntervalSeconds(), TimeUnit.SECONDS);
+            }
+            dispatchQueued();
+            // the crawl is set up, from now on it finishes as soon as nothing is left to crawl
+            finishWork();
+
+            try {
+                if (partition == null) {
+                    awaitQuiescence(Long.MAX_VALUE);
                 } else {
-                    int remaining = remainingJobCount.incrementAndGet();
-                    int total = totalJobCount.incrementAndGet();
-                    printStatus(total, jobCompletions.get(), remaining);
-                    seenUrls.put(urlToCrawl, urlToCrawl);
-                    pool.submit(() -> createCrawler(urlToCrawl));
+                    awaitPartitionFinished();
                 }
+            } catch (InterruptedException e) {
+                cancel(pool, rootPage);
+                return processedPages.build();
             }
 
             // Await termination to ensure all crawlers complete before returning root
@@ -108,51 +294,651 @@ public class CrawlerManager {
             }
         }
         long endTime = System.currentTimeMillis();
-        logger.info("Crawling completed in {} ms. Processed {} pages. Failed to process {} pages. Unique urls seen {}", (endTime - startTime), processedPages.size(), failedJobCount, seenUrls.size());
-        return processedPages;
+        logger.info("Crawling completed in {} ms. Processed {} pages. Failed to process {} pages. Throttled {} times. Disallowed {} urls. Dropped {} urls over budget. Skipped {} pages redirected to urls seen already. Unique urls seen {}. Made {} requests, downloaded {} bytes. Page cache hit ratio {}",
+                (endTime - startTime), processedPages.getPageCount(), failedJobCount, throttledCount, disallowedCount, droppedCount, aliasedCount, seenUrls.size(), statistics.getRequestCount(), statistics.getBytesDownloaded(), String.format("%.2f", statistics.getCacheHitRatio()));
+        return processedPages.build();
     }
 
     /**
-     * Creates a crawler task to process the given URL and handle its linked pages.
+     * Waits until no url is queued or being crawled.
      *
-     * @param urlToCrawl the URL to be crawled
+     * @return false if the timeout passed first
+     */
+    private boolean awaitQuiescence(long timeoutNanos) throws InterruptedException {
+        quiescenceLock.lockInterruptibly();
+        try {
+            long remainingNanos = timeoutNanos;
+            while (pendingWork.get() > 0) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = quiescent.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            quiescenceLock.unlock();
+        }
+    }
+
+    /**
+     * Keeps the node of a cluster crawling until the coordinator finishes the partition, as urls from other nodes
+     * can arrive after it has run out of work. Whether the node is idle is reported to the coordinator as soon as it
+     * runs out of work, and at least every {@value #CLUSTER_IDLE_CHECK_MILLIS} ms.
      */
-    private void createCrawler(URI urlToCrawl) {
-        CompletableFuture<Object> future = CompletableFuture.supplyAsync(() -> {
-            Crawler crawler = new Crawler(webService);
+    private void awaitPartitionFinished() throws InterruptedException {
+        while (!partition.isFinished()) {
+            if (workQueue.isEmpty()) {
+                partition.flush();
+            }
+            // crawlers forward the links they find before they complete
+            partition.updateIdle(() -> pendingWork.get() == 0);
+            if (pendingWork.get() > 0) {
+                awaitQuiescence(TimeUnit.MILLISECONDS.toNanos(CLUSTER_IDLE_CHECK_MILLIS));
+            } else {
+                Thread.sleep(CLUSTER_IDLE_CHECK_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Starts a crawler for each queued url while crawler permits, places in the page budget and fetch slots are free.
+     * Called by whichever thread queues urls or frees a permit, so a url is started as soon as there is room for it.
+     * A url queued while every permit was taken is started by the thread freeing the next permit, which releases it
+     * before checking the work queue. Once the budget is spent, the queued urls are dropped instead.
+     */
+    private void dispatchQueued() {
+        ExecutorService executor = pool;
+        while (executor != null && !paused && !cancelled && !budgetSpent && crawlerPermits.tryAcquire()) {
+            if (statistics.getBytesDownloaded() >= budget.maxBytes()) {
+                crawlerPermits.release();
+                spendBudget();
+                break;
+            }
+            if (!reservePage()) {
+                // every remaining place is held by a page in flight, the next one to fail gives its place back
+                crawlerPermits.release();
+                return;
+            }
+            QueuedUrl urlToCrawl;
             try {
-                Page page = crawler.crawl(urlToCrawl);
-                processedPages.add(page);
-                logger.debug("Processed url {}. Adding URls to work queue: {}", urlToCrawl, page.getChildren());
-                workQueue.addAll(page.getChildren());
-            } catch (Exception e) {
-                logger.debug("Failed to crawl url {}", urlToCrawl, e);
-                failedJobCount.incrementAndGet();
-            }
-            return null;
+                urlToCrawl = workQueue.poll(0, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                budgetedPages.decrementAndGet();
+                crawlerPermits.release();
+                if (cancelled) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // the worker timeout of the crawler which ran on this thread fired as it completed, try again
+                continue;
+            }
+            if (urlToCrawl == null) {
+                budgetedPages.decrementAndGet();
+                crawlerPermits.release();
+                if (workQueue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            startCrawler(executor, urlToCrawl);
+        }
+        if (budgetSpent && !cancelled) {
+            dropQueued();
+        }
+    }
+
+    /**
+     * Takes a place in the page budget for a page about to be crawled.
+     *
+     * @return false if every place is taken
+     */
+    private boolean reservePage() {
+        long reserved;
+        do {
+            reserved = budgetedPages.get();
+            if (reserved >= budget.maxPages()) {
+                return false;
+            }
+        } while (!budgetedPages.compareAndSet(reserved, reserved + 1));
+        return true;
+    }
+
+    /**
+     * Stops the crawl from fetching any more pages. Queued urls are dropped by the next call to
+     * {@link #dispatchQueued()}, which follows every completed page and every url queued.
+     */
+    private void spendBudget() {
+        if (budgetSpent) {
+            return;
+        }
+        budgetSpent = true;
+        logger.info("Crawl {} spent its budget after processing {} pages and downloading {} bytes, dropping {} queued urls",
+                crawlId, processedPages.getPageCount(), statistics.getBytesDownloaded(), workQueue.size());
+        Thread seeder = sitemapSeeder;
+        if (seeder != null) {
+            seeder.interrupt();
+        }
+    }
+
+    private void dropQueued() {
+        try {
+            while (workQueue.poll(0, TimeUnit.NANOSECONDS) != null) {
+                droppedCount.incrementAndGet();
+                finishWork();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the host of the url to accept another request on a thread of the pool, holding a crawler permit,
+     * then hands the url to {@link #startReadyCrawlers()}. No fetch slot is held while waiting for the host, which
+     * can take as long as its crawl delay or {@code Retry-After}, so a slow host does not hold the fetch capacity
+     * the other crawls of the process share.
+     */
+    private void startCrawler(ExecutorService executor, QueuedUrl urlToCrawl) {
+        long dequeuedTime = System.nanoTime();
+        totalJobCount.incrementAndGet();
+        inFlightUrls.add(urlToCrawl);
+        try {
+            // set once the crawler of the url fails or completes its page, so the page settles its place in the
+            // budget once only, however many times its crawler ends
+            AtomicBoolean settled = new AtomicBoolean(false);
+            executor.submit(() -> {
+                HostThrottle.Permit hostPermit;
+                try {
+                    // waits for the host of the url to accept another request
+                    hostPermit = politeness.acquire(urlToCrawl.url());
+                } catch (InterruptedException e) {
+                    requeueCancelled(urlToCrawl);
+                    completeJob(urlToCrawl, false);
+                    return;
+                }
+                metrics.recordHostWait(System.nanoTime() - dequeuedTime);
+                readyCrawlers.add(new ReadyCrawler(urlToCrawl, hostPermit, settled));
+                startReadyCrawlers();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Crawl cancelled before url {} could be crawled", urlToCrawl.url());
+            requeueCancelled(urlToCrawl);
+            completeJob(urlToCrawl, false);
+        }
+    }
+
+    /**
+     * Starts a crawler for each url whose host accepted another request, in the order they did, while fetch slots
+     * are free. Called by whichever thread adds such a url, and by the thread freeing the slot the
+     * {@link FetchScheduler} sets aside for this crawl once it found every slot of the process taken. Once the crawl
+     * is cancelled, the urls are queued again instead.
+     */
+    private void startReadyCrawlers() {
+        while (!readyCrawlers.isEmpty()) {
+            if (cancelled) {
+                ReadyCrawler ready;
+                while ((ready = readyCrawlers.poll()) != null) {
+                    ready.hostPermit().cancelled();
+                    requeueCancelled(ready.url());
+                    completeJob(ready.url(), false);
+                }
+                return;
+            }
+            if (!fetchSlots.tryAcquire()) {
+                // this crawl now waits in line for a slot, the scheduler calls back once it has set one aside
+                return;
+            }
+            ReadyCrawler ready = readyCrawlers.poll();
+            if (ready == null) {
+                // started by another thread, the slot goes to the next crawl in line
+                fetchSlots.release();
+                return;
+            }
+            // the time spent waiting for the slot is not latency of the host
+            ready.hostPermit().restart();
+            startFetching(ready);
+        }
+    }
+
+    private void startFetching(ReadyCrawler ready) {
+        if (executionMode == CrawlExecutionMode.ASYNC) {
+            startAsyncCrawler(ready.url(), ready.hostPermit(), ready.settled());
+            return;
+        }
+        try {
+            pool.submit(() -> runCrawler(ready.url(), ready.hostPermit(), ready.settled()));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Crawl cancelled before url {} could be crawled", ready.url().url());
+            ready.hostPermit().cancelled();
+            requeueCancelled(ready.url());
+            completeJob(ready.url(), true);
+        }
+    }
+
+    /**
+     * Queues the url of a crawler stopped by the cancellation of the crawl again, so that it is written to the last
+     * checkpoint and crawled on resume.
+     */
+    private void requeueCancelled(QueuedUrl urlToCrawl) {
+        pendingWork.incrementAndGet();
+        workQueue.add(urlToCrawl);
+    }
+
+    private ExecutorService createExecutor() {
+        // ASYNC crawlers do not run on the pool, they are driven by the completion of their fetch
+        return executionMode == CrawlExecutionMode.PLATFORM
+                ? Executors.newFixedThreadPool(threadPoolSize)
+                : Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Stops dispatching and interrupts every running crawler, then writes a last checkpoint in which the urls
+     * of the cancelled crawlers are queued again. The interrupt flag is restored so the caller of
+     * {@link #crawl(URI)} can observe the cancellation.
+     */
+    private void cancel(ExecutorService pool, URI rootPage) {
+        cancelled = true;
+        paused = true;
+        logger.warn("Crawl of {} interrupted, cancelling {} running crawlers", rootPage, inFlightUrls.size());
+        pool.shutdownNow();
+        watchdog.shutdownNow();
+        Thread seeder = sitemapSeeder;
+        if (seeder != null) {
+            seeder.interrupt();
+        }
+        inFlightCrawls.forEach(crawl -> crawl.cancel(true));
+        startReadyCrawlers();
+        if (isCheckpointing()) {
+            writeLastCheckpoint(rootPage);
+        }
+        Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Writes the checkpoint of a cancelled crawl once its crawlers have ended. As for {@link #checkpoint(URI)},
+     * taking every crawler permit waits for the crawlers queueing the links they found, which they do between
+     * marking a url as seen and queueing it. The interrupted crawlers queue their own urls again as they end. A
+     * crawler which does not end within the worker timeout is written as in flight, to be crawled again on resume.
+     */
+    private void writeLastCheckpoint(URI rootPage) {
+        boolean drained = false;
+        try {
+            drained = crawlerPermits.tryAcquire(permitCount, crawlerWorkerTimeout, TimeUnit.SECONDS);
+            if (!drained) {
+                logger.warn("Crawl {} still has {} crawlers running, checkpointing it without waiting for them", crawlId, inFlightUrls.size());
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for the crawlers of crawl {} to end, checkpointing it without waiting for them", crawlId);
+        }
+        try {
+            writeCheckpoint(rootPage, List.copyOf(inFlightUrls));
+        } finally {
+            if (drained) {
+                // the interrupted sitemap seeder may be waiting for a permit to queue its last url
+                crawlerPermits.release(permitCount);
+            }
+        }
+    }
+
+    private boolean isCheckpointing() {
+        // the nodes of a cluster only hold part of the crawl, which cannot be resumed on its own
+        return checkpointStore.isEnabled() && partition == null;
+    }
+
+    private boolean ownsRootPage(URI rootPage) {
+        return partition == null || partition.isLocal(rootPage);
+    }
+
+    /**
+     * Writes a consistent checkpoint of the crawl. Taking every crawler permit waits for the running
+     * crawlers to finish and keeps new ones from starting, so nothing changes while it is written.
+     */
+    private void checkpoint(URI rootPage) {
+        paused = true;
+        try {
+            crawlerPermits.acquire(permitCount);
+            try {
+                writeCheckpoint(rootPage, List.of());
+            } finally {
+                crawlerPermits.release(permitCount);
+            }
+        } catch (InterruptedException e) {
+            // the crawl was cancelled, it writes its own last checkpoint
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            paused = false;
+        }
+        dispatchQueued();
+    }
+
+    private synchronized void writeCheckpoint(URI rootPage, List<QueuedUrl> inFlightUrls) {
+        try {
+            LinkGraph graph = processedPages.build();
+            checkpointStore.write(crawlId, rootPage, budget, graph, workQueue, inFlightUrls, seenUrls);
+            logger.info("Checkpointed crawl {} of {} with {} pages processed and {} urls queued", crawlId, rootPage, graph.getPageCount(), workQueue.size() + inFlightUrls.size());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to checkpoint crawl {} of {}", crawlId, rootPage, e);
+        }
+    }
+
+    /**
+     * Starts streaming the urls of the sitemaps of the root host into the work queue on its own virtual thread.
+     * The seeder counts as pending work until it is done, so the crawl does not end while it is still queueing urls.
+     */
+    private void startSitemapSeeding(URI rootPage) {
+        if (!sitemapReader.isEnabled()) {
+            return;
+        }
+        pendingWork.incrementAndGet();
+        sitemapSeeder = Thread.ofVirtual().name("sitemap-seeder-" + crawlId).start(() -> {
+            try {
+                List<URI> sitemaps = robots.rulesFor(rootPage, statistics).getSitemaps();
+                if (sitemaps.isEmpty()) {
+                    sitemaps = List.of(rootPage.resolve("/sitemap.xml"));
+                }
+                AtomicInteger queued = new AtomicInteger(0);
+                long read = sitemapReader.readWithPriorities(sitemaps, statistics, (url, priority) -> {
+                    if (enqueueFromSitemap(url, priority)) {
+                        queued.incrementAndGet();
+                    }
+                });
+                logger.info("Read {} urls from the sitemaps of {}, queued {} of them", read, rootPage, queued);
+            } catch (InterruptedException e) {
+                logger.debug("Reading the sitemaps of {} interrupted", rootPage);
+            } catch (RuntimeException e) {
+                logger.error("Failed to read the sitemaps of {}", rootPage, e);
+            } finally {
+                finishWork();
+            }
         });
+    }
+
+    /**
+     * Queues a url read from a sitemap. Holding a crawler permit while doing so keeps the seen-set and work queue
+     * consistent with each other for {@link #checkpoint(URI)}, as it does for crawlers queueing the links they found.
+     */
+    private boolean enqueueFromSitemap(URI url, float priority) {
+        crawlerPermits.acquireUninterruptibly();
+        try {
+            // the sitemap of the root host is as close to the root page as its links are
+            return enqueue(url, 1, priority);
+        } finally {
+            crawlerPermits.release();
+            dispatchQueued();
+        }
+    }
+
+    /**
+     * Processes the given URL directly on the calling pool thread. Rather than parking a second
+     * thread to wait on the result, the worker timeout is enforced by interrupting the thread, which aborts
+     * any blocking socket operation of a virtual thread and any wait for a response. Either way the page is
+     * completed or failed by this thread only, before the URL is completed.
+     *
+     * @param urlToCrawl the URL to be crawled
+     * @param hostPermit the permit of the host of the URL
+     * @param settled    whether the page was failed or completed already
+     */
+    private void runCrawler(QueuedUrl urlToCrawl, HostThrottle.Permit hostPermit, AtomicBoolean settled) {
+        Thread worker = Thread.currentThread();
+        // true while the page is processed, guarded by itself so the timeout never interrupts the thread once done
+        boolean[] processing = {true};
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            synchronized (processing) {
+                if (processing[0]) {
+                    processing[0] = false;
+                    worker.interrupt();
+                }
+            }
+        }, crawlerWorkerTimeout, TimeUnit.SECONDS);
         try {
-            future.get(crawlerWorkerTimeout, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-            logger.debug("Crawler for url {} did not complete within {} seconds", urlToCrawl, crawlerWorkerTimeout);
-            future.cancel(true);
-            failedJobCount.incrementAndGet();
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Crawler failed", e);
-            failedJobCount.incrementAndGet();
+            processPage(urlToCrawl, hostPermit, settled);
         } finally {
-            int completions = jobCompletions.incrementAndGet();
-            int remaining = remainingJobCount.decrementAndGet();
-            printStatus(totalJobCount.get(), completions, remaining);
+            timeout.cancel(false);
+            synchronized (processing) {
+                if (!processing[0] && !cancelled) {
+                    // the platform threads of the pool run the next crawler, which must not see the interrupt
+                    Thread.interrupted();
+                }
+                processing[0] = false;
+            }
+            completeJob(urlToCrawl, true);
+        }
+    }
+
+    /**
+     * Starts crawling the given URL as a chain of futures. The starting thread returns as soon as
+     * the request is sent; the page is processed by whichever thread completes the fetch.
+     *
+     * @param urlToCrawl the URL to be crawled
+     * @param hostPermit the permit of the host of the URL
+     * @param settled    whether the page was failed or completed already
+     */
+    private void startAsyncCrawler(QueuedUrl urlToCrawl, HostThrottle.Permit hostPermit, AtomicBoolean settled) {
+        Crawler crawler = new Crawler(webService, statistics, metrics);
+        // timing out, like cancelling the crawl, cancels the fetch of the page so its download stops too
+        CompletableFuture<CrawledPage> crawl = crawler.crawlAsync(urlToCrawl.url()).orTimeout(crawlerWorkerTimeout, TimeUnit.SECONDS);
+        inFlightCrawls.add(crawl);
+        crawl.whenComplete((page, error) -> {
+            inFlightCrawls.remove(crawl);
+            if (error != null) {
+                failPage(urlToCrawl, hostPermit, settled, error);
+            } else {
+                hostPermit.succeeded();
+                completePage(page, urlToCrawl.depth(), settled);
+            }
+            completeJob(urlToCrawl, true);
+        });
+    }
 
+    private void processPage(QueuedUrl urlToCrawl, HostThrottle.Permit hostPermit, AtomicBoolean settled) {
+        Crawler crawler = new Crawler(webService, statistics, metrics);
+        CrawledPage page;
+        try {
+            page = crawler.crawl(urlToCrawl.url());
+        } catch (Exception e) {
+            failPage(urlToCrawl, hostPermit, settled, e);
+            return;
         }
+        hostPermit.succeeded();
+        completePage(page, urlToCrawl.depth(), settled);
     }
 
-    private void printStatus(int totalJobCount, int completions, int remaining) {
-        logger.info("Total count: {},\tTotal crawls: {}.\tFailures: {}.\tSuccesses: {}.\tRemaining: {}.", totalJobCount, completions, failedJobCount.get(), processedPages.size(), remaining);
+    /**
+     * Reports the failed request to the throttle of its host. A page refused by a throttling host is queued
+     * again, it only counts as failed once it has been refused more than the retry limit. Either way the page gives
+     * its place in the page budget back. A page which was failed or completed already is left as it is, and the
+     * url of a crawler stopped by the cancellation of the crawl is queued again for the last checkpoint.
+     */
+    private void failPage(QueuedUrl urlToCrawl, HostThrottle.Permit hostPermit, AtomicBoolean settled, Throwable error) {
+        if (!settled.compareAndSet(false, true)) {
+            logger.debug("Ignoring failure of url {} which was settled already", urlToCrawl.url(), error);
+            return;
+        }
+        if (cancelled) {
+            requeueCancelled(urlToCrawl);
+            return;
+        }
+        budgetedPages.decrementAndGet();
+        metrics.recordFailure(CrawlMetrics.FailureCause.of(error));
+        HttpErrorStatusException httpError = findHttpError(error);
+        if (httpError != null && httpError.isThrottled()) {
+            hostPermit.throttled(httpError.getRetryAfter());
+            throttledCount.incrementAndGet();
+            if (throttledAttempts.merge(urlToCrawl.url(), 1, Integer::sum) <= politeness.getMaxRetries()) {
+                logger.debug("Host of url {} is throttling requests, queueing it again", urlToCrawl.url());
+                pendingWork.incrementAndGet();
+                workQueue.add(urlToCrawl);
+                return;
+            }
+        } else if (httpError != null && httpError.getStatusCode() < 500) {
+            // the host answered promptly, the page just does not exist or is not accessible
+            hostPermit.succeeded();
+        } else {
+            hostPermit.failed();
+        }
+        logger.debug("Failed to crawl url {}", urlToCrawl.url(), error);
+        failedJobCount.incrementAndGet();
+    }
+
+    private static HttpErrorStatusException findHttpError(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpErrorStatusException httpError) {
+                return httpError;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the page to the crawl and queues its links, unless the page was failed or completed already.
+     */
+    private void completePage(CrawledPage crawledPage, int depth, AtomicBoolean settled) {
+        if (!settled.compareAndSet(false, true)) {
+            logger.debug("Ignoring late completion of url {} which was settled already", crawledPage.page().getUrl());
+            return;
+        }
+        Page page = resolveAliases(crawledPage);
+        if (page == null) {
+            // the page gives its place in the budget back to the crawl of the url it was redirected to
+            budgetedPages.decrementAndGet();
+            aliasedCount.incrementAndGet();
+            return;
+        }
+        processedPages.addPage(page);
+        if (processedPages.getPageCount() >= budget.maxPages() || statistics.getBytesDownloaded() >= budget.maxBytes()) {
+            spendBudget();
+        }
+        enqueueChildren(page, depth + 1);
+        pageListener.accept(page);
+    }
+
+    /**
+     * Marks the url the page was redirected to and its canonical url as seen, so that neither is ever fetched.
+     *
+     * @return the page under the url it was served from, or null if the page was redirected to a url which was seen
+     * already, and so is or was crawled under that url
+     */
+    private Page resolveAliases(CrawledPage crawledPage) {
+        Page page = crawledPage.page();
+        URI finalUrl = crawledPage.finalUrl();
+        if (finalUrl != null && isAliasable(finalUrl)) {
+            if (!seenUrls.add(finalUrl)) {
+                logger.debug("Skipping url {} as it redirected to {} which was seen already", page.getUrl(), finalUrl);
+                return null;
+            }
+            page = new Page(finalUrl, page.getChildren());
+        }
+        URI canonicalUrl = crawledPage.canonicalUrl();
+        if (canonicalUrl != null && !canonicalUrl.equals(page.getUrl()) && isAliasable(canonicalUrl)) {
+            seenUrls.add(canonicalUrl);
+        }
+        return page;
+    }
+
+    private boolean isAliasable(URI url) {
+        return StringUtils.equals(getUrlDomain(url.getHost()), mainHost) && (partition == null || partition.isLocal(url));
+    }
+
+    private void enqueueChildren(Page page, int depth) {
+        logger.debug("Processed url {}. Adding URls to work queue: {}", page.getUrl(), page.getChildren());
+        for (URI child : page.getChildren()) {
+            enqueue(child, depth, QueuedUrl.DEFAULT_PRIORITY);
+        }
+    }
+
+    /**
+     * Adds the url to the work queue, skipping urls outside the main host domain, urls which have already been seen
+     * and urls disallowed by the robots.txt of their host. Checking and marking a url as seen is a single atomic
+     * step, so concurrent crawlers finding the same link queue it only once, and count as another link to it if it
+     * is still queued. The seen-set is checked first, so the robots.txt rules are only looked up for new urls; a
+     * disallowed url is marked as seen, which is harmless as it would be disallowed again. In a cluster, urls owned
+     * by other nodes are forwarded to them, which make these checks themselves. Once the budget of the crawl is
+     * spent, or past its depth limit, nothing is queued.
+     *
+     * @param depth the number of links between the root page and the url
+     * @param priority the priority of the url from 0 to 1, see {@link QueuedUrl}
+     * @return whether the url was queued
+     */
+    private boolean enqueue(URI url, int depth, float priority) {
+        if (depth > budget.maxDepth() || budgetSpent) {
+            logger.trace("Skipping url {} as it is over the budget of the crawl", url);
+        } else if (!StringUtils.equals(getUrlDomain(url.getHost()), mainHost)) {
+            logger.trace("Skipping url {} as it is not within the main host domain {}", url, mainHost);
+        } else if (partition != null && !partition.isLocal(url)) {
+            partition.forward(url);
+        } else if (!seenUrls.add(url)) {
+            logger.trace("Skipping already seen url {}", url);
+            workQueue.addInLink(url);
+        } else if (!robots.rulesFor(url, statistics).isAllowed(url)) {
+            logger.trace("Skipping url {} as it is disallowed by robots.txt", url);
+            disallowedCount.incrementAndGet();
+        } else {
+            pendingWork.incrementAndGet();
+            workQueue.add(new QueuedUrl(url, depth, priority));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param heldFetchSlot whether the crawler of the url got as far as taking a fetch slot
+     */
+    private void completeJob(QueuedUrl crawledUrl, boolean heldFetchSlot) {
+        inFlightUrls.remove(crawledUrl);
+        jobCompletions.incrementAndGet();
+        if (heldFetchSlot) {
+            fetchSlots.release();
+        }
+        crawlerPermits.release();
+        // the links of the page are queued by now, this thread starts crawling them with the permit it freed
+        dispatchQueued();
+        finishWork();
+    }
+
+    /**
+     * Uncounts a url whose crawler completed, or the sitemap seeder, waking up the crawl once nothing is left.
+     */
+    private void finishWork() {
+        if (pendingWork.decrementAndGet() == 0) {
+            quiescenceLock.lock();
+            try {
+                quiescent.signalAll();
+            } finally {
+                quiescenceLock.unlock();
+            }
+        }
+    }
+
+    public CrawlStatistics getStatistics() {
+        return statistics;
+    }
+
+    long getQueuedUrlCount() {
+        return workQueue.size();
+    }
+
+    long getSeenUrlCount() {
+        return seenUrls.size();
+    }
+
+    long getInFlightCount() {
+        return inFlightUrls.size();
+    }
+
+    private void logProgress() {
+        logger.info("Crawl {}: total count: {},\tTotal crawls: {}.\tFailures: {}.\tSuccesses: {}.\tRemaining: {}.\tQueued: {}.", crawlId,
+                totalJobCount.get(), jobCompletions.get(), failedJobCount.get(), processedPages.getPageCount(), pendingWork.get(), workQueue.size());
     }
 
     private static String getUrlDomain(String uri) {
         return uri.startsWith("www.") ? uri.substring(4) : uri;
     }
+
+    /**
+     * A url whose host accepted another request, waiting for a fetch slot.
+     *
+     * @param settled whether the page was failed or completed already
+     */
+    private record ReadyCrawler(QueuedUrl url, HostThrottle.Permit hostPermit, AtomicBoolean settled) {
+    }
 }
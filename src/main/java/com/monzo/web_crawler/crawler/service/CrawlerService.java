@@ -1,66 +1,223 @@
 package com.monzo.web_crawler.crawler.service;
 
+import com.monzo.web_crawler.crawler.model.LinkGraph;
 import com.monzo.web_crawler.crawler.model.Page;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * A service responsible for managing the crawling of web pages starting from a root URI.
- * The service uses a configurable thread pool size, worker timeout, and manager timeout
- * to manage the crawling process in an asynchronous manner.
+ * The service uses a configurable execution mode, thread pool size, concurrency limit, worker timeout,
+ * and manager timeout to manage the crawling process in an asynchronous manner.
  * <p>
- * This class interacts with the {@link WebService} to fetch and crawl web pages.
+ * This class interacts with the {@link WebService} to fetch and crawl web pages. Every crawl is admitted by the
+ * {@link FetchScheduler} before it starts, which limits how many crawls run at once and shares the fetch capacity of
+ * the process between them.
  */
 @Service
 public class CrawlerService {
     private static final Logger logger = LoggerFactory.getLogger(CrawlerService.class);
 
+    private static final Consumer<Page> IGNORE_PAGES = page -> {
+    };
+
     private final WebService webService;
+    private final SeenUrlSetFactory seenUrlSetFactory;
+    private final FrontierFactory frontierFactory;
+    private final CrawlCheckpointStore checkpointStore;
+    private final PolitenessScheduler politeness;
+    private final RobotsTxtCache robots;
+    private final SitemapReader sitemapReader;
+    private final FetchScheduler fetchScheduler;
+    private final CrawlMetrics metrics;
 
     private final int threadPoolSize;
     private final int crawlerWorkerTimeout;
     private final int crawlerManagerTimeout;
+    private final CrawlExecutionMode executionMode;
+    private final int maxConcurrency;
 
     public CrawlerService(WebService webService,
+                          SeenUrlSetFactory seenUrlSetFactory,
+                          FrontierFactory frontierFactory,
+                          CrawlCheckpointStore checkpointStore,
+                          PolitenessScheduler politeness,
+                          RobotsTxtCache robots,
+                          SitemapReader sitemapReader,
+                          FetchScheduler fetchScheduler,
+                          CrawlMetrics metrics,
                           @Value("${crawler.thread-pool-size:5}") int threadPoolSize,
                           @Value("${crawler.worker-timeout-seconds:2}") int crawlerWorkerTimeout,
-                          @Value("${crawler.manager-timeout-seconds:120}") int crawlerManagerTimeout) {
+                          @Value("${crawler.manager-timeout-seconds:120}") int crawlerManagerTimeout,
+                          @Value("${crawler.execution-mode:platform}") CrawlExecutionMode executionMode,
+                          @Value("${crawler.max-concurrency:1000}") int maxConcurrency) {
         this.webService = webService;
+        this.seenUrlSetFactory = seenUrlSetFactory;
+        this.frontierFactory = frontierFactory;
+        this.checkpointStore = checkpointStore;
+        this.politeness = politeness;
+        this.robots = robots;
+        this.sitemapReader = sitemapReader;
+        this.fetchScheduler = fetchScheduler;
+        this.metrics = metrics;
         this.threadPoolSize = threadPoolSize;
         this.crawlerWorkerTimeout = crawlerWorkerTimeout;
         this.crawlerManagerTimeout = crawlerManagerTimeout;
+        this.executionMode = executionMode;
+        this.maxConcurrency = maxConcurrency;
     }
 
-    public List<Page> crawl(URI rootPage) {
-        long startTime = System.currentTimeMillis();
-        List<Page> result = new ArrayList<>();
+    public LinkGraph crawl(URI rootPage) {
+        return crawl(CrawlCheckpointStore.newCrawlId(), rootPage);
+    }
 
-        CrawlerManager crawlerManager = new CrawlerManager(webService, threadPoolSize, crawlerWorkerTimeout);
-        CompletableFuture<List<Page>> future = CompletableFuture.supplyAsync(() -> crawlerManager.crawl(rootPage));
+    /**
+     * Crawls the site of the root page, checkpointing the crawl under the given ID so that it can be
+     * resumed with {@link #resume(String)} if it does not complete.
+     */
+    public LinkGraph crawl(String crawlId, URI rootPage) {
+        return crawl(crawlId, rootPage, IGNORE_PAGES).orElseGet(LinkGraph::empty);
+    }
 
-        try {
-            result = future.get(crawlerManagerTimeout, TimeUnit.SECONDS);
-            long endTime = System.currentTimeMillis();
-            logger.debug("Crawling completed in {} ms", (endTime - startTime));
-        } catch (TimeoutException e) {
-            logger.error("Task did not complete within {} seconds", crawlerManagerTimeout);
-            future.cancel(true);
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Task failed", e);
+    /**
+     * Crawls the site of the root page, handing each page to the listener as soon as it has been processed.
+     *
+     * @param pageListener called from the crawler threads, so it must be thread safe
+     * @return all pages of the crawl, or empty if the crawl did not complete, in which case it can be resumed with
+     * {@link #resume(String)}
+     */
+    public Optional<LinkGraph> crawl(String crawlId, URI rootPage, Consumer<Page> pageListener) {
+        return crawl(crawlId, rootPage, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT, pageListener);
+    }
+
+    /**
+     * Crawls the site of the root page within the budget, see {@link CrawlBudget}.
+     */
+    public LinkGraph crawl(String crawlId, URI rootPage, CrawlBudget budget) {
+        return crawl(crawlId, rootPage, budget, FetchScheduler.DEFAULT_WEIGHT);
+    }
+
+    /**
+     * Crawls the site of the root page within the budget, taking a share of the fetch capacity of the process
+     * proportional to its weight.
+     */
+    public LinkGraph crawl(String crawlId, URI rootPage, CrawlBudget budget, int weight) {
+        return crawl(crawlId, rootPage, budget, weight, IGNORE_PAGES).orElseGet(LinkGraph::empty);
+    }
+
+    /**
+     * Crawls the site of the root page within the budget, handing each page to the listener as soon as it has been
+     * processed. The most valuable urls are crawled first, so the pages crawled before the budget is spent are the
+     * ones which matter most, see {@link FrontierPriority}.
+     *
+     * @param weight       the share of the fetch capacity the crawl gets relative to other running crawls
+     * @param pageListener called from the crawler threads, so it must be thread safe
+     * @return all pages of the crawl, or empty if the crawl did not complete, in which case it can be resumed with
+     * {@link #resume(String)}
+     * @throws CrawlRejectedException if the crawl was not admitted, see {@link FetchScheduler}
+     */
+    public Optional<LinkGraph> crawl(String crawlId, URI rootPage, CrawlBudget budget, int weight, Consumer<Page> pageListener) {
+        return run(crawlId, seenUrlSetFactory.create(), frontierFactory.create(), pageListener, null, budget, weight, crawlerManager -> crawlerManager.crawl(rootPage));
+    }
+
+    /**
+     * Crawls the part of a distributed crawl owned by this node, see {@link ClusterNode}. The crawl is not bounded by
+     * {@code crawler.manager-timeout-seconds}, it runs until the coordinator finishes it, which it does by its own
+     * deadline even when the crawl times out, see {@link ClusterCrawler}.
+     *
+     * @return the pages crawled by this node, or empty if its part of the crawl did not complete
+     */
+    Optional<LinkGraph> crawlPartition(String crawlId, URI rootPage, ClusterPartition partition) {
+        return run(crawlId, seenUrlSetFactory.create(), frontierFactory.create(), IGNORE_PAGES, partition, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT, crawlerManager -> crawlerManager.crawl(rootPage));
+    }
+
+    /**
+     * Continues a crawl from its last checkpoint.
+     *
+     * @return all pages of the crawl, including those processed before the checkpoint, or empty if the crawl has no checkpoint
+     */
+    public Optional<LinkGraph> resume(String crawlId) throws IOException {
+        Optional<CrawlCheckpoint> checkpoint = checkpointStore.read(crawlId, seenUrlSetFactory, frontierFactory);
+        checkpoint.ifPresent(restored -> logger.info("Resuming crawl {} of {} with {} pages processed", crawlId, restored.rootPage(), restored.pages().getPageCount()));
+        return checkpoint.map(restored -> run(crawlId, restored.seenUrls(), restored.frontier(), IGNORE_PAGES, null, restored.budget(), FetchScheduler.DEFAULT_WEIGHT,
+                crawlerManager -> crawlerManager.resume(restored.rootPage(), restored.pages())).orElseGet(LinkGraph::empty));
+    }
+
+    private Optional<LinkGraph> run(String crawlId, SeenUrlSet seenUrls, Frontier frontier, Consumer<Page> pageListener,
+                                    ClusterPartition partition, CrawlBudget budget, int weight, Function<CrawlerManager, LinkGraph> crawl) {
+        long startTime = System.currentTimeMillis();
+        Optional<LinkGraph> result = Optional.empty();
+
+        // the manager runs on its own thread so that cancelling the future interrupts it, which in turn cancels its crawlers
+        try (seenUrls; frontier; FetchScheduler.Tenant fetchSlots = admit(crawlId, weight);
+             ExecutorService managerExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CrawlerManager crawlerManager = new CrawlerManager(webService, crawlId, seenUrls, frontier, checkpointStore, pageListener,
+                    politeness, robots, sitemapReader, partition, budget, fetchSlots, metrics, threadPoolSize, crawlerWorkerTimeout, executionMode, maxConcurrency);
+            CountDownLatch managerStopped = new CountDownLatch(1);
+            Future<LinkGraph> future = managerExecutor.submit(() -> {
+                try {
+                    return crawl.apply(crawlerManager);
+                } finally {
+                    managerStopped.countDown();
+                }
+            });
+            try {
+                // a node waits for urls from the others until the coordinator finishes its part of the crawl
+                result = Optional.of(partition == null ? future.get(crawlerManagerTimeout, TimeUnit.SECONDS) : future.get());
+                checkpointStore.delete(crawlId);
+                long endTime = System.currentTimeMillis();
+                logger.debug("Crawling completed in {} ms", (endTime - startTime));
+            } catch (TimeoutException e) {
+                logger.error("Task did not complete within {} seconds, crawl {} can be resumed from its last checkpoint", crawlerManagerTimeout, crawlId);
+                future.cancel(true);
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Task failed", e);
+                future.cancel(true);
+            }
+            // a cancelled future completes straight away, but the frontier and seen-set must outlive the manager
+            // which is still writing its last checkpoint
+            awaitUninterruptibly(managerStopped);
         }
 
         return result;
     }
 
+    private FetchScheduler.Tenant admit(String crawlId, int weight) {
+        try {
+            return fetchScheduler.admit(crawlId, weight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CrawlRejectedException("Crawl %s interrupted while waiting to be admitted".formatted(crawlId));
+        }
+    }
 
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,292 @@
+package com.monzo.web_crawler.crawler.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Shares the fetch capacity of the process between all running crawls. At most
+ * {@code crawler.scheduler.max-active-crawls} crawls run at once, each with its own thread pool, so the number of
+ * crawler threads is bounded however many crawls are requested. Further crawls wait for one to finish, up to
+ * {@code crawler.scheduler.max-queued-crawls} of them for at most {@code crawler.scheduler.admission-timeout-seconds},
+ * and are rejected beyond that.
+ * <p>
+ * Running crawls take a fetch slot for every page they crawl, out of {@code crawler.scheduler.max-concurrency}
+ * slots in total. While every slot is taken, a crawl which wants one waits in line, and a freed slot goes to the
+ * waiting crawl holding the fewest slots for its weight, so that crawls get slots in proportion to their weights
+ * rather than to how many urls they have queued. The load each host takes from all crawls together is limited by
+ * the {@link PolitenessScheduler}.
+ */
+@Component
+public class FetchScheduler {
+
+    public static final int DEFAULT_WEIGHT = 1;
+
+    private final int maxConcurrency;
+    private final int maxActiveCrawls;
+    private final int maxQueuedCrawls;
+    private final Duration admissionTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition crawlFinished = lock.newCondition();
+    // crawls waiting to be admitted, in the order they asked
+    private final Deque<Object> admissionQueue = new ArrayDeque<>();
+    private final List<Tenant> tenants = new ArrayList<>();
+    // crawls which found every slot taken, in the order they asked
+    private final List<Tenant> waitingTenants = new ArrayList<>();
+    private int slotsInUse;
+
+    public FetchScheduler(@Value("${crawler.scheduler.max-concurrency:256}") int maxConcurrency,
+                          @Value("${crawler.scheduler.max-active-crawls:8}") int maxActiveCrawls,
+                          @Value("${crawler.scheduler.max-queued-crawls:16}") int maxQueuedCrawls,
+                          @Value("${crawler.scheduler.admission-timeout-seconds:30}") int admissionTimeoutSeconds,
+                          MeterRegistry meterRegistry) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.maxActiveCrawls = Math.max(1, maxActiveCrawls);
+        this.maxQueuedCrawls = Math.max(0, maxQueuedCrawls);
+        this.admissionTimeout = Duration.ofSeconds(admissionTimeoutSeconds);
+
+        Gauge.builder("crawler.scheduler.active-crawls", this, scheduler -> scheduler.locked(() -> scheduler.tenants.size()))
+                .description("Crawls admitted by the fetch scheduler")
+                .register(meterRegistry);
+        Gauge.builder("crawler.scheduler.queued-crawls", this, FetchScheduler::getQueuedCrawlCount)
+                .description("Crawls waiting to be admitted by the fetch scheduler")
+                .register(meterRegistry);
+        Gauge.builder("crawler.scheduler.fetch-slots.in-use", this, FetchScheduler::getSlotsInUse)
+                .description("Fetch slots taken by running crawls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admits a crawl, waiting for a running crawl to finish if as many as allowed are already running.
+     *
+     * @param weight the share of the fetch slots the crawl gets relative to the other running crawls
+     * @return the tenancy of the crawl, to be closed once it has finished
+     * @throws CrawlRejectedException if too many crawls are waiting already, or none finished in time
+     */
+    public Tenant admit(String crawlId, int weight) throws InterruptedException {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight of crawl %s must be positive, was %d".formatted(crawlId, weight));
+        }
+        lock.lockInterruptibly();
+        try {
+            if (tenants.size() >= maxActiveCrawls || !admissionQueue.isEmpty()) {
+                awaitAdmission(crawlId);
+            }
+            Tenant tenant = new Tenant(crawlId, weight);
+            tenants.add(tenant);
+            return tenant;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitAdmission(String crawlId) throws InterruptedException {
+        if (admissionQueue.size() >= maxQueuedCrawls) {
+            throw new CrawlRejectedException("Crawl %s rejected, %d crawls are running and %d waiting".formatted(crawlId, tenants.size(), admissionQueue.size()));
+        }
+        Object ticket = new Object();
+        admissionQueue.addLast(ticket);
+        try {
+            long remainingNanos = admissionTimeout.toNanos();
+            while (admissionQueue.peekFirst() != ticket || tenants.size() >= maxActiveCrawls) {
+                if (remainingNanos <= 0) {
+                    throw new CrawlRejectedException("Crawl %s rejected, no running crawl finished within %s".formatted(crawlId, admissionTimeout));
+                }
+                remainingNanos = crawlFinished.awaitNanos(remainingNanos);
+            }
+        } finally {
+            admissionQueue.remove(ticket);
+            // the next crawl in line may be admitted too, or is now at the head of the queue
+            crawlFinished.signalAll();
+        }
+    }
+
+    private void hand(Tenant tenant) {
+        tenant.onSlotFreed.run();
+        Tenant next;
+        lock.lock();
+        try {
+            if (tenant.reservedSlots == 0) {
+                return;
+            }
+            // the crawl had nothing to fetch, or no room to, the slot goes to the next crawl in line
+            tenant.reservedSlots--;
+            slotsInUse--;
+            next = reserveForWaitingTenant();
+        } finally {
+            lock.unlock();
+        }
+        if (next != null) {
+            hand(next);
+        }
+    }
+
+    /**
+     * Sets a free slot aside for the waiting crawl holding the fewest slots for its weight, ties going to the crawl
+     * which has waited longest.
+     *
+     * @return the crawl the slot was set aside for, or null if none is waiting
+     */
+    private Tenant reserveForWaitingTenant() {
+        Tenant next = null;
+        for (Tenant waiting : waitingTenants) {
+            if (next == null || waiting.share() < next.share()) {
+                next = waiting;
+            }
+        }
+        if (next != null) {
+            waitingTenants.remove(next);
+            next.reservedSlots++;
+            slotsInUse++;
+        }
+        return next;
+    }
+
+    int getSlotsInUse() {
+        return locked(() -> slotsInUse);
+    }
+
+    int getQueuedCrawlCount() {
+        return locked(admissionQueue::size);
+    }
+
+    private <T> T locked(Supplier<T> read) {
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A crawl admitted by the scheduler, which takes a fetch slot for every page it crawls.
+     */
+    public class Tenant implements AutoCloseable {
+
+        private final String crawlId;
+        private final int weight;
+        private volatile Runnable onSlotFreed = () -> {
+        };
+
+        private int slots;
+        // slots set aside for the crawl while it was waiting, which it has not taken yet
+        private int reservedSlots;
+        private boolean closed;
+
+        private Tenant(String crawlId, int weight) {
+            this.crawlId = crawlId;
+            this.weight = weight;
+        }
+
+        /**
+         * @param onSlotFreed called when a slot has been set aside for the crawl after it found every slot taken,
+         *                    from the thread which freed it. It should take the slot with {@link #tryAcquire()}, a slot
+         *                    it does not take once it returns goes to the next crawl in line
+         */
+        public void onSlotFreed(Runnable onSlotFreed) {
+            this.onSlotFreed = onSlotFreed;
+        }
+
+        /**
+         * Takes a fetch slot if one is free, or has been set aside for the crawl. Otherwise the crawl waits in line
+         * for the next slot freed, see {@link #onSlotFreed(Runnable)}.
+         *
+         * @return whether a slot was taken
+         */
+        public boolean tryAcquire() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                if (reservedSlots > 0) {
+                    reservedSlots--;
+                    slots++;
+                    return true;
+                }
+                if (slotsInUse < maxConcurrency && waitingTenants.isEmpty()) {
+                    slotsInUse++;
+                    slots++;
+                    return true;
+                }
+                if (!waitingTenants.contains(this)) {
+                    waitingTenants.add(this);
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Frees a slot taken with {@link #tryAcquire()}, handing it to the next crawl in line.
+         */
+        public void release() {
+            Tenant next;
+            lock.lock();
+            try {
+                if (closed || slots == 0) {
+                    return;
+                }
+                slots--;
+                slotsInUse--;
+                next = reserveForWaitingTenant();
+            } finally {
+                lock.unlock();
+            }
+            if (next != null) {
+                hand(next);
+            }
+        }
+
+        /**
+         * Frees every slot still held by the crawl, including those of crawlers which were cancelled, and lets the
+         * next crawl in line be admitted.
+         */
+        @Override
+        public void close() {
+            List<Tenant> handedTo = new ArrayList<>();
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                tenants.remove(this);
+                waitingTenants.remove(this);
+                slotsInUse -= slots + reservedSlots;
+                slots = 0;
+                reservedSlots = 0;
+                Tenant next;
+                while (slotsInUse < maxConcurrency && (next = reserveForWaitingTenant()) != null) {
+                    handedTo.add(next);
+                }
+                crawlFinished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            handedTo.forEach(FetchScheduler.this::hand);
+        }
+
+        private double share() {
+            return (double) (slots + reservedSlots) / weight;
+        }
+
+        @Override
+        public String toString() {
+            return "Tenant[" + crawlId + ", weight " + weight + "]";
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.util.List;
+
+/**
+ * A page as the {@link WebService} hands it to crawlers, with the links of the cached copy if it has not changed
+ * since it was cached. Besides the url it was requested with, a page may be known by the url it was redirected to
+ * and the url it declares as canonical, which are not worth fetching again.
+ *
+ * @param links        absolute urls of all hyperlinks within the page
+ * @param url          the url the page was served from once redirects were followed, or null if it is the url
+ *                     requested
+ * @param canonicalUrl absolute url the page declares as canonical with {@code <link rel="canonical">}, or null
+ */
+public record FetchedDocument(List<String> links, String url, String canonicalUrl) {
+
+    /**
+     * @return a page served from the url it was requested with, which declares no canonical url
+     */
+    public static FetchedDocument of(List<String> links) {
+        return new FetchedDocument(links, null, null);
+    }
+}
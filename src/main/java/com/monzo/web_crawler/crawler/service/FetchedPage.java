@@ -0,0 +1,35 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.util.List;
+
+/**
+ * The outcome of fetching a page: its links and the validators a later conditional request can send, or, when
+ * the page was requested with the validators of a {@link CachedPage}, that it has not changed since.
+ *
+ * @param links        absolute urls of all hyperlinks within the page, empty if it was not modified
+ * @param etag         value of the {@code ETag} header, or null
+ * @param lastModified value of the {@code Last-Modified} header, or null
+ * @param notModified  whether the server answered 304 Not Modified, in which case the cached links still apply
+ * @param url          the url the page was served from once redirects were followed, or null if it is the url
+ *                     requested
+ * @param canonicalUrl absolute url the page declares as canonical with {@code <link rel="canonical">}, or null
+ */
+public record FetchedPage(List<String> links, String etag, String lastModified, boolean notModified, String url, String canonicalUrl) {
+
+    public static final FetchedPage NOT_MODIFIED = notModified(null);
+
+    public static FetchedPage of(List<String> links, String etag, String lastModified) {
+        return new FetchedPage(links, etag, lastModified, false, null, null);
+    }
+
+    public static FetchedPage notModified(String url) {
+        return new FetchedPage(List.of(), null, null, true, url, null);
+    }
+
+    /**
+     * @return whether the page can be revalidated with a conditional request
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+}
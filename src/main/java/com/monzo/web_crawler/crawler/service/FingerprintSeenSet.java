@@ -0,0 +1,167 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Thread safe set of the urls seen during a crawl. Rather than the {@link URI} objects themselves, only a
+ * 64-bit fingerprint of each url is kept, in primitive open addressing tables, so every url costs 8 to 16
+ * bytes however long it is.
+ * <p>
+ * The set is split into segments, each guarded by its own lock, so concurrent crawlers rarely contend.
+ * Two distinct urls sharing a fingerprint would be treated as the same url. With a 64-bit hash the chance
+ * of that happening at all is around one in four hundred thousand for a crawl of ten million urls.
+ */
+public class FingerprintSeenSet implements SeenUrlSet {
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    // fingerprint marking an empty slot, urls hashing to it are stored as EMPTY_REPLACEMENT instead
+    private static final long EMPTY = 0L;
+    private static final long EMPTY_REPLACEMENT = 1L;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    public FingerprintSeenSet() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    @Override
+    public boolean add(URI url) {
+        return add(fingerprint(url.toString()));
+    }
+
+    private boolean add(long fingerprint) {
+        // the top bits pick the segment, the bottom bits the slot within it
+        return segments[(int) (fingerprint >>> 58)].add(fingerprint);
+    }
+
+    /**
+     * @return whether the url has been seen
+     */
+    public boolean contains(URI url) {
+        long fingerprint = fingerprint(url.toString());
+        return segments[(int) (fingerprint >>> 58)].contains(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public SeenUrlSetType type() {
+        return SeenUrlSetType.FINGERPRINT;
+    }
+
+    /**
+     * Writes the number of fingerprints of each segment followed by the fingerprints themselves.
+     */
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        for (Segment segment : segments) {
+            segment.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads back a set written by {@link #writeTo(DataOutputStream)}.
+     */
+    public static FingerprintSeenSet readFrom(DataInputStream in) throws IOException {
+        FingerprintSeenSet seenSet = new FingerprintSeenSet();
+        for (int segment = 0; segment < SEGMENT_COUNT; segment++) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                seenSet.add(in.readLong());
+            }
+        }
+        return seenSet;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the url, finished with the MurmurHash3 mixing step so that all bits, in
+     * particular the top bits used to pick a segment, depend on the whole url.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? EMPTY_REPLACEMENT : hash;
+    }
+
+    /**
+     * Linear probing table of fingerprints, grown when it is more than half full.
+     */
+    private static final class Segment {
+
+        private long[] slots = new long[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+
+        synchronized boolean add(long fingerprint) {
+            int slot = find(slots, fingerprint);
+            if (slots[slot] == fingerprint) {
+                return false;
+            }
+            slots[slot] = fingerprint;
+            if (++size > slots.length / 2) {
+                grow();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            return slots[find(slots, fingerprint)] == fingerprint;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (long fingerprint : slots) {
+                if (fingerprint != EMPTY) {
+                    out.writeLong(fingerprint);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] grown = new long[slots.length * 2];
+            for (long fingerprint : slots) {
+                if (fingerprint != EMPTY) {
+                    grown[find(grown, fingerprint)] = fingerprint;
+                }
+            }
+            slots = grown;
+        }
+
+        /**
+         * @return the slot holding the fingerprint, or the empty slot it would be stored in
+         */
+        private static int find(long[] slots, long fingerprint) {
+            int mask = slots.length - 1;
+            int slot = (int) fingerprint & mask;
+            while (slots[slot] != EMPTY && slots[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
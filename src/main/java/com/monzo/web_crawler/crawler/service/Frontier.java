@@ -0,0 +1,46 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * The queue of urls waiting to be crawled during a single crawl. Implementations are thread safe and are closed
+ * when the crawl ends. They hand urls out in the order they were added, unless they order them by a score, see
+ * {@link PriorityFrontier}.
+ */
+public interface Frontier extends AutoCloseable {
+
+    void add(QueuedUrl url);
+
+    /**
+     * Retrieves and removes the next url, waiting up to the given time for one to be added.
+     *
+     * @return the next url, or null if none was added in time
+     */
+    QueuedUrl poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    boolean isEmpty();
+
+    long size();
+
+    /**
+     * Passes every queued url to the consumer, without removing them. Urls added or polled meanwhile may or may
+     * not be passed.
+     */
+    void forEach(Consumer<QueuedUrl> consumer);
+
+    /**
+     * Called for every link found to a url which was already seen, whether it is still queued or not. Frontiers
+     * ordering urls by the links found to them count it, others ignore it.
+     */
+    default void addInLink(URI url) {
+    }
+
+    /**
+     * Releases any resources held by the frontier.
+     */
+    @Override
+    default void close() {
+    }
+}
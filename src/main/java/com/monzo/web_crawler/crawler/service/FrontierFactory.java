@@ -0,0 +1,52 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates the {@link Frontier} of each crawl according to {@code crawler.frontier}, ordering urls by
+ * {@code crawler.frontier.priority} when they are held in a {@link PriorityFrontier}.
+ */
+@Component
+public class FrontierFactory {
+
+    private final FrontierType type;
+    private final Path directory;
+    private final int hotWindowSize;
+    private final int segmentSize;
+    private final FrontierPriority priority;
+
+    public FrontierFactory(@Value("${crawler.frontier:priority}") FrontierType type,
+                           @Value("${crawler.frontier.directory:${java.io.tmpdir}}") String directory,
+                           @Value("${crawler.frontier.hot-window-size:10000}") int hotWindowSize,
+                           @Value("${crawler.frontier.segment-size-bytes:16777216}") int segmentSize,
+                           @Value("${crawler.frontier.priority:depth}") FrontierPriority priority) {
+        this.type = type;
+        this.directory = Path.of(directory);
+        this.hotWindowSize = hotWindowSize;
+        this.segmentSize = segmentSize;
+        this.priority = priority;
+    }
+
+    /**
+     * @return a new, empty frontier for a crawl, to be closed when the crawl ends
+     */
+    public Frontier create() {
+        return switch (type) {
+            case PRIORITY -> new PriorityFrontier(priority.scorer());
+            case MEMORY -> new InMemoryFrontier();
+            case DISK -> createSpillingFrontier();
+        };
+    }
+
+    private Frontier createSpillingFrontier() {
+        try {
+            return new SpillingFrontier(directory, hotWindowSize, segmentSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create frontier in %s".formatted(directory), e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Determines which urls a {@link PriorityFrontier} hands out first, set through {@code crawler.frontier.priority}.
+ */
+public enum FrontierPriority {
+
+    /**
+     * Urls closest to the root page first, a breadth first crawl.
+     */
+    DEPTH((url, inLinks) -> -url.depth()),
+
+    /**
+     * Urls linked from the most pages crawled so far first.
+     */
+    IN_LINKS((url, inLinks) -> inLinks),
+
+    /**
+     * Urls given the highest priority by the sitemaps of the site first, then urls closest to the root page.
+     */
+    SITEMAP((url, inLinks) -> url.priority() * 1_000_000 - url.depth());
+
+    private final UrlScorer scorer;
+
+    FrontierPriority(UrlScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    public UrlScorer scorer() {
+        return scorer;
+    }
+}
@@ -0,0 +1,24 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Determines where the urls waiting to be crawled are kept, see {@link FrontierFactory}.
+ */
+public enum FrontierType {
+
+    /**
+     * All queued urls are held on the heap and handed out by score, see {@link PriorityFrontier} and
+     * {@link FrontierPriority}.
+     */
+    PRIORITY,
+
+    /**
+     * All queued urls are held on the heap and handed out in the order they were queued, see {@link InMemoryFrontier}.
+     */
+    MEMORY,
+
+    /**
+     * Only a bounded window of queued urls is held on the heap, the rest is spilled to
+     * memory-mapped segment files. Urls are handed out in the order they were queued, see {@link SpillingFrontier}.
+     */
+    DISK
+}
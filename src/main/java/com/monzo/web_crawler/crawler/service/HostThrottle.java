@@ -0,0 +1,286 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces the requests sent to a single host, see {@link PolitenessScheduler}.
+ * <p>
+ * A request needs both a token and a concurrency slot. Tokens refill at the request rate up to the burst size,
+ * the rate starting at the configured maximum, or lower if the host asked for a {@code Crawl-delay}. The
+ * number of slots is set by an AIMD controller: each successful request grows the limit by {@code 1/limit},
+ * so by about one per round of requests, while a request which failed, timed out or took well above the
+ * lowest latency seen cuts it by a constant factor. Only requests sent after the last cut can cut it again,
+ * so a burst of slow responses to the same round only counts once.
+ * <p>
+ * A host answering 429 or 503 is not sent anything until its {@code Retry-After}, or an exponential backoff
+ * if it gave none, has passed, and its request rate is halved.
+ */
+public class HostThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostThrottle.class);
+
+    // a failed request halves the concurrency limit, a slow one takes off a tenth
+    private static final double FAILURE_DECREASE = 0.5;
+    private static final double LATENCY_DECREASE = 0.9;
+    // the lowest latency seen creeps up by 1/128 per sample, so the baseline follows a host that got slower
+    private static final int LATENCY_BASELINE_DECAY_SHIFT = 7;
+    // jitter between responses this fast is noise rather than congestion
+    private static final long LATENCY_NOISE_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // a throttled host has its rate halved, recovering by this fraction of the maximum rate per success
+    private static final double RATE_RECOVERY = 0.01;
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+
+    private final String host;
+    private final double maxConcurrency;
+    private final double latencyTolerance;
+    private final long maxBackoffNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition ready = lock.newCondition();
+
+    private double maxRequestsPerSecond;
+    private double requestsPerSecond;
+    private double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    private double concurrencyLimit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long lastDecreaseNanos;
+
+    private long blockedUntilNanos;
+    private long backoffNanos = INITIAL_BACKOFF.toNanos();
+
+    /**
+     * @param requestsPerSecond  maximum rate of requests sent to the host
+     * @param burst              number of requests which can be sent at once after the host was idle
+     * @param initialConcurrency concurrency limit to start from
+     * @param maxConcurrency     ceiling of the concurrency limit
+     * @param latencyTolerance   a request taking more than this many times the lowest latency seen counts as congestion
+     * @param maxBackoff         longest time a throttled host is left alone for, whatever its {@code Retry-After}
+     */
+    public HostThrottle(String host, double requestsPerSecond, int burst, int initialConcurrency, int maxConcurrency,
+                        double latencyTolerance, Duration maxBackoff) {
+        this.host = host;
+        this.maxRequestsPerSecond = requestsPerSecond;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.concurrencyLimit = Math.min(initialConcurrency, maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+        this.latencyTolerance = latencyTolerance;
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos;
+    }
+
+    /**
+     * Waits until a request may be sent to the host.
+     *
+     * @return the permit of the request, which must be completed once the request has finished
+     */
+    public Permit acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long waitNanos;
+                if (now - blockedUntilNanos < 0) {
+                    waitNanos = blockedUntilNanos - now;
+                } else if (inFlight >= (int) concurrencyLimit) {
+                    // woken up by a completing request
+                    waitNanos = Long.MAX_VALUE;
+                } else {
+                    refill(now);
+                    if (tokens >= 1) {
+                        tokens--;
+                        inFlight++;
+                        return new Permit(now);
+                    }
+                    waitNanos = (long) Math.ceil((1 - tokens) / requestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                }
+                ready.awaitNanos(waitNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Slows requests down to one per crawl delay, as asked for by the robots.txt of the host.
+     */
+    public void applyCrawlDelay(Duration crawlDelay) {
+        if (crawlDelay.isZero() || crawlDelay.isNegative()) {
+            return;
+        }
+        lock.lock();
+        try {
+            maxRequestsPerSecond = Math.min(maxRequestsPerSecond, 1.0 / (crawlDelay.toNanos() / 1e9));
+            requestsPerSecond = Math.min(requestsPerSecond, maxRequestsPerSecond);
+            burst = 1;
+            tokens = Math.min(tokens, burst);
+            logger.info("Crawling host {} at most every {} ms as asked by its crawl delay", host, crawlDelay.toMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return concurrencyLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getRequestsPerSecond() {
+        lock.lock();
+        try {
+            return requestsPerSecond;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * requestsPerSecond);
+        lastRefillNanos = now;
+    }
+
+    private void onSuccess(Permit permit, long now) {
+        long latency = now - permit.startNanos;
+        long baseline = minLatencyNanos == Long.MAX_VALUE ? latency : minLatencyNanos + (minLatencyNanos >> LATENCY_BASELINE_DECAY_SHIFT);
+        minLatencyNanos = Math.min(latency, baseline);
+        if (latency > LATENCY_NOISE_FLOOR_NANOS && latency > latencyTolerance * minLatencyNanos) {
+            decrease(permit, now, LATENCY_DECREASE);
+        } else {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+        }
+        requestsPerSecond = Math.min(maxRequestsPerSecond, requestsPerSecond + maxRequestsPerSecond * RATE_RECOVERY);
+        backoffNanos = INITIAL_BACKOFF.toNanos();
+    }
+
+    private void onFailure(Permit permit, long now) {
+        decrease(permit, now, FAILURE_DECREASE);
+    }
+
+    private void onThrottled(Permit permit, long now, Duration retryAfter) {
+        decrease(permit, now, FAILURE_DECREASE);
+        long pauseNanos = Math.min(maxBackoffNanos, retryAfter != null ? retryAfter.toNanos() : backoffNanos);
+        if (retryAfter == null) {
+            backoffNanos = Math.min(maxBackoffNanos, backoffNanos * 2);
+        }
+        if (now + pauseNanos - blockedUntilNanos > 0) {
+            blockedUntilNanos = now + pauseNanos;
+            requestsPerSecond = Math.max(maxRequestsPerSecond * RATE_RECOVERY, requestsPerSecond * FAILURE_DECREASE);
+            tokens = 0;
+            logger.warn("Host {} is throttling requests, pausing for {} ms at {} requests per second", host,
+                    TimeUnit.NANOSECONDS.toMillis(pauseNanos), String.format("%.2f", requestsPerSecond));
+        }
+    }
+
+    private void decrease(Permit permit, long now, double factor) {
+        // requests sent before the last decrease saw the old limit, they must not cut it again
+        if (permit.startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        concurrencyLimit = Math.max(1, concurrencyLimit * factor);
+        lastDecreaseNanos = now;
+        logger.debug("Concurrency limit of host {} decreased to {}", host, String.format("%.2f", concurrencyLimit));
+    }
+
+    /**
+     * The right to send one request to the host. Completing it frees the slot and feeds the outcome of the
+     * request to the controller, only the first completion counts.
+     */
+    public final class Permit {
+
+        private volatile long startNanos;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Restarts the clock of a request which waited for something else after the permit was granted, so that
+         * the wait is not taken for latency of the host.
+         */
+        public void restart() {
+            startNanos = System.nanoTime();
+        }
+
+        public void succeeded() {
+            complete(Outcome.SUCCEEDED, null);
+        }
+
+        public void failed() {
+            complete(Outcome.FAILED, null);
+        }
+
+        /**
+         * @param retryAfter how long the host asked to be left alone for, or null if it did not say
+         */
+        public void throttled(Duration retryAfter) {
+            complete(Outcome.THROTTLED, retryAfter);
+        }
+
+        /**
+         * Completes the permit of a request sent outside of a crawler with the error it failed with, or null if it
+         * succeeded, judged as the crawlers judge their requests: a host answering with a client error did its job.
+         */
+        public void completeWith(Exception error) {
+            if (error instanceof HttpErrorStatusException httpError && httpError.isThrottled()) {
+                throttled(httpError.getRetryAfter());
+            } else if (error == null || error instanceof HttpErrorStatusException httpError && httpError.getStatusCode() < 500) {
+                succeeded();
+            } else {
+                failed();
+            }
+        }
+
+        /**
+         * Frees the slot of a request which was never sent, without feeding anything to the controller.
+         */
+        public void cancelled() {
+            complete(Outcome.CANCELLED, null);
+        }
+
+        private void complete(Outcome outcome, Duration retryAfter) {
+            if (!completed.compareAndSet(false, true)) {
+                return;
+            }
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                inFlight--;
+                switch (outcome) {
+                    case SUCCEEDED -> onSuccess(this, now);
+                    case FAILED -> onFailure(this, now);
+                    case THROTTLED -> onThrottled(this, now, retryAfter);
+                    case CANCELLED -> {
+                    }
+                }
+                ready.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private enum Outcome {
+        SUCCEEDED,
+        FAILED,
+        THROTTLED,
+        CANCELLED
+    }
+}
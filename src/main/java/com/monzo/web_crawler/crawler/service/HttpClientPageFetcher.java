@@ -0,0 +1,236 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking {@link PageFetcher} built on the JDK {@link HttpClient}. A single client is shared
+ * by all crawls, so connections are pooled and reused per host and requests to HTTP/2 hosts are
+ * multiplexed over one connection. No thread is held while waiting for the response headers.
+ * <p>
+ * The content type and status are checked from the response headers before the body is read;
+ * bodies of error, not modified and non-html responses are discarded without being buffered.
+ * Html bodies are parsed on a virtual thread as they arrive, so only the few buffers the client holds
+ * ahead of the parser are in memory. A body longer than {@code crawler.max-body-bytes} is cut short there,
+ * and every byte read counts towards the bytes downloaded by the crawl, and so towards its byte budget.
+ * The time to the response headers, to the end of the body and spent extracting links are recorded
+ * separately, see {@link CrawlMetrics}.
+ * <p>
+ * A whole page, body included, must arrive within {@code crawler.worker-timeout-seconds}, the time its crawler
+ * waits for it. A page which does not, or whose future is cancelled by its crawl, has its request cancelled or its
+ * body closed, which stops the download and frees its connection or stream.
+ */
+@Component
+@ConditionalOnProperty(name = "crawler.fetcher", havingValue = "http-client")
+public class HttpClientPageFetcher implements PageFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientPageFetcher.class);
+
+    private static final int NOT_MODIFIED = 304;
+
+    // parses the html bodies, blocking on each body until it has arrived
+    private final ExecutorService parser = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient httpClient;
+    private final Duration fetchTimeout;
+    private final Duration pageTimeout;
+    private final long maxBodyBytes;
+    private final CrawlMetrics metrics;
+
+    public HttpClientPageFetcher(@Value("${crawler.fetch-timeout-millis:3000}") int fetchTimeoutMillis,
+                                 @Value("${crawler.worker-timeout-seconds:2}") int workerTimeoutSeconds,
+                                 @Value("${crawler.max-body-bytes:10485760}") long maxBodyBytes,
+                                 CrawlMetrics metrics) {
+        this.fetchTimeout = Duration.ofMillis(fetchTimeoutMillis);
+        this.pageTimeout = Duration.ofSeconds(workerTimeoutSeconds);
+        this.maxBodyBytes = maxBodyBytes;
+        this.metrics = metrics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(fetchTimeout)
+                .build();
+    }
+
+    @Override
+    public FetchedPage fetchPage(String path, CrawlStatistics statistics, CachedPage cached) throws IOException, TimeoutException {
+        CompletableFuture<FetchedPage> page = fetchPageAsync(path, statistics, cached);
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            // the crawler gave up on the page, so does its download
+            page.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while fetching document from %s", path));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpTimeoutException) {
+                throw new TimeoutException(String.format("Failed to fetch document from %s within %d ms", path, fetchTimeout.toMillis()));
+            } else if (cause instanceof TimeoutException) {
+                throw new TimeoutException(String.format("Failed to fetch document from %s within %d s", path, pageTimeout.toSeconds()));
+            } else if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(String.format("Failed to fetch document from %s", path), cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetchPageAsync(String path, CrawlStatistics statistics, CachedPage cached) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(path))
+                    .timeout(fetchTimeout)
+                    .GET();
+            if (cached != null && cached.etag() != null) {
+                builder.header("If-None-Match", cached.etag());
+            }
+            if (cached != null && cached.lastModified() != null) {
+                builder.header("If-Modified-Since", cached.lastModified());
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long startTime = System.nanoTime();
+        long deadline = startTime + pageTimeout.toNanos();
+        statistics.recordRequest();
+        CompletableFuture<HttpResponse<InputStream>> sent = httpClient.sendAsync(request, responseInfo -> {
+            metrics.recordTimeToFirstByte(System.nanoTime() - startTime);
+            return bodyHandler(responseInfo);
+        });
+        CompletableFuture<FetchedPage> page = sent.thenApplyAsync(response -> {
+            if (response.statusCode() >= 400) {
+                Duration retryAfter = HttpErrorStatusException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null), Instant.now());
+                throw new CompletionException(new HttpErrorStatusException(response.statusCode(), path, retryAfter));
+            }
+            // redirects have been followed, the response is that of the last url
+            String url = response.uri().toString().equals(path) ? null : response.uri().toString();
+            if (response.statusCode() == NOT_MODIFIED) {
+                logger.debug("Document {} not modified since it was cached", path);
+                return FetchedPage.notModified(url);
+            }
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (response.body() == null) {
+                logger.debug("Skipping non-html document {}", path);
+                metrics.recordFailure(CrawlMetrics.FailureCause.NON_HTML);
+                return new FetchedPage(List.of(), etag, lastModified, false, url, null);
+            }
+            String charset = LinkExtractor.charsetOf(response.headers().firstValue("Content-Type").orElse(null));
+            return extract(path, response, charset, statistics, etag, lastModified, url, deadline);
+        }, parser);
+        page.orTimeout(pageTimeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((fetched, error) -> {
+            if (error != null) {
+                abandon(sent);
+            }
+        });
+        return page;
+    }
+
+    /**
+     * Stops the download of a page which failed, timed out or was cancelled: the request is cancelled if its
+     * response has not arrived, otherwise its body is closed, which ends a read blocked on it.
+     */
+    private static void abandon(CompletableFuture<HttpResponse<InputStream>> sent) {
+        sent.cancel(true);
+        sent.thenAccept(response -> {
+            if (response.body() != null) {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    logger.debug("Failed to close body of {}", response.uri(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Extracts the links of the html body as it arrives. Closing the body stream once the parser is done, or once
+     * the body was cut short, cancels the rest of the download.
+     *
+     * @param deadline the {@link System#nanoTime()} by which the body must have arrived
+     */
+    private FetchedPage extract(String path, HttpResponse<InputStream> response, String charset, CrawlStatistics statistics,
+                                String etag, String lastModified, String url, long deadline) {
+        long extractStart = System.nanoTime();
+        BoundedInputStream bounded = new BoundedInputStream(new CountingInputStream(response.body(), statistics), maxBodyBytes);
+        TimedInputStream body = new TimedInputStream(bounded, deadline);
+        LinkExtractor.PageLinks links;
+        try (body) {
+            links = LinkExtractor.extract(body, charset, response.uri().toString());
+        } catch (IOException | RuntimeException e) {
+            if (body.isReadFailed()) {
+                throw new CompletionException(e);
+            }
+            throw new CompletionException(new PageParseException(path, e));
+        }
+        if (bounded.isTruncated()) {
+            logger.debug("Body of document {} is over {} bytes, extracted the links of its first {} bytes", path, maxBodyBytes, maxBodyBytes);
+        }
+        metrics.recordDownload(body.getReadNanos());
+        metrics.recordParse(System.nanoTime() - extractStart - body.getReadNanos());
+        return new FetchedPage(links.links(), etag, lastModified, false, url, links.canonicalUrl());
+    }
+
+    @Override
+    public InputStream openDocument(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(path))
+                .timeout(fetchTimeout)
+                .GET()
+                .build();
+        statistics.recordRequest();
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (HttpTimeoutException e) {
+            throw new TimeoutException(String.format("Failed to fetch document from %s within %d ms", path, fetchTimeout.toMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while fetching document from %s", path));
+        }
+        if (response.statusCode() >= 400) {
+            response.body().close();
+            Duration retryAfter = HttpErrorStatusException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null), Instant.now());
+            throw new HttpErrorStatusException(response.statusCode(), path, retryAfter);
+        }
+        return new CountingInputStream(response.body(), statistics);
+    }
+
+    /**
+     * Only html bodies of successful responses are read; anything else is discarded as it arrives.
+     */
+    private static HttpResponse.BodySubscriber<InputStream> bodyHandler(HttpResponse.ResponseInfo responseInfo) {
+        String contentType = responseInfo.headers().firstValue("Content-Type").orElse(null);
+        if (responseInfo.statusCode() >= 400 || responseInfo.statusCode() == NOT_MODIFIED || !LinkExtractor.isHtml(contentType)) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        // the body is pulled by the parser, the client only reads ahead of it by a few buffers
+        return HttpResponse.BodySubscribers.ofInputStream();
+    }
+}
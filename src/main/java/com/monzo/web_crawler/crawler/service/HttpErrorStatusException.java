@@ -0,0 +1,65 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Thrown by a {@link PageFetcher} when the server answers with an error status. Carries the status and the
+ * {@code Retry-After} of the response so that a throttled host can be backed off, see {@link PolitenessScheduler}.
+ */
+public class HttpErrorStatusException extends IOException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public HttpErrorStatusException(int statusCode, String path, Duration retryAfter) {
+        super(String.format("HTTP error %d fetching document from %s", statusCode, path));
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return how long the server asked to be left alone for, or null if it did not say
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return whether the server refused the request because it is being sent too many
+     */
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, either a number of seconds or an HTTP date.
+     *
+     * @return the time left until the given date, or null if the header is missing or malformed
+     */
+    public static Duration parseRetryAfter(String header, Instant now) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        String value = header.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try an HTTP date
+        }
+        try {
+            Instant retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return retryAt.isAfter(now) ? Duration.between(now, retryAt) : Duration.ZERO;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Unbounded frontier held entirely on the heap, handing urls out in the order they were added.
+ */
+public class InMemoryFrontier implements Frontier {
+
+    private final LinkedBlockingQueue<QueuedUrl> queue = new LinkedBlockingQueue<>();
+
+    @Override
+    public void add(QueuedUrl url) {
+        queue.add(url);
+    }
+
+    @Override
+    public QueuedUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return queue.size();
+    }
+
+    @Override
+    public void forEach(Consumer<QueuedUrl> consumer) {
+        queue.forEach(consumer);
+    }
+}
@@ -0,0 +1,137 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Blocking {@link PageFetcher} built on Jsoup. Every fetch opens its own connection and holds
+ * the calling thread for the whole round trip; asynchronous fetches run on a virtual thread each.
+ * <p>
+ * The body is parsed as it is read, the time spent waiting on the body is told apart from the time
+ * spent parsing it by timing the reads of the parser, see {@link CrawlMetrics}.
+ */
+@Component
+@ConditionalOnProperty(name = "crawler.fetcher", havingValue = "jsoup", matchIfMissing = true)
+public class JsoupPageFetcher implements PageFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsoupPageFetcher.class);
+
+    private static final int NOT_MODIFIED = 304;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final int fetchTimeoutMillis;
+    private final CrawlMetrics metrics;
+
+    public JsoupPageFetcher(@Value("${crawler.fetch-timeout-millis:3000}") int fetchTimeoutMillis, CrawlMetrics metrics) {
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Fetches the document at the given path with a single request and returns the links within it.
+     * The status and content type are checked from the response headers before the body is read, so
+     * unmodified and non-html documents are dropped without being downloaded. The same body stream is
+     * then handed to the parser.
+     */
+    @Override
+    public FetchedPage fetchPage(String path, CrawlStatistics statistics, CachedPage cached) throws IOException, TimeoutException {
+        try {
+            long startTime = System.nanoTime();
+            statistics.recordRequest();
+            // the jsoup timeout bounds the whole request, including reading the body
+            Connection connection = Jsoup.connect(path).timeout(fetchTimeoutMillis).ignoreContentType(true).ignoreHttpErrors(true);
+            if (cached != null && cached.etag() != null) {
+                connection.header("If-None-Match", cached.etag());
+            }
+            if (cached != null && cached.lastModified() != null) {
+                connection.header("If-Modified-Since", cached.lastModified());
+            }
+            Connection.Response response = connection.execute();
+            // the body has not been read yet
+            metrics.recordTimeToFirstByte(System.nanoTime() - startTime);
+            if (response.statusCode() >= 400) {
+                response.bodyStream().close();
+                Duration retryAfter = HttpErrorStatusException.parseRetryAfter(response.header("Retry-After"), Instant.now());
+                throw new HttpErrorStatusException(response.statusCode(), path, retryAfter);
+            }
+            // redirects have been followed, the response is that of the last url
+            String url = response.url().toString().equals(path) ? null : response.url().toString();
+            if (response.statusCode() == NOT_MODIFIED) {
+                logger.debug("Document {} not modified since it was cached", path);
+                response.bodyStream().close();
+                return FetchedPage.notModified(url);
+            }
+            String etag = response.header("ETag");
+            String lastModified = response.header("Last-Modified");
+            String mimeType = response.contentType();
+            if (!LinkExtractor.isHtml(mimeType)) {
+                logger.debug("Skipping non-html document {}", path);
+                metrics.recordFailure(CrawlMetrics.FailureCause.NON_HTML);
+                response.bodyStream().close();
+                return new FetchedPage(List.of(), etag, lastModified, false, url, null);
+            }
+            LinkExtractor.PageLinks links;
+            long extractStart = System.nanoTime();
+            TimedInputStream body = new TimedInputStream(new CountingInputStream(response.bodyStream(), statistics));
+            try (body) {
+                links = LinkExtractor.extract(body, response.charset(), response.url().toString());
+            } catch (IOException | RuntimeException e) {
+                if (body.isReadFailed()) {
+                    throw e;
+                }
+                throw new PageParseException(path, e);
+            }
+            metrics.recordDownload(body.getReadNanos());
+            metrics.recordParse(System.nanoTime() - extractStart - body.getReadNanos());
+            return new FetchedPage(links.links(), etag, lastModified, false, url, links.canonicalUrl());
+        } catch (SocketTimeoutException e) {
+            throw new TimeoutException(String.format("Failed to fetch document from %s within %d ms", path, fetchTimeoutMillis));
+        }
+    }
+
+    @Override
+    public InputStream openDocument(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
+        try {
+            statistics.recordRequest();
+            Connection.Response response = Jsoup.connect(path).timeout(fetchTimeoutMillis).ignoreContentType(true).ignoreHttpErrors(true)
+                    .maxBodySize(0).execute();
+            if (response.statusCode() >= 400) {
+                response.bodyStream().close();
+                Duration retryAfter = HttpErrorStatusException.parseRetryAfter(response.header("Retry-After"), Instant.now());
+                throw new HttpErrorStatusException(response.statusCode(), path, retryAfter);
+            }
+            return new CountingInputStream(response.bodyStream(), statistics);
+        } catch (SocketTimeoutException e) {
+            throw new TimeoutException(String.format("Failed to fetch document from %s within %d ms", path, fetchTimeoutMillis));
+        }
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetchPageAsync(String path, CrawlStatistics statistics, CachedPage cached) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return fetchPage(path, statistics, cached);
+            } catch (IOException | TimeoutException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,179 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared helpers used by the {@link PageFetcher} implementations to decide whether a response
+ * should be parsed and to extract the hyperlinks from its body.
+ * <p>
+ * Links are extracted with the {@link StreamingLinkExtractor}, which reads the body incrementally
+ * instead of building a DOM. The html parser takes over from the point the streaming extractor cannot follow the
+ * document, and parses the whole body if its declared charset is not supported. Binary bodies served with an html
+ * content type have no links and are not parsed at all.
+ * Along with the links, the canonical url a page declares with {@code <link rel="canonical">} is extracted.
+ */
+public class LinkExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LinkExtractor.class);
+
+    // number of bytes looked at to detect the charset and whether the body is markup
+    private static final int SNIFF_LENGTH = 5 * 1024;
+
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([a-z0-9_\\-:.]+)");
+
+    private LinkExtractor() {
+    }
+
+    public static boolean isHtml(String contentType) {
+        return contentType != null && (contentType.contains("text/") || contentType.contains("/xml") || contentType.endsWith("+xml"));
+    }
+
+    /**
+     * @param contentType value of the Content-Type header, e.g. {@code text/html; charset=UTF-8}
+     * @return the charset declared in the content type, or null to let the parser detect it from the document
+     */
+    public static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.strip();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                String charset = trimmed.substring("charset=".length()).replace("\"", "").replace("'", "").strip();
+                return charset.isEmpty() ? null : charset;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the absolute urls of all hyperlinks within the html body, in document order.
+     *
+     * @param body    the response body, consumed but not closed
+     * @param charset the charset of the body, or null to detect it from the document
+     * @param baseUri the url the body was fetched from, used to resolve relative links
+     */
+    public static List<String> extractLinks(InputStream body, String charset, String baseUri) throws IOException {
+        return extract(body, charset, baseUri).links();
+    }
+
+    /**
+     * Returns the absolute urls of all hyperlinks within the html body, in document order, and its canonical url.
+     *
+     * @param body    the response body, consumed but not closed
+     * @param charset the charset of the body, or null to detect it from the document
+     * @param baseUri the url the body was fetched from, used to resolve relative links
+     */
+    public static PageLinks extract(InputStream body, String charset, String baseUri) throws IOException {
+        BufferedInputStream input = body instanceof BufferedInputStream buffered ? buffered : new BufferedInputStream(body);
+        input.mark(SNIFF_LENGTH);
+        byte[] head = input.readNBytes(SNIFF_LENGTH);
+        input.reset();
+
+        Charset detectedCharset = detectCharset(head, charset);
+        if (detectedCharset == null) {
+            logger.debug("Charset {} of document at {} is not supported, falling back to a full parse", charset, baseUri);
+            return extractFromDom(Jsoup.parse(input, null, baseUri));
+        }
+        if (!looksLikeMarkup(head, detectedCharset)) {
+            logger.debug("Document at {} is binary, not extracting links", baseUri);
+            return new PageLinks(List.of(), null);
+        }
+
+        List<String> links = new ArrayList<>();
+        StreamingLinkExtractor extractor = new StreamingLinkExtractor(new InputStreamReader(input, detectedCharset), baseUri);
+        if (extractor.extract(links::add)) {
+            return new PageLinks(links, extractor.getCanonicalUrl());
+        }
+        logger.debug("Document at {} has a link too long to stream, parsing the rest of it", baseUri);
+        PageLinks rest = extractFromDom(Parser.htmlParser().parseInput(extractor.remainder(), extractor.getBaseUri()));
+        links.addAll(rest.links());
+        return new PageLinks(links, extractor.getCanonicalUrl() != null ? extractor.getCanonicalUrl() : rest.canonicalUrl());
+    }
+
+    /**
+     * Returns the absolute urls of all hyperlinks within the html body by building the full Jsoup DOM.
+     *
+     * @param body    the response body, consumed but not closed
+     * @param charset the charset of the body, or null to detect it from the document
+     * @param baseUri the url the body was fetched from, used to resolve relative links
+     */
+    public static List<String> extractLinksFromDom(InputStream body, String charset, String baseUri) throws IOException {
+        return extractFromDom(Jsoup.parse(body, charset, baseUri)).links();
+    }
+
+    private static PageLinks extractFromDom(Document doc) {
+        Element canonical = doc.selectFirst("link[rel~=(?i)(^|\\s)canonical(\\s|$)][href]");
+        String canonicalUrl = canonical == null ? null : canonical.absUrl("href");
+        return new PageLinks(doc.select("a[href]").eachAttr("abs:href"), canonicalUrl == null || canonicalUrl.isEmpty() ? null : canonicalUrl);
+    }
+
+    /**
+     * Detects the charset the same way the html parser does: a byte order mark wins over the declared
+     * charset, which wins over a {@code <meta charset>} in the head of the document. Defaults to UTF-8.
+     *
+     * @return the charset, or null if the declared charset is not supported
+     */
+    private static Charset detectCharset(byte[] head, String declaredCharset) {
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        String charset = declaredCharset;
+        if (charset == null) {
+            Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT));
+            charset = matcher.find() ? matcher.group(1) : StandardCharsets.UTF_8.name();
+        }
+        try {
+            return Charset.forName(charset);
+        } catch (IllegalArgumentException e) {
+            return declaredCharset == null ? StandardCharsets.UTF_8 : null;
+        }
+    }
+
+    /**
+     * Binary content served with an html content type contains NUL bytes, which markup never does.
+     */
+    private static boolean looksLikeMarkup(byte[] head, Charset charset) {
+        if (charset == StandardCharsets.UTF_16BE || charset == StandardCharsets.UTF_16LE) {
+            return true;
+        }
+        for (byte b : head) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The hyperlinks of a page along with its canonical url.
+     *
+     * @param links        absolute urls of all hyperlinks within the page, in document order
+     * @param canonicalUrl absolute url of the first {@code <link rel="canonical">} of the page, or null if it has none
+     */
+    public record PageLinks(List<String> links, String canonicalUrl) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers the messages of a cluster to nodes registered in the same JVM, so that the behaviour of several nodes
+ * can be run and tested on one machine. As over a network, nodes share nothing through their messages: url
+ * batches are copied and link graphs are passed in their binary form.
+ */
+public class LoopbackClusterTransport implements ClusterTransport {
+
+    private final Map<String, ClusterNode> nodes = new ConcurrentHashMap<>();
+
+    public void register(ClusterNode node) {
+        nodes.put(node.getNodeId(), node);
+    }
+
+    @Override
+    public void startCrawl(String nodeId, String crawlId, URI rootPage, List<String> nodeIds) throws IOException {
+        node(nodeId).startCrawl(crawlId, rootPage, List.copyOf(nodeIds));
+    }
+
+    @Override
+    public void sendUrls(String nodeId, String crawlId, List<URI> urls) throws IOException {
+        node(nodeId).receiveUrls(crawlId, List.copyOf(urls));
+    }
+
+    @Override
+    public ClusterNodeStatus getStatus(String nodeId, String crawlId) throws IOException {
+        return node(nodeId).getStatus(crawlId);
+    }
+
+    @Override
+    public Optional<LinkGraph> finishCrawl(String nodeId, String crawlId) throws IOException {
+        Optional<LinkGraph> graph = node(nodeId).finishCrawl(crawlId);
+        if (graph.isEmpty()) {
+            return graph;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        graph.get().writeTo(new DataOutputStream(bytes));
+        return Optional.of(LinkGraph.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    private ClusterNode node(String nodeId) throws IOException {
+        ClusterNode node = nodes.get(nodeId);
+        if (node == null) {
+            throw new IOException("Unknown cluster node " + nodeId);
+        }
+        return node;
+    }
+}
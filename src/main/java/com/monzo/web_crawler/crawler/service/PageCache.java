@@ -0,0 +1,151 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk cache of fetched pages for incremental re-crawls, kept in {@code crawler.page-cache.directory}.
+ * <p>
+ * For every page served with an {@code ETag} or {@code Last-Modified} header the cache keeps those validators
+ * along with the links extracted from the page and its canonical url, keyed by the canonical url of the page. Re-crawls send them as a
+ * conditional request, and a page answered with 304 Not Modified reuses the cached links without its body being
+ * downloaded or parsed. Pages without validators are not cached as they cannot be revalidated.
+ * <p>
+ * Each page is a file named after the fingerprint of its url, spread over 256 subdirectories. Files are written
+ * to a temporary file which then replaces the previous entry, so concurrent crawls of the same page and crashes
+ * never leave a partial entry behind. A cache which cannot be read or written only costs a full download.
+ */
+@Component
+public class PageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageCache.class);
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+
+    private final boolean enabled;
+    private final Path directory;
+
+    public PageCache(@Value("${crawler.page-cache.enabled:true}") boolean enabled,
+                     @Value("${crawler.page-cache.directory:${java.io.tmpdir}/web-crawler-page-cache}") String directory) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the cached page, or null if the page is not cached or the cache is disabled
+     */
+    public CachedPage get(String url) {
+        if (!enabled) {
+            return null;
+        }
+        Path file = entryFile(url);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            // different urls can share a fingerprint, the entry is only theirs if the url matches too
+            String cachedUrl = readString(in);
+            if (!cachedUrl.equals(url)) {
+                return null;
+            }
+            String etag = readNullableString(in);
+            String lastModified = readNullableString(in);
+            int linkCount = in.readInt();
+            List<String> links = new ArrayList<>(Math.min(linkCount, 1024));
+            for (int i = 0; i < linkCount; i++) {
+                links.add(readString(in));
+            }
+            return new CachedPage(cachedUrl, etag, lastModified, links, readNullableString(in));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read cached page {} from {}", url, file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the page if it has validators, replacing any previous entry of the url.
+     */
+    public void put(String url, FetchedPage page) {
+        if (!enabled || !page.hasValidators()) {
+            return;
+        }
+        Path file = entryFile(url);
+        Path temporary = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, url);
+                writeNullableString(out, page.etag());
+                writeNullableString(out, page.lastModified());
+                out.writeInt(page.links().size());
+                for (String link : page.links()) {
+                    writeString(out, link);
+                }
+                writeNullableString(out, page.canonicalUrl());
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to cache page {} in {}", url, file, e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // the temporary file is overwritten by the next attempt anyway
+            }
+        }
+    }
+
+    private Path entryFile(String url) {
+        String name = String.format("%016x", FingerprintSeenSet.fingerprint(url));
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Corrupt page cache entry, string of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? readString(in) : null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetch layer behind {@link WebService}. Implementations download a single page and return the
+ * absolute urls of the hyperlinks within it. Non-html documents yield no links. Pages can be fetched with a
+ * conditional request, see {@link PageCache}.
+ * <p>
+ * The implementation is chosen with the {@code crawler.fetcher} property.
+ */
+public interface PageFetcher {
+
+    /**
+     * Fetches the page, blocking the calling thread until its links are extracted.
+     */
+    default List<String> fetchLinks(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
+        return fetchPage(path, statistics, null).links();
+    }
+
+    /**
+     * Fetches the page without blocking the calling thread.
+     *
+     * @return a future completed with the page links, or completed exceptionally if the page could not be fetched
+     */
+    default CompletableFuture<List<String>> fetchLinksAsync(String path, CrawlStatistics statistics) {
+        return fetchPageAsync(path, statistics, null).thenApply(FetchedPage::links);
+    }
+
+    /**
+     * Fetches the page, blocking the calling thread until its links are extracted. If a cached copy of the page
+     * is given its validators are sent along, and a page which has not changed since is neither downloaded nor parsed.
+     *
+     * @param cached the page as it was last fetched, or null to fetch it unconditionally
+     */
+    FetchedPage fetchPage(String path, CrawlStatistics statistics, CachedPage cached) throws IOException, TimeoutException;
+
+    /**
+     * Fetches the page without blocking the calling thread, see {@link #fetchPage}.
+     *
+     * @return a future completed with the fetched page, or completed exceptionally if the page could not be fetched
+     */
+    CompletableFuture<FetchedPage> fetchPageAsync(String path, CrawlStatistics statistics, CachedPage cached);
+
+    /**
+     * Fetches a document of any content type, such as a robots.txt or a sitemap, blocking until the response
+     * headers have arrived. The body is read from the returned stream as it arrives, the caller must close it.
+     *
+     * @throws HttpErrorStatusException if the server answered with an error status
+     */
+    InputStream openDocument(String path, CrawlStatistics statistics) throws IOException, TimeoutException;
+}
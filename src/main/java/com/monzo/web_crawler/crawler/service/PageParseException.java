@@ -0,0 +1,13 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown by a {@link PageFetcher} when the body of a page was downloaded but its links could not be extracted.
+ */
+public class PageParseException extends IOException {
+
+    public PageParseException(String path, Throwable cause) {
+        super(String.format("Failed to extract the links of %s", path), cause);
+    }
+}
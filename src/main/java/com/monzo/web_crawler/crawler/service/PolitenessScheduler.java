@@ -0,0 +1,78 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps crawls from overloading the sites they crawl. Every request waits for a permit of its host, handed out
+ * by a {@link HostThrottle} which paces requests with a token bucket of {@code crawler.politeness.requests-per-second},
+ * backs off hosts answering 429 or 503, and adapts the number of concurrent requests to the latency and errors
+ * of the host.
+ * <p>
+ * The throttle of a host is shared by all crawls, so two crawls of the same site do not add up to twice the load.
+ */
+@Component
+public class PolitenessScheduler {
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int initialConcurrency;
+    private final int maxConcurrency;
+    private final double latencyTolerance;
+    private final Duration maxBackoff;
+    private final int maxRetries;
+
+    private final Map<String, HostThrottle> throttles = new ConcurrentHashMap<>();
+
+    public PolitenessScheduler(@Value("${crawler.politeness.requests-per-second:20}") double requestsPerSecond,
+                               @Value("${crawler.politeness.burst:5}") int burst,
+                               @Value("${crawler.politeness.initial-concurrency:4}") int initialConcurrency,
+                               @Value("${crawler.politeness.max-concurrency-per-host:64}") int maxConcurrency,
+                               @Value("${crawler.politeness.latency-tolerance:2.0}") double latencyTolerance,
+                               @Value("${crawler.politeness.max-backoff-seconds:60}") int maxBackoffSeconds,
+                               @Value("${crawler.politeness.max-retries:3}") int maxRetries) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive, was " + requestsPerSecond);
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.initialConcurrency = Math.max(1, initialConcurrency);
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.latencyTolerance = latencyTolerance;
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Waits until a request may be sent to the host of the url.
+     *
+     * @return the permit of the request, which must be completed once the request has finished
+     */
+    public HostThrottle.Permit acquire(URI url) throws InterruptedException {
+        return throttle(url.getHost()).acquire();
+    }
+
+    /**
+     * Slows requests to the host down to one per crawl delay.
+     */
+    public void applyCrawlDelay(String host, Duration crawlDelay) {
+        throttle(host).applyCrawlDelay(crawlDelay);
+    }
+
+    public HostThrottle throttle(String host) {
+        return throttles.computeIfAbsent(host == null ? "" : host, key ->
+                new HostThrottle(key, requestsPerSecond, burst, initialConcurrency, maxConcurrency, latencyTolerance, maxBackoff));
+    }
+
+    /**
+     * @return how many times a page refused by a throttling host is queued again before it counts as failed
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+}
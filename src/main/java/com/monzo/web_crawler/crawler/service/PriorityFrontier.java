@@ -0,0 +1,131 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Frontier held on the heap which hands out the url with the highest score first, see {@link UrlScorer}. Urls with
+ * equal scores are handed out in the order they were added, so scoring by depth crawls the site breadth first.
+ * <p>
+ * Urls are kept in a skip list ordered by score, indexed by url so that the score of a queued url can change as links
+ * to it are found. Adding, polling and rescoring a url only lock the url in the index, so crawlers queueing and
+ * taking urls do not wait on each other.
+ */
+public class PriorityFrontier implements Frontier {
+
+    private final UrlScorer scorer;
+
+    private final ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<>();
+    // the entry of every url in the queue, an entry is only replaced or removed while its url is locked in the index
+    private final Map<URI, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    // only taken by polls waiting for a url, and by adds while such a poll is waiting
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicInteger waitingPolls = new AtomicInteger(0);
+
+    public PriorityFrontier(UrlScorer scorer) {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void add(QueuedUrl url) {
+        Entry entry = new Entry(url, 0, scorer.score(url, 0), sequence.getAndIncrement());
+        entries.compute(url.url(), (key, previous) -> {
+            if (previous != null) {
+                queue.remove(previous);
+            }
+            queue.add(entry);
+            return entry;
+        });
+        // checked after the url is queued, a poll starting to wait meanwhile sees it when it checks the queue
+        if (waitingPolls.get() > 0) {
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void addInLink(URI url) {
+        entries.computeIfPresent(url, (key, entry) -> {
+            // the entry is only missing from the queue if a poll has just taken it
+            if (!queue.remove(entry)) {
+                return entry;
+            }
+            Entry rescored = new Entry(entry.url(), entry.inLinks() + 1, scorer.score(entry.url(), entry.inLinks() + 1), entry.sequence());
+            queue.add(rescored);
+            return rescored;
+        });
+    }
+
+    @Override
+    public QueuedUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        QueuedUrl url = pollFirst();
+        if (url != null || timeout <= 0) {
+            return url;
+        }
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waitingPolls.incrementAndGet();
+        try {
+            while ((url = pollFirst()) == null && remainingNanos > 0) {
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            return url;
+        } finally {
+            waitingPolls.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private QueuedUrl pollFirst() {
+        Entry first = queue.pollFirst();
+        if (first == null) {
+            return null;
+        }
+        entries.remove(first.url().url(), first);
+        return first.url();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public void forEach(Consumer<QueuedUrl> consumer) {
+        for (Entry entry : queue) {
+            consumer.accept(entry.url());
+        }
+    }
+
+    /**
+     * A queued url, ordered by descending score and then by the order urls were added.
+     */
+    private record Entry(QueuedUrl url, int inLinks, double score, long sequence) implements Comparable<Entry> {
+
+        @Override
+        public int compareTo(Entry other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : Long.compare(sequence, other.sequence);
+        }
+    }
+}
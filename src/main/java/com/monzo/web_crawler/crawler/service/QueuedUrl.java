@@ -0,0 +1,21 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.net.URI;
+
+/**
+ * A url waiting in the {@link Frontier}, with what was known of it when it was queued.
+ *
+ * @param url      the url to crawl
+ * @param depth    the number of links followed from the root page to find the url, urls read from sitemaps are one
+ *                 link away
+ * @param priority the priority of the url given by a sitemap, from 0 to 1, or {@link #DEFAULT_PRIORITY}
+ */
+public record QueuedUrl(URI url, int depth, float priority) {
+
+    // the priority of a url which a sitemap does not give one, as set by the sitemap protocol
+    public static final float DEFAULT_PRIORITY = 0.5f;
+
+    public QueuedUrl(URI url, int depth) {
+        this(url, depth, DEFAULT_PRIORITY);
+    }
+}
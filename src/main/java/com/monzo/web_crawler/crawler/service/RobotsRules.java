@@ -0,0 +1,218 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of a robots.txt which apply to this crawler, compiled for matching many urls.
+ * <p>
+ * Parsing follows RFC 9309: the groups naming the user agent of the crawler apply, or the {@code *} groups if
+ * none do. Of all rules matching the path of a url, the longest wins and an allow wins a tie. Rules may use
+ * {@code *} for any sequence of characters and end with {@code $} to match the end of the path. Rules are sorted
+ * by length once, so a url is decided by the first rule that matches it. Plain prefixes, by far the most common
+ * rules, are matched with {@code startsWith}, only rules with wildcards are compiled to regular expressions.
+ * <p>
+ * The {@code Crawl-delay} of the applying group and every {@code Sitemap} of the file are kept as well.
+ */
+public class RobotsRules {
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), null, List.of());
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(List.of(Rule.of("/", false)), null, List.of());
+
+    // RFC 9309 requires at least the first 500 KiB to be parsed, anything beyond is ignored
+    private static final int MAX_ROBOTS_TXT_CHARS = 500 * 1024;
+
+    private final List<Rule> rules;
+    private final Duration crawlDelay;
+    private final List<URI> sitemaps;
+
+    private RobotsRules(List<Rule> rules, Duration crawlDelay, List<URI> sitemaps) {
+        this.rules = rules;
+        this.crawlDelay = crawlDelay;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * Parses a robots.txt, keeping the rules which apply to the given user agent.
+     *
+     * @param userAgent user agent of the crawler, whose product token, the part before any {@code /}, must equal the
+     *                  product token of a user-agent line, in any case, for its group to apply
+     */
+    public static RobotsRules parse(InputStream robotsTxt, String userAgent) throws IOException {
+        String agent = productToken(userAgent);
+        List<Rule> agentRules = new ArrayList<>();
+        List<Rule> wildcardRules = new ArrayList<>();
+        Duration agentCrawlDelay = null;
+        Duration wildcardCrawlDelay = null;
+        boolean agentGroupFound = false;
+        List<URI> sitemaps = new ArrayList<>();
+
+        // the user agents named by the group being read, and whether its rules have started
+        boolean groupMatchesAgent = false;
+        boolean groupMatchesWildcard = false;
+        boolean inRules = false;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(robotsTxt, StandardCharsets.UTF_8));
+        int charsRead = 0;
+        String line;
+        while ((line = reader.readLine()) != null && charsRead < MAX_ROBOTS_TXT_CHARS) {
+            charsRead += line.length() + 1;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (key) {
+                case "user-agent" -> {
+                    if (inRules) {
+                        groupMatchesAgent = false;
+                        groupMatchesWildcard = false;
+                        inRules = false;
+                    }
+                    String token = productToken(value);
+                    if (token.equals("*")) {
+                        groupMatchesWildcard = true;
+                    } else if (!token.isEmpty() && token.equals(agent)) {
+                        groupMatchesAgent = true;
+                        agentGroupFound = true;
+                    }
+                }
+                case "allow", "disallow" -> {
+                    inRules = true;
+                    // an empty disallow allows everything, which is what no rule does too
+                    if (value.isEmpty()) {
+                        continue;
+                    }
+                    Rule rule = Rule.of(value, key.equals("allow"));
+                    if (groupMatchesAgent) {
+                        agentRules.add(rule);
+                    }
+                    if (groupMatchesWildcard) {
+                        wildcardRules.add(rule);
+                    }
+                }
+                case "crawl-delay" -> {
+                    inRules = true;
+                    Duration delay = parseCrawlDelay(value);
+                    if (groupMatchesAgent && delay != null) {
+                        agentCrawlDelay = delay;
+                    }
+                    if (groupMatchesWildcard && delay != null) {
+                        wildcardCrawlDelay = delay;
+                    }
+                }
+                case "sitemap" -> {
+                    try {
+                        sitemaps.add(URI.create(value));
+                    } catch (IllegalArgumentException e) {
+                        // ignore malformed sitemap urls
+                    }
+                }
+                default -> {
+                    // unknown lines are ignored
+                }
+            }
+        }
+
+        List<Rule> rules = new ArrayList<>(agentGroupFound ? agentRules : wildcardRules);
+        rules.sort(Comparator.comparingInt(Rule::length).reversed().thenComparing(rule -> !rule.allow));
+        return new RobotsRules(List.copyOf(rules), agentGroupFound ? agentCrawlDelay : wildcardCrawlDelay, List.copyOf(sitemaps));
+    }
+
+    /**
+     * @return whether the crawler may fetch the url
+     */
+    public boolean isAllowed(URI url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path = url.getRawPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+        if (url.getRawQuery() != null) {
+            path = path + "?" + url.getRawQuery();
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(path)) {
+                return rule.allow;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the delay asked for between requests, or null if there is none
+     */
+    public Duration getCrawlDelay() {
+        return crawlDelay;
+    }
+
+    public List<URI> getSitemaps() {
+        return sitemaps;
+    }
+
+    private static String productToken(String userAgent) {
+        int slash = userAgent.indexOf('/');
+        return (slash < 0 ? userAgent : userAgent.substring(0, slash)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Duration parseCrawlDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            return seconds > 0 ? Duration.ofMillis((long) (seconds * 1000)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A single allow or disallow line. Its length, which decides precedence, is the length of its pattern.
+     */
+    private record Rule(String prefix, Pattern pattern, boolean anchored, int length, boolean allow) {
+
+        private static Rule of(String value, boolean allow) {
+            boolean anchored = value.endsWith("$");
+            String body = anchored ? value.substring(0, value.length() - 1) : value;
+            if (body.indexOf('*') < 0) {
+                return new Rule(body, null, anchored, value.length(), allow);
+            }
+            StringBuilder regex = new StringBuilder();
+            int start = 0;
+            for (int star = body.indexOf('*'); star >= 0; star = body.indexOf('*', start)) {
+                regex.append(Pattern.quote(body.substring(start, star))).append(".*");
+                start = star + 1;
+            }
+            regex.append(Pattern.quote(body.substring(start)));
+            if (anchored) {
+                regex.append('$');
+            }
+            return new Rule(null, Pattern.compile(regex.toString(), Pattern.DOTALL), anchored, value.length(), allow);
+        }
+
+        private boolean matches(String path) {
+            if (pattern != null) {
+                return pattern.matcher(path).lookingAt();
+            }
+            return anchored ? path.equals(prefix) : path.startsWith(prefix);
+        }
+    }
+}
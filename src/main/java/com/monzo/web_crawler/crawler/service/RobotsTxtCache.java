@@ -0,0 +1,150 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches the robots.txt of every host once and keeps its parsed {@link RobotsRules}, shared by all crawls.
+ * <p>
+ * Concurrent lookups of a host which has not been fetched yet wait for the one fetch started by the first of
+ * them. As RFC 9309 asks, a robots.txt which does not exist (4xx) allows everything, while one which could not
+ * be fetched (5xx or unreachable) disallows everything. Fetched rules are kept for {@code crawler.robots.cache-ttl-minutes},
+ * failed fetches are retried after a minute. The {@code Crawl-delay} of a host is applied to its
+ * {@link PolitenessScheduler} throttle.
+ * <p>
+ * A robots.txt is fetched once a permit of its host's throttle is granted, like any page, but it does not take a
+ * fetch slot of the crawl which needed it: it is fetched once per host for all crawls, and the crawler looking it up
+ * has given its own slot back already.
+ */
+@Component
+public class RobotsTxtCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RobotsTxtCache.class);
+
+    private static final long FAILED_FETCH_TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final WebService webService;
+    private final PolitenessScheduler politeness;
+    private final boolean enabled;
+    private final String userAgent;
+    private final long ttlNanos;
+
+    private final Map<String, CachedRules> rulesByOrigin = new ConcurrentHashMap<>();
+
+    public RobotsTxtCache(WebService webService,
+                          PolitenessScheduler politeness,
+                          @Value("${crawler.robots.enabled:true}") boolean enabled,
+                          @Value("${crawler.robots.user-agent:web-crawler}") String userAgent,
+                          @Value("${crawler.robots.cache-ttl-minutes:1440}") int ttlMinutes) {
+        this.webService = webService;
+        this.politeness = politeness;
+        this.enabled = enabled;
+        this.userAgent = userAgent;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+
+    /**
+     * @return the rules of the host of the url, fetching its robots.txt if they are not cached
+     */
+    public RobotsRules rulesFor(URI url, CrawlStatistics statistics) {
+        if (!enabled || url.getScheme() == null || url.getRawAuthority() == null) {
+            return RobotsRules.ALLOW_ALL;
+        }
+        String origin = url.getScheme() + "://" + url.getRawAuthority();
+        while (true) {
+            CachedRules cached = rulesByOrigin.get(origin);
+            if (cached != null && !cached.isExpired(System.nanoTime())) {
+                return cached.rules.join();
+            }
+            CachedRules fetching = new CachedRules(new CompletableFuture<>());
+            boolean won = cached == null
+                    ? rulesByOrigin.putIfAbsent(origin, fetching) == null
+                    : rulesByOrigin.replace(origin, cached, fetching);
+            if (won) {
+                fetching.rules.complete(fetch(origin, url.getHost(), fetching, statistics));
+                return fetching.rules.join();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private RobotsRules fetch(String origin, String host, CachedRules entry, CrawlStatistics statistics) {
+        String robotsUrl = origin + "/robots.txt";
+        RobotsRules rules;
+        try (InputStream body = openDocument(robotsUrl, statistics)) {
+            rules = RobotsRules.parse(body, userAgent);
+            entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+        } catch (InterruptedException e) {
+            // the crawl looking the rules up was cancelled, they are fetched again by the next lookup
+            Thread.currentThread().interrupt();
+            logger.debug("Interrupted while waiting to fetch {}", robotsUrl);
+            entry.expiresAtNanos = System.nanoTime();
+            return RobotsRules.DISALLOW_ALL;
+        } catch (HttpErrorStatusException e) {
+            if (e.getStatusCode() < 500) {
+                logger.debug("No robots.txt at {}, status {}", robotsUrl, e.getStatusCode());
+                rules = RobotsRules.ALLOW_ALL;
+                entry.expiresAtNanos = System.nanoTime() + ttlNanos;
+            } else {
+                logger.warn("Failed to fetch {}, status {}. Not crawling the host until it can be fetched", robotsUrl, e.getStatusCode());
+                rules = RobotsRules.DISALLOW_ALL;
+                entry.expiresAtNanos = System.nanoTime() + FAILED_FETCH_TTL_NANOS;
+            }
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            logger.warn("Failed to fetch {}. Not crawling the host until it can be fetched", robotsUrl, e);
+            rules = RobotsRules.DISALLOW_ALL;
+            entry.expiresAtNanos = System.nanoTime() + FAILED_FETCH_TTL_NANOS;
+        }
+        Duration crawlDelay = rules.getCrawlDelay();
+        if (crawlDelay != null) {
+            politeness.applyCrawlDelay(host, crawlDelay);
+        }
+        return rules;
+    }
+
+    /**
+     * Opens the document once its host accepts another request. The permit is completed as soon as the response
+     * starts, the body is small and read by the crawl.
+     */
+    private InputStream openDocument(String url, CrawlStatistics statistics) throws IOException, TimeoutException, InterruptedException {
+        HostThrottle.Permit permit = politeness.acquire(URI.create(url));
+        try {
+            InputStream body = webService.openDocument(url, statistics);
+            permit.completeWith(null);
+            return body;
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            permit.completeWith(e);
+            throw e;
+        }
+    }
+
+    private static final class CachedRules {
+
+        private final CompletableFuture<RobotsRules> rules;
+        // written by the fetching thread before the rules complete, so read safely by anyone who joined them
+        private volatile long expiresAtNanos;
+
+        private CachedRules(CompletableFuture<RobotsRules> rules) {
+            this.rules = rules;
+        }
+
+        private boolean isExpired(long now) {
+            return rules.isDone() && now - expiresAtNanos > 0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * The urls seen during a single crawl, used to queue every url at most once.
+ * Implementations are thread safe and are closed when the crawl ends.
+ */
+public interface SeenUrlSet extends AutoCloseable {
+
+    /**
+     * Atomically marks the url as seen.
+     *
+     * @return true if the url had not been seen before
+     */
+    boolean add(URI url);
+
+    /**
+     * @return the number of distinct urls seen
+     */
+    long size();
+
+    /**
+     * @return the type of the set, needed to restore it from a checkpoint
+     */
+    SeenUrlSetType type();
+
+    /**
+     * Writes the seen urls to a checkpoint, to be read back by {@link SeenUrlSetFactory#restore}.
+     * Urls added while the set is being written may or may not be included.
+     */
+    void writeTo(DataOutputStream out) throws IOException;
+
+    /**
+     * Releases any resources held by the set.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,89 @@
+package com.monzo.web_crawler.crawler.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Creates the {@link SeenUrlSet} of each crawl according to {@code crawler.seen-set}.
+ * <p>
+ * The fill ratio and estimated false positive probability of the Bloom filters of running crawls are
+ * published as the {@code crawler.seen-urls.bloom-filter.fill-ratio} and
+ * {@code crawler.seen-urls.bloom-filter.false-positive-probability} gauges, reporting the highest
+ * value across crawls.
+ */
+@Component
+public class SeenUrlSetFactory {
+
+    private final SeenUrlSetType type;
+    private final Path bloomFilterDirectory;
+    private final long bloomFilterExpectedUrls;
+    private final double bloomFilterFalsePositiveProbability;
+
+    private final Set<BloomFilterSeenSet> openBloomFilters = ConcurrentHashMap.newKeySet();
+
+    public SeenUrlSetFactory(@Value("${crawler.seen-set:fingerprint}") SeenUrlSetType type,
+                             @Value("${crawler.bloom-filter.directory:${java.io.tmpdir}}") String bloomFilterDirectory,
+                             @Value("${crawler.bloom-filter.expected-urls:1000000}") long bloomFilterExpectedUrls,
+                             @Value("${crawler.bloom-filter.false-positive-probability:0.001}") double bloomFilterFalsePositiveProbability,
+                             MeterRegistry meterRegistry) {
+        this.type = type;
+        this.bloomFilterDirectory = Path.of(bloomFilterDirectory);
+        this.bloomFilterExpectedUrls = bloomFilterExpectedUrls;
+        this.bloomFilterFalsePositiveProbability = bloomFilterFalsePositiveProbability;
+
+        Gauge.builder("crawler.seen-urls.bloom-filter.fill-ratio", openBloomFilters, highest(BloomFilterSeenSet::fillRatio))
+                .description("Fraction of the bits set in the seen url Bloom filters of running crawls")
+                .register(meterRegistry);
+        Gauge.builder("crawler.seen-urls.bloom-filter.false-positive-probability", openBloomFilters, highest(BloomFilterSeenSet::estimatedFalsePositiveProbability))
+                .description("Estimated probability of an unseen url being skipped by the seen url Bloom filters of running crawls")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return a new, empty seen-set for a crawl, to be closed when the crawl ends
+     */
+    public SeenUrlSet create() {
+        return switch (type) {
+            case FINGERPRINT -> new FingerprintSeenSet();
+            case BLOOM_FILTER -> createBloomFilter();
+        };
+    }
+
+    /**
+     * Reads back a seen-set written to a checkpoint by {@link SeenUrlSet#writeTo}, whatever type is configured now.
+     */
+    public SeenUrlSet restore(SeenUrlSetType checkpointType, DataInputStream in) throws IOException {
+        return switch (checkpointType) {
+            case FINGERPRINT -> FingerprintSeenSet.readFrom(in);
+            case BLOOM_FILTER -> {
+                BloomFilterSeenSet bloomFilter = BloomFilterSeenSet.readFrom(in, bloomFilterDirectory, openBloomFilters::remove);
+                openBloomFilters.add(bloomFilter);
+                yield bloomFilter;
+            }
+        };
+    }
+
+    private SeenUrlSet createBloomFilter() {
+        try {
+            BloomFilterSeenSet bloomFilter = new BloomFilterSeenSet(bloomFilterDirectory, bloomFilterExpectedUrls,
+                    bloomFilterFalsePositiveProbability, openBloomFilters::remove);
+            openBloomFilters.add(bloomFilter);
+            return bloomFilter;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create bloom filter in %s".formatted(bloomFilterDirectory), e);
+        }
+    }
+
+    private static ToDoubleFunction<Set<BloomFilterSeenSet>> highest(ToDoubleFunction<BloomFilterSeenSet> value) {
+        return bloomFilters -> bloomFilters.stream().mapToDouble(value).max().orElse(0);
+    }
+}
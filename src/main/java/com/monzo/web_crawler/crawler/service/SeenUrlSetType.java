@@ -0,0 +1,19 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Determines how the urls seen during a crawl are tracked, see {@link SeenUrlSetFactory}.
+ */
+public enum SeenUrlSetType {
+
+    /**
+     * Exact set of 64-bit url fingerprints held on the heap, see {@link FingerprintSeenSet}.
+     */
+    FINGERPRINT,
+
+    /**
+     * Scalable Bloom filter backed by a memory-mapped file, for crawls of millions of pages.
+     * Heap usage stays flat at the cost of a configurable false positive probability of skipping
+     * a url which has not been seen, see {@link BloomFilterSeenSet}.
+     */
+    BLOOM_FILTER
+}
@@ -0,0 +1,227 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams the page urls listed by sitemaps, so that a crawl can queue the pages of a site without first
+ * discovering them through links.
+ * <p>
+ * Sitemaps are parsed with StAX as they download, each {@code <url>} being handed on with its {@code <priority>}
+ * as soon as it is read, so memory use does not depend on the size of the sitemap. Sitemap indexes are followed into the sitemaps they
+ * list, and gzipped sitemaps are decompressed. At most {@code crawler.sitemaps.max-urls} urls are read per crawl.
+ * <p>
+ * A sitemap is fetched once a permit of its host's throttle is granted, like any page, and the permit is given back
+ * as soon as its response starts, so reading a sitemap index does not hold a permit while it fetches the sitemaps it
+ * lists. Sitemaps do not take the fetch slots of the crawl, their seeder runs alongside its crawlers.
+ */
+@Component
+public class SitemapReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SitemapReader.class);
+
+    // the sitemap protocol does not allow an index to list indexes, this leaves room for sites which nest them anyway
+    private static final int MAX_INDEX_DEPTH = 3;
+
+    private final WebService webService;
+    private final PolitenessScheduler politeness;
+    private final boolean enabled;
+    private final long maxUrls;
+    private final XMLInputFactory xmlInputFactory;
+
+    public SitemapReader(WebService webService,
+                         PolitenessScheduler politeness,
+                         @Value("${crawler.sitemaps.enabled:true}") boolean enabled,
+                         @Value("${crawler.sitemaps.max-urls:1000000}") long maxUrls) {
+        this.webService = webService;
+        this.politeness = politeness;
+        this.enabled = enabled;
+        this.maxUrls = maxUrls;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        // sitemaps come from the sites being crawled, so nothing outside of the document may be resolved
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the sitemaps, following sitemap indexes, and hands every page url to the consumer as it is read.
+     * Sitemaps which cannot be fetched or parsed are skipped.
+     *
+     * @return the number of page urls read
+     */
+    public long read(Iterable<URI> sitemaps, CrawlStatistics statistics, Consumer<URI> urlConsumer) throws InterruptedException {
+        return readWithPriorities(sitemaps, statistics, (url, priority) -> urlConsumer.accept(url));
+    }
+
+    /**
+     * Reads the sitemaps as {@link #read} does, handing every page url to the consumer with its priority, or
+     * {@link QueuedUrl#DEFAULT_PRIORITY} if the sitemap does not give it one.
+     *
+     * @return the number of page urls read
+     */
+    public long readWithPriorities(Iterable<URI> sitemaps, CrawlStatistics statistics, UrlConsumer urlConsumer) throws InterruptedException {
+        Reading reading = new Reading(statistics, urlConsumer);
+        for (URI sitemap : sitemaps) {
+            reading.read(sitemap, 0);
+        }
+        return reading.urlCount;
+    }
+
+    /**
+     * State of one call to {@link #read}, shared by the sitemaps it follows.
+     */
+    private final class Reading {
+
+        private final CrawlStatistics statistics;
+        private final UrlConsumer urlConsumer;
+        private final Set<URI> visitedSitemaps = new HashSet<>();
+        private long urlCount;
+
+        private Reading(CrawlStatistics statistics, UrlConsumer urlConsumer) {
+            this.statistics = statistics;
+            this.urlConsumer = urlConsumer;
+        }
+
+        private void read(URI sitemap, int depth) throws InterruptedException {
+            if (urlCount >= maxUrls || depth > MAX_INDEX_DEPTH || !visitedSitemaps.add(sitemap)) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Interrupted while reading sitemaps");
+            }
+            try (InputStream body = openDocument(sitemap);
+                 InputStream content = decompress(body)) {
+                XMLStreamReader xml = xmlInputFactory.createXMLStreamReader(content);
+                try {
+                    parse(sitemap, xml, depth);
+                } finally {
+                    xml.close();
+                }
+            } catch (HttpErrorStatusException e) {
+                logger.debug("No sitemap at {}, status {}", sitemap, e.getStatusCode());
+            } catch (IOException | TimeoutException | XMLStreamException | RuntimeException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Interrupted while reading sitemap " + sitemap);
+                }
+                logger.warn("Failed to read sitemap {}", sitemap, e);
+            }
+        }
+
+        private void parse(URI sitemap, XMLStreamReader xml, int depth) throws XMLStreamException, InterruptedException {
+            boolean index = false;
+            long sitemapUrlCount = 0;
+            // the page of the <url> being read, handed on at its end tag as its priority may follow its location
+            URI page = null;
+            float priority = QueuedUrl.DEFAULT_PRIORITY;
+            while (xml.hasNext() && urlCount < maxUrls) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("url")) {
+                    if (page != null) {
+                        urlConsumer.accept(page, priority);
+                        urlCount++;
+                        sitemapUrlCount++;
+                    }
+                    page = null;
+                    priority = QueuedUrl.DEFAULT_PRIORITY;
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedException("Interrupted while reading sitemap " + sitemap);
+                    }
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String element = xml.getLocalName();
+                if (element.equals("sitemapindex")) {
+                    index = true;
+                } else if (element.equals("loc") && index) {
+                    // the query of a sitemap url may select a page of the sitemap, so it is not canonicalized
+                    URI child = resolve(sitemap, xml.getElementText().trim());
+                    if (child != null) {
+                        read(child, depth + 1);
+                    }
+                } else if (element.equals("loc")) {
+                    page = URIUtils.createUri(sitemap, xml.getElementText().trim());
+                } else if (element.equals("priority")) {
+                    priority = parsePriority(xml.getElementText().trim());
+                }
+            }
+            logger.debug("Read {} urls from sitemap {}", sitemapUrlCount, sitemap);
+        }
+
+        private InputStream openDocument(URI sitemap) throws IOException, TimeoutException, InterruptedException {
+            HostThrottle.Permit permit = politeness.acquire(sitemap);
+            try {
+                InputStream body = webService.openDocument(sitemap.toString(), statistics);
+                permit.completeWith(null);
+                return body;
+            } catch (IOException | TimeoutException | RuntimeException e) {
+                permit.completeWith(e);
+                throw e;
+            }
+        }
+    }
+
+    private static float parsePriority(String priority) {
+        try {
+            float value = Float.parseFloat(priority);
+            return value >= 0 && value <= 1 ? value : QueuedUrl.DEFAULT_PRIORITY;
+        } catch (NumberFormatException e) {
+            return QueuedUrl.DEFAULT_PRIORITY;
+        }
+    }
+
+    private static URI resolve(URI sitemap, String loc) {
+        try {
+            return sitemap.resolve(loc);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Skipping invalid sitemap url {}", loc);
+            return null;
+        }
+    }
+
+    /**
+     * Sitemaps ending in .gz are usually served as gzip files rather than with a gzip content encoding, so
+     * the body is checked for the gzip magic number instead of trusting the url or headers.
+     */
+    private static InputStream decompress(InputStream body) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(body);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(buffered);
+        }
+        return buffered;
+    }
+
+    /**
+     * Receives the page urls read from sitemaps.
+     */
+    @FunctionalInterface
+    public interface UrlConsumer {
+
+        void accept(URI url, float priority);
+    }
+}
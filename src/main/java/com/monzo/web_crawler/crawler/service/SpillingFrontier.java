@@ -0,0 +1,264 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Frontier which keeps at most {@code hotWindowSize} urls on the heap. Once the hot window is full,
+ * further urls are appended to memory-mapped segment files and read back in order as the hot window
+ * drains, so heap usage is bounded however far discovery runs ahead of fetching.
+ * <p>
+ * Urls are handed out in the order they were added: while any url is spilled, new urls are spilled
+ * behind it, and the hot window is only refilled from the oldest segment. Each segment file holds
+ * records of the depth, priority and length prefixed UTF-8 url of each queued url and is deleted as soon as it has
+ * been read.
+ */
+public class SpillingFrontier implements Frontier {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillingFrontier.class);
+
+    // depth, priority and url length
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Float.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int hotWindowSize;
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final ArrayDeque<QueuedUrl> hotWindow = new ArrayDeque<>();
+    // segments in the order they were written, the first is being read and the last is being written
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long spilledCount;
+    private long segmentCount;
+
+    /**
+     * @param parentDirectory directory the segment files are created in, within a directory of their own
+     * @param hotWindowSize   maximum number of urls held on the heap
+     * @param segmentSize     size in bytes of each segment file
+     */
+    public SpillingFrontier(Path parentDirectory, int hotWindowSize, int segmentSize) throws IOException {
+        if (hotWindowSize <= 0) {
+            throw new IllegalArgumentException("Hot window size must be positive, was " + hotWindowSize);
+        }
+        this.directory = Files.createTempDirectory(parentDirectory, "frontier-");
+        this.hotWindowSize = hotWindowSize;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void add(QueuedUrl url) {
+        lock.lock();
+        try {
+            if (spilledCount == 0 && hotWindow.size() < hotWindowSize) {
+                hotWindow.addLast(url);
+            } else {
+                spill(url);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public QueuedUrl poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (hotWindow.isEmpty() && spilledCount == 0) {
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                remainingNanos = notEmpty.awaitNanos(remainingNanos);
+            }
+            if (hotWindow.isEmpty()) {
+                refillHotWindow();
+            }
+            return hotWindow.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return hotWindow.size() + spilledCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<QueuedUrl> consumer) {
+        lock.lock();
+        try {
+            hotWindow.forEach(consumer);
+            for (Segment segment : segments) {
+                segment.forEachUnread(consumer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of urls currently held in segment files rather than on the heap
+     */
+    public long spilledCount() {
+        lock.lock();
+        try {
+            return spilledCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes all segment files and their directory, discarding any urls still spilled.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.delete();
+            }
+            segments.clear();
+            spilledCount = 0;
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warn("Failed to delete frontier directory {}", directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void spill(QueuedUrl url) {
+        byte[] record = url.url().toString().getBytes(StandardCharsets.UTF_8);
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.fits(record)) {
+            // a url longer than a segment gets a segment of its own
+            segment = newSegment(Math.max(segmentSize, RECORD_HEADER_BYTES + record.length));
+            segments.addLast(segment);
+        }
+        segment.write(url, record);
+        spilledCount++;
+    }
+
+    private void refillHotWindow() {
+        while (hotWindow.size() < hotWindowSize && spilledCount > 0) {
+            Segment segment = segments.peekFirst();
+            if (!segment.hasUnread()) {
+                segments.removeFirst().delete();
+                continue;
+            }
+            hotWindow.addLast(segment.read());
+            spilledCount--;
+        }
+        // a fully read segment is deleted straight away, unless it is still being written to
+        Segment oldest = segments.peekFirst();
+        if (oldest != null && !oldest.hasUnread() && segments.size() > 1) {
+            segments.removeFirst().delete();
+        }
+    }
+
+    private Segment newSegment(int size) {
+        Path file = directory.resolve("segment-%d".formatted(segmentCount++));
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            logger.debug("Spilling frontier to {}", file);
+            return new Segment(file, channel, buffer);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create frontier segment %s".formatted(file), e);
+        }
+    }
+
+    /**
+     * An append only file of length prefixed records, read back from the start.
+     */
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private boolean fits(byte[] record) {
+            return buffer.capacity() - writePosition >= RECORD_HEADER_BYTES + record.length;
+        }
+
+        private void write(QueuedUrl url, byte[] record) {
+            buffer.putInt(writePosition, url.depth());
+            buffer.putFloat(writePosition + Integer.BYTES, url.priority());
+            buffer.putInt(writePosition + Integer.BYTES + Float.BYTES, record.length);
+            buffer.put(writePosition + RECORD_HEADER_BYTES, record);
+            writePosition += RECORD_HEADER_BYTES + record.length;
+        }
+
+        private boolean hasUnread() {
+            return readPosition < writePosition;
+        }
+
+        private QueuedUrl read() {
+            QueuedUrl url = readAt(readPosition);
+            readPosition = next(readPosition);
+            return url;
+        }
+
+        private void forEachUnread(Consumer<QueuedUrl> consumer) {
+            for (int position = readPosition; position < writePosition; position = next(position)) {
+                consumer.accept(readAt(position));
+            }
+        }
+
+        private int next(int position) {
+            return position + RECORD_HEADER_BYTES + buffer.getInt(position + Integer.BYTES + Float.BYTES);
+        }
+
+        private QueuedUrl readAt(int position) {
+            byte[] record = new byte[buffer.getInt(position + Integer.BYTES + Float.BYTES)];
+            buffer.get(position + RECORD_HEADER_BYTES, record);
+            return new QueuedUrl(URI.create(new String(record, StandardCharsets.UTF_8)), buffer.getInt(position), buffer.getFloat(position + Integer.BYTES));
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete frontier segment {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * SAX style extractor of {@code a[href]} links, and of the canonical url of the document declared with
+ * {@code <link rel="canonical">}. The document is read incrementally through a fixed
+ * size buffer and every href is resolved and emitted as soon as its tag has been read, without
+ * building a DOM. Memory per page is bounded by the buffer and {@link #MAX_TOKEN_LENGTH}.
+ * <p>
+ * Only the parts of the html tokenizer that affect which hrefs are seen are implemented: tags and
+ * their attributes, comments and other markup declarations, and raw text elements such as
+ * {@code <script>} whose content is not markup. Entities in attribute values are decoded and links
+ * are resolved with {@link URIUtils#resolve}, against the first {@code <base href>} if there is one.
+ * <p>
+ * An href or rel of a link longer than {@link #MAX_TOKEN_LENGTH} cannot be followed without buffering it, so reading
+ * stops at its tag and the rest of the document, from that tag on, is left to the html parser through
+ * {@link #remainder()}.
+ * <p>
+ * Instances hold parsing state and are not thread safe; create one per document.
+ */
+public class StreamingLinkExtractor {
+
+    // attribute names and values longer than this are truncated rather than buffered
+    static final int MAX_TOKEN_LENGTH = 16 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int EOF = -1;
+
+    // elements whose content is text rather than markup
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes"};
+
+    private static final String[] COMMON_ENTITIES = {"&amp;", "&quot;", "&#39;", "&apos;", "&lt;", "&gt;"};
+    private static final char[] COMMON_ENTITY_CHARS = {'&', '"', '\'', '\'', '<', '>'};
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int pushedBack = EOF;
+
+    // raw text of the start tag being read, kept so that the document can be handed over from that tag on; the part
+    // still in the buffer starts at tagStart, which is -1 when no tag is being read
+    private final StringBuilder tagText = new StringBuilder();
+    private int tagStart = -1;
+    private boolean truncated;
+
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+
+    private String baseUri;
+    private boolean baseSet;
+    private String canonicalUrl;
+
+    public StreamingLinkExtractor(Reader reader, String baseUri) {
+        this.reader = reader;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * Reads the document, passing each resolved link to the consumer in document order.
+     *
+     * @return false if reading stopped at a link too long to follow, the rest of the document is then left in
+     * {@link #remainder()}
+     */
+    public boolean extract(Consumer<String> linkConsumer) throws IOException {
+        int c;
+        while ((c = next()) != EOF) {
+            if (c != '<') {
+                continue;
+            }
+            c = next();
+            if (c == '!') {
+                skipMarkupDeclaration();
+            } else if (c == '?') {
+                skipPast('>');
+            } else if (c == '/') {
+                skipPast('>');
+            } else if (isAsciiLetter(c)) {
+                pushedBack = c;
+                tagText.setLength(0);
+                tagText.append('<').append((char) c);
+                tagStart = position;
+                TagEnd end = readStartTag(linkConsumer);
+                if (end == TagEnd.TOO_LONG) {
+                    return false;
+                }
+                tagStart = -1;
+                if (end == TagEnd.TEXT) {
+                    return true;
+                }
+            } else if (c != EOF) {
+                // a '<' that does not start a tag is text, the character after it may start one
+                pushedBack = c;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the rest of the document after {@link #extract} stopped at a link too long to follow, starting with the
+     * tag of that link
+     */
+    public Reader remainder() throws IOException {
+        char[] read = new char[tagText.length() + limit - tagStart];
+        tagText.getChars(0, tagText.length(), read, 0);
+        System.arraycopy(buffer, tagStart, read, tagText.length(), limit - tagStart);
+        PushbackReader remainder = new PushbackReader(reader, read.length);
+        remainder.unread(read);
+        return new BufferedReader(remainder);
+    }
+
+    /**
+     * @return the url links are resolved against, the page url or the first {@code <base href>} read
+     */
+    public String getBaseUri() {
+        return baseUri;
+    }
+
+    /**
+     * @return the absolute url of the first {@code <link rel="canonical">} read, or null if there was none
+     */
+    public String getCanonicalUrl() {
+        return canonicalUrl;
+    }
+
+    /**
+     * Reads a start tag and its attributes, emitting the link if it is an anchor with an href.
+     *
+     * @return how reading the document goes on after the tag
+     */
+    private TagEnd readStartTag(Consumer<String> linkConsumer) throws IOException {
+        tagName.setLength(0);
+        int c;
+        while ((c = next()) != EOF && !isWhitespace(c) && c != '>' && c != '/') {
+            if (tagName.length() < MAX_TOKEN_LENGTH) {
+                tagName.append(Character.toLowerCase((char) c));
+            }
+        }
+        pushedBack = c;
+
+        // tag names are compared in place, most tags are neither anchors nor raw text so no string is needed
+        boolean anchor = "a".contentEquals(tagName);
+        boolean base = !baseSet && "base".contentEquals(tagName);
+        boolean link = canonicalUrl == null && "link".contentEquals(tagName);
+        String href = null;
+        boolean canonical = false;
+
+        while (true) {
+            c = next();
+            while (isWhitespace(c) || c == '/') {
+                c = next();
+            }
+            if (c == '>') {
+                break;
+            }
+            if (c == EOF) {
+                // like the html parser, a tag cut off by the end of the document is dropped
+                return TagEnd.TEXT;
+            }
+            pushedBack = c;
+            boolean hasValue = readAttribute();
+            // like the html parser, only the first href of a tag counts
+            if ((anchor || base || link) && href == null && "href".contentEquals(attributeName)) {
+                if (truncated) {
+                    return TagEnd.TOO_LONG;
+                }
+                href = hasValue ? attributeValue.toString() : "";
+            } else if (link && "rel".contentEquals(attributeName)) {
+                if (truncated) {
+                    return TagEnd.TOO_LONG;
+                }
+                canonical = hasValue && isCanonicalRel(attributeValue.toString());
+            }
+        }
+
+        if (href != null) {
+            String resolved = URIUtils.resolve(baseUri, decode(href));
+            if (base) {
+                if (!resolved.isEmpty()) {
+                    baseUri = resolved;
+                    baseSet = true;
+                }
+            } else if (canonical) {
+                if (!resolved.isEmpty()) {
+                    canonicalUrl = resolved;
+                }
+            } else if (anchor && !resolved.isEmpty()) {
+                linkConsumer.accept(resolved);
+            }
+        }
+
+        if ("plaintext".contentEquals(tagName)) {
+            return TagEnd.TEXT;
+        }
+        tagStart = -1;
+        for (String rawTextElement : RAW_TEXT_ELEMENTS) {
+            if (rawTextElement.contentEquals(tagName)) {
+                skipRawText(rawTextElement);
+                break;
+            }
+        }
+        return TagEnd.MARKUP;
+    }
+
+    /**
+     * Reads one attribute into {@link #attributeName} and {@link #attributeValue}.
+     *
+     * @return whether the attribute has a value
+     */
+    private boolean readAttribute() throws IOException {
+        attributeName.setLength(0);
+        attributeValue.setLength(0);
+        truncated = false;
+
+        // the first character is always part of the name, even if it is '='
+        int c = next();
+        appendBounded(attributeName, Character.toLowerCase((char) c));
+        while ((c = next()) != EOF && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+            appendBounded(attributeName, Character.toLowerCase((char) c));
+        }
+        while (isWhitespace(c)) {
+            c = next();
+        }
+        if (c != '=') {
+            pushedBack = c;
+            return false;
+        }
+
+        c = next();
+        while (isWhitespace(c)) {
+            c = next();
+        }
+        if (c == '"' || c == '\'') {
+            int quote = c;
+            while ((c = next()) != EOF && c != quote) {
+                appendBounded(attributeValue, (char) c);
+            }
+        } else if (c == '>' || c == EOF) {
+            pushedBack = c;
+        } else {
+            appendBounded(attributeValue, (char) c);
+            while ((c = next()) != EOF && !isWhitespace(c) && c != '>') {
+                appendBounded(attributeValue, (char) c);
+            }
+            pushedBack = c;
+        }
+        return true;
+    }
+
+    /**
+     * Skips a comment, doctype or other {@code <!...>} declaration.
+     */
+    private void skipMarkupDeclaration() throws IOException {
+        int c = next();
+        if (c == '-') {
+            c = next();
+            if (c == '-') {
+                skipComment();
+                return;
+            }
+        }
+        if (c != '>' && c != EOF) {
+            skipPast('>');
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        // "<!-->" and "<!--->" are complete comments
+        boolean start = true;
+        while ((c = next()) != EOF) {
+            if (c == '>' && (dashes >= 2 || start)) {
+                return;
+            }
+            if (c == '-') {
+                dashes++;
+            } else {
+                dashes = 0;
+                start = false;
+            }
+        }
+    }
+
+    /**
+     * Skips the content of a raw text element up to and including its end tag.
+     */
+    private void skipRawText(String name) throws IOException {
+        int c;
+        while ((c = next()) != EOF) {
+            if (c != '<') {
+                continue;
+            }
+            c = next();
+            if (c != '/') {
+                pushedBack = c;
+                continue;
+            }
+            int matched = 0;
+            while (matched < name.length() && (c = next()) != EOF && Character.toLowerCase((char) c) == name.charAt(matched)) {
+                matched++;
+            }
+            if (matched == name.length()) {
+                c = next();
+                if (isWhitespace(c) || c == '/' || c == '>') {
+                    if (c != '>') {
+                        skipPast('>');
+                    }
+                    return;
+                }
+            }
+            pushedBack = c;
+        }
+    }
+
+    private void skipPast(char target) throws IOException {
+        int c;
+        while ((c = next()) != EOF && c != target) {
+            // skip
+        }
+    }
+
+    private int next() throws IOException {
+        if (pushedBack != EOF) {
+            int c = pushedBack;
+            pushedBack = EOF;
+            return c;
+        }
+        if (position == limit) {
+            if (tagStart >= 0) {
+                tagText.append(buffer, tagStart, limit - tagStart);
+                tagStart = 0;
+            }
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Decodes the entities of an attribute value. The handful of entities common in urls are decoded
+     * in place, anything else is left to the Jsoup entity decoder which is far more expensive to set up.
+     */
+    private static String decode(String value) {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        decoded.append(value, 0, ampersand);
+        int i = ampersand;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c != '&') {
+                decoded.append(c);
+                i++;
+                continue;
+            }
+            int entity = commonEntity(value, i);
+            if (entity < 0) {
+                return Parser.unescapeEntities(value, true);
+            }
+            decoded.append(COMMON_ENTITY_CHARS[entity]);
+            i += COMMON_ENTITIES[entity].length();
+        }
+        return decoded.toString();
+    }
+
+    private static int commonEntity(String value, int offset) {
+        for (int i = 0; i < COMMON_ENTITIES.length; i++) {
+            if (value.startsWith(COMMON_ENTITIES[i], offset)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void appendBounded(StringBuilder builder, char c) {
+        if (builder.length() < MAX_TOKEN_LENGTH) {
+            builder.append(c);
+        } else {
+            truncated = true;
+        }
+    }
+
+    /**
+     * @return whether the space separated link types of a rel attribute include canonical, in any case
+     */
+    private static boolean isCanonicalRel(String rel) {
+        int start = 0;
+        while (start < rel.length()) {
+            while (start < rel.length() && isWhitespace(rel.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < rel.length() && !isWhitespace(rel.charAt(end))) {
+                end++;
+            }
+            if (end - start == "canonical".length() && rel.regionMatches(true, start, "canonical", 0, end - start)) {
+                return true;
+            }
+            start = end;
+        }
+        return false;
+    }
+
+    private static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+
+    private enum TagEnd {
+        // the document goes on with markup
+        MARKUP,
+        // the rest of the document is plain text and reading should stop
+        TEXT,
+        // an href or rel the tag was read for is longer than MAX_TOKEN_LENGTH
+        TOO_LONG
+    }
+}
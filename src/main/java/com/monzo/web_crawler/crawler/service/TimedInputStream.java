@@ -0,0 +1,80 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+
+/**
+ * Input stream wrapper which adds up the time spent reading from the underlying stream, so that the time a parser
+ * reading it spends waiting for the body to arrive can be told apart from the time it spends parsing. A failed read
+ * is remembered, as an error thrown by the parser is then a download error rather than a parse error.
+ * <p>
+ * Reads fail once the deadline of the body has passed, so a body trickling in never keeps its parser busy for
+ * longer. A read blocked past the deadline is only ended by closing the underlying stream.
+ */
+class TimedInputStream extends FilterInputStream {
+
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private long readNanos;
+    private boolean readFailed;
+
+    TimedInputStream(InputStream in) {
+        super(in);
+        this.hasDeadline = false;
+        this.deadlineNanos = 0;
+    }
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} by which the whole body must have been read
+     */
+    TimedInputStream(InputStream in, long deadlineNanos) {
+        super(in);
+        this.hasDeadline = true;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        checkDeadline(start);
+        try {
+            return super.read();
+        } catch (IOException e) {
+            readFailed = true;
+            throw e;
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        checkDeadline(start);
+        try {
+            return super.read(b, off, len);
+        } catch (IOException e) {
+            readFailed = true;
+            throw e;
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void checkDeadline(long now) throws HttpTimeoutException {
+        if (hasDeadline && now - deadlineNanos > 0) {
+            readFailed = true;
+            throw new HttpTimeoutException("body not received before its deadline");
+        }
+    }
+
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    boolean isReadFailed() {
+        return readFailed;
+    }
+}
@@ -1,53 +1,179 @@
 package com.monzo.web_crawler.crawler.service;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.client.utils.URIBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class URIUtils {
     private static final Logger logger = LoggerFactory.getLogger(URIUtils.class);
 
-    public static URI createUri(URI basePath, String url) {
-        String href = url.strip().replaceAll("\\s+", "%20");
+    // idle canonicalizers, taken for a single link and given back; canonicalizing never blocks, so no more are
+    // created than there are threads canonicalizing at once, rather than one per crawler thread
+    private static final Queue<UrlCanonicalizer> canonicalizers = new ConcurrentLinkedQueue<>();
 
+    /**
+     * Resolves a link found on a page against the page url and returns it in canonical form,
+     * see {@link UrlCanonicalizer}.
+     *
+     * @return the canonical url, or null if the link is not a valid http or https url
+     */
+    public static URI createUri(URI basePath, String url) {
+        UrlCanonicalizer canonicalizer = canonicalizers.poll();
+        if (canonicalizer == null) {
+            canonicalizer = new UrlCanonicalizer();
+        }
         URI uri;
         try {
-            uri = URI.create(href);
-        } catch (Exception e) {
-            logger.debug("Skipping invalid url {}", href);
-            return null;
+            uri = canonicalizer.canonicalize(basePath, url);
+        } finally {
+            canonicalizers.offer(canonicalizer);
+        }
+        if (uri == null) {
+            logger.debug("Skipping invalid or non-http/https url {}", url);
         }
+        return uri;
+    }
 
-        // to handle relative paths like ./document.html
-        if (!uri.isAbsolute()) {
-            logger.trace("Adding relative path {} to base path {}", href, basePath);
-            uri = org.apache.http.client.utils.URIUtils.resolve(basePath, uri);
+    /**
+     * Resolves a link found on a page against the url of the page as the html parser does, following RFC 3986 but
+     * neither validating nor encoding the link: control characters are removed, surrounding whitespace trimmed and
+     * dot segments removed from the path.
+     *
+     * @param base the absolute url the link is relative to
+     * @param href the link as found on the page
+     * @return the absolute link, or an empty string if the base is not an absolute url and the link is relative
+     */
+    public static String resolve(String base, String href) {
+        String link = stripControlCharacters(href).strip();
+        int linkSchemeEnd = schemeEnd(link);
+        if (linkSchemeEnd > 0) {
+            return link.substring(0, linkSchemeEnd).toLowerCase(Locale.ROOT) + removeDotSegments(link.substring(linkSchemeEnd));
+        }
+        int baseSchemeEnd = schemeEnd(base);
+        if (baseSchemeEnd <= 0) {
+            return "";
+        }
+        String scheme = base.substring(0, baseSchemeEnd).toLowerCase(Locale.ROOT);
+        if (link.startsWith("//")) {
+            return scheme + removeDotSegments(link);
+        }
+        int fragmentStart = indexOf(base, '#', baseSchemeEnd);
+        String baseWithoutFragment = base.substring(0, fragmentStart);
+        if (link.isEmpty()) {
+            return baseWithoutFragment;
+        }
+        if (link.startsWith("#")) {
+            return baseWithoutFragment + link;
+        }
+        int pathStart = baseSchemeEnd;
+        if (base.startsWith("//", baseSchemeEnd)) {
+            pathStart = indexOfAny(base, "/?#", baseSchemeEnd + 2);
+        }
+        int queryStart = indexOf(base, '?', pathStart);
+        queryStart = Math.min(queryStart, fragmentStart);
+        String prefix = scheme + base.substring(baseSchemeEnd, pathStart);
+        String basePath = base.substring(pathStart, queryStart);
+        if (basePath.isEmpty() && pathStart > baseSchemeEnd) {
+            basePath = "/";
+        }
+        if (link.startsWith("?")) {
+            return prefix + basePath + link;
+        }
+        if (link.startsWith("/")) {
+            return prefix + removeDotSegments(link);
         }
+        return prefix + removeDotSegments(basePath.substring(0, basePath.lastIndexOf('/') + 1) + link);
+    }
 
-        if (!StringUtils.equals(uri.getScheme(), "http") && !StringUtils.equals(uri.getScheme(), "https")) {
-            logger.debug("Skipping non-http/https url {}", uri);
-            return null;
+    /**
+     * @return the index just past the colon ending the scheme of the url, or -1 if it has none
+     */
+    private static int schemeEnd(String url) {
+        if (url.isEmpty() || !isAsciiLetter(url.charAt(0))) {
+            return -1;
+        }
+        for (int i = 1; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return i + 1;
+            }
+            if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '+' && c != '-' && c != '.') {
+                return -1;
+            }
         }
+        return -1;
+    }
 
-        String path = uri.getPath();
-        if (path.endsWith("/")) {
-            path = path.substring(0, path.length() - 1);
+    /**
+     * Removes the dot segments of the path of a url, leaving its authority, query and fragment as they are.
+     *
+     * @param url the url without its scheme
+     */
+    private static String removeDotSegments(String url) {
+        int pathStart = url.startsWith("//") ? indexOfAny(url, "/?#", 2) : 0;
+        int pathEnd = indexOfAny(url, "?#", pathStart);
+        String path = url.substring(pathStart, pathEnd);
+        if (!path.contains(".")) {
+            return url;
         }
+        Deque<String> segments = new ArrayDeque<>();
+        boolean absolute = path.startsWith("/");
+        String[] parts = (absolute ? path.substring(1) : path).split("/", -1);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            boolean last = i == parts.length - 1;
+            if (part.equals("..")) {
+                segments.pollLast();
+                if (last) {
+                    segments.addLast("");
+                }
+            } else if (part.equals(".")) {
+                if (last) {
+                    segments.addLast("");
+                }
+            } else {
+                segments.addLast(part);
+            }
+        }
+        return url.substring(0, pathStart) + (absolute ? "/" : "") + String.join("/", segments) + url.substring(pathEnd);
+    }
 
-        try {
+    private static String stripControlCharacters(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) < ' ') {
+                StringBuilder stripped = new StringBuilder(value.length());
+                for (int j = 0; j < value.length(); j++) {
+                    if (value.charAt(j) >= ' ') {
+                        stripped.append(value.charAt(j));
+                    }
+                }
+                return stripped.toString();
+            }
+        }
+        return value;
+    }
+
+    private static int indexOf(String value, char c, int from) {
+        int index = value.indexOf(c, from);
+        return index < 0 ? value.length() : index;
+    }
 
-            return new URIBuilder()
-                    .setScheme(uri.getScheme())
-                    .setHost(uri.getHost())
-                    .setPath(path)
-                    .build();
-        } catch (URISyntaxException e) {
-            logger.debug("Failed to create clean URI from {}", uri, e);
-            return null;
+    private static int indexOfAny(String value, String chars, int from) {
+        for (int i = from; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
         }
+        return value.length();
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
     }
 }
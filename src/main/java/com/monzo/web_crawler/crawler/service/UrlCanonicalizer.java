@@ -0,0 +1,411 @@
+package com.monzo.web_crawler.crawler.service;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Single pass canonicalizer of the links found on a page. An href is resolved against the page it was
+ * found on and reduced to {@code scheme://host[:port]/path}:
+ * <ul>
+ *     <li>only http and https links are kept, scheme and host are lower cased and default ports dropped</li>
+ *     <li>dot segments and empty segments are removed, so there is never a trailing slash</li>
+ *     <li>query and fragment are dropped</li>
+ *     <li>the path is percent-encoded consistently, runs of whitespace becoming a single {@code %20}</li>
+ * </ul>
+ * The canonical form is built in a reused char buffer. Results are interned in a small shared table, so a
+ * link repeated on every page of a site, such as a navigation link, resolves to the same {@link URI}
+ * instance without allocating once it has been seen.
+ * <p>
+ * Instances are not thread safe, {@link URIUtils#createUri(URI, String)} keeps a pool of them shared by all threads.
+ */
+public class UrlCanonicalizer {
+
+    private static final int INTERN_TABLE_SIZE = 1 << 13;
+    private static final AtomicReferenceArray<URI> INTERNED = new AtomicReferenceArray<>(INTERN_TABLE_SIZE);
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // characters left as they are in a canonical path, everything else is percent-encoded
+    private static final boolean[] PATH_SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            PATH_SAFE[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            PATH_SAFE[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            PATH_SAFE[c] = true;
+        }
+        for (char c : "_-!.~'()*,;:$&+=/@".toCharArray()) {
+            PATH_SAFE[c] = true;
+        }
+    }
+
+    // the canonical url being built
+    private char[] buffer = new char[256];
+    private int length;
+
+    // the raw path before dot segments are removed and it is encoded
+    private char[] path = new char[256];
+    private int pathLength;
+
+    /**
+     * @param base the absolute url of the page the link was found on
+     * @param href the link as found on the page
+     * @return the canonical url, or null if the link is not an http or https url
+     */
+    public URI canonicalize(URI base, String href) {
+        int start = 0;
+        int end = href.length();
+        while (start < end && Character.isWhitespace(href.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(href.charAt(end - 1))) {
+            end--;
+        }
+        length = 0;
+        pathLength = 0;
+
+        int schemeEnd = schemeEnd(href, start, end);
+        int position = start;
+        boolean https;
+        if (schemeEnd > 0) {
+            if (isScheme(href, start, schemeEnd, "https")) {
+                https = true;
+            } else if (isScheme(href, start, schemeEnd, "http")) {
+                https = false;
+            } else {
+                return null;
+            }
+            position = schemeEnd + 1;
+        } else if (isScheme(base.getScheme(), "https")) {
+            https = true;
+        } else if (isScheme(base.getScheme(), "http")) {
+            https = false;
+        } else {
+            return null;
+        }
+        append(https ? "https://" : "http://");
+
+        int pathEnd = indexOfAny(href, position, end, '?', '#');
+        if (startsWith(href, position, end, "//")) {
+            // absolute or network path reference, the authority comes from the link
+            int authorityEnd = indexOfAny(href, position + 2, pathEnd, '/', '/');
+            if (!appendAuthority(href, position + 2, authorityEnd, https)) {
+                return null;
+            }
+            appendPath(href, authorityEnd, pathEnd);
+        } else if (schemeEnd > 0) {
+            // opaque urls such as http:example.com have no host to crawl
+            return null;
+        } else {
+            String baseAuthority = base.getRawAuthority();
+            if (baseAuthority == null || !appendAuthority(baseAuthority, 0, baseAuthority.length(), https)) {
+                return null;
+            }
+            String basePath = base.getRawPath() == null ? "" : base.getRawPath();
+            if (position == pathEnd) {
+                // "", "?query" and "#fragment" refer to the base page itself
+                appendPath(basePath, 0, basePath.length());
+            } else if (href.charAt(position) == '/') {
+                appendPath(href, position, pathEnd);
+            } else {
+                // merge the relative path with the directory of the base path
+                int lastSlash = basePath.lastIndexOf('/');
+                if (lastSlash < 0) {
+                    appendPath("/", 0, 1);
+                } else {
+                    appendPath(basePath, 0, lastSlash + 1);
+                }
+                appendPath(href, position, pathEnd);
+            }
+        }
+
+        appendCanonicalPath();
+        return intern();
+    }
+
+    /**
+     * @return the index of the ':' ending the scheme of the link, or -1 if it is a relative reference
+     */
+    private static int schemeEnd(String href, int start, int end) {
+        if (start == end || !isAsciiLetter(href.charAt(start))) {
+            return -1;
+        }
+        for (int i = start + 1; i < end; i++) {
+            char c = href.charAt(i);
+            if (c == ':') {
+                return i;
+            }
+            if (!isAsciiLetter(c) && !isDigit(c) && c != '+' && c != '-' && c != '.') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the lower cased host and any non default port of the authority, dropping user info.
+     *
+     * @return false if the authority has no valid host
+     */
+    private boolean appendAuthority(String source, int start, int end, boolean https) {
+        int at = source.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        int hostEnd = end;
+        int portStart = -1;
+        if (start < end && source.charAt(start) == '[') {
+            // IPv6 literal
+            int closing = source.indexOf(']', start);
+            if (closing < 0 || closing >= end) {
+                return false;
+            }
+            hostEnd = closing + 1;
+            if (hostEnd < end && source.charAt(hostEnd) == ':') {
+                portStart = hostEnd + 1;
+            }
+        } else {
+            int colon = source.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                hostEnd = colon;
+                portStart = colon + 1;
+            }
+        }
+        if (hostEnd == start) {
+            return false;
+        }
+        for (int i = start; i < hostEnd; i++) {
+            char c = source.charAt(i);
+            if (isAsciiLetter(c)) {
+                append(Character.toLowerCase(c));
+            } else if (isDigit(c) || c == '.' || c == '-' || c == '[' || c == ']' || (c == ':' && source.charAt(start) == '[')) {
+                append(c);
+            } else {
+                return false;
+            }
+        }
+        if (portStart >= 0 && portStart < end) {
+            int port = 0;
+            for (int i = portStart; i < end; i++) {
+                char c = source.charAt(i);
+                if (!isDigit(c)) {
+                    return false;
+                }
+                port = port * 10 + (c - '0');
+                if (port > 65535) {
+                    return false;
+                }
+            }
+            if (port != (https ? 443 : 80)) {
+                append(':');
+                appendNumber(port);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends part of the raw path, before dot segments are removed and it is encoded.
+     */
+    private void appendPath(String source, int start, int end) {
+        ensurePathCapacity(end - start);
+        source.getChars(start, end, path, pathLength);
+        pathLength += end - start;
+    }
+
+    /**
+     * Removes the dot segments and empty segments of the raw path, so {@code /a//b/} becomes {@code /a/b},
+     * and appends the remaining segments to the url, encoding them.
+     */
+    private void appendCanonicalPath() {
+        int pathStart = length;
+        int segmentStart = 0;
+        if (pathLength > 0 && path[0] == '/') {
+            segmentStart = 1;
+        } else if (pathLength == 0) {
+            return;
+        }
+        while (segmentStart <= pathLength) {
+            int segmentEnd = segmentStart;
+            while (segmentEnd < pathLength && path[segmentEnd] != '/') {
+                segmentEnd++;
+            }
+            int segmentLength = segmentEnd - segmentStart;
+            if (segmentLength == 0 || (segmentLength == 1 && path[segmentStart] == '.')) {
+                // empty segment or current directory, nothing to append
+            } else if (segmentLength == 2 && path[segmentStart] == '.' && path[segmentStart + 1] == '.') {
+                // parent directory, remove the last segment
+                while (length > pathStart && buffer[length - 1] != '/') {
+                    length--;
+                }
+                if (length > pathStart) {
+                    length--;
+                }
+            } else {
+                append('/');
+                appendEncodedSegment(segmentStart, segmentEnd);
+            }
+            segmentStart = segmentEnd + 1;
+        }
+    }
+
+    private void appendEncodedSegment(int start, int end) {
+        boolean inWhitespace = false;
+        for (int i = start; i < end; i++) {
+            char c = path[i];
+            if (isRegexWhitespace(c)) {
+                if (!inWhitespace) {
+                    appendEscaped(' ');
+                }
+                inWhitespace = true;
+                continue;
+            }
+            inWhitespace = false;
+            if (c == '%' && i + 2 < end && hexValue(path[i + 1]) >= 0 && hexValue(path[i + 2]) >= 0) {
+                int decoded = hexValue(path[i + 1]) * 16 + hexValue(path[i + 2]);
+                if (decoded < 128 && PATH_SAFE[decoded]) {
+                    append((char) decoded);
+                } else {
+                    appendEscaped(decoded);
+                }
+                i += 2;
+            } else if (c < 128) {
+                if (PATH_SAFE[c]) {
+                    append(c);
+                } else {
+                    appendEscaped(c);
+                }
+            } else {
+                int codePoint = Character.codePointAt(path, i, end);
+                if (Character.charCount(codePoint) == 2) {
+                    i++;
+                }
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                    appendEscaped(b & 0xFF);
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks the canonical url up in the intern table, only creating a new {@link URI} if it is not there.
+     */
+    private URI intern() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (INTERN_TABLE_SIZE - 1);
+        URI interned = INTERNED.get(slot);
+        if (interned != null && contentEquals(interned.toString())) {
+            return interned;
+        }
+        URI uri;
+        try {
+            uri = URI.create(new String(buffer, 0, length));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        INTERNED.set(slot, uri);
+        return uri;
+    }
+
+    private boolean contentEquals(String value) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            if (value.charAt(i) != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendEscaped(int b) {
+        append('%');
+        append(HEX[(b >> 4) & 0xF]);
+        append(HEX[b & 0xF]);
+    }
+
+    private void appendNumber(int number) {
+        if (number >= 10) {
+            appendNumber(number / 10);
+        }
+        append((char) ('0' + number % 10));
+    }
+
+    private void append(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            append(value.charAt(i));
+        }
+    }
+
+    private void append(char c) {
+        if (length == buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        buffer[length++] = c;
+    }
+
+    private void ensurePathCapacity(int additional) {
+        if (pathLength + additional > path.length) {
+            char[] grown = new char[Math.max(path.length * 2, pathLength + additional)];
+            System.arraycopy(path, 0, grown, 0, pathLength);
+            path = grown;
+        }
+    }
+
+    private static int indexOfAny(String value, int start, int end, char first, char second) {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == first || c == second) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean startsWith(String value, int start, int end, String prefix) {
+        return end - start >= prefix.length() && value.startsWith(prefix, start);
+    }
+
+    private static boolean isScheme(String href, int start, int end, String scheme) {
+        return end - start == scheme.length() && href.regionMatches(true, start, scheme, 0, scheme.length());
+    }
+
+    private static boolean isScheme(String scheme, String expected) {
+        return scheme != null && scheme.equalsIgnoreCase(expected);
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // the characters matched by \s
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,14 @@
+package com.monzo.web_crawler.crawler.service;
+
+/**
+ * Scores the urls of a {@link PriorityFrontier}, urls with higher scores are crawled first and urls with equal
+ * scores in the order they were queued. See {@link FrontierPriority} for the scores which can be configured.
+ */
+@FunctionalInterface
+public interface UrlScorer {
+
+    /**
+     * @param inLinks the number of links to the url found since it was queued
+     */
+    double score(QueuedUrl url, int inLinks);
+}
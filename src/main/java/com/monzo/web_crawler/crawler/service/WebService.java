@@ -1,53 +1,129 @@
 package com.monzo.web_crawler.crawler.service;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.InputStream;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+/**
+ * Entry point for fetching pages. The actual fetching is delegated to the configured {@link PageFetcher}.
+ * <p>
+ * Pages are revalidated against the {@link PageCache}: a page cached by an earlier crawl is requested
+ * conditionally, and if it has not changed its cached links are returned without it being downloaded.
+ * <p>
+ * Besides its links, a fetched page tells the url it was redirected to and the url it declares as canonical, see
+ * {@link FetchedDocument}, so that crawls can skip those aliases of the page.
+ */
 @Service
 public class WebService {
 
     private static final Logger logger = LoggerFactory.getLogger(WebService.class);
 
+    private final PageFetcher pageFetcher;
+    private final PageCache pageCache;
+
+    public WebService(PageFetcher pageFetcher, PageCache pageCache) {
+        this.pageFetcher = pageFetcher;
+        this.pageCache = pageCache;
+    }
+
     public List<String> getDocumentLinks(String path) throws IOException, TimeoutException {
+        return getDocumentLinks(path, new CrawlStatistics());
+    }
+
+    /**
+     * Fetches the document at the given path and returns the links within it, blocking until done.
+     *
+     * @param path       the url of the document to fetch
+     * @param statistics the crawl statistics to record the request and downloaded bytes against
+     * @return absolute urls of all hyperlinks within the document
+     */
+    public List<String> getDocumentLinks(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
+        return fetchDocument(path, statistics).links();
+    }
+
+    /**
+     * Fetches the document at the given path, blocking until done.
+     *
+     * @param path       the url of the document to fetch
+     * @param statistics the crawl statistics to record the request and downloaded bytes against
+     * @return the links of the document, along with the urls it is also known by
+     */
+    public FetchedDocument fetchDocument(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
         logger.debug("Fetching document from {}", path);
-        URL url = URI.create(path).toURL();
-        URLConnection connection = url.openConnection();
-        connection.connect();
-        String mimeType = connection.getContentType();
-        if (mimeType == null || (!mimeType.contains("text/") && !mimeType.contains("/xml") && !mimeType.endsWith("+xml"))) {
-            logger.debug("Skipping non-html document {}", path);
-            return List.of();
-        }
         try {
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    long startTime = System.currentTimeMillis();
-                    Document doc = Jsoup.connect(path).timeout(3000).get();
-                    long endTime = System.currentTimeMillis();
-                    logger.debug("Fetching document from {} took {} ms", path, (endTime - startTime));
-                    Elements links = doc.select("a[href]");
-                    return links.eachAttr("abs:href");
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }).get(3, TimeUnit.SECONDS);
+            CachedPage cached = pageCache.get(path);
+            return revalidate(path, cached, pageFetcher.fetchPage(path, statistics, cached), statistics);
         } catch (TimeoutException e) {
-            throw new TimeoutException(String.format("Failed to fetch document from %s within 3 seconds", path));
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(String.format("Failed to fetch document from %s", path), e);
         }
     }
+
+    /**
+     * Fetches the document at the given path, of any content type, for its body to be read as a stream.
+     *
+     * @param path       the url of the document to fetch
+     * @param statistics the crawl statistics to record the request and downloaded bytes against
+     * @return the body of the document, which must be closed
+     * @throws HttpErrorStatusException if the server answered with an error status
+     */
+    public InputStream openDocument(String path, CrawlStatistics statistics) throws IOException, TimeoutException {
+        logger.debug("Opening document {}", path);
+        return pageFetcher.openDocument(path, statistics);
+    }
+
+    /**
+     * Fetches the document at the given path without blocking the calling thread.
+     *
+     * @param path       the url of the document to fetch
+     * @param statistics the crawl statistics to record the request and downloaded bytes against
+     * @return a future completed with the absolute urls of all hyperlinks within the document
+     */
+    public CompletableFuture<List<String>> getDocumentLinksAsync(String path, CrawlStatistics statistics) {
+        return fetchDocumentAsync(path, statistics).thenApply(FetchedDocument::links);
+    }
+
+    /**
+     * Fetches the document at the given path without blocking the calling thread.
+     *
+     * @param path       the url of the document to fetch
+     * @param statistics the crawl statistics to record the request and downloaded bytes against
+     * @return a future completed with the links of the document, along with the urls it is also known by; cancelling
+     * it, or completing it exceptionally, cancels the fetch
+     */
+    public CompletableFuture<FetchedDocument> fetchDocumentAsync(String path, CrawlStatistics statistics) {
+        logger.debug("Fetching document asynchronously from {}", path);
+        CachedPage cached = pageCache.get(path);
+        CompletableFuture<FetchedPage> fetch = pageFetcher.fetchPageAsync(path, statistics, cached);
+        CompletableFuture<FetchedDocument> document = fetch.thenApply(fetched -> revalidate(path, cached, fetched, statistics));
+        // a dependent future does not pass its cancellation on to the future it depends on
+        document.whenComplete((fetched, error) -> {
+            if (error != null) {
+                fetch.cancel(true);
+            }
+        });
+        return document;
+    }
+
+    /**
+     * @return the cached page if it has not been modified, otherwise the fetched page, which replaces the cached one
+     */
+    private FetchedDocument revalidate(String path, CachedPage cached, FetchedPage fetched, CrawlStatistics statistics) {
+        if (fetched.notModified()) {
+            statistics.recordCacheHit();
+            return cached != null ? new FetchedDocument(cached.links(), fetched.url(), cached.canonicalUrl()) : new FetchedDocument(List.of(), fetched.url(), null);
+        }
+        if (pageCache.isEnabled()) {
+            statistics.recordCacheMiss();
+            pageCache.put(path, fetched);
+        }
+        return new FetchedDocument(fetched.links(), fetched.url(), fetched.canonicalUrl());
+    }
 }
@@ -0,0 +1,157 @@
+package com.monzo.web_crawler.crawler.controller;
+
+import com.monzo.web_crawler.crawler.model.Page;
+import com.monzo.web_crawler.crawler.service.CrawlBudget;
+import com.monzo.web_crawler.crawler.service.CrawlJob;
+import com.monzo.web_crawler.crawler.service.CrawlJobService;
+import com.monzo.web_crawler.crawler.service.CrawlJobStatus;
+import com.monzo.web_crawler.crawler.service.FetchScheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ExtendWith(MockitoExtension.class)
+public class CrawlJobControllerUnitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private CrawlJobService crawlJobService;
+
+    @Test
+    public void postCrawl_startsJob_returnsAcceptedWithJobLocation() throws Exception {
+        // ARRANGE
+        CrawlJob job = new CrawlJob("3f2c8a9e-crawl", URI.create("https://www.monzo.com"));
+        Mockito.when(crawlJobService.submit(URI.create("https://www.monzo.com"), CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT)).thenReturn(job);
+
+        String expectedResponse = """
+                {
+                    "crawlId": "3f2c8a9e-crawl",
+                    "rootPage": "https://www.monzo.com",
+                    "status": "RUNNING",
+                    "pageCount": 0
+                }
+                """;
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(post("/api/v2/crawls").contentType(MediaType.APPLICATION_JSON).content("""
+                        {
+                          "domain": "https://www.monzo.com"
+                        }
+                        """))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v2/crawls/3f2c8a9e-crawl"))
+                .andExpect(content().json(expectedResponse));
+    }
+
+    @Test
+    public void postCrawl_invalidUriProvided_returnsBadRequestResponse() throws Exception {
+        // ARRANGE
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(post("/api/v2/crawls").contentType(MediaType.APPLICATION_JSON).content("""
+                        {
+                          "domain": "www.no-scheme.com"
+                        }
+                        """))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(crawlJobService);
+    }
+
+    @Test
+    public void getCrawl_finishedJob_returnsProgress() throws Exception {
+        // ARRANGE
+        CrawlJob job = Mockito.mock(CrawlJob.class);
+        Mockito.when(job.getId()).thenReturn("3f2c8a9e-crawl");
+        Mockito.when(job.getStatus()).thenReturn(CrawlJobStatus.COMPLETED);
+        Mockito.when(job.getPageCount()).thenReturn(42);
+        Mockito.when(job.getStartedAt()).thenReturn(Instant.parse("2025-01-01T10:00:00Z"));
+        Mockito.when(job.getFinishedAt()).thenReturn(Instant.parse("2025-01-01T10:01:00Z"));
+        Mockito.when(crawlJobService.find("3f2c8a9e-crawl")).thenReturn(Optional.of(job));
+
+        String expectedResponse = """
+                {
+                    "crawlId": "3f2c8a9e-crawl",
+                    "status": "COMPLETED",
+                    "pageCount": 42,
+                    "startedAt": "2025-01-01T10:00:00Z",
+                    "finishedAt": "2025-01-01T10:01:00Z"
+                }
+                """;
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(get("/api/v2/crawls/3f2c8a9e-crawl"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(expectedResponse));
+    }
+
+    @Test
+    public void getCrawl_unknownJob_returnsNotFoundResponse() throws Exception {
+        // ARRANGE
+        Mockito.when(crawlJobService.find("unknown-crawl")).thenReturn(Optional.empty());
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(get("/api/v2/crawls/unknown-crawl"))
+                .andExpect(status().isNotFound());
+        this.mockMvc.perform(get("/api/v2/crawls/unknown-crawl/pages"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getPages_streamsEachPageAsJsonLine() throws Exception {
+        // ARRANGE
+        CrawlJob job = Mockito.mock(CrawlJob.class);
+        Page mainPage = new Page(URI.create("https://www.monzo.com"), Set.of(URI.create("https://www.monzo.com/help")));
+        Page helpPage = new Page(URI.create("https://www.monzo.com/help"), Set.of());
+        Mockito.when(job.awaitPages(0)).thenReturn(List.of(mainPage));
+        Mockito.when(job.awaitPages(1)).thenReturn(List.of(helpPage));
+        Mockito.when(job.awaitPages(2)).thenReturn(List.of());
+        Mockito.when(crawlJobService.find("3f2c8a9e-crawl")).thenReturn(Optional.of(job));
+
+        String expectedResponse = """
+                {"url":"https://www.monzo.com","children":["https://www.monzo.com/help"]}
+                {"url":"https://www.monzo.com/help","children":[]}
+                """;
+
+        // ACT
+        MvcResult result = this.mockMvc.perform(get("/api/v2/crawls/3f2c8a9e-crawl/pages"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // ASSERT
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(CrawlJobController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string(expectedResponse));
+    }
+}
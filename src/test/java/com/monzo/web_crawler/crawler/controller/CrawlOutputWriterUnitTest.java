@@ -0,0 +1,98 @@
+package com.monzo.web_crawler.crawler.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.model.Page;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+public class CrawlOutputWriterUnitTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    private Path directory;
+
+    private final CrawlResponse crawlResponse = new CrawlResponse("3f2c8a9e-crawl", LinkGraph.of(List.of(
+            new Page(URI.create("https://monzo.com"), Set.of(URI.create("https://monzo.com/help"))),
+            new Page(URI.create("https://monzo.com/help"), Set.of()))));
+
+    @Test
+    public void write_crawlResponse_writesSameJsonToResponseAndFile() throws Exception {
+        // ARRANGE
+        CrawlOutputWriter writer = new CrawlOutputWriter(objectMapper, true, directory.toString(), false, 10);
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+        // ACT
+        writer.write(crawlResponse, responseBody);
+
+        // ASSERT
+        JsonNode response = objectMapper.readTree(responseBody.toByteArray());
+        Assertions.assertEquals("3f2c8a9e-crawl", response.get("crawlId").asText());
+        Assertions.assertEquals(2, response.get("pageCount").asInt());
+        Assertions.assertEquals("https://monzo.com/help", response.get("pages").get(0).get("children").get(0).asText());
+        Assertions.assertArrayEquals(responseBody.toByteArray(), Files.readAllBytes(directory.resolve("crawl-3f2c8a9e-crawl.json")));
+    }
+
+    @Test
+    public void write_gzipEnabled_writesCompressedFile() throws Exception {
+        // ARRANGE
+        CrawlOutputWriter writer = new CrawlOutputWriter(objectMapper, true, directory.toString(), true, 10);
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+        // ACT
+        writer.write(crawlResponse, responseBody);
+
+        // ASSERT
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve("crawl-3f2c8a9e-crawl.json.gz")))) {
+            Assertions.assertArrayEquals(responseBody.toByteArray(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void write_moreFilesThanMaxFiles_deletesOldestFiles() throws Exception {
+        // ARRANGE
+        CrawlOutputWriter writer = new CrawlOutputWriter(objectMapper, true, directory.toString(), false, 2);
+        Files.writeString(directory.resolve("crawl-oldest.json"), "{}");
+        Files.setLastModifiedTime(directory.resolve("crawl-oldest.json"), FileTime.from(Instant.parse("2025-01-01T10:00:00Z")));
+        Files.writeString(directory.resolve("crawl-older.json"), "{}");
+        Files.setLastModifiedTime(directory.resolve("crawl-older.json"), FileTime.from(Instant.parse("2025-01-02T10:00:00Z")));
+        Files.writeString(directory.resolve("application.log"), "");
+
+        // ACT
+        writer.write(crawlResponse, new ByteArrayOutputStream());
+
+        // ASSERT
+        Assertions.assertFalse(Files.exists(directory.resolve("crawl-oldest.json")));
+        Assertions.assertTrue(Files.exists(directory.resolve("crawl-older.json")));
+        Assertions.assertTrue(Files.exists(directory.resolve("crawl-3f2c8a9e-crawl.json")));
+        Assertions.assertTrue(Files.exists(directory.resolve("application.log")));
+    }
+
+    @Test
+    public void write_disabled_writesResponseOnly() throws Exception {
+        // ARRANGE
+        CrawlOutputWriter writer = new CrawlOutputWriter(objectMapper, false, directory.resolve("output").toString(), false, 10);
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+
+        // ACT
+        writer.write(crawlResponse, responseBody);
+
+        // ASSERT
+        Assertions.assertEquals(2, objectMapper.readTree(responseBody.toByteArray()).get("pages").size());
+        Assertions.assertFalse(Files.exists(directory.resolve("output")));
+    }
+}
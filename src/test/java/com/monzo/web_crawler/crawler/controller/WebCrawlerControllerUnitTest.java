@@ -1,7 +1,10 @@
 package com.monzo.web_crawler.crawler.controller;
 
+import com.monzo.web_crawler.crawler.model.LinkGraph;
 import com.monzo.web_crawler.crawler.model.Page;
+import com.monzo.web_crawler.crawler.service.CrawlBudget;
 import com.monzo.web_crawler.crawler.service.CrawlerService;
+import com.monzo.web_crawler.crawler.service.FetchScheduler;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
@@ -10,19 +13,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.net.URI;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@TestPropertySource(properties = {"crawler.output.directory=target/crawl-output", "crawler.result-cache.enabled=false"})
 @ExtendWith(MockitoExtension.class)
 public class WebCrawlerControllerUnitTest {
 
@@ -37,7 +47,7 @@ public class WebCrawlerControllerUnitTest {
         // ARRANGE
         Page mainPage = new Page(URI.create("www.monzo.com"), Set.of(URI.create("www.monzo.com/help")));
         Page helpPage = new Page(URI.create("www.monzo.com/help"), Set.of());
-        Mockito.when(crawlerService.crawl(Mockito.eq(URI.create("https://www.monzo.com")))).thenReturn(List.of(mainPage, helpPage));
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(URI.create("https://www.monzo.com")), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(FetchScheduler.DEFAULT_WEIGHT))).thenReturn(LinkGraph.of(List.of(mainPage, helpPage)));
 
         String requestBody = """
                 {
@@ -66,10 +76,61 @@ public class WebCrawlerControllerUnitTest {
 
         // ACT / ASSERT
 
-        this.mockMvc.perform(post("/api/v1/crawl").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+        MvcResult result = this.mockMvc.perform(post("/api/v1/crawl").contentType(MediaType.APPLICATION_JSON).content(requestBody))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json(expectedResponse))
+                .andExpect(jsonPath("$.crawlId").isNotEmpty());
+
+    }
+
+    @Test
+    public void postResumeRequest_checkpointExists_returnsAllPages() throws Exception {
+        // ARRANGE
+        Page mainPage = new Page(URI.create("www.monzo.com"), Set.of(URI.create("www.monzo.com/help")));
+        Page helpPage = new Page(URI.create("www.monzo.com/help"), Set.of());
+        Mockito.when(crawlerService.resume("3f2c8a9e-crawl")).thenReturn(Optional.of(LinkGraph.of(List.of(mainPage, helpPage))));
+
+        String expectedResponse = """
+                {
+                    "crawlId": "3f2c8a9e-crawl",
+                    "pageCount": 2
+                }
+                """;
+
+        // ACT / ASSERT
+
+        MvcResult result = this.mockMvc.perform(post("/api/v1/crawl/3f2c8a9e-crawl/resume"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        this.mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(content().json(expectedResponse));
+    }
+
+    @Test
+    public void postResumeRequest_noCheckpoint_returnsNotFoundResponse() throws Exception {
+        // ARRANGE
+        Mockito.when(crawlerService.resume("unknown-crawl")).thenReturn(Optional.empty());
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(post("/api/v1/crawl/unknown-crawl/resume"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void postResumeRequest_invalidCrawlId_returnsBadRequestResponse() throws Exception {
+        // ARRANGE
+
+        // ACT / ASSERT
+
+        this.mockMvc.perform(post("/api/v1/crawl/not_a_crawl.id/resume"))
+                .andExpect(status().isBadRequest());
 
+        Mockito.verifyNoInteractions(crawlerService);
     }
 
     @Test
@@ -0,0 +1,62 @@
+package com.monzo.web_crawler.crawler.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class AppendOnlyListUnitTest {
+
+    @Test
+    public void add_acrossChunks_returnsElementsInOrder() {
+        // ARRANGE
+        AppendOnlyList<Integer> list = new AppendOnlyList<>();
+
+        // ACT
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertEquals(i, list.add(i));
+        }
+
+        // ASSERT
+        Assertions.assertEquals(10_000, list.size());
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertEquals(i, list.get(i));
+        }
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> list.get(10_000));
+    }
+
+    @Test
+    public void add_concurrentAppends_keepsEveryElementOnce() throws Exception {
+        // ARRANGE
+        AppendOnlyList<Integer> list = new AppendOnlyList<>();
+        List<Future<?>> appenders = new ArrayList<>();
+
+        // ACT
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int thread = 0; thread < 8; thread++) {
+                int first = thread * 25_000;
+                appenders.add(executor.submit(() -> {
+                    for (int i = first; i < first + 25_000; i++) {
+                        list.add(i);
+                    }
+                }));
+            }
+            for (Future<?> appender : appenders) {
+                appender.get();
+            }
+        }
+
+        // ASSERT
+        Assertions.assertEquals(200_000, list.size());
+        BitSet seen = new BitSet();
+        for (int i = 0; i < list.size(); i++) {
+            seen.set(list.get(i));
+        }
+        Assertions.assertEquals(200_000, seen.cardinality());
+    }
+}
@@ -0,0 +1,139 @@
+package com.monzo.web_crawler.crawler.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LinkGraphUnitTest {
+
+    private final URI root = URI.create("https://monzo.com");
+    private final URI help = URI.create("https://monzo.com/help");
+    private final URI faq = URI.create("https://monzo.com/faq");
+
+    @Test
+    public void of_pagesSharingLinks_storesEachUrlOnce() {
+        // ARRANGE
+        List<Page> pages = List.of(
+                new Page(root, new LinkedHashSet<>(List.of(help, faq))),
+                new Page(help, new LinkedHashSet<>(List.of(root, faq))));
+
+        // ACT
+        LinkGraph graph = LinkGraph.of(pages);
+
+        // ASSERT
+        Assertions.assertEquals(2, graph.getPageCount());
+        Assertions.assertEquals(3, graph.getUrlCount());
+        Assertions.assertEquals(4, graph.getLinkCount());
+        Assertions.assertTrue(graph.isPage(help.toString()));
+        Assertions.assertFalse(graph.isPage(faq.toString()));
+        Assertions.assertEquals(-1, graph.getUrlId("https://monzo.com/fraud"));
+    }
+
+    @Test
+    public void getLinks_crawledAndLinkedUrls_returnsOutLinksAndInLinks() {
+        // ARRANGE
+        LinkGraph graph = LinkGraph.of(List.of(
+                new Page(root, new LinkedHashSet<>(List.of(help, faq))),
+                new Page(help, new LinkedHashSet<>(List.of(root, faq)))));
+
+        // ACT
+        List<URI> rootOutLinks = graph.getOutLinks(root);
+        List<URI> faqOutLinks = graph.getOutLinks(faq);
+        List<URI> faqInLinks = graph.getInLinks(faq);
+
+        // ASSERT
+        Assertions.assertEquals(List.of(help, faq), rootOutLinks);
+        Assertions.assertTrue(faqOutLinks.isEmpty());
+        Assertions.assertEquals(List.of(root, help), faqInLinks);
+        Assertions.assertEquals(List.of(help), graph.getInLinks(root));
+    }
+
+    @Test
+    public void getPages_graphOfPages_returnsEqualPagesInOrder() {
+        // ARRANGE
+        List<Page> pages = List.of(new Page(root, Set.of(help)), new Page(help, Set.of()));
+
+        // ACT
+        List<Page> graphPages = LinkGraph.of(pages).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(pages, graphPages);
+    }
+
+    @Test
+    public void readFrom_afterWriteTo_restoresGraph() throws IOException {
+        // ARRANGE
+        LinkGraph graph = LinkGraph.of(List.of(
+                new Page(root, new LinkedHashSet<>(List.of(help, faq))),
+                new Page(help, Set.of(root))));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // ACT
+        graph.writeTo(new DataOutputStream(bytes));
+        LinkGraph restored = LinkGraph.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // ASSERT
+        Assertions.assertEquals(graph.getPages(), restored.getPages());
+        Assertions.assertEquals(graph.getUrlId(faq.toString()), restored.getUrlId(faq.toString()));
+        Assertions.assertEquals(List.of(root), restored.getInLinks(help));
+    }
+
+    @Test
+    public void build_pagesAddedAfterwards_doesNotChangeBuiltGraph() {
+        // ARRANGE
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        builder.addPage(new Page(root, Set.of(help)));
+        LinkGraph snapshot = builder.build();
+
+        // ACT
+        builder.addPage(new Page(help, Set.of(faq)));
+
+        // ASSERT
+        Assertions.assertEquals(1, snapshot.getPageCount());
+        Assertions.assertEquals(-1, snapshot.getUrlId(faq.toString()));
+        Assertions.assertEquals(2, builder.build().getPageCount());
+        Assertions.assertEquals(List.of(new Page(help, Set.of(faq))), builder.getPages(1, 2));
+    }
+
+    @Test
+    public void addPage_concurrentWorkers_internsSharedUrlsOnce() throws Exception {
+        // ARRANGE
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        List<Future<?>> workers = new ArrayList<>();
+
+        // ACT
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int worker = 0; worker < 8; worker++) {
+                int first = worker * 1_000;
+                workers.add(executor.submit(() -> {
+                    for (int i = first; i < first + 1_000; i++) {
+                        builder.addPage(new Page(URI.create("https://monzo.com/page/" + i), new LinkedHashSet<>(List.of(root, help))));
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        LinkGraph graph = builder.build();
+
+        // ASSERT
+        Assertions.assertEquals(8_000, graph.getPageCount());
+        Assertions.assertEquals(8_002, graph.getUrlCount());
+        Assertions.assertEquals(8_000, graph.getInLinks(help).size());
+        Assertions.assertEquals(List.of(root, help), graph.getOutLinks(URI.create("https://monzo.com/page/4242")));
+    }
+}
@@ -0,0 +1,74 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BloomFilterSeenSetUnitTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void add_sameUrlTwice_returnsTrueOnlyFirstTime() throws IOException {
+        try (BloomFilterSeenSet seenSet = new BloomFilterSeenSet(directory, 100, 0.001, filter -> {
+        })) {
+            // ACT / ASSERT
+            Assertions.assertTrue(seenSet.add(URI.create("https://monzo.com/help")));
+            Assertions.assertFalse(seenSet.add(URI.create("https://monzo.com/help")));
+            Assertions.assertEquals(1, seenSet.size());
+        }
+    }
+
+    @Test
+    public void add_beyondInitialCapacity_growsAndKeepsFalsePositiveProbabilityBounded() throws IOException {
+        // ARRANGE
+        double falsePositiveProbability = 0.01;
+        try (BloomFilterSeenSet seenSet = new BloomFilterSeenSet(directory, 1000, falsePositiveProbability, filter -> {
+        })) {
+            long initialBytes = seenSet.mappedBytes();
+
+            // ACT
+            int falsePositives = 0;
+            for (int i = 0; i < 20_000; i++) {
+                if (!seenSet.add(URI.create("https://monzo.com/page/" + i))) {
+                    falsePositives++;
+                }
+            }
+
+            // ASSERT
+            for (int i = 0; i < 20_000; i++) {
+                Assertions.assertFalse(seenSet.add(URI.create("https://monzo.com/page/" + i)));
+            }
+            Assertions.assertTrue(seenSet.mappedBytes() > initialBytes);
+            Assertions.assertTrue(falsePositives < 20_000 * falsePositiveProbability, "Too many false positives: " + falsePositives);
+            Assertions.assertEquals(20_000 - falsePositives, seenSet.size());
+            Assertions.assertTrue(seenSet.fillRatio() > 0 && seenSet.fillRatio() < 1);
+            Assertions.assertTrue(seenSet.estimatedFalsePositiveProbability() < falsePositiveProbability,
+                    "Estimated false positive probability too high: " + seenSet.estimatedFalsePositiveProbability());
+        }
+    }
+
+    @Test
+    public void close_deletesBackingFileAndNotifiesListener() throws IOException {
+        // ARRANGE
+        AtomicBoolean closed = new AtomicBoolean();
+        BloomFilterSeenSet seenSet = new BloomFilterSeenSet(directory, 100, 0.001, filter -> closed.set(true));
+        seenSet.add(URI.create("https://monzo.com/help"));
+
+        // ACT
+        seenSet.close();
+
+        // ASSERT
+        Assertions.assertTrue(closed.get());
+        try (var files = Files.list(directory)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class ClusterCrawlerUnitTest {
+
+    private static final List<String> NODE_IDS = List.of("node-1", "node-2", "node-3");
+    private static final int PAGE_COUNT = 100;
+
+    private final URI rootUrl = URI.create("https://www.monzo.com");
+    private final ConsistentHashRing ring = new ConsistentHashRing(NODE_IDS, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    private final LoopbackClusterTransport transport = new LoopbackClusterTransport();
+    // urls fetched by each node, every fetch of a url is recorded
+    private final Map<String, List<String>> fetchedUrls = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (String nodeId : NODE_IDS) {
+            fetchedUrls.put(nodeId, Collections.synchronizedList(new ArrayList<>()));
+            transport.register(new ClusterNode(nodeId, crawlerService(nodeId, 0, 30), transport, 4));
+        }
+    }
+
+    @Test
+    public void crawl_threeNodes_eachNodeCrawlsItsOwnUrlsOnceAndGraphsAreMerged() throws Exception {
+        // ARRANGE
+        ClusterCrawler clusterCrawler = new ClusterCrawler(transport, NODE_IDS, 30);
+
+        // ACT
+        Optional<LinkGraph> graph = clusterCrawler.crawl("cluster-crawl", rootUrl);
+
+        // ASSERT
+        Assertions.assertTrue(graph.isPresent());
+        Assertions.assertEquals(PAGE_COUNT + 1, graph.get().getPageCount());
+        Assertions.assertEquals(Set.of(rootUrl, URI.create("https://www.monzo.com/page/1"), URI.create("https://www.monzo.com/page/2")), Set.copyOf(graph.get().getOutLinks(URI.create("https://www.monzo.com/page/0"))));
+        Assertions.assertEquals(PAGE_COUNT, graph.get().getInLinks(rootUrl).size());
+        Map<String, Long> fetchCounts = new HashMap<>();
+        fetchedUrls.forEach((nodeId, urls) -> {
+            Assertions.assertFalse(urls.isEmpty(), "Expected every node to crawl part of the site");
+            urls.forEach(url -> Assertions.assertEquals(nodeId, ring.ownerOf(URI.create(url)), "Expected " + url + " to be crawled by its owner"));
+            urls.forEach(url -> fetchCounts.merge(url, 1L, Long::sum));
+        });
+        Assertions.assertEquals(PAGE_COUNT + 1, fetchCounts.size());
+        Assertions.assertEquals(Set.of(1L), Set.copyOf(fetchCounts.values()));
+    }
+
+    @Test
+    public void crawl_takesLongerThanManagerTimeoutOfNodes_completesWithinCoordinatorTimeout() throws Exception {
+        // ARRANGE
+        LoopbackClusterTransport slowTransport = new LoopbackClusterTransport();
+        for (String nodeId : NODE_IDS) {
+            slowTransport.register(new ClusterNode(nodeId, crawlerService(nodeId, 50, 1), slowTransport, 4));
+        }
+        ClusterCrawler clusterCrawler = new ClusterCrawler(slowTransport, NODE_IDS, 30);
+
+        // ACT
+        long startTime = System.nanoTime();
+        Optional<LinkGraph> graph = clusterCrawler.crawl("cluster-crawl", rootUrl);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        // ASSERT
+        Assertions.assertTrue(elapsedNanos > TimeUnit.SECONDS.toNanos(1), "Expected the crawl to outlast the manager timeout of the nodes");
+        Assertions.assertTrue(graph.isPresent());
+        Assertions.assertEquals(PAGE_COUNT + 1, graph.get().getPageCount());
+    }
+
+    @Test
+    public void crawl_unknownNode_throwsAndStopsStartedNodes() {
+        // ARRANGE
+        ClusterCrawler clusterCrawler = new ClusterCrawler(transport, List.of("node-1", "node-2", "node-4"), 30);
+
+        // ACT / ASSERT
+        Assertions.assertThrows(IOException.class, () -> clusterCrawler.crawl("cluster-crawl", rootUrl));
+        Assertions.assertThrows(IOException.class, () -> transport.getStatus("node-1", "cluster-crawl"));
+    }
+
+    @Test
+    public void forward_sameUrlTwice_sendsItOnce() throws Exception {
+        // ARRANGE
+        ClusterTransport mockTransport = Mockito.mock(ClusterTransport.class);
+        ClusterPartition partition = new ClusterPartition("node-1", "cluster-crawl", ring, mockTransport, 2);
+        List<URI> remoteUrls = new ArrayList<>();
+        for (int i = 0; remoteUrls.size() < 2; i++) {
+            URI url = URI.create("https://www.monzo.com/page/" + i);
+            if (ring.ownerOf(url).equals("node-2")) {
+                remoteUrls.add(url);
+            }
+        }
+
+        // ACT
+        partition.forward(remoteUrls.get(0));
+        partition.forward(remoteUrls.get(0));
+        partition.flush();
+        partition.forward(remoteUrls.get(0));
+        partition.forward(remoteUrls.get(1));
+        partition.flush();
+
+        // ASSERT
+        Mockito.verify(mockTransport).sendUrls("node-2", "cluster-crawl", List.of(remoteUrls.get(0)));
+        Mockito.verify(mockTransport).sendUrls("node-2", "cluster-crawl", List.of(remoteUrls.get(1)));
+        Mockito.verifyNoMoreInteractions(mockTransport);
+        Assertions.assertEquals(2, partition.getStatus(false).sentUrls());
+    }
+
+    /**
+     * A crawler instance whose site is a binary tree of pages below the root page, every page linking back to the root.
+     * Every page takes {@code fetchMillis} to fetch.
+     */
+    private CrawlerService crawlerService(String nodeId, long fetchMillis, int managerTimeoutSeconds) throws Exception {
+        WebService webService = Mockito.mock(WebService.class);
+        Mockito.when(webService.fetchDocument(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            fetchedUrls.get(nodeId).add(url);
+            Thread.sleep(fetchMillis);
+            if (url.equals(rootUrl.toString())) {
+                return FetchedDocument.of(List.of("https://www.monzo.com/page/0"));
+            }
+            int page = Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+            List<String> links = new ArrayList<>(List.of(rootUrl.toString()));
+            for (int child = 2 * page + 1; child <= 2 * page + 2 && child < PAGE_COUNT; child++) {
+                links.add("https://www.monzo.com/page/" + child);
+            }
+            return FetchedDocument.of(links);
+        });
+        return new CrawlerService(webService,
+                new SeenUrlSetFactory(SeenUrlSetType.FINGERPRINT, System.getProperty("java.io.tmpdir"), 1000, 0.001, new SimpleMeterRegistry()),
+                new FrontierFactory(FrontierType.MEMORY, System.getProperty("java.io.tmpdir"), 1, 64, FrontierPriority.DEPTH),
+                new CrawlCheckpointStore(System.getProperty("java.io.tmpdir"), 0),
+                new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3),
+                new RobotsTxtCache(webService, new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3), false, "web-crawler", 1440),
+                new SitemapReader(webService, new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3), false, 1000),
+                new FetchScheduler(64, 8, 8, 10, new SimpleMeterRegistry()),
+                new CrawlMetrics(new SimpleMeterRegistry()),
+                2, 10, managerTimeoutSeconds, CrawlExecutionMode.PLATFORM, 2);
+    }
+}
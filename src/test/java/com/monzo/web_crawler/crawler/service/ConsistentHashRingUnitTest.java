@@ -0,0 +1,60 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ConsistentHashRingUnitTest {
+
+    private static final List<String> NODE_IDS = List.of("node-1", "node-2", "node-3");
+
+    private final ConsistentHashRing ring = new ConsistentHashRing(NODE_IDS, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+    @Test
+    public void ownerOf_sameNodes_assignsEveryUrlToTheSameOwner() {
+        // ARRANGE
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("node-3", "node-1", "node-2"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        // ACT
+        String owner = ring.ownerOf(URI.create("https://monzo.com/help"));
+
+        // ASSERT
+        Assertions.assertEquals(owner, reordered.ownerOf(URI.create("https://monzo.com/help")));
+        for (int i = 0; i < 1_000; i++) {
+            URI url = URI.create("https://monzo.com/page/" + i);
+            Assertions.assertEquals(ring.ownerOf(url), reordered.ownerOf(url));
+        }
+    }
+
+    @Test
+    public void ownerOf_nodeAdded_movesOnlyUrlsOfTheNewNode() {
+        // ARRANGE
+        ConsistentHashRing grown = new ConsistentHashRing(List.of("node-1", "node-2", "node-3", "node-4"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        List<URI> urls = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            urls.add(URI.create("https://www.monzo.com/page/" + i));
+        }
+
+        // ACT
+        Map<String, Long> shares = urls.stream().collect(Collectors.groupingBy(ring::ownerOf, Collectors.counting()));
+        long moved = urls.stream().filter(url -> !ring.ownerOf(url).equals(grown.ownerOf(url))).count();
+
+        // ASSERT
+        Assertions.assertEquals(Set.copyOf(NODE_IDS), shares.keySet());
+        shares.values().forEach(share -> Assertions.assertTrue(share > 2_000 && share < 4_700, "Expected a fair share of urls, was " + share));
+        Assertions.assertTrue(urls.stream().filter(url -> !ring.ownerOf(url).equals(grown.ownerOf(url))).allMatch(url -> grown.ownerOf(url).equals("node-4")));
+        Assertions.assertTrue(moved > 1_500 && moved < 3_500, "Expected about a quarter of the urls to move, was " + moved);
+    }
+
+    @Test
+    public void new_noNodes_throws() {
+        // ACT / ASSERT
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(List.of(), ConsistentHashRing.DEFAULT_VIRTUAL_NODES));
+    }
+}
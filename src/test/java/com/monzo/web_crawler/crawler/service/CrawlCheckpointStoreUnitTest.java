@@ -0,0 +1,160 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.model.Page;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class CrawlCheckpointStoreUnitTest {
+
+    @TempDir
+    private Path directory;
+
+    private final URI rootUrl = URI.create("https://monzo.com");
+
+    @Test
+    public void read_afterWrite_restoresBudgetPagesQueuedUrlsAndFingerprintSeenSet() throws Exception {
+        // ARRANGE
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory.toString(), 60);
+        SeenUrlSetFactory seenUrlSetFactory = seenUrlSetFactory(SeenUrlSetType.FINGERPRINT);
+        FrontierFactory frontierFactory = new FrontierFactory(FrontierType.MEMORY, directory.toString(), 1, 64, FrontierPriority.DEPTH);
+        LinkGraph pages = LinkGraph.of(List.of(new Page(rootUrl, new LinkedHashSet<>(List.of(URI.create("https://monzo.com/help"), URI.create("https://monzo.com/faq"))))));
+        SeenUrlSet seenUrls = seenUrlSetFactory.create();
+        seenUrls.add(rootUrl);
+        seenUrls.add(URI.create("https://monzo.com/help"));
+        seenUrls.add(URI.create("https://monzo.com/faq"));
+        Frontier frontier = frontierFactory.create();
+        frontier.add(new QueuedUrl(URI.create("https://monzo.com/faq"), 1, 0.9f));
+        CrawlBudget budget = new CrawlBudget(3, 100, 1_000_000);
+
+        // ACT
+        store.write("crawl-1", rootUrl, budget, pages, frontier, List.of(new QueuedUrl(URI.create("https://monzo.com/help"), 2)), seenUrls);
+        Optional<CrawlCheckpoint> checkpoint = store.read("crawl-1", seenUrlSetFactory, frontierFactory);
+
+        // ASSERT
+        Assertions.assertTrue(checkpoint.isPresent());
+        try (SeenUrlSet restoredSeenUrls = checkpoint.get().seenUrls(); Frontier restoredFrontier = checkpoint.get().frontier()) {
+            Assertions.assertEquals(rootUrl, checkpoint.get().rootPage());
+            Assertions.assertEquals(budget, checkpoint.get().budget());
+            Assertions.assertEquals(1, checkpoint.get().pages().getPageCount());
+            Assertions.assertEquals(rootUrl, checkpoint.get().pages().getPage(0).getUrl());
+            Assertions.assertEquals(pages.getOutLinks(rootUrl), checkpoint.get().pages().getOutLinks(rootUrl));
+            Assertions.assertEquals(List.of(new QueuedUrl(URI.create("https://monzo.com/faq"), 1, 0.9f), new QueuedUrl(URI.create("https://monzo.com/help"), 2)), drain(restoredFrontier));
+            Assertions.assertInstanceOf(FingerprintSeenSet.class, restoredSeenUrls);
+            Assertions.assertEquals(3, restoredSeenUrls.size());
+            Assertions.assertFalse(restoredSeenUrls.add(URI.create("https://monzo.com/faq")));
+            Assertions.assertTrue(restoredSeenUrls.add(URI.create("https://monzo.com/fraud")));
+        }
+    }
+
+    @Test
+    public void read_afterWrite_restoresBloomFilterSeenSetAndSpilledFrontier() throws Exception {
+        // ARRANGE
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory.toString(), 60);
+        SeenUrlSetFactory seenUrlSetFactory = seenUrlSetFactory(SeenUrlSetType.BLOOM_FILTER);
+        FrontierFactory frontierFactory = new FrontierFactory(FrontierType.DISK, directory.toString(), 2, 64, FrontierPriority.DEPTH);
+        List<QueuedUrl> queuedUrls = new ArrayList<>();
+        try (SeenUrlSet seenUrls = seenUrlSetFactory.create(); Frontier frontier = frontierFactory.create()) {
+            // enough urls for the bloom filter to grow and the frontier to spill over several segments
+            for (int i = 0; i < 2_500; i++) {
+                URI url = URI.create("https://monzo.com/page/" + i);
+                seenUrls.add(url);
+                if (i % 100 == 0) {
+                    frontier.add(new QueuedUrl(url, i / 100));
+                    queuedUrls.add(new QueuedUrl(url, i / 100));
+                }
+            }
+
+            // ACT
+            store.write("crawl-2", rootUrl, CrawlBudget.UNLIMITED, LinkGraph.empty(), frontier, List.of(), seenUrls);
+        }
+        Optional<CrawlCheckpoint> checkpoint = store.read("crawl-2", seenUrlSetFactory, frontierFactory);
+
+        // ASSERT
+        Assertions.assertTrue(checkpoint.isPresent());
+        try (SeenUrlSet restoredSeenUrls = checkpoint.get().seenUrls(); Frontier restoredFrontier = checkpoint.get().frontier()) {
+            Assertions.assertInstanceOf(BloomFilterSeenSet.class, restoredSeenUrls);
+            Assertions.assertEquals(2_500, restoredSeenUrls.size());
+            for (int i = 0; i < 2_500; i++) {
+                Assertions.assertFalse(restoredSeenUrls.add(URI.create("https://monzo.com/page/" + i)));
+            }
+            Assertions.assertEquals(queuedUrls, drain(restoredFrontier));
+        }
+    }
+
+    @Test
+    public void read_queuedUrlAlreadyProcessed_isNotQueuedAgain() throws Exception {
+        // ARRANGE
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory.toString(), 60);
+        SeenUrlSetFactory seenUrlSetFactory = seenUrlSetFactory(SeenUrlSetType.FINGERPRINT);
+        FrontierFactory frontierFactory = new FrontierFactory(FrontierType.MEMORY, directory.toString(), 1, 64, FrontierPriority.DEPTH);
+        URI help = URI.create("https://monzo.com/help");
+        try (SeenUrlSet seenUrls = seenUrlSetFactory.create(); Frontier frontier = frontierFactory.create()) {
+            store.write("crawl-3", rootUrl, CrawlBudget.UNLIMITED, LinkGraph.of(List.of(new Page(rootUrl, Set.of(help)), new Page(help, Set.of()))), frontier, List.of(new QueuedUrl(help, 1)), seenUrls);
+        }
+
+        // ACT
+        Optional<CrawlCheckpoint> checkpoint = store.read("crawl-3", seenUrlSetFactory, frontierFactory);
+
+        // ASSERT
+        Assertions.assertTrue(checkpoint.isPresent());
+        try (Frontier restoredFrontier = checkpoint.get().frontier(); SeenUrlSet ignored = checkpoint.get().seenUrls()) {
+            Assertions.assertTrue(restoredFrontier.isEmpty());
+            Assertions.assertEquals(2, checkpoint.get().pages().getPageCount());
+        }
+    }
+
+    @Test
+    public void read_deletedCheckpoint_returnsEmpty() throws Exception {
+        // ARRANGE
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory.toString(), 60);
+        SeenUrlSetFactory seenUrlSetFactory = seenUrlSetFactory(SeenUrlSetType.FINGERPRINT);
+        FrontierFactory frontierFactory = new FrontierFactory(FrontierType.MEMORY, directory.toString(), 1, 64, FrontierPriority.DEPTH);
+        try (SeenUrlSet seenUrls = seenUrlSetFactory.create(); Frontier frontier = frontierFactory.create()) {
+            store.write("crawl-4", rootUrl, CrawlBudget.UNLIMITED, LinkGraph.empty(), frontier, List.of(), seenUrls);
+        }
+
+        // ACT
+        store.delete("crawl-4");
+
+        // ASSERT
+        Assertions.assertTrue(store.read("crawl-4", seenUrlSetFactory, frontierFactory).isEmpty());
+    }
+
+    @Test
+    public void read_invalidCrawlId_throwsIllegalArgumentException() {
+        // ARRANGE
+        CrawlCheckpointStore store = new CrawlCheckpointStore(directory.toString(), 60);
+
+        // ACT / ASSERT
+        Assertions.assertFalse(CrawlCheckpointStore.isValidCrawlId("../crawl"));
+        Assertions.assertTrue(CrawlCheckpointStore.isValidCrawlId(CrawlCheckpointStore.newCrawlId()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> store.read("../crawl", seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), new FrontierFactory(FrontierType.MEMORY, directory.toString(), 1, 64, FrontierPriority.DEPTH)));
+    }
+
+    private SeenUrlSetFactory seenUrlSetFactory(SeenUrlSetType type) {
+        return new SeenUrlSetFactory(type, directory.toString(), 1000, 0.001, new SimpleMeterRegistry());
+    }
+
+    private static List<QueuedUrl> drain(Frontier frontier) throws InterruptedException {
+        List<QueuedUrl> urls = new ArrayList<>();
+        QueuedUrl url;
+        while ((url = frontier.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            urls.add(url);
+        }
+        return urls;
+    }
+}
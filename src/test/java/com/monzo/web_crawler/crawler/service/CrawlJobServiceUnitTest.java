@@ -0,0 +1,119 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.model.Page;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@ExtendWith(MockitoExtension.class)
+public class CrawlJobServiceUnitTest {
+
+    @Mock
+    private CrawlerService crawlerService;
+
+    private CrawlJobService crawlJobService;
+
+    private final URI rootUrl = URI.create("https://www.monzo.com");
+
+    @BeforeEach
+    void setUp() {
+        crawlJobService = new CrawlJobService(crawlerService, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        crawlJobService.shutdown();
+    }
+
+    @Test
+    public void submit_crawlRunning_pagesAvailableBeforeCrawlFinishes() throws Exception {
+        // ARRANGE
+        Page rootPage = new Page(rootUrl, Set.of(URI.create("https://www.monzo.com/help")));
+        Page helpPage = new Page(URI.create("https://www.monzo.com/help"), Set.of());
+        CountDownLatch finishCrawl = new CountDownLatch(1);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(rootUrl), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(FetchScheduler.DEFAULT_WEIGHT), Mockito.any())).thenAnswer(invocation -> {
+            Consumer<Page> pageListener = invocation.getArgument(4);
+            pageListener.accept(rootPage);
+            finishCrawl.await();
+            pageListener.accept(helpPage);
+            return Optional.of(LinkGraph.of(List.of(rootPage, helpPage)));
+        });
+
+        // ACT
+        CrawlJob job = crawlJobService.submit(rootUrl, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT);
+        List<Page> firstPages = job.awaitPages(0);
+        CrawlJobStatus statusWhileRunning = job.getStatus();
+        finishCrawl.countDown();
+        List<Page> remainingPages = job.awaitPages(1);
+        List<Page> afterFinish = job.awaitPages(2);
+
+        // ASSERT
+        Assertions.assertEquals(List.of(rootPage), firstPages);
+        Assertions.assertEquals(CrawlJobStatus.RUNNING, statusWhileRunning);
+        Assertions.assertEquals(List.of(helpPage), remainingPages);
+        Assertions.assertTrue(afterFinish.isEmpty());
+        Assertions.assertEquals(CrawlJobStatus.COMPLETED, job.getStatus());
+        Assertions.assertEquals(2, job.getPageCount());
+        Assertions.assertNotNull(job.getFinishedAt());
+        Assertions.assertSame(job, crawlJobService.find(job.getId()).orElseThrow());
+    }
+
+    @Test
+    public void submit_crawlTimesOut_jobIncomplete() throws Exception {
+        // ARRANGE
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(rootUrl), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(FetchScheduler.DEFAULT_WEIGHT), Mockito.any())).thenReturn(Optional.empty());
+
+        // ACT
+        CrawlJob job = crawlJobService.submit(rootUrl, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT);
+        List<Page> pages = job.awaitPages(0);
+
+        // ASSERT
+        Assertions.assertTrue(pages.isEmpty());
+        Assertions.assertEquals(CrawlJobStatus.INCOMPLETE, job.getStatus());
+    }
+
+    @Test
+    public void submit_crawlThrows_jobFailed() throws Exception {
+        // ARRANGE
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(rootUrl), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(FetchScheduler.DEFAULT_WEIGHT), Mockito.any())).thenThrow(new IllegalStateException("boom"));
+
+        // ACT
+        CrawlJob job = crawlJobService.submit(rootUrl, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT);
+        job.awaitPages(0);
+
+        // ASSERT
+        Assertions.assertEquals(CrawlJobStatus.FAILED, job.getStatus());
+    }
+
+    @Test
+    public void submit_finishedJobsPastRetention_evicted() throws Exception {
+        // ARRANGE
+        CrawlJobService noRetentionService = new CrawlJobService(crawlerService, 0);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(rootUrl), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(FetchScheduler.DEFAULT_WEIGHT), Mockito.any())).thenReturn(Optional.of(LinkGraph.empty()));
+        CrawlJob finishedJob = noRetentionService.submit(rootUrl, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT);
+        finishedJob.awaitPages(0);
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        // ACT
+        CrawlJob newJob = noRetentionService.submit(rootUrl, CrawlBudget.UNLIMITED, FetchScheduler.DEFAULT_WEIGHT);
+
+        // ASSERT
+        Assertions.assertTrue(noRetentionService.find(finishedJob.getId()).isEmpty());
+        Assertions.assertTrue(noRetentionService.find(newJob.getId()).isPresent());
+        noRetentionService.shutdown();
+    }
+}
@@ -0,0 +1,215 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import com.monzo.web_crawler.crawler.model.Page;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+public class CrawlResultCacheUnitTest {
+
+    private static final URI MONZO = URI.create("https://monzo.com");
+    private static final URI EXAMPLE = URI.create("https://examp.le");
+
+    @Mock
+    private CrawlerService crawlerService;
+
+    @TempDir
+    private Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void crawl_sameSiteTwice_servesSecondFromCache() {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, Long.MAX_VALUE);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(URI.create("https://MONZO.com/")), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1)))
+                .thenReturn(graph(MONZO));
+
+        // ACT
+        CrawlResultCache.Result first = cache.crawl(URI.create("https://MONZO.com/"), CrawlBudget.UNLIMITED, 1);
+        CrawlResultCache.Result second = cache.crawl(MONZO, CrawlBudget.UNLIMITED, 4);
+
+        // ASSERT
+        Mockito.verify(crawlerService, Mockito.times(1)).crawl(Mockito.anyString(), Mockito.any(URI.class), Mockito.any(CrawlBudget.class), Mockito.anyInt());
+        Assertions.assertEquals(first.crawlId(), second.crawlId());
+        Assertions.assertEquals(first.graph().getPages(), second.graph().getPages());
+        Assertions.assertEquals(1, meterRegistry.get("crawler.result-cache.requests").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    public void crawl_differentBudget_crawlsAgain() {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, Long.MAX_VALUE);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.any(CrawlBudget.class), Mockito.anyInt())).thenReturn(graph(MONZO));
+
+        // ACT
+        cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+        cache.crawl(MONZO, CrawlBudget.of(2, null, null), 1);
+
+        // ASSERT
+        Mockito.verify(crawlerService, Mockito.times(2)).crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.any(CrawlBudget.class), Mockito.anyInt());
+        Assertions.assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void crawl_expiredResult_crawlsAgain() {
+        // ARRANGE
+        CrawlResultCache cache = cache(0, Long.MAX_VALUE);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenReturn(graph(MONZO));
+
+        // ACT
+        CrawlResultCache.Result first = cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+        CrawlResultCache.Result second = cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+
+        // ASSERT
+        Mockito.verify(crawlerService, Mockito.times(2)).crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1));
+        Assertions.assertNotEquals(first.crawlId(), second.crawlId());
+    }
+
+    @Test
+    public void crawl_resultsLargerThanCache_evictsLeastRecentlyServed() throws IOException {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, fileSize(graph(MONZO)) + fileSize(graph(EXAMPLE)) - 1);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenReturn(graph(MONZO));
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(EXAMPLE), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenReturn(graph(EXAMPLE));
+
+        // ACT
+        cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+        cache.crawl(EXAMPLE, CrawlBudget.UNLIMITED, 1);
+        cache.crawl(EXAMPLE, CrawlBudget.UNLIMITED, 1);
+        cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+
+        // ASSERT
+        Mockito.verify(crawlerService, Mockito.times(2)).crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1));
+        Mockito.verify(crawlerService, Mockito.times(1)).crawl(Mockito.anyString(), Mockito.eq(EXAMPLE), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1));
+        Assertions.assertEquals(1, cache.getEntryCount());
+        Assertions.assertEquals(fileSize(graph(MONZO)), cache.getSizeBytes());
+    }
+
+    @Test
+    public void crawl_resultLargerThanWholeCache_isNotCached() {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, 16);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenReturn(graph(MONZO));
+
+        // ACT
+        CrawlResultCache.Result result = cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+
+        // ASSERT
+        Assertions.assertEquals(2, result.graph().getPageCount());
+        Assertions.assertEquals(0, cache.getEntryCount());
+        Assertions.assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void crawl_crawlFoundNoPages_isNotCached() {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, Long.MAX_VALUE);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenReturn(LinkGraph.empty());
+
+        // ACT
+        cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+        cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1);
+
+        // ASSERT
+        Mockito.verify(crawlerService, Mockito.times(2)).crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1));
+        Assertions.assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void crawl_concurrentRequestsForSameSite_shareOneCrawl() throws Exception {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, Long.MAX_VALUE);
+        CountDownLatch crawlStarted = new CountDownLatch(1);
+        CountDownLatch finishCrawl = new CountDownLatch(1);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenAnswer(invocation -> {
+            crawlStarted.countDown();
+            Assertions.assertTrue(finishCrawl.await(5, TimeUnit.SECONDS));
+            return graph(MONZO);
+        });
+        CompletableFuture<CrawlResultCache.Result> leader = CompletableFuture.supplyAsync(() -> cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1));
+        Assertions.assertTrue(crawlStarted.await(5, TimeUnit.SECONDS));
+        List<CompletableFuture<CrawlResultCache.Result>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1)));
+        }
+        while (meterRegistry.get("crawler.result-cache.requests").tag("result", "joined").counter().count() < 3) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+
+        // ACT
+        finishCrawl.countDown();
+
+        // ASSERT
+        String crawlId = leader.get(5, TimeUnit.SECONDS).crawlId();
+        for (CompletableFuture<CrawlResultCache.Result> follower : followers) {
+            Assertions.assertEquals(crawlId, follower.get(5, TimeUnit.SECONDS).crawlId());
+        }
+        Mockito.verify(crawlerService, Mockito.times(1)).crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1));
+    }
+
+    @Test
+    public void crawl_sharedCrawlRejected_rejectsEveryRequest() throws Exception {
+        // ARRANGE
+        CrawlResultCache cache = cache(10, Long.MAX_VALUE);
+        CountDownLatch crawlStarted = new CountDownLatch(1);
+        CountDownLatch finishCrawl = new CountDownLatch(1);
+        Mockito.when(crawlerService.crawl(Mockito.anyString(), Mockito.eq(MONZO), Mockito.eq(CrawlBudget.UNLIMITED), Mockito.eq(1))).thenAnswer(invocation -> {
+            crawlStarted.countDown();
+            Assertions.assertTrue(finishCrawl.await(5, TimeUnit.SECONDS));
+            throw new CrawlRejectedException("Too many crawls");
+        });
+        CompletableFuture<CrawlResultCache.Result> leader = CompletableFuture.supplyAsync(() -> cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1));
+        Assertions.assertTrue(crawlStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Throwable> follower = CompletableFuture.supplyAsync(() -> Assertions.assertThrows(CrawlRejectedException.class,
+                () -> cache.crawl(MONZO, CrawlBudget.UNLIMITED, 1)));
+        while (meterRegistry.get("crawler.result-cache.requests").tag("result", "joined").counter().count() < 1) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+
+        // ACT
+        finishCrawl.countDown();
+
+        // ASSERT
+        Assertions.assertEquals("Too many crawls", follower.get(5, TimeUnit.SECONDS).getMessage());
+        Assertions.assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, cache.getEntryCount());
+    }
+
+    private CrawlResultCache cache(int ttlMinutes, long maxSizeBytes) {
+        return new CrawlResultCache(crawlerService, true, directory.toString(), ttlMinutes, maxSizeBytes, meterRegistry);
+    }
+
+    private static LinkGraph graph(URI site) {
+        URI help = URI.create(site + "/help");
+        return LinkGraph.of(List.of(new Page(site, Set.of(help)), new Page(help, Set.of(site))));
+    }
+
+    private static long fileSize(LinkGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(1);
+            graph.writeTo(out);
+        }
+        return bytes.size();
+    }
+}
@@ -0,0 +1,200 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.monzo.web_crawler.crawler.model.LinkGraph;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Crawls {@link SyntheticSite}s served over http on the local machine, through the whole pipeline from fetching to
+ * dispatch, with no network needed.
+ */
+public class CrawlerServiceIntegrationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CrawlMetrics metrics = new CrawlMetrics(meterRegistry);
+
+    private SyntheticSite site;
+
+    @AfterEach
+    void tearDown() {
+        if (site != null) {
+            site.close();
+        }
+    }
+
+    @Test
+    public void crawl_syntheticSite_crawlsEveryPageOnce() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().pages(500).linksPerPage(8).pageSize(4096)
+                .latency(Duration.ofMillis(1), Duration.ofMillis(10))
+                .build().start();
+
+        // ACT
+        LinkGraph graph = crawlerService(CrawlExecutionMode.ASYNC, 10).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Assertions.assertEquals(site.getPageCount(), graph.getPageCount());
+        Assertions.assertEquals(site.getPageCount(), site.getRequestCount());
+        Assertions.assertEquals(8, graph.getOutLinks(URI.create(site.getBaseUrl() + "/page/1")).size());
+    }
+
+    @Test
+    public void crawl_syntheticSite_recordsLatencyOfEveryPage() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().pages(200).linksPerPage(5)
+                .latency(Duration.ofMillis(2), Duration.ofMillis(30))
+                .build().start();
+        long siteLatencyNanos = 0;
+        for (int page = 0; page < site.getPageCount(); page++) {
+            siteLatencyNanos += site.latency(page).toNanos();
+        }
+
+        // ACT
+        crawlerService(CrawlExecutionMode.ASYNC, 10).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Timer timeToFirstByte = meterRegistry.get("crawler.fetch.time-to-first-byte").timer();
+        Assertions.assertEquals(site.getPageCount(), timeToFirstByte.count());
+        // every response is held back by the site before its headers are sent
+        Assertions.assertTrue(timeToFirstByte.totalTime(TimeUnit.NANOSECONDS) >= siteLatencyNanos);
+        Assertions.assertTrue(timeToFirstByte.max(TimeUnit.NANOSECONDS) >= site.latency(0).toNanos());
+    }
+
+    @Test
+    public void crawl_errorsRedirectsAndTarpits_crawlsReachablePages_failsTheOthers() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().seed(7).pages(300).linksPerPage(6)
+                .errorRate(0.05)
+                .redirects(0.1, 2)
+                .tarpits(0.02, Duration.ofSeconds(5))
+                .build().start();
+        BitSet crawlable = site.crawlablePages();
+        BitSet failing = site.failingPages();
+        int redirected = (int) crawlable.stream().filter(site::isRedirected).count();
+        int errors = (int) failing.stream().filter(site::isError).count();
+        int tarpits = (int) failing.stream().filter(site::isTarpit).count();
+        Assertions.assertTrue(redirected > 0 && errors > 0 && tarpits > 0, "Expected the site to have redirects, errors and tarpits");
+
+        // ACT
+        LinkGraph graph = crawlerService(CrawlExecutionMode.VIRTUAL, 1).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Assertions.assertEquals(crawlable.cardinality(), graph.getPageCount());
+        int redirectedPage = crawlable.stream().filter(site::isRedirected).findFirst().getAsInt();
+        // the page is recorded under the url it was served from, not the first of the redirects to it
+        Assertions.assertTrue(graph.isPage(site.getBaseUrl() + "/page/" + redirectedPage));
+        Assertions.assertFalse(graph.isPage(site.getBaseUrl() + "/redirect/" + redirectedPage + "/2"));
+        Assertions.assertEquals(errors, meterRegistry.get("crawler.fetch.failures").tag("cause", "5xx").counter().count());
+        Assertions.assertEquals(tarpits, meterRegistry.get("crawler.fetch.failures").tag("cause", "timeout").counter().count());
+    }
+
+    @Test
+    public void crawl_tarpitsInAsyncMode_closesTheirConnectionsOnceTimedOut() throws Exception {
+        // ARRANGE
+        site = SyntheticSite.builder().seed(7).pages(300).linksPerPage(6)
+                .tarpits(0.05, Duration.ofSeconds(30))
+                .build().start();
+        int tarpits = (int) site.failingPages().stream().filter(site::isTarpit).count();
+        Assertions.assertTrue(tarpits > 0, "Expected the site to have tarpits");
+
+        // ACT
+        LinkGraph graph = crawlerService(CrawlExecutionMode.ASYNC, 1).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Assertions.assertEquals(site.crawlablePages().cardinality(), graph.getPageCount());
+        Assertions.assertEquals(tarpits, meterRegistry.get("crawler.fetch.failures").tag("cause", "timeout").counter().count());
+        // the site sees the connection of every tarpit closed within a couple of its chunks, long before it would end
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (site.getServingTarpitCount() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assertions.assertEquals(0, site.getServingTarpitCount());
+        Assertions.assertEquals(tarpits, site.getAbandonedTarpitCount());
+    }
+
+    @Test
+    public void crawl_linksThroughRedirectingAliases_recordsEveryPageOnce() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().seed(5).pages(300).linksPerPage(6).aliases(0.5).build().start();
+        int aliased = (int) IntStream.range(0, site.getPageCount()).filter(site::isAliased).count();
+        Assertions.assertTrue(aliased > 0, "Expected the site to have aliased pages");
+
+        // ACT
+        LinkGraph graph = crawlerService(CrawlExecutionMode.ASYNC, 10).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Assertions.assertEquals(site.getPageCount(), graph.getPageCount());
+        Assertions.assertTrue(graph.getPages().stream().noneMatch(page -> page.getUrl().getPath().startsWith("/alias/")));
+        // every page is requested once at most, plus the redirect of its alias and the request it leads to if the alias
+        // was found before the page was crawled
+        Assertions.assertTrue(site.getRequestCount() <= site.getPageCount() + 2 * aliased, "Made " + site.getRequestCount() + " requests");
+    }
+
+    @Test
+    public void crawl_sameSeed_crawlsTheSameSite() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().seed(3).pages(300).linksPerPage(4).errorRate(0.1).build().start();
+        SyntheticSite sameSite = SyntheticSite.builder().seed(3).pages(300).linksPerPage(4).errorRate(0.1).build();
+        SyntheticSite otherSite = SyntheticSite.builder().seed(4).pages(300).linksPerPage(4).errorRate(0.1).build();
+
+        // ACT
+        LinkGraph first = crawlerService(CrawlExecutionMode.ASYNC, 10).crawl(URI.create(site.getBaseUrl()));
+        LinkGraph second = crawlerService(CrawlExecutionMode.PLATFORM, 10).crawl(URI.create(site.getBaseUrl()));
+
+        // ASSERT
+        Assertions.assertEquals(site.crawlablePages().cardinality(), first.getPageCount());
+        Assertions.assertEquals(Set.copyOf(first.getPages()), Set.copyOf(second.getPages()));
+        Assertions.assertEquals(site.crawlablePages(), sameSite.crawlablePages());
+        Assertions.assertNotEquals(site.crawlablePages(), otherSite.crawlablePages());
+    }
+
+    @Test
+    public void crawl_pageAndByteBudgets_stopsOnceSpent() throws IOException {
+        // ARRANGE
+        site = SyntheticSite.builder().pages(500).linksPerPage(8).pageSize(4096).build().start();
+        CrawlerService crawlerService = crawlerService(CrawlExecutionMode.ASYNC, 10);
+
+        // ACT
+        LinkGraph pageBudgeted = crawlerService.crawl("page-budget", URI.create(site.getBaseUrl()), CrawlBudget.of(null, 50L, null));
+        long requestsForPages = site.getRequestCount();
+        LinkGraph byteBudgeted = crawlerService.crawl("byte-budget", URI.create(site.getBaseUrl()), CrawlBudget.of(null, null, 100_000L));
+
+        // ASSERT
+        Assertions.assertEquals(50, pageBudgeted.getPageCount());
+        Assertions.assertEquals(50, requestsForPages);
+        // pages fetched while the budget ran out may take the crawl past it, by no more than the pages in flight
+        Assertions.assertTrue(byteBudgeted.getPageCount() >= 100_000 / 4096, "Crawled " + byteBudgeted.getPageCount() + " pages");
+        Assertions.assertTrue(byteBudgeted.getPageCount() < site.getPageCount(), "Crawled " + byteBudgeted.getPageCount() + " pages");
+    }
+
+    /**
+     * A crawler service fetching with the JDK http client, without checkpoints, robots.txt or sitemaps, whose
+     * politeness never holds requests back.
+     */
+    private CrawlerService crawlerService(CrawlExecutionMode executionMode, int workerTimeoutSeconds) {
+        String directory = System.getProperty("java.io.tmpdir");
+        WebService webService = new WebService(new HttpClientPageFetcher(3000, workerTimeoutSeconds, 10 * 1024 * 1024, metrics), new PageCache(false, directory));
+        PolitenessScheduler politeness = new PolitenessScheduler(1_000_000, 1_000_000, 64, 64, 1_000, 60, 3);
+        return new CrawlerService(webService,
+                new SeenUrlSetFactory(SeenUrlSetType.FINGERPRINT, directory, 1000, 0.001, meterRegistry),
+                new FrontierFactory(FrontierType.PRIORITY, directory, 1, 64, FrontierPriority.DEPTH),
+                new CrawlCheckpointStore(directory, 0),
+                politeness,
+                new RobotsTxtCache(webService, politeness, false, "web-crawler", 1440),
+                new SitemapReader(webService, politeness, false, 1000),
+                new FetchScheduler(64, 8, 8, 10, new SimpleMeterRegistry()),
+                metrics,
+                8, workerTimeoutSeconds, 60, executionMode, 64);
+    }
+}
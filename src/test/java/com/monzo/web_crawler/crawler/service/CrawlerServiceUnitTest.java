@@ -1,11 +1,14 @@
 package com.monzo.web_crawler.crawler.service;
 
+import com.monzo.web_crawler.crawler.model.LinkGraph;
 import com.monzo.web_crawler.crawler.model.Page;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -13,10 +16,23 @@ import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @ExtendWith(SpringExtension.class)
 @ExtendWith(MockitoExtension.class)
@@ -27,11 +43,13 @@ public class CrawlerServiceUnitTest {
 
     private CrawlerService crawler;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private final URI rootUrl = URI.create("https://www.monzo.com");
 
     @BeforeEach
     void setUp() {
-        crawler = new CrawlerService(webService, 2, 10, 10);
+        crawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.PLATFORM, 2);
     }
 
     @Captor
@@ -40,15 +58,15 @@ public class CrawlerServiceUnitTest {
     @Test
     public void crawl_monzoPage_makesRequestToUrlsWithinPage_returnsAllUrlsFromRequiredDomain_noDuplicates() throws IOException, TimeoutException {
         // ARRANGE
-        Mockito.when(webService.getDocumentLinks(rootUrl.toString())).thenReturn(List.of("https://www.monzo.com", "https://www.monzo.com/help", "https://www.monzo.com/faq", "https://www.monzo.com/faq", "https://www.monzo.com/faq"));
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.monzo.com/help", "https://www.monzo.com/faq", "https://www.monzo.com/faq", "https://www.monzo.com/faq")));
 
-        Mockito.when(webService.getDocumentLinks("https://www.monzo.com/faq")).thenReturn(List.of("https://www.monzo.com", "https://www.google.com", "https://www.test.com", "https://www.monzo.com/fraud"));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/faq"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.google.com", "https://www.test.com", "https://www.monzo.com/fraud")));
 
         // any other page should return empty page with no links to simplify
-        Mockito.when(webService.getDocumentLinks(Mockito.argThat(url -> !url.equals(rootUrl.toString()) && !url.equals("https://www.monzo.com/faq")))).thenReturn(List.of());
+        Mockito.when(webService.fetchDocument(Mockito.argThat(url -> !url.equals(rootUrl.toString()) && !url.equals("https://www.monzo.com/faq")), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
 
         // ACT
-        List<Page> result = crawler.crawl(rootUrl);
+        List<Page> result = crawler.crawl(rootUrl).getPages();
 
         // ASSERT
         Page firstPage = result.getFirst();
@@ -70,7 +88,7 @@ public class CrawlerServiceUnitTest {
         assertContainsChildPage(monzoFaqPage, "https://www.monzo.com/fraud");
 
         // verify all calls to web service to retrieve documents are for monzo.com domain as per requirement
-        Mockito.verify(webService, Mockito.atLeast(1)).getDocumentLinks(urlCaptor.capture());
+        Mockito.verify(webService, Mockito.atLeast(1)).fetchDocument(urlCaptor.capture(), Mockito.any());
         String expectedDomain = rootUrl.getHost().replace("www.", "");
         urlCaptor.getAllValues().forEach(url -> Assertions.assertEquals(URI.create(url).getHost().replace("www.", ""), expectedDomain));
     }
@@ -81,15 +99,144 @@ public class CrawlerServiceUnitTest {
     }
 
 
+    @Test
+    public void crawl_failingPages_recordsFailuresByCauseAndPhaseTimings() throws IOException, TimeoutException {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/missing", "https://www.monzo.com/broken", "https://www.monzo.com/slow")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/missing"), Mockito.any())).thenThrow(new HttpErrorStatusException(404, "https://www.monzo.com/missing", null));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/broken"), Mockito.any())).thenThrow(new HttpErrorStatusException(500, "https://www.monzo.com/broken", null));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/slow"), Mockito.any())).thenThrow(new TimeoutException("Timed out"));
+
+        // ACT
+        crawler.crawl(rootUrl);
+
+        // ASSERT
+        Assertions.assertEquals(1, meterRegistry.get("crawler.fetch.failures").tag("cause", "4xx").counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("crawler.fetch.failures").tag("cause", "5xx").counter().count());
+        Assertions.assertEquals(1, meterRegistry.get("crawler.fetch.failures").tag("cause", "timeout").counter().count());
+        Assertions.assertEquals(0, meterRegistry.get("crawler.fetch.failures").tag("cause", "other").counter().count());
+        Assertions.assertEquals(4, meterRegistry.get("crawler.host.wait").timer().count());
+        Assertions.assertEquals(1, meterRegistry.get("crawler.links.canonicalization").timer().count());
+        // the crawl is no longer counted once it is done
+        Assertions.assertEquals(0, meterRegistry.get("crawler.seen-urls.size").gauge().value());
+    }
+
+    @Test
+    public void crawl_concurrentCrawlsSharingOneFetchSlot_bothComplete() throws Exception {
+        // ARRANGE
+        FetchScheduler oneSlot = new FetchScheduler(1, 2, 0, 10, new SimpleMeterRegistry());
+        CrawlerService sharingCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), oneSlot, crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        URI otherRootUrl = URI.create("https://monzo.com/business");
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/a", "https://www.monzo.com/b", "https://www.monzo.com/c")));
+        Mockito.when(webService.fetchDocument(Mockito.eq(otherRootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://monzo.com/business/a", "https://monzo.com/business/b")));
+        Mockito.when(webService.fetchDocument(Mockito.argThat(url -> !url.equals(rootUrl.toString()) && !url.equals(otherRootUrl.toString())), Mockito.any())).thenAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(10);
+            return FetchedDocument.of(List.of());
+        });
+
+        // ACT
+        CompletableFuture<LinkGraph> other = CompletableFuture.supplyAsync(() -> sharingCrawler.crawl(otherRootUrl));
+        LinkGraph graph = sharingCrawler.crawl(rootUrl);
+
+        // ASSERT
+        Assertions.assertEquals(4, graph.getPageCount());
+        Assertions.assertEquals(3, other.get(10, TimeUnit.SECONDS).getPageCount());
+        Assertions.assertEquals(0, oneSlot.getSlotsInUse());
+    }
+
+    @Test
+    public void crawl_concurrentCrawlOfDelayedHost_holdsNoFetchSlotWhileWaitingForItsHost() throws Exception {
+        // ARRANGE
+        FetchScheduler twoSlots = new FetchScheduler(2, 2, 0, 10, new SimpleMeterRegistry());
+        PolitenessScheduler politeness = politenessScheduler();
+        URI delayedRootUrl = URI.create("https://www.delayed.com");
+        politeness.applyCrawlDelay(delayedRootUrl.getHost(), Duration.ofSeconds(5));
+        CrawlerService delayedCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politeness, robotsTxtCache(), sitemapReader(), twoSlots, crawlMetrics(), 2, 10, 2, CrawlExecutionMode.VIRTUAL, 100);
+        CrawlerService otherCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politeness, robotsTxtCache(), sitemapReader(), twoSlots, crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        CountDownLatch delayedRootFetched = new CountDownLatch(1);
+        Mockito.when(webService.fetchDocument(Mockito.eq(delayedRootUrl.toString()), Mockito.any())).thenAnswer(invocation -> {
+            delayedRootFetched.countDown();
+            return FetchedDocument.of(List.of("https://www.delayed.com/a", "https://www.delayed.com/b", "https://www.delayed.com/c"));
+        });
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/a", "https://www.monzo.com/b", "https://www.monzo.com/c")));
+        Mockito.when(webService.fetchDocument(Mockito.startsWith("https://www.monzo.com/"), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+        CompletableFuture<LinkGraph> delayed = CompletableFuture.supplyAsync(() -> delayedCrawler.crawl(delayedRootUrl));
+        Assertions.assertTrue(delayedRootFetched.await(5, TimeUnit.SECONDS));
+        // the links of the delayed root page are now waiting for the crawl delay of their host
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // ACT
+        long start = System.nanoTime();
+        LinkGraph graph = otherCrawler.crawl(rootUrl);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // ASSERT
+        Assertions.assertEquals(4, graph.getPageCount());
+        Assertions.assertTrue(elapsedMillis < 1000, "Expected the crawl not to wait for the delayed host, took " + elapsedMillis + " ms");
+        // the delayed crawl times out while its links wait for their host, giving back every slot it held
+        delayed.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(0, twoSlots.getSlotsInUse());
+    }
+
+    @Test
+    public void crawl_fetchSchedulerSaturated_rejectsCrawl() throws Exception {
+        // ARRANGE
+        FetchScheduler saturated = new FetchScheduler(64, 1, 0, 10, new SimpleMeterRegistry());
+        CrawlerService rejectingCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), saturated, crawlMetrics(), 2, 10, 10, CrawlExecutionMode.PLATFORM, 2);
+        saturated.admit("running", 1);
+
+        // ACT / ASSERT
+        Assertions.assertThrows(CrawlRejectedException.class, () -> rejectingCrawler.crawl(rootUrl));
+        Mockito.verifyNoInteractions(webService);
+    }
+
+    @Test
+    public void crawl_depthBudget_skipsUrlsFurtherFromRootPage() throws Exception {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/a")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/a"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/b")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/b"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/c")));
+
+        // ACT
+        LinkGraph graph = crawler.crawl("depth-budget", rootUrl, CrawlBudget.of(2, null, null));
+
+        // ASSERT
+        Assertions.assertEquals(3, graph.getPageCount());
+        Assertions.assertTrue(graph.isPage("https://www.monzo.com/b"));
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/c"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_pageBudget_crawlsMostLinkedPagesFirstAndStops() throws Exception {
+        // ARRANGE
+        CrawlerService inLinksCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT),
+                new FrontierFactory(FrontierType.PRIORITY, System.getProperty("java.io.tmpdir"), 1, 64, FrontierPriority.IN_LINKS),
+                checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 1, 10, 10, CrawlExecutionMode.PLATFORM, 1);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/a", "https://www.monzo.com/b")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/a"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/c", "https://www.monzo.com/d", "https://www.monzo.com/b")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/b"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/d")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/d"), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        LinkGraph graph = inLinksCrawler.crawl("page-budget", rootUrl, CrawlBudget.of(null, 4L, null));
+
+        // ASSERT
+        // crawled one at a time, /d has been linked from two pages by the time /c and /d are left
+        Assertions.assertEquals(4, graph.getPageCount());
+        Assertions.assertTrue(graph.isPage("https://www.monzo.com/d"));
+        Assertions.assertFalse(graph.isPage("https://www.monzo.com/c"));
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/c"), Mockito.any());
+    }
+
     @Test
     public void crawl_cyclicalLink_doesNotLoopForever() throws IOException, TimeoutException {
         // ARRANGE
-        Mockito.when(webService.getDocumentLinks(rootUrl.toString())).thenReturn(List.of("https://www.monzo.com", "https://www.monzo.com/cycle"));
-        Mockito.when(webService.getDocumentLinks("https://www.monzo.com/cycle")).thenReturn(List.of("https://www.monzo.com", "https://www.monzo.com/cycle", "https://www.monzo.com/cycle2"));
-        Mockito.when(webService.getDocumentLinks("https://www.monzo.com/cycle2")).thenReturn(List.of("https://www.monzo.com", "https://www.monzo.com/cycle", "https://www.monzo.com/cycle2"));
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.monzo.com/cycle")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/cycle"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.monzo.com/cycle", "https://www.monzo.com/cycle2")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/cycle2"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.monzo.com/cycle", "https://www.monzo.com/cycle2")));
 
         // ACT
-        List<Page> pages = crawler.crawl(rootUrl);
+        List<Page> pages = crawler.crawl(rootUrl).getPages();
 
         // ASSERT
         Page monzoPage = pages.getFirst();
@@ -108,14 +255,346 @@ public class CrawlerServiceUnitTest {
     public void crawl_multiplePagesHaveSameLink_processesThatLinkOnlyOnce() throws IOException, TimeoutException {
         // ARRANGE
         // it will add /help and /repeated to work queue. Then it will crawl /help page and add /repeated to work queue again. Need to make sure /repeated is only crawled once.
-        Mockito.when(webService.getDocumentLinks(rootUrl.toString())).thenReturn(List.of("https://www.monzo.com/help", "https://www.monzo.com/repeated"));
-        Mockito.when(webService.getDocumentLinks("https://www.monzo.com/help")).thenReturn(List.of("https://www.monzo.com/repeated"));
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/repeated")));
 
         // ACT
         crawler.crawl(rootUrl);
 
         // ASSERT
-        Mockito.verify(webService, Mockito.times(1)).getDocumentLinks("https://www.monzo.com/repeated");
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_pagesRedirectedOrWithCanonicalUrl_neverFetchesTheirAliases() throws IOException, TimeoutException {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/old")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/old"), Mockito.any()))
+                .thenReturn(new FetchedDocument(List.of("https://www.monzo.com/new", "https://www.monzo.com/print"), "https://www.monzo.com/new/", null));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/print"), Mockito.any()))
+                .thenReturn(new FetchedDocument(List.of("https://www.monzo.com/other"), null, "https://www.monzo.com/article"));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/other"), Mockito.any()))
+                .thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/new", "https://www.monzo.com/article", "https://www.monzo.com/old")));
+
+        // ACT
+        List<Page> pages = crawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(Set.of(rootUrl, URI.create("https://www.monzo.com/new"), URI.create("https://www.monzo.com/print"), URI.create("https://www.monzo.com/other")),
+                pages.stream().map(Page::getUrl).collect(Collectors.toSet()));
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/old"), Mockito.any());
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/new"), Mockito.any());
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/article"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_pageRedirectedToQueuedUrl_recordsThatPageOnce() throws IOException, TimeoutException {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/a", "https://www.monzo.com/b")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/a"), Mockito.any()))
+                .thenReturn(new FetchedDocument(List.of("https://www.monzo.com"), "https://www.monzo.com/b", null));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/b"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com")));
+
+        // ACT
+        List<Page> pages = crawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(List.of(rootUrl, URI.create("https://www.monzo.com/b")), pages.stream().map(Page::getUrl).sorted().toList());
+    }
+
+    @Test
+    public void crawl_virtualExecutionMode_processesEachLinkOnce() throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlerService virtualCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        List<Page> pages = virtualCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(3, pages.size());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_pageOverWorkerTimeout_interruptsItsCrawlerAndFailsItOnce() throws Exception {
+        // ARRANGE
+        CrawlerService platformCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 1, 10, CrawlExecutionMode.PLATFORM, 2);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/slow")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/slow"), Mockito.any())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return FetchedDocument.of(List.of("https://www.monzo.com/late"));
+        });
+
+        // ACT
+        List<Page> pages = platformCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(List.of(rootUrl), pages.stream().map(Page::getUrl).toList());
+        // the crawler is stopped rather than left running, so it cannot complete the page after the crawl
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Expected the crawler past its timeout to be interrupted");
+        Assertions.assertEquals(1, meterRegistry.get("crawler.fetch.failures").tag("cause", "timeout").counter().count());
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/late"), Mockito.any());
     }
 
+    @Test
+    public void crawl_managerTimeoutExceeded_interruptsRunningCrawlers() throws Exception {
+        // ARRANGE
+        CrawlerService virtualCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 60, 1, CrawlExecutionMode.VIRTUAL, 100);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return FetchedDocument.of(List.of());
+        });
+
+        // ACT
+        List<Page> pages = virtualCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertTrue(pages.isEmpty());
+        Assertions.assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Expected running crawler to be interrupted");
+    }
+
+    @Test
+    public void crawl_asyncExecutionMode_processesEachLinkOnce() {
+        // ARRANGE
+        CrawlerService asyncCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.ASYNC, 100);
+        Mockito.when(webService.fetchDocumentAsync(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(CompletableFuture.completedFuture(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/repeated", "https://www.google.com"))));
+        Mockito.when(webService.fetchDocumentAsync(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(CompletableFuture.supplyAsync(() -> FetchedDocument.of(List.of("https://www.monzo.com/repeated"))));
+        Mockito.when(webService.fetchDocumentAsync(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any())).thenReturn(CompletableFuture.failedFuture(new IOException("HTTP error 500")));
+
+        // ACT
+        List<Page> pages = asyncCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(2, pages.size());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocumentAsync(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any());
+        Mockito.verify(webService, Mockito.never()).fetchDocumentAsync(Mockito.eq("https://www.google.com"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_lastPageCompletesLate_returnsAsSoonAsItCompletes() {
+        // ARRANGE
+        CrawlerService asyncCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.ASYNC, 100);
+        Mockito.when(webService.fetchDocumentAsync(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(CompletableFuture.completedFuture(FetchedDocument.of(List.of("https://www.monzo.com/slow"))));
+        Mockito.when(webService.fetchDocumentAsync(Mockito.eq("https://www.monzo.com/slow"), Mockito.any())).thenAnswer(invocation ->
+                CompletableFuture.supplyAsync(() -> FetchedDocument.of(List.of()), CompletableFuture.delayedExecutor(300, TimeUnit.MILLISECONDS)));
+
+        // ACT
+        long start = System.nanoTime();
+        List<Page> pages = asyncCrawler.crawl(rootUrl).getPages();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // ASSERT
+        Assertions.assertEquals(2, pages.size());
+        // the crawl ends when its last page does, rather than on the next poll of an idle work queue
+        Assertions.assertTrue(elapsedMillis < 900, "Expected the crawl to finish right after its last page, took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void crawl_bloomFilterSeenSet_processesEachLinkOnce() throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlerService bloomFilterCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.BLOOM_FILTER), frontierFactory(FrontierType.MEMORY), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com", "https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        List<Page> pages = bloomFilterCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(3, pages.size());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_diskFrontier_processesEachLinkOnce() throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlerService diskFrontierCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.DISK), checkpointStore(), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.PLATFORM, 2);
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/faq", "https://www.monzo.com/repeated")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/repeated", "https://www.monzo.com/fraud")));
+        Mockito.when(webService.fetchDocument(Mockito.argThat(url -> !url.equals(rootUrl.toString()) && !url.equals("https://www.monzo.com/help")), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        List<Page> pages = diskFrontierCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(5, pages.size());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/repeated"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_hostThrottlesRequest_queuesPageAgainAfterRetryAfter() throws IOException, TimeoutException {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any()))
+                .thenThrow(new HttpErrorStatusException(429, "https://www.monzo.com/help", Duration.ofMillis(100)))
+                .thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        List<Page> pages = crawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(2, pages.size());
+        Mockito.verify(webService, Mockito.times(2)).fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_hostKeepsThrottling_givesUpAfterMaxRetries() throws IOException, TimeoutException {
+        // ARRANGE
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any()))
+                .thenThrow(new HttpErrorStatusException(503, "https://www.monzo.com/help", Duration.ZERO));
+
+        // ACT
+        List<Page> pages = crawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        Assertions.assertEquals(1, pages.size());
+        // the first attempt and 3 retries
+        Mockito.verify(webService, Mockito.times(4)).fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_robotsTxtAndSitemap_skipsDisallowedUrlsAndCrawlsSitemapUrls() throws IOException, TimeoutException {
+        // ARRANGE
+        PolitenessScheduler politeness = politenessScheduler();
+        RobotsTxtCache robots = new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440);
+        CrawlerService politeCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politeness, robots, new SitemapReader(webService, politeness, true, 1000), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        Mockito.when(webService.openDocument(Mockito.eq("https://www.monzo.com/robots.txt"), Mockito.any())).thenAnswer(invocation -> stream("""
+                User-agent: *
+                Disallow: /private
+                Sitemap: https://www.monzo.com/sitemap-pages.xml
+                """));
+        Mockito.when(webService.openDocument(Mockito.eq("https://www.monzo.com/sitemap-pages.xml"), Mockito.any())).thenAnswer(invocation -> stream("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                  <url><loc>https://www.monzo.com/unlinked</loc></url>
+                  <url><loc>https://www.monzo.com/private/sitemap-page</loc></url>
+                </urlset>
+                """));
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/private/account")));
+        Mockito.when(webService.fetchDocument(Mockito.argThat(url -> !url.equals(rootUrl.toString())), Mockito.any())).thenReturn(FetchedDocument.of(List.of()));
+
+        // ACT
+        List<Page> pages = politeCrawler.crawl(rootUrl).getPages();
+
+        // ASSERT
+        List<String> crawledUrls = pages.stream().map(page -> page.getUrl().toString()).sorted().toList();
+        Assertions.assertEquals(List.of("https://www.monzo.com", "https://www.monzo.com/help", "https://www.monzo.com/unlinked"), crawledUrls);
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.startsWith("https://www.monzo.com/private"), Mockito.any());
+        Mockito.verify(webService, Mockito.times(1)).openDocument(Mockito.eq("https://www.monzo.com/robots.txt"), Mockito.any());
+    }
+
+    @Test
+    public void crawl_multiplePagesHaveSameLink_looksUpRobotsRulesOfThatLinkOnce() throws IOException, TimeoutException {
+        // ARRANGE
+        PolitenessScheduler politeness = politenessScheduler();
+        RobotsTxtCache robots = Mockito.spy(new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440));
+        CrawlerService politeCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore(), politeness, robots, sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.VIRTUAL, 100);
+        Mockito.when(webService.openDocument(Mockito.eq("https://www.monzo.com/robots.txt"), Mockito.any())).thenAnswer(invocation -> stream("User-agent: *\nDisallow: /private\n"));
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/faq", "https://www.monzo.com/private")));
+        Mockito.when(webService.fetchDocument(Mockito.argThat(url -> !url.equals(rootUrl.toString())), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/repeated", "https://www.monzo.com/private")));
+
+        // ACT
+        politeCrawler.crawl(rootUrl);
+
+        // ASSERT
+        Mockito.verify(robots, Mockito.times(1)).rulesFor(Mockito.eq(URI.create("https://www.monzo.com/repeated")), Mockito.any());
+        Mockito.verify(robots, Mockito.times(1)).rulesFor(Mockito.eq(URI.create("https://www.monzo.com/private")), Mockito.any());
+        Mockito.verify(webService, Mockito.never()).fetchDocument(Mockito.eq("https://www.monzo.com/private"), Mockito.any());
+    }
+
+    @Test
+    public void resume_crawlTimedOut_crawlsRemainingUrlsFromCheckpoint(@TempDir Path checkpointDirectory) throws Exception {
+        // ARRANGE
+        CrawlCheckpointStore checkpointStore = new CrawlCheckpointStore(checkpointDirectory.toString(), 60);
+        CrawlerService timingOutCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), checkpointStore, politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 60, 3, CrawlExecutionMode.VIRTUAL, 100);
+        AtomicInteger slowPageRequests = new AtomicInteger();
+        Mockito.when(webService.fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com/help", "https://www.monzo.com/slow")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any())).thenReturn(FetchedDocument.of(List.of("https://www.monzo.com")));
+        Mockito.when(webService.fetchDocument(Mockito.eq("https://www.monzo.com/slow"), Mockito.any())).thenAnswer(invocation -> {
+            // only the first request, before the crawl times out, hangs
+            if (slowPageRequests.getAndIncrement() == 0) {
+                Thread.sleep(Duration.ofMinutes(1));
+            }
+            return FetchedDocument.of(List.of("https://www.monzo.com/help"));
+        });
+        List<Page> timedOutPages = timingOutCrawler.crawl("resumable-crawl", rootUrl).getPages();
+
+        // ACT
+        Optional<LinkGraph> resumedPages = timingOutCrawler.resume("resumable-crawl");
+
+        // ASSERT
+        Assertions.assertTrue(timedOutPages.isEmpty());
+        Assertions.assertTrue(resumedPages.isPresent());
+        Assertions.assertEquals(3, resumedPages.get().getPageCount());
+        Assertions.assertEquals(2, slowPageRequests.get());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq(rootUrl.toString()), Mockito.any());
+        Mockito.verify(webService, Mockito.times(1)).fetchDocument(Mockito.eq("https://www.monzo.com/help"), Mockito.any());
+        Assertions.assertTrue(timingOutCrawler.resume("resumable-crawl").isEmpty(), "Expected checkpoint to be deleted once the crawl completed");
+    }
+
+    @Test
+    public void resume_unknownCrawl_returnsEmpty(@TempDir Path checkpointDirectory) throws IOException {
+        // ARRANGE
+        CrawlerService resumingCrawler = new CrawlerService(webService, seenUrlSetFactory(SeenUrlSetType.FINGERPRINT), frontierFactory(FrontierType.MEMORY), new CrawlCheckpointStore(checkpointDirectory.toString(), 60), politenessScheduler(), robotsTxtCache(), sitemapReader(), fetchScheduler(), crawlMetrics(), 2, 10, 10, CrawlExecutionMode.PLATFORM, 2);
+
+        // ACT
+        Optional<LinkGraph> pages = resumingCrawler.resume("unknown-crawl");
+
+        // ASSERT
+        Assertions.assertTrue(pages.isEmpty());
+        Mockito.verifyNoInteractions(webService);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SeenUrlSetFactory seenUrlSetFactory(SeenUrlSetType type) {
+        return new SeenUrlSetFactory(type, System.getProperty("java.io.tmpdir"), 1000, 0.001, new SimpleMeterRegistry());
+    }
+
+    private static FrontierFactory frontierFactory(FrontierType type) {
+        return new FrontierFactory(type, System.getProperty("java.io.tmpdir"), 1, 64, FrontierPriority.DEPTH);
+    }
+
+    private static PolitenessScheduler politenessScheduler() {
+        return new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3);
+    }
+
+    private RobotsTxtCache robotsTxtCache() {
+        return new RobotsTxtCache(webService, politenessScheduler(), false, "web-crawler", 1440);
+    }
+
+    private SitemapReader sitemapReader() {
+        return new SitemapReader(webService, politenessScheduler(), false, 1000);
+    }
+
+    private static FetchScheduler fetchScheduler() {
+        return new FetchScheduler(64, 8, 8, 10, new SimpleMeterRegistry());
+    }
+
+    private CrawlMetrics crawlMetrics() {
+        return new CrawlMetrics(meterRegistry);
+    }
+
+    private static CrawlCheckpointStore checkpointStore() {
+        return new CrawlCheckpointStore(System.getProperty("java.io.tmpdir"), 0);
+    }
 }
@@ -1,6 +1,7 @@
 package com.monzo.web_crawler.crawler.service;
 
 import com.monzo.web_crawler.crawler.model.Page;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -24,17 +25,17 @@ public class CrawlerUnitTest {
     @BeforeEach
     void setUp() {
         webServiceMock = mock(WebService.class);
-        crawler = new Crawler(webServiceMock);
+        crawler = new Crawler(webServiceMock, new CrawlStatistics(), new CrawlMetrics(new SimpleMeterRegistry()));
     }
 
     @Test
     void testCrawlSuccessful() throws IOException, TimeoutException {
         // Arrange
         List<String> documentLinks = List.of("http://example.com/page1", "/page2", "http://example.org");
-        when(webServiceMock.getDocumentLinks(currentPageUri.toString())).thenReturn(documentLinks);
+        when(webServiceMock.fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class))).thenReturn(FetchedDocument.of(documentLinks));
 
         // Act
-        Page resultPage = crawler.crawl(currentPageUri);
+        Page resultPage = crawler.crawl(currentPageUri).page();
 
         // Assert
         assertNotNull(resultPage);
@@ -45,34 +46,34 @@ public class CrawlerUnitTest {
                 URI.create("http://example.org")
         );
         assertEquals(expectedLinks, resultPage.getChildren());
-        verify(webServiceMock, times(1)).getDocumentLinks(currentPageUri.toString());
+        verify(webServiceMock, times(1)).fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class));
     }
 
     @Test
     void testCrawlHandlesEmptyLinks() throws IOException, TimeoutException {
         // Arrange
-        when(webServiceMock.getDocumentLinks(currentPageUri.toString())).thenReturn(List.of());
+        when(webServiceMock.fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class))).thenReturn(FetchedDocument.of(List.of()));
 
         // Act
-        Page resultPage = crawler.crawl(currentPageUri);
+        Page resultPage = crawler.crawl(currentPageUri).page();
 
         // Assert
         assertNotNull(resultPage);
         assertEquals(currentPageUri, resultPage.getUrl());
         assertTrue(resultPage.getChildren().isEmpty());
-        verify(webServiceMock, times(1)).getDocumentLinks(currentPageUri.toString());
+        verify(webServiceMock, times(1)).fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class));
     }
 
 
     @Test
     void testCrawlHandlesWebServiceException() throws IOException, TimeoutException {
         // Arrange
-        when(webServiceMock.getDocumentLinks(currentPageUri.toString())).thenThrow(new RuntimeException("WebService error"));
+        when(webServiceMock.fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class))).thenThrow(new RuntimeException("WebService error"));
 
         // Act
         Assertions.assertThrows(RuntimeException.class, () -> crawler.crawl(currentPageUri));
 
         // Assert
-        verify(webServiceMock, times(1)).getDocumentLinks(currentPageUri.toString());
+        verify(webServiceMock, times(1)).fetchDocument(eq(currentPageUri.toString()), any(CrawlStatistics.class));
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.monzo.web_crawler.crawler.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FetchSchedulerUnitTest {
+
+    @Test
+    public void admit_asManyCrawlsRunningAsAllowed_queuesNextAndRejectsBeyondQueue() throws Exception {
+        // ARRANGE
+        FetchScheduler scheduler = new FetchScheduler(4, 1, 1, 10, new SimpleMeterRegistry());
+        FetchScheduler.Tenant running = scheduler.admit("running", 1);
+        CompletableFuture<FetchScheduler.Tenant> queued = CompletableFuture.supplyAsync(() -> admit(scheduler, "queued"));
+        while (scheduler.getQueuedCrawlCount() == 0) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+
+        // ACT / ASSERT
+        Assertions.assertThrows(CrawlRejectedException.class, () -> scheduler.admit("rejected", 1));
+        Assertions.assertFalse(queued.isDone());
+        running.close();
+        Assertions.assertNotNull(queued.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, scheduler.getQueuedCrawlCount());
+    }
+
+    @Test
+    public void admit_noCrawlFinishesInTime_rejects() throws Exception {
+        // ARRANGE
+        FetchScheduler scheduler = new FetchScheduler(4, 1, 1, 1, new SimpleMeterRegistry());
+        scheduler.admit("running", 1);
+
+        // ACT / ASSERT
+        Assertions.assertThrows(CrawlRejectedException.class, () -> scheduler.admit("waiting", 1));
+        Assertions.assertEquals(0, scheduler.getQueuedCrawlCount());
+    }
+
+    @Test
+    public void release_crawlsWaitingForSlots_handsSlotsOutInProportionToWeights() throws Exception {
+        // ARRANGE
+        FetchScheduler scheduler = new FetchScheduler(4, 2, 0, 10, new SimpleMeterRegistry());
+        FetchScheduler.Tenant heavy = scheduler.admit("heavy", 3);
+        FetchScheduler.Tenant light = scheduler.admit("light", 1);
+        AtomicInteger heavySlots = new AtomicInteger(0);
+        AtomicInteger lightSlots = new AtomicInteger(0);
+        // both crawls always have urls to fetch, they take every slot handed to them and ask for another
+        heavy.onSlotFreed(() -> takeAndAskAgain(heavy, heavySlots));
+        light.onSlotFreed(() -> takeAndAskAgain(light, lightSlots));
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(heavy.tryAcquire());
+        }
+        heavySlots.set(4);
+        Assertions.assertFalse(light.tryAcquire());
+        Assertions.assertFalse(heavy.tryAcquire());
+
+        // ACT
+        for (int i = 0; i < 4; i++) {
+            heavy.release();
+            heavySlots.decrementAndGet();
+        }
+
+        // ASSERT
+        Assertions.assertEquals(3, heavySlots.get());
+        Assertions.assertEquals(1, lightSlots.get());
+        Assertions.assertEquals(4, scheduler.getSlotsInUse());
+    }
+
+    @Test
+    public void close_crawlHoldingSlots_freesThemForWaitingCrawls() throws Exception {
+        // ARRANGE
+        FetchScheduler scheduler = new FetchScheduler(2, 2, 0, 10, new SimpleMeterRegistry());
+        FetchScheduler.Tenant cancelled = scheduler.admit("cancelled", 1);
+        FetchScheduler.Tenant waiting = scheduler.admit("waiting", 1);
+        AtomicInteger waitingSlots = new AtomicInteger(0);
+        waiting.onSlotFreed(() -> {
+            if (waiting.tryAcquire()) {
+                waitingSlots.incrementAndGet();
+            }
+        });
+        Assertions.assertTrue(cancelled.tryAcquire());
+        Assertions.assertTrue(cancelled.tryAcquire());
+        Assertions.assertFalse(waiting.tryAcquire());
+
+        // ACT
+        cancelled.close();
+        // a crawler of the closed crawl completing late does not free a slot twice
+        cancelled.release();
+
+        // ASSERT
+        Assertions.assertEquals(1, waitingSlots.get());
+        Assertions.assertTrue(waiting.tryAcquire());
+        Assertions.assertEquals(2, scheduler.getSlotsInUse());
+        Assertions.assertFalse(cancelled.tryAcquire());
+    }
+
+    private static void takeAndAskAgain(FetchScheduler.Tenant tenant, AtomicInteger slots) {
+        if (tenant.tryAcquire()) {
+            slots.incrementAndGet();
+            Assertions.assertFalse(tenant.tryAcquire());
+        }
+    }
+
+    private static FetchScheduler.Tenant admit(FetchScheduler scheduler, String crawlId) {
+        try {
+            return scheduler.admit(crawlId, 1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
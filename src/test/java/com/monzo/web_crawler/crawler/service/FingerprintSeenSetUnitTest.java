@@ -0,0 +1,74 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FingerprintSeenSetUnitTest {
+
+    @Test
+    public void add_sameUrlTwice_returnsTrueOnlyFirstTime() {
+        // ARRANGE
+        FingerprintSeenSet seenSet = new FingerprintSeenSet();
+
+        // ACT / ASSERT
+        Assertions.assertTrue(seenSet.add(URI.create("https://monzo.com/help")));
+        Assertions.assertFalse(seenSet.add(URI.create("https://monzo.com/help")));
+        Assertions.assertTrue(seenSet.contains(URI.create("https://monzo.com/help")));
+        Assertions.assertFalse(seenSet.contains(URI.create("https://monzo.com/faq")));
+        Assertions.assertEquals(1, seenSet.size());
+    }
+
+    @Test
+    public void add_manyUrls_growsAndKeepsAllUrls() {
+        // ARRANGE
+        FingerprintSeenSet seenSet = new FingerprintSeenSet();
+
+        // ACT
+        for (int i = 0; i < 100_000; i++) {
+            Assertions.assertTrue(seenSet.add(URI.create("https://monzo.com/page/" + i)));
+        }
+
+        // ASSERT
+        Assertions.assertEquals(100_000, seenSet.size());
+        for (int i = 0; i < 100_000; i++) {
+            Assertions.assertTrue(seenSet.contains(URI.create("https://monzo.com/page/" + i)));
+        }
+        Assertions.assertFalse(seenSet.contains(URI.create("https://monzo.com/page/100000")));
+    }
+
+    @Test
+    public void add_concurrentCrawlersAddingSameUrls_eachUrlAddedOnce() throws Exception {
+        // ARRANGE
+        FingerprintSeenSet seenSet = new FingerprintSeenSet();
+        AtomicInteger added = new AtomicInteger();
+        List<Future<?>> crawlers = new ArrayList<>();
+
+        // ACT
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            for (int crawler = 0; crawler < 8; crawler++) {
+                crawlers.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (seenSet.add(URI.create("https://monzo.com/page/" + i))) {
+                            added.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> crawler : crawlers) {
+                crawler.get();
+            }
+        }
+
+        // ASSERT
+        Assertions.assertEquals(10_000, added.get());
+        Assertions.assertEquals(10_000, seenSet.size());
+    }
+}
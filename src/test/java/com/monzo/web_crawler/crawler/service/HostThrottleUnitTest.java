@@ -0,0 +1,158 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class HostThrottleUnitTest {
+
+    @Test
+    public void acquire_tokensUsedUp_pacesRequestsAtRate() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 20, 1, 8, 8, 2.0, Duration.ofSeconds(60));
+        long startTime = System.nanoTime();
+
+        // ACT
+        for (int i = 0; i < 5; i++) {
+            throttle.acquire().succeeded();
+        }
+
+        // ASSERT
+        // the first request uses the burst token, the other 4 wait 50 ms each
+        Assertions.assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(180));
+    }
+
+    @Test
+    public void acquire_concurrencyLimitReached_waitsForRunningRequest() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 1, 8, 2.0, Duration.ofSeconds(60));
+        HostThrottle.Permit running = throttle.acquire();
+
+        // ACT
+        CompletableFuture<HostThrottle.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return throttle.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // ASSERT
+        Assertions.assertThrows(TimeoutException.class, () -> waiting.get(100, TimeUnit.MILLISECONDS));
+        running.succeeded();
+        Assertions.assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void succeeded_growsConcurrencyLimitByOnePerRound() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 1, 8, 2.0, Duration.ofSeconds(60));
+
+        // ACT
+        throttle.acquire().succeeded();
+        double afterFirstSuccess = throttle.getConcurrencyLimit();
+        throttle.acquire().succeeded();
+        throttle.acquire().succeeded();
+
+        // ASSERT
+        Assertions.assertEquals(2, afterFirstSuccess, 0.001);
+        Assertions.assertEquals(2 + 1 / 2.0 + 1 / 2.5, throttle.getConcurrencyLimit(), 0.001);
+    }
+
+    @Test
+    public void failed_requestsOfSameRound_halveConcurrencyLimitOnce() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 8, 8, 2.0, Duration.ofSeconds(60));
+        List<HostThrottle.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            permits.add(throttle.acquire());
+        }
+
+        // ACT
+        permits.forEach(HostThrottle.Permit::failed);
+        double afterFirstRound = throttle.getConcurrencyLimit();
+        throttle.acquire().failed();
+
+        // ASSERT
+        Assertions.assertEquals(4, afterFirstRound, 0.001);
+        Assertions.assertEquals(2, throttle.getConcurrencyLimit(), 0.001);
+    }
+
+    @Test
+    public void throttled_retryAfter_pausesHostAndHalvesRate() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 8, 8, 2.0, Duration.ofSeconds(60));
+
+        // ACT
+        throttle.acquire().throttled(Duration.ofMillis(200));
+        long throttledTime = System.nanoTime();
+        throttle.acquire().succeeded();
+
+        // ASSERT
+        Assertions.assertTrue(System.nanoTime() - throttledTime >= TimeUnit.MILLISECONDS.toNanos(180));
+        Assertions.assertEquals(4, throttle.getConcurrencyLimit(), 0.5);
+        Assertions.assertTrue(throttle.getRequestsPerSecond() < 1000);
+    }
+
+    @Test
+    public void throttled_retryAfterAboveMaxBackoff_pausesForMaxBackoff() throws Exception {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 8, 8, 2.0, Duration.ofMillis(100));
+        long startTime = System.nanoTime();
+
+        // ACT
+        throttle.acquire().throttled(Duration.ofHours(1));
+        throttle.acquire().succeeded();
+
+        // ASSERT
+        Assertions.assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void completeWith_clientErrorOrThrottledError_succeedsOrThrottles() throws Exception {
+        // ARRANGE
+        HostThrottle notFound = new HostThrottle("monzo.com", 1000, 100, 1, 8, 2.0, Duration.ofSeconds(60));
+        HostThrottle throttling = new HostThrottle("monzo.com", 1000, 100, 8, 8, 2.0, Duration.ofSeconds(60));
+
+        // ACT
+        notFound.acquire().completeWith(new HttpErrorStatusException(404, "https://monzo.com/robots.txt", null));
+        throttling.acquire().completeWith(new HttpErrorStatusException(429, "https://monzo.com/robots.txt", Duration.ZERO));
+
+        // ASSERT
+        Assertions.assertEquals(2, notFound.getConcurrencyLimit(), 0.001);
+        Assertions.assertEquals(4, throttling.getConcurrencyLimit(), 0.5);
+        Assertions.assertTrue(throttling.getRequestsPerSecond() < 1000);
+    }
+
+    @Test
+    public void applyCrawlDelay_slowsRequestsToOnePerDelay() {
+        // ARRANGE
+        HostThrottle throttle = new HostThrottle("monzo.com", 1000, 100, 8, 8, 2.0, Duration.ofSeconds(60));
+
+        // ACT
+        throttle.applyCrawlDelay(Duration.ofMillis(500));
+
+        // ASSERT
+        Assertions.assertEquals(2, throttle.getRequestsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void parseRetryAfter_secondsOrHttpDate_returnsDelay() {
+        // ARRANGE
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+
+        // ACT / ASSERT
+        Assertions.assertEquals(Duration.ofSeconds(120), HttpErrorStatusException.parseRetryAfter("120", now));
+        Assertions.assertEquals(Duration.ofSeconds(30), HttpErrorStatusException.parseRetryAfter("Wed, 01 Jan 2025 10:00:30 GMT", now));
+        Assertions.assertEquals(Duration.ZERO, HttpErrorStatusException.parseRetryAfter("Wed, 01 Jan 2025 09:00:00 GMT", now));
+        Assertions.assertNull(HttpErrorStatusException.parseRetryAfter("soon", now));
+        Assertions.assertNull(HttpErrorStatusException.parseRetryAfter(null, now));
+    }
+}
@@ -0,0 +1,172 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class LinkExtractorUnitTest {
+
+    private static final String BASE_URI = "https://monzo.com/help/";
+
+    @Test
+    public void extractLinks_monzoPage_returnsSameLinksAsDomParse() throws IOException {
+        // ARRANGE
+        byte[] monzoPage;
+        try (InputStream page = getClass().getResourceAsStream("/service/monzo_page.html")) {
+            monzoPage = page.readAllBytes();
+        }
+
+        // ACT
+        List<String> streamed = LinkExtractor.extractLinks(new ByteArrayInputStream(monzoPage), "UTF-8", BASE_URI);
+        List<String> parsed = LinkExtractor.extractLinksFromDom(new ByteArrayInputStream(monzoPage), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertFalse(streamed.isEmpty());
+        Assertions.assertEquals(parsed, streamed);
+    }
+
+    @Test
+    public void extractLinks_trickyMarkup_returnsSameLinksAsDomParse() throws IOException {
+        // ARRANGE
+        String html = """
+                <!DOCTYPE html>
+                <html><head>
+                <title>a <a href="/not-a-link-in-title">title</a></title>
+                <script>document.write('<a href="/not-a-link-in-script">');</script>
+                <style>a[href="/not-a-link-in-style"] {}</style>
+                </head><body>
+                <!-- <a href="/not-a-link-in-comment"> -->
+                <A HREF="/upper">upper case</A>
+                <a class=nav href=/unquoted>unquoted</a>
+                <a href='/single?a=1&amp;b=2'>entities</a>
+                <a href="/caf&eacute;?q=&quot;x&quot;&#39;">named entity</a>
+                <a href = "relative/page" >spaces</a>
+                <a name="anchor">no href</a>
+                <a href>empty</a>
+                <a href="/first" href="/second">duplicate</a>
+                <a href="#section">fragment</a>
+                <a href="mailto:test@example.com">mail</a>
+                < a href="/not-a-tag">text</a>
+                <p>1 << 2 <a href="/after-text">after</a></p>
+                <svg><a href="/svg-link"></a></svg>
+                </body></html>
+                """;
+
+        // ACT
+        List<String> streamed = LinkExtractor.extractLinks(toStream(html), "UTF-8", BASE_URI);
+        List<String> parsed = LinkExtractor.extractLinksFromDom(toStream(html), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(parsed, streamed);
+        Assertions.assertTrue(streamed.contains("https://monzo.com/single?a=1&b=2"));
+        Assertions.assertTrue(streamed.contains("https://monzo.com/help/relative/page"));
+        Assertions.assertTrue(streamed.stream().noneMatch(link -> link.contains("not-a-")));
+    }
+
+    @Test
+    public void extractLinks_baseHref_resolvesLinksAgainstBase() throws IOException {
+        // ARRANGE
+        String html = "<html><head><base href=\"https://example.com/docs/\"></head><body><a href=\"page\">page</a></body></html>";
+
+        // ACT
+        List<String> streamed = LinkExtractor.extractLinks(toStream(html), null, BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://example.com/docs/page"), streamed);
+        Assertions.assertEquals(LinkExtractor.extractLinksFromDom(toStream(html), null, BASE_URI), streamed);
+    }
+
+    @Test
+    public void extract_canonicalLinks_returnsFirstCanonicalUrl() throws IOException {
+        // ARRANGE
+        String html = """
+                <html><head><link rel="stylesheet" href="/site.css"><link rel="canonical"><link rel="Canonical alternate" href="/help?id=1&amp;page=2">
+                <link rel="canonical" href="/other"></head><body><a href="/faq">faq</a></body></html>""";
+
+        // ACT
+        LinkExtractor.PageLinks links = LinkExtractor.extract(toStream(html), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(new LinkExtractor.PageLinks(List.of("https://monzo.com/faq"), "https://monzo.com/help?id=1&page=2"), links);
+    }
+
+    @Test
+    public void extractLinks_metaCharset_decodesUsingDeclaredCharset() throws IOException {
+        // ARRANGE
+        byte[] html = "<html><head><meta charset=\"ISO-8859-1\"></head><body><a href=\"/café\">cafe</a></body></html>".getBytes(StandardCharsets.ISO_8859_1);
+
+        // ACT
+        List<String> streamed = LinkExtractor.extractLinks(new ByteArrayInputStream(html), null, BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(LinkExtractor.extractLinksFromDom(new ByteArrayInputStream(html), null, BASE_URI), streamed);
+    }
+
+    @Test
+    public void extractLinks_unterminatedMarkup_returnsLinksBeforeIt() throws IOException {
+        // ACT
+        List<String> streamed = LinkExtractor.extractLinks(toStream("<a href=\"/one\">one</a><a href=\"/two"), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://monzo.com/one"), streamed);
+    }
+
+    @Test
+    public void extract_hrefLongerThanMaxToken_parsesRestOfDocumentFromItsTag() throws IOException {
+        // ARRANGE
+        String longPath = "/long/" + "x".repeat(StreamingLinkExtractor.MAX_TOKEN_LENGTH);
+        String html = "<html><head><base href=\"https://example.com/docs/\"></head><body><a href=\"/one\">one</a>"
+                + "<a class=\"" + "y".repeat(StreamingLinkExtractor.MAX_TOKEN_LENGTH) + "\" href=\"two\">two</a>"
+                + "<a href=\"" + longPath + "\">long</a><link rel=\"canonical\" href=\"/canonical\"><a href=\"three\">three</a></body></html>";
+
+        // ACT
+        LinkExtractor.PageLinks links = LinkExtractor.extract(toStream(html), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://example.com/one", "https://example.com/docs/two", "https://example.com" + longPath,
+                "https://example.com/docs/three"), links.links());
+        Assertions.assertEquals(LinkExtractor.extractLinksFromDom(toStream(html), "UTF-8", BASE_URI), links.links());
+        Assertions.assertEquals("https://example.com/canonical", links.canonicalUrl());
+    }
+
+    @Test
+    public void extract_binaryBody_returnsNoLinks() throws IOException {
+        // ARRANGE
+        byte[] body = "\u0089PNG\r\n\u001a\n\u0000\u0000\u0000\rIHDR<a href=\"/not-a-link\">".getBytes(StandardCharsets.ISO_8859_1);
+
+        // ACT
+        LinkExtractor.PageLinks links = LinkExtractor.extract(new ByteArrayInputStream(body), "UTF-8", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(new LinkExtractor.PageLinks(List.of(), null), links);
+    }
+
+    @Test
+    public void extractLinks_unsupportedDeclaredCharset_detectsCharsetFromDocument() throws IOException {
+        // ARRANGE
+        byte[] html = "<html><head><meta charset=\"ISO-8859-1\"></head><body><a href=\"/café\">cafe</a></body></html>".getBytes(StandardCharsets.ISO_8859_1);
+
+        // ACT
+        List<String> links = LinkExtractor.extractLinks(new ByteArrayInputStream(html), "x-not-a-charset", BASE_URI);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://monzo.com/café"), links);
+    }
+
+    @Test
+    public void charsetOf_contentTypes_returnsDeclaredCharset() {
+        Assertions.assertEquals("UTF-8", LinkExtractor.charsetOf("text/html; charset=UTF-8"));
+        Assertions.assertEquals("utf-8", LinkExtractor.charsetOf("text/html;charset=\"utf-8\""));
+        Assertions.assertNull(LinkExtractor.charsetOf("text/html"));
+        Assertions.assertNull(LinkExtractor.charsetOf(null));
+    }
+
+    private static InputStream toStream(String html) {
+        return new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,65 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public class PageCacheUnitTest {
+
+    @TempDir
+    private Path cacheDirectory;
+
+    @Test
+    public void get_pageWithValidatorsPut_returnsValidatorsAndLinks() {
+        // ARRANGE
+        PageCache cache = new PageCache(true, cacheDirectory.toString());
+        cache.put("https://monzo.com/help", FetchedPage.of(List.of("https://monzo.com/faq", "https://monzo.com/fraud"), "\"v1\"", null));
+
+        // ACT
+        CachedPage cached = cache.get("https://monzo.com/help");
+
+        // ASSERT
+        Assertions.assertEquals(new CachedPage("https://monzo.com/help", "\"v1\"", null, List.of("https://monzo.com/faq", "https://monzo.com/fraud")), cached);
+        Assertions.assertNull(cache.get("https://monzo.com/faq"));
+    }
+
+    @Test
+    public void put_samePageAgain_replacesEntry() {
+        // ARRANGE
+        PageCache cache = new PageCache(true, cacheDirectory.toString());
+        cache.put("https://monzo.com/help", FetchedPage.of(List.of("https://monzo.com/faq"), "\"v1\"", null));
+
+        // ACT
+        cache.put("https://monzo.com/help", FetchedPage.of(List.of(), null, "Wed, 01 Jan 2025 10:00:00 GMT"));
+
+        // ASSERT
+        Assertions.assertEquals(new CachedPage("https://monzo.com/help", null, "Wed, 01 Jan 2025 10:00:00 GMT", List.of()), cache.get("https://monzo.com/help"));
+    }
+
+    @Test
+    public void put_pageWithoutValidators_isNotCached() {
+        // ARRANGE
+        PageCache cache = new PageCache(true, cacheDirectory.toString());
+
+        // ACT
+        cache.put("https://monzo.com/help", FetchedPage.of(List.of("https://monzo.com/faq"), null, null));
+
+        // ASSERT
+        Assertions.assertNull(cache.get("https://monzo.com/help"));
+    }
+
+    @Test
+    public void get_disabled_returnsNull() {
+        // ARRANGE
+        PageCache cache = new PageCache(false, cacheDirectory.toString());
+
+        // ACT
+        cache.put("https://monzo.com/help", FetchedPage.of(List.of("https://monzo.com/faq"), "\"v1\"", null));
+
+        // ASSERT
+        Assertions.assertNull(cache.get("https://monzo.com/help"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class PriorityFrontierUnitTest {
+
+    @Test
+    public void poll_depthPriority_returnsShallowestUrlsFirstInOrderAdded() throws Exception {
+        // ARRANGE
+        PriorityFrontier frontier = new PriorityFrontier(FrontierPriority.DEPTH.scorer());
+        frontier.add(queued("/deep", 3));
+        frontier.add(queued("/a", 1));
+        frontier.add(queued("/b", 2));
+        frontier.add(queued("/c", 1));
+
+        // ACT
+        List<String> polled = drain(frontier);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("/a", "/c", "/b", "/deep"), polled);
+        Assertions.assertTrue(frontier.isEmpty());
+        Assertions.assertEquals(0, frontier.size());
+    }
+
+    @Test
+    public void poll_inLinksPriority_returnsMostLinkedUrlsFirst() throws Exception {
+        // ARRANGE
+        PriorityFrontier frontier = new PriorityFrontier(FrontierPriority.IN_LINKS.scorer());
+        frontier.add(queued("/rare", 1));
+        frontier.add(queued("/popular", 2));
+        frontier.add(queued("/linked", 1));
+        frontier.addInLink(URI.create("https://monzo.com/popular"));
+        frontier.addInLink(URI.create("https://monzo.com/popular"));
+        frontier.addInLink(URI.create("https://monzo.com/linked"));
+        // links to urls which are not queued, or no longer, are ignored
+        frontier.addInLink(URI.create("https://monzo.com/crawled"));
+
+        // ACT
+        List<String> polled = drain(frontier);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("/popular", "/linked", "/rare"), polled);
+    }
+
+    @Test
+    public void poll_sitemapPriority_returnsHighestPriorityFirst() throws Exception {
+        // ARRANGE
+        PriorityFrontier frontier = new PriorityFrontier(FrontierPriority.SITEMAP.scorer());
+        frontier.add(new QueuedUrl(URI.create("https://monzo.com/low"), 1, 0.1f));
+        frontier.add(new QueuedUrl(URI.create("https://monzo.com/linked"), 2, QueuedUrl.DEFAULT_PRIORITY));
+        frontier.add(new QueuedUrl(URI.create("https://monzo.com/high"), 1, 1.0f));
+
+        // ACT
+        List<String> polled = drain(frontier);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("/high", "/linked", "/low"), polled);
+    }
+
+    @Test
+    public void poll_emptyFrontier_waitsForUrlAdded() throws Exception {
+        // ARRANGE
+        PriorityFrontier frontier = new PriorityFrontier(FrontierPriority.DEPTH.scorer());
+        CompletableFuture<QueuedUrl> poll = CompletableFuture.supplyAsync(() -> {
+            try {
+                return frontier.poll(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // ACT
+        TimeUnit.MILLISECONDS.sleep(50);
+        frontier.add(queued("/late", 1));
+
+        // ASSERT
+        Assertions.assertEquals(URI.create("https://monzo.com/late"), poll.get(1, TimeUnit.SECONDS).url());
+        Assertions.assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    private static QueuedUrl queued(String path, int depth) {
+        return new QueuedUrl(URI.create("https://monzo.com" + path), depth);
+    }
+
+    private static List<String> drain(Frontier frontier) throws InterruptedException {
+        List<String> paths = new ArrayList<>();
+        QueuedUrl url;
+        while ((url = frontier.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            paths.add(url.url().getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,138 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+public class RobotsRulesUnitTest {
+
+    @Test
+    public void isAllowed_longestMatchingRuleWins() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /help
+                Allow: /help/public
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/help/private")));
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/help/public/faq")));
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/about")));
+    }
+
+    @Test
+    public void isAllowed_allowAndDisallowOfSameLength_allowWins() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /page
+                Allow: /page
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/page")));
+    }
+
+    @Test
+    public void isAllowed_wildcardAndEndAnchor_matchPatterns() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /*.pdf$
+                Disallow: /*/private/
+                Disallow: /search?
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/docs/statement.pdf")));
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/docs/statement.pdf/preview")));
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/users/private/settings")));
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/search?q=card")));
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/search")));
+    }
+
+    @Test
+    public void parse_groupForUserAgent_takesPrecedenceOverWildcardGroup() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                User-agent: *
+                Disallow: /
+
+                User-agent: other-bot
+                User-agent: Web-Crawler
+                Disallow: /private
+                Crawl-delay: 2.5
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/help")));
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/private")));
+        Assertions.assertEquals(Duration.ofMillis(2500), rules.getCrawlDelay());
+    }
+
+    @Test
+    public void parse_groupForPrefixOfUserAgent_doesNotApply() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                User-agent: web
+                Disallow: /
+
+                User-agent: web-crawler-extended
+                Disallow: /
+
+                User-agent: WEB-CRAWLER/2.1
+                Disallow: /private
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/help")));
+        Assertions.assertFalse(rules.isAllowed(URI.create("https://monzo.com/private")));
+    }
+
+    @Test
+    public void parse_noMatchingGroup_allowsEverything() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                # only other bots are restricted
+                User-agent: other-bot
+                Disallow: /
+                Disallow:
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertTrue(rules.isAllowed(URI.create("https://monzo.com/help")));
+        Assertions.assertNull(rules.getCrawlDelay());
+    }
+
+    @Test
+    public void parse_sitemapLines_keptWhateverTheirGroup() throws IOException {
+        // ARRANGE
+        RobotsRules rules = parse("""
+                Sitemap: https://monzo.com/sitemap.xml
+                User-agent: other-bot
+                Disallow: /
+                Sitemap: https://monzo.com/blog/sitemap.xml.gz # the blog
+                """);
+
+        // ACT / ASSERT
+        Assertions.assertEquals(List.of(URI.create("https://monzo.com/sitemap.xml"), URI.create("https://monzo.com/blog/sitemap.xml.gz")), rules.getSitemaps());
+    }
+
+    @Test
+    public void isAllowed_robotsTxtItself_alwaysAllowed() {
+        // ACT / ASSERT
+        Assertions.assertTrue(RobotsRules.DISALLOW_ALL.isAllowed(URI.create("https://monzo.com/robots.txt")));
+        Assertions.assertFalse(RobotsRules.DISALLOW_ALL.isAllowed(URI.create("https://monzo.com")));
+    }
+
+    private static RobotsRules parse(String robotsTxt) throws IOException {
+        return RobotsRules.parse(new ByteArrayInputStream(robotsTxt.getBytes(StandardCharsets.UTF_8)), "web-crawler");
+    }
+}
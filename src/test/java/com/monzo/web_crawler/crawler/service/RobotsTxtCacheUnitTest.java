@@ -0,0 +1,96 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+@ExtendWith(MockitoExtension.class)
+public class RobotsTxtCacheUnitTest {
+
+    @Mock
+    private WebService webService;
+
+    private final PolitenessScheduler politeness = new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3);
+
+    @Test
+    public void rulesFor_sameHost_fetchesRobotsTxtOnceAndAppliesCrawlDelay() throws Exception {
+        // ARRANGE
+        RobotsTxtCache cache = new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/robots.txt"), Mockito.any()))
+                .thenAnswer(invocation -> new ByteArrayInputStream("User-agent: *\nDisallow: /private\nCrawl-delay: 0.5\n".getBytes(StandardCharsets.UTF_8)));
+
+        // ACT
+        boolean helpAllowed = cache.rulesFor(URI.create("https://monzo.com/help"), new CrawlStatistics()).isAllowed(URI.create("https://monzo.com/help"));
+        boolean privateAllowed = cache.rulesFor(URI.create("https://monzo.com/private"), new CrawlStatistics()).isAllowed(URI.create("https://monzo.com/private"));
+
+        // ASSERT
+        Assertions.assertTrue(helpAllowed);
+        Assertions.assertFalse(privateAllowed);
+        Assertions.assertEquals(2, politeness.throttle("monzo.com").getRequestsPerSecond(), 0.001);
+        Mockito.verify(webService, Mockito.times(1)).openDocument(Mockito.anyString(), Mockito.any());
+    }
+
+    @Test
+    public void rulesFor_robotsTxtNotFound_allowsEverything() throws Exception {
+        // ARRANGE
+        RobotsTxtCache cache = new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440);
+        Mockito.when(webService.openDocument(Mockito.anyString(), Mockito.any())).thenThrow(new HttpErrorStatusException(404, "https://monzo.com/robots.txt", null));
+
+        // ACT
+        RobotsRules rules = cache.rulesFor(URI.create("https://monzo.com/help"), new CrawlStatistics());
+
+        // ASSERT
+        Assertions.assertSame(RobotsRules.ALLOW_ALL, rules);
+    }
+
+    @Test
+    public void rulesFor_robotsTxtThrottled_backsOffItsHost() throws Exception {
+        // ARRANGE
+        RobotsTxtCache cache = new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440);
+        Mockito.when(webService.openDocument(Mockito.anyString(), Mockito.any())).thenThrow(new HttpErrorStatusException(429, "https://monzo.com/robots.txt", Duration.ZERO));
+
+        // ACT
+        cache.rulesFor(URI.create("https://monzo.com/help"), new CrawlStatistics());
+
+        // ASSERT
+        Assertions.assertTrue(politeness.throttle("monzo.com").getRequestsPerSecond() < 1000);
+    }
+
+    @Test
+    public void rulesFor_robotsTxtUnreachable_disallowsEverything() throws Exception {
+        // ARRANGE
+        RobotsTxtCache cache = new RobotsTxtCache(webService, politeness, true, "web-crawler", 1440);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/robots.txt"), Mockito.any())).thenThrow(new HttpErrorStatusException(500, "https://monzo.com/robots.txt", null));
+        Mockito.when(webService.openDocument(Mockito.eq("https://help.monzo.com/robots.txt"), Mockito.any())).thenThrow(new TimeoutException());
+
+        // ACT
+        RobotsRules serverError = cache.rulesFor(URI.create("https://monzo.com/help"), new CrawlStatistics());
+        RobotsRules timedOut = cache.rulesFor(URI.create("https://help.monzo.com"), new CrawlStatistics());
+
+        // ASSERT
+        Assertions.assertSame(RobotsRules.DISALLOW_ALL, serverError);
+        Assertions.assertSame(RobotsRules.DISALLOW_ALL, timedOut);
+    }
+
+    @Test
+    public void rulesFor_disabled_allowsEverythingWithoutFetching() {
+        // ARRANGE
+        RobotsTxtCache cache = new RobotsTxtCache(webService, politeness, false, "web-crawler", 1440);
+
+        // ACT
+        RobotsRules rules = cache.rulesFor(URI.create("https://monzo.com/help"), new CrawlStatistics());
+
+        // ASSERT
+        Assertions.assertSame(RobotsRules.ALLOW_ALL, rules);
+        Mockito.verifyNoInteractions(webService);
+    }
+}
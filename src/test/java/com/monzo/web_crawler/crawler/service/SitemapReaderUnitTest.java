@@ -0,0 +1,126 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+@ExtendWith(MockitoExtension.class)
+public class SitemapReaderUnitTest {
+
+    @Mock
+    private WebService webService;
+
+    private final PolitenessScheduler politeness = new PolitenessScheduler(1000, 1000, 64, 64, 2.0, 60, 3);
+
+    @Test
+    public void read_sitemapIndex_followsIndexIntoGzippedSitemaps() throws Exception {
+        // ARRANGE
+        SitemapReader reader = new SitemapReader(webService, politeness, true, 1000);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap.xml"), Mockito.any())).thenAnswer(invocation -> stream("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <sitemapindex xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                  <sitemap><loc>https://monzo.com/sitemap-pages.xml.gz</loc></sitemap>
+                  <sitemap><loc>/sitemap-blog.xml?page=2</loc></sitemap>
+                </sitemapindex>
+                """));
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap-pages.xml.gz"), Mockito.any())).thenAnswer(invocation -> gzipped(urlset("https://monzo.com/help", "https://monzo.com/faq/")));
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap-blog.xml?page=2"), Mockito.any())).thenAnswer(invocation -> stream(urlset("https://monzo.com/blog")));
+        List<URI> urls = new ArrayList<>();
+
+        // ACT
+        long count = reader.read(List.of(URI.create("https://monzo.com/sitemap.xml")), new CrawlStatistics(), urls::add);
+
+        // ASSERT
+        Assertions.assertEquals(3, count);
+        Assertions.assertEquals(List.of(URI.create("https://monzo.com/help"), URI.create("https://monzo.com/faq"), URI.create("https://monzo.com/blog")), urls);
+    }
+
+    @Test
+    public void read_moreUrlsThanLimit_stopsAtLimit() throws Exception {
+        // ARRANGE
+        SitemapReader reader = new SitemapReader(webService, politeness, true, 2);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap.xml"), Mockito.any()))
+                .thenAnswer(invocation -> stream(urlset("https://monzo.com/a", "https://monzo.com/b", "https://monzo.com/c")));
+        List<URI> urls = new ArrayList<>();
+
+        // ACT
+        long count = reader.read(List.of(URI.create("https://monzo.com/sitemap.xml")), new CrawlStatistics(), urls::add);
+
+        // ASSERT
+        Assertions.assertEquals(2, count);
+        Assertions.assertEquals(2, urls.size());
+    }
+
+    @Test
+    public void read_missingOrMalformedSitemap_skipsIt() throws Exception {
+        // ARRANGE
+        SitemapReader reader = new SitemapReader(webService, politeness, true, 1000);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/missing.xml"), Mockito.any()))
+                .thenThrow(new HttpErrorStatusException(404, "https://monzo.com/missing.xml", null));
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/malformed.xml"), Mockito.any()))
+                .thenAnswer(invocation -> stream("<urlset><url><loc>https://monzo.com/before-error</loc></url><url>"));
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap.xml"), Mockito.any()))
+                .thenAnswer(invocation -> stream(urlset("https://monzo.com/help")));
+        List<URI> urls = new ArrayList<>();
+
+        // ACT
+        reader.read(List.of(URI.create("https://monzo.com/missing.xml"), URI.create("https://monzo.com/malformed.xml"), URI.create("https://monzo.com/sitemap.xml")), new CrawlStatistics(), urls::add);
+
+        // ASSERT
+        Assertions.assertEquals(List.of(URI.create("https://monzo.com/before-error"), URI.create("https://monzo.com/help")), urls);
+    }
+
+    @Test
+    public void readWithPriorities_urlsWithAndWithoutPriority_passesPriorityOrDefault() throws Exception {
+        // ARRANGE
+        SitemapReader reader = new SitemapReader(webService, politeness, true, 1000);
+        Mockito.when(webService.openDocument(Mockito.eq("https://monzo.com/sitemap.xml"), Mockito.any())).thenAnswer(invocation -> stream("""
+                <urlset xmlns="http://www.sitemaps.org/schemas/sitemap/0.9">
+                  <url><priority>1.0</priority><loc>https://monzo.com/</loc></url>
+                  <url><loc>https://monzo.com/help</loc><priority>0.3</priority></url>
+                  <url><loc>https://monzo.com/faq</loc></url>
+                  <url><loc>https://monzo.com/blog</loc><priority>7</priority></url>
+                </urlset>
+                """));
+        List<String> urls = new ArrayList<>();
+
+        // ACT
+        reader.readWithPriorities(List.of(URI.create("https://monzo.com/sitemap.xml")), new CrawlStatistics(), (url, priority) -> urls.add(url + " " + priority));
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://monzo.com 1.0", "https://monzo.com/help 0.3", "https://monzo.com/faq 0.5", "https://monzo.com/blog 0.5"), urls);
+    }
+
+    private static String urlset(String... urls) {
+        StringBuilder sitemap = new StringBuilder("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+        for (String url : urls) {
+            sitemap.append("<url><loc>").append(url).append("</loc><changefreq>daily</changefreq></url>");
+        }
+        return sitemap.append("</urlset>").toString();
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static InputStream gzipped(String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
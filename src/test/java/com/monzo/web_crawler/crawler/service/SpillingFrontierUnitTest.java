@@ -0,0 +1,106 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+public class SpillingFrontierUnitTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void poll_moreUrlsThanHotWindow_returnsUrlsInOrderAdded() throws Exception {
+        try (SpillingFrontier frontier = new SpillingFrontier(directory, 10, 256)) {
+            // ARRANGE
+            for (int i = 0; i < 1000; i++) {
+                frontier.add(queued("https://monzo.com/page/" + i));
+            }
+            Assertions.assertEquals(990, frontier.spilledCount());
+
+            // ACT / ASSERT
+            for (int i = 0; i < 500; i++) {
+                Assertions.assertEquals(URI.create("https://monzo.com/page/" + i), frontier.poll(0, TimeUnit.SECONDS).url());
+            }
+            // urls added while others are spilled are queued behind them
+            frontier.add(queued("https://monzo.com/last"));
+            for (int i = 500; i < 1000; i++) {
+                Assertions.assertEquals(URI.create("https://monzo.com/page/" + i), frontier.poll(0, TimeUnit.SECONDS).url());
+            }
+            Assertions.assertEquals(URI.create("https://monzo.com/last"), frontier.poll(0, TimeUnit.SECONDS).url());
+            Assertions.assertTrue(frontier.isEmpty());
+            Assertions.assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void poll_segmentsRead_deletesSegmentFiles() throws Exception {
+        try (SpillingFrontier frontier = new SpillingFrontier(directory, 1, 64)) {
+            // ARRANGE
+            for (int i = 0; i < 100; i++) {
+                frontier.add(queued("https://monzo.com/page/" + i));
+            }
+            Path frontierDirectory = singleFile(directory);
+            Assertions.assertTrue(countFiles(frontierDirectory) > 1);
+
+            // ACT
+            for (int i = 0; i < 100; i++) {
+                frontier.poll(0, TimeUnit.SECONDS);
+            }
+
+            // ASSERT
+            Assertions.assertTrue(countFiles(frontierDirectory) <= 1);
+        }
+    }
+
+    @Test
+    public void add_urlLongerThanSegment_spillsToOwnSegment() throws Exception {
+        try (SpillingFrontier frontier = new SpillingFrontier(directory, 1, 64)) {
+            // ARRANGE
+            URI longUrl = URI.create("https://monzo.com/" + "a".repeat(1000));
+            frontier.add(queued("https://monzo.com"));
+            frontier.add(new QueuedUrl(longUrl, 1));
+
+            // ACT / ASSERT
+            Assertions.assertEquals(URI.create("https://monzo.com"), frontier.poll(0, TimeUnit.SECONDS).url());
+            Assertions.assertEquals(longUrl, frontier.poll(0, TimeUnit.SECONDS).url());
+        }
+    }
+
+    @Test
+    public void close_spilledUrls_deletesFrontierDirectory() throws IOException {
+        // ARRANGE
+        SpillingFrontier frontier = new SpillingFrontier(directory, 1, 64);
+        for (int i = 0; i < 100; i++) {
+            frontier.add(queued("https://monzo.com/page/" + i));
+        }
+
+        // ACT
+        frontier.close();
+
+        // ASSERT
+        Assertions.assertEquals(0, countFiles(directory));
+    }
+
+    private static QueuedUrl queued(String url) {
+        return new QueuedUrl(URI.create(url), 1);
+    }
+
+    private static Path singleFile(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
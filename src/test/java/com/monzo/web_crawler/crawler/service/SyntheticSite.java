@@ -0,0 +1,459 @@
+package com.monzo.web_crawler.crawler.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A generated site to crawl without a network, the same for a given seed and configuration, see {@link Builder}.
+ * Page 0 is the root page at the base url, page i is at {@code /page/i}.
+ * <p>
+ * The first links of page i lead to pages {@code i * linksPerPage + 1} onwards, so every page can be reached from
+ * the root, the others lead to pages picked at random. In its markup the links are written as relative, root relative
+ * and absolute urls, some with a query string or a fragment, as on a real site.
+ * <p>
+ * Besides the root page, every page is picked at random to be
+ * <ul>
+ *     <li>an error page, answered with 500</li>
+ *     <li>a tarpit, whose body trickles in over {@code tarpitDuration}</li>
+ *     <li>behind a chain of redirects, every link to it goes through {@code redirectHops} 302 responses first</li>
+ * </ul>
+ * and every page not behind redirects is picked at random to be aliased, half the links to it going to
+ * {@code /alias/i} instead, which is answered with a 301 to {@code /page/i}.
+ * and every response is held back for a latency drawn from a log-normal distribution. What a page is and its
+ * latency only depend on the seed and the page, so every crawl of the site sees the same site.
+ * <p>
+ * The site is served over http on a free local port by {@link #start()}, its links can also be read without
+ * serving it through {@link #links(String)}.
+ */
+public class SyntheticSite implements AutoCloseable {
+
+    // the z-score of the 99th percentile of a normal distribution
+    private static final double P99_Z = 2.326;
+
+    private final long seed;
+    private final int pageCount;
+    private final int linksPerPage;
+    private final int pageSize;
+    private final double latencyMu;
+    private final double latencySigma;
+    private final double errorRate;
+    private final double redirectRate;
+    private final int redirectHops;
+    private final double aliasRate;
+    private final double tarpitRate;
+    private final Duration tarpitDuration;
+    private String baseUrl;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+    private final AtomicInteger servingTarpits = new AtomicInteger(0);
+    private final AtomicInteger abandonedTarpits = new AtomicInteger(0);
+
+    private SyntheticSite(Builder builder) {
+        this.seed = builder.seed;
+        this.pageCount = builder.pageCount;
+        this.linksPerPage = builder.linksPerPage;
+        this.pageSize = builder.pageSize;
+        this.latencyMu = builder.latencyMedian.isZero() ? Double.NEGATIVE_INFINITY : Math.log(builder.latencyMedian.toNanos());
+        this.latencySigma = builder.latencyMedian.isZero() ? 0
+                : (Math.log(builder.latencyP99.toNanos()) - Math.log(builder.latencyMedian.toNanos())) / P99_Z;
+        this.errorRate = builder.errorRate;
+        this.redirectRate = builder.redirectRate;
+        this.redirectHops = builder.redirectHops;
+        this.aliasRate = builder.aliasRate;
+        this.tarpitRate = builder.tarpitRate;
+        this.tarpitDuration = builder.tarpitDuration;
+        this.baseUrl = builder.baseUrl;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Serves the pages of the site on a free local port, which becomes the base url of the site.
+     */
+    public SyntheticSite start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the url of the root page, without a trailing slash as the crawler canonicalises it
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return the number of requests served, redirects included
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of tarpits whose body is still trickling in
+     */
+    public int getServingTarpitCount() {
+        return servingTarpits.get();
+    }
+
+    /**
+     * @return the number of tarpits whose connection the client closed before the whole body was sent
+     */
+    public int getAbandonedTarpitCount() {
+        return abandonedTarpits.get();
+    }
+
+    /**
+     * @return the absolute urls of the links of the page
+     */
+    public List<String> links(int page) {
+        List<String> links = new ArrayList<>(linksPerPage);
+        for (int target : targets(page)) {
+            links.add(baseUrl + path(target));
+        }
+        return links;
+    }
+
+    /**
+     * @return the links of the page at the given absolute url, none if it is not a page of the site
+     */
+    public List<String> links(String url) {
+        int page = url.startsWith(baseUrl) ? pageOf(url.substring(baseUrl.length())) : -1;
+        return page < 0 ? List.of() : links(page);
+    }
+
+    public String html(int page) {
+        StringBuilder html = new StringBuilder(Math.max(pageSize, 256 + linksPerPage * 96));
+        html.append("<!DOCTYPE html>\n<html lang=\"en\"><head><meta charset=\"utf-8\"><title>Page ").append(page)
+                .append("</title><link rel=\"stylesheet\" href=\"/static/site.css\"></head>\n<body><main><h1>Page ")
+                .append(page).append("</h1>\n<ul>\n");
+        int index = 0;
+        for (int target : targets(page)) {
+            html.append("<li><a class=\"nav-link\" href=\"").append(href(page, target, index++)).append("\">Page ")
+                    .append(target).append("</a> <span>Lorem ipsum dolor sit amet</span></li>\n");
+        }
+        html.append("</ul>\n");
+        while (html.length() < pageSize) {
+            html.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt.</p>\n");
+        }
+        return html.append("</main></body></html>\n").toString();
+    }
+
+    public boolean isError(int page) {
+        return page != 0 && kind(page) < errorRate;
+    }
+
+    public boolean isTarpit(int page) {
+        double kind = kind(page);
+        return page != 0 && kind >= errorRate && kind < errorRate + tarpitRate;
+    }
+
+    public boolean isRedirected(int page) {
+        return page != 0 && redirectHops > 0 && random(page, 2).nextDouble() < redirectRate;
+    }
+
+    public boolean isAliased(int page) {
+        if (page == 0 || isRedirected(page)) {
+            return false;
+        }
+        // the second draw of the generator which decides whether the page is redirected
+        SplittableRandom random = random(page, 2);
+        random.nextDouble();
+        return random.nextDouble() < aliasRate;
+    }
+
+    /**
+     * @return how long every response for the page is held back before it is sent
+     */
+    public Duration latency(int page) {
+        if (latencyMu == Double.NEGATIVE_INFINITY) {
+            return Duration.ZERO;
+        }
+        double gaussian = random(page, 3).nextGaussian();
+        return Duration.ofNanos((long) Math.exp(latencyMu + latencySigma * gaussian));
+    }
+
+    /**
+     * @return the pages a crawl which gives up on tarpits records, those it can reach through pages which are
+     * neither error pages nor tarpits
+     */
+    public BitSet crawlablePages() {
+        BitSet reached = new BitSet(pageCount);
+        BitSet crawlable = new BitSet(pageCount);
+        Deque<Integer> queue = new ArrayDeque<>(List.of(0));
+        reached.set(0);
+        while (!queue.isEmpty()) {
+            int page = queue.poll();
+            if (isError(page) || isTarpit(page)) {
+                continue;
+            }
+            crawlable.set(page);
+            for (int target : targets(page)) {
+                if (!reached.get(target)) {
+                    reached.set(target);
+                    queue.add(target);
+                }
+            }
+        }
+        return crawlable;
+    }
+
+    /**
+     * @return the pages a crawl which gives up on tarpits fails, the error pages and tarpits linked from
+     * {@link #crawlablePages()}
+     */
+    public BitSet failingPages() {
+        BitSet failing = new BitSet(pageCount);
+        crawlablePages().stream().forEach(page -> {
+            for (int target : targets(page)) {
+                if (isError(target) || isTarpit(target)) {
+                    failing.set(target);
+                }
+            }
+        });
+        return failing;
+    }
+
+    private String path(int page) {
+        if (page == 0) {
+            return "";
+        }
+        return isRedirected(page) ? "/redirect/" + page + "/" + redirectHops : "/page/" + page;
+    }
+
+    /**
+     * Writes the link in one of the forms found on real pages, all resolving to the same page.
+     */
+    private String href(int page, int target, int index) {
+        boolean alias = isAliased(target) && (page + index) % 2 == 1;
+        String path = target == 0 ? "/" : alias ? "/alias/" + target : path(target);
+        return switch (index % 4) {
+            case 0 -> path;
+            case 1 -> baseUrl + path;
+            case 2 -> path + "?ref=" + page;
+            default -> page == 0 || target == 0 || isRedirected(target) || alias ? path + "#content" : String.valueOf(target);
+        };
+    }
+
+    private int[] targets(int page) {
+        int[] targets = new int[linksPerPage];
+        SplittableRandom random = random(page, 0);
+        for (int i = 0; i < linksPerPage; i++) {
+            long child = (long) page * linksPerPage + i + 1;
+            targets[i] = child < pageCount ? (int) child : random.nextInt(pageCount);
+        }
+        return targets;
+    }
+
+    private double kind(int page) {
+        return random(page, 1).nextDouble();
+    }
+
+    /**
+     * @return a random generator of one property of the page, seeded by the seed of the site and the page only
+     */
+    private SplittableRandom random(int page, int property) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + page * 4L + property);
+    }
+
+    private int pageOf(String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return 0;
+        }
+        String[] segments = path.split("/");
+        if (segments.length < 3 || !segments[1].equals("page") && !segments[1].equals("redirect") && !segments[1].equals("alias")) {
+            return -1;
+        }
+        try {
+            int page = Integer.parseInt(segments[2]);
+            return page > 0 && page < pageCount ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            int page = pageOf(path);
+            if (page < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            Thread.sleep(latency(page));
+            if (path.startsWith("/redirect/")) {
+                int hops = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+                exchange.getResponseHeaders().add("Location", hops > 1 ? "/redirect/" + page + "/" + (hops - 1) : "/page/" + page);
+                exchange.sendResponseHeaders(302, -1);
+            } else if (path.startsWith("/alias/")) {
+                exchange.getResponseHeaders().add("Location", "/page/" + page);
+                exchange.sendResponseHeaders(301, -1);
+            } else if (isError(page)) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                respond(exchange, page);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int page) throws IOException, InterruptedException {
+        byte[] body = html(page).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (!isTarpit(page)) {
+                out.write(body);
+                return;
+            }
+            // one chunk every 100 ms, the last one once the tarpit duration has passed
+            int chunks = (int) Math.max(1, tarpitDuration.toMillis() / 100);
+            servingTarpits.incrementAndGet();
+            try {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int from = (int) ((long) body.length * chunk / chunks);
+                    int to = (int) ((long) body.length * (chunk + 1) / chunks);
+                    out.write(body, from, to - from);
+                    out.flush();
+                    Thread.sleep(tarpitDuration.dividedBy(chunks));
+                }
+            } catch (IOException e) {
+                abandonedTarpits.incrementAndGet();
+                throw e;
+            } finally {
+                servingTarpits.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Configures a {@link SyntheticSite}. By default a site of 100 pages with 10 links each, served without
+     * latency, errors, redirects, aliases or tarpits.
+     */
+    public static class Builder {
+
+        private long seed = 42;
+        private int pageCount = 100;
+        private int linksPerPage = 10;
+        private int pageSize = 0;
+        private Duration latencyMedian = Duration.ZERO;
+        private Duration latencyP99 = Duration.ZERO;
+        private double errorRate = 0;
+        private double redirectRate = 0;
+        private int redirectHops = 0;
+        private double aliasRate = 0;
+        private double tarpitRate = 0;
+        private Duration tarpitDuration = Duration.ZERO;
+        private String baseUrl = "https://www.monzo.com";
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder pages(int pageCount) {
+            this.pageCount = pageCount;
+            return this;
+        }
+
+        public Builder linksPerPage(int linksPerPage) {
+            this.linksPerPage = linksPerPage;
+            return this;
+        }
+
+        /**
+         * Pads every page with paragraphs of text up to the given size in characters.
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Holds every response back for a log-normally distributed latency with the given median and 99th percentile.
+         */
+        public Builder latency(Duration median, Duration p99) {
+            if (p99.compareTo(median) < 0) {
+                throw new IllegalArgumentException("The 99th percentile latency must be at least the median");
+            }
+            this.latencyMedian = median;
+            this.latencyP99 = p99;
+            return this;
+        }
+
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Builder redirects(double rate, int hops) {
+            this.redirectRate = rate;
+            this.redirectHops = hops;
+            return this;
+        }
+
+        public Builder aliases(double rate) {
+            this.aliasRate = rate;
+            return this;
+        }
+
+        public Builder tarpits(double rate, Duration duration) {
+            this.tarpitRate = rate;
+            this.tarpitDuration = duration;
+            return this;
+        }
+
+        /**
+         * The base url of a site which is not served, replaced by the local url of the server by {@link #start()}.
+         */
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public SyntheticSite build() {
+            if (pageCount < 1 || linksPerPage < 0) {
+                throw new IllegalArgumentException("A site needs at least one page and a non-negative number of links per page");
+            }
+            return new SyntheticSite(this);
+        }
+    }
+}
@@ -3,7 +3,14 @@ package com.monzo.web_crawler.crawler.service;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class URIUtilsUnitTest {
 
@@ -32,4 +39,118 @@ public class URIUtilsUnitTest {
         Assertions.assertNull(URIUtils.createUri(basePath, "mailto:test@example.com"));
         Assertions.assertNull(URIUtils.createUri(basePath, "tel:+123456789"));
     }
+
+    @Test
+    public void resolve_variousLinks_resolvesAgainstBase() {
+        // ARRANGE
+        String base = "https://monzo.com/help/articles/page.html?x=1#top";
+
+        // ACT / ASSERT
+        Assertions.assertEquals("https://monzo.com/help/articles/page.html?x=1", URIUtils.resolve(base, ""));
+        Assertions.assertEquals("https://monzo.com/help/articles/page.html?x=1#section", URIUtils.resolve(base, "#section"));
+        Assertions.assertEquals("https://monzo.com/help/articles/page.html?query", URIUtils.resolve(base, "?query"));
+        Assertions.assertEquals("https://monzo.com/help/articles/other.html", URIUtils.resolve(base, "other.html"));
+        Assertions.assertEquals("https://monzo.com/help/up", URIUtils.resolve(base, "../up"));
+        Assertions.assertEquals("https://monzo.com/too/far", URIUtils.resolve(base, "../../../too/far"));
+        Assertions.assertEquals("https://monzo.com/help/articles/a/c/", URIUtils.resolve(base, "./a/./b/../c/"));
+        Assertions.assertEquals("https://monzo.com/padded", URIUtils.resolve(base, "  /pad\nded\t "));
+        Assertions.assertEquals("https://example.com/network/path", URIUtils.resolve(base, "//example.com/network/path"));
+        Assertions.assertEquals("https://Example.com/page", URIUtils.resolve(base, "HTTPS://Example.com/page"));
+        Assertions.assertEquals("mailto:test@example.com", URIUtils.resolve(base, "mailto:test@example.com"));
+        Assertions.assertEquals("https://monzo.com/?query", URIUtils.resolve("https://monzo.com", "?query"));
+        Assertions.assertEquals("https://monzo.com/page", URIUtils.resolve("https://monzo.com", "page"));
+        Assertions.assertEquals("", URIUtils.resolve("not a url", "page"));
+    }
+
+    @Test
+    public void createUri_manyVirtualThreadsAtOnce_canonicalizesEveryLink() throws Exception {
+        // ARRANGE
+        URI basePath = URI.create("https://monzo.com/help/");
+        List<Future<URI>> results = new ArrayList<>();
+
+        // ACT
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 10_000; i++) {
+                String link = "../page/" + i + "/./Link With Spaces?query#fragment";
+                results.add(executor.submit(() -> URIUtils.createUri(basePath, link)));
+            }
+        }
+
+        // ASSERT
+        for (int i = 0; i < results.size(); i++) {
+            Assertions.assertEquals(URI.create("https://monzo.com/page/" + i + "/Link%20With%20Spaces"), results.get(i).get());
+        }
+    }
+
+    @Test
+    public void createUri_monzoPageLinks_matchesLegacyImplementation() throws IOException {
+        // ARRANGE
+        URI basePath = URI.create("https://monzo.com/help/");
+        List<String> links;
+        try (InputStream page = getClass().getResourceAsStream("/service/monzo_page.html")) {
+            links = LinkExtractor.extractLinks(page, "UTF-8", basePath.toString());
+        }
+
+        // ACT / ASSERT
+        Assertions.assertFalse(links.isEmpty());
+        for (String link : links) {
+            Assertions.assertEquals(LegacyURIUtils.createUri(basePath, link), URIUtils.createUri(basePath, link), link);
+        }
+    }
+
+    @Test
+    public void createUri_relativeAndEncodedUrls_matchesLegacyImplementation() {
+        // ARRANGE
+        URI basePath = URI.create("https://monzo.com/help/articles/page.html");
+        List<String> links = List.of("", "?query", "other.html", "../up", "../../../too/far", "./a/./b/../c/",
+                "//example.com/network/path", "  /padded\t ", "/tab\tand  spaces", "/caf%C3%A9", "https://example.com/café",
+                "/%7Euser/%2a%41", "/a%2Fb", "/sub;param=1,2:3$&+=@x", "/x?a=1#b",
+                "https://example.com/Path", "ftp://example.com", "javascript:void(0)", "https://example.com/emoji/\uD83D\uDE00");
+
+        // ACT / ASSERT
+        for (String link : links) {
+            Assertions.assertEquals(LegacyURIUtils.createUri(basePath, link), URIUtils.createUri(basePath, link), link);
+        }
+    }
+
+    @Test
+    public void createUri_portOutOfRange_skipsLink() {
+        // ARRANGE
+        URI basePath = URI.create("https://monzo.com");
+
+        // ACT / ASSERT
+        Assertions.assertEquals("http://example.com:65535/path", URIUtils.createUri(basePath, "http://example.com:65535/path").toString());
+        Assertions.assertNull(URIUtils.createUri(basePath, "http://example.com:65536/path"));
+        Assertions.assertNull(URIUtils.createUri(basePath, "http://example.com:99999/path"));
+        Assertions.assertNull(URIUtils.createUri(basePath, "http://example.com:123456/path"));
+    }
+
+    @Test
+    public void createUri_sameUrl_returnsInternedInstance() {
+        // ARRANGE
+        URI basePath = URI.create("https://monzo.com");
+
+        // ACT
+        URI first = URIUtils.createUri(basePath, "/interned/link");
+        URI second = URIUtils.createUri(basePath, "https://monzo.com/interned/link/");
+
+        // ASSERT
+        Assertions.assertSame(first, second);
+    }
+
+    @Test
+    public void createUri_differencesFromLegacyImplementation_normalisesUrls() {
+        // ARRANGE
+        URI basePath = URI.create("http://localhost:8080/docs/");
+
+        // ACT / ASSERT
+        Assertions.assertEquals("http://localhost:8080/docs/page", URIUtils.createUri(basePath, "page").toString());
+        Assertions.assertEquals("http://localhost/page", URIUtils.createUri(basePath, "http://localhost:80/page").toString());
+        Assertions.assertEquals("https://example.com/page", URIUtils.createUri(basePath, "HTTPS://user@EXAMPLE.com/a/../page").toString());
+        Assertions.assertEquals("http://localhost:8080/caf%C3%A9", URIUtils.createUri(basePath, "/café").toString());
+        Assertions.assertEquals("http://localhost:8080/100%25", URIUtils.createUri(basePath, "/100%").toString());
+        Assertions.assertEquals("http://localhost:8080/%22quoted%22%3C%3E", URIUtils.createUri(basePath, "/\"quoted\"<>").toString());
+        Assertions.assertNull(URIUtils.createUri(basePath, "http:opaque"));
+        Assertions.assertNull(URIUtils.createUri(basePath, "http://exa mple.com/"));
+    }
 }
@@ -1,36 +1,336 @@
 package com.monzo.web_crawler.crawler.service;
 
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @ExtendWith(SpringExtension.class)
-@ContextConfiguration(classes = WebService.class)
+@ContextConfiguration(classes = {WebService.class, JsoupPageFetcher.class, PageCache.class, CrawlMetrics.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = "crawler.page-cache.enabled=false")
 public class WebServiceIntegrationTest {
 
     @Autowired
     private WebService webService;
 
+    private HttpServer server;
+    private static final int ENDLESS_BODY_BYTES = 64 * 1024 * 1024;
+
+    private final AtomicInteger requestCount = new AtomicInteger(0);
+    // when the server found the connection of the trickling body closed
+    private final CompletableFuture<Long> trickleClosedAt = new CompletableFuture<>();
+    private byte[] monzoPage;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        try (InputStream page = getClass().getResourceAsStream("/service/monzo_page.html")) {
+            monzoPage = page.readAllBytes();
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/page", exchange -> respond(exchange, "text/html; charset=UTF-8", monzoPage));
+        server.createContext("/trickle", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                // a byte every 100 ms, for far longer than any client waits
+                for (int i = 0; i < 600; i++) {
+                    out.write(' ');
+                    out.flush();
+                    Thread.sleep(100);
+                }
+            } catch (IOException e) {
+                trickleClosedAt.complete(System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/endless", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            // chunked, the client cannot tell the length of the body from its headers
+            exchange.sendResponseHeaders(200, 0);
+            byte[] link = "<a href=\"/more\">more</a>\n".getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < ENDLESS_BODY_BYTES / link.length; i++) {
+                    out.write(link);
+                }
+            } catch (IOException e) {
+                // the client stopped reading
+            }
+        });
+        server.createContext("/image.png", exchange -> respond(exchange, "image/png", new byte[4096]));
+        server.createContext("/throttled", exchange -> {
+            requestCount.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "7");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+        });
+        server.createContext("/cached", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                requestCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            exchange.getResponseHeaders().add("Last-Modified", "Wed, 01 Jan 2025 10:00:00 GMT");
+            respond(exchange, "text/html; charset=UTF-8", monzoPage);
+        });
+        server.start();
+    }
+
+    private void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        requestCount.incrementAndGet();
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private static PageCache disabledPageCache() {
+        return new PageCache(false, System.getProperty("java.io.tmpdir"));
+    }
+
+    private String localUrl(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
     @Test
     public void crawl_testUrlPage_parsesHyperlinks_returnsListOfUrls() throws IOException, TimeoutException {
         // ARRANGE
 
         // ACT
-        List<String> urls = webService.getDocumentLinks("https://www.monzo.com");
+        List<String> urls = webService.getDocumentLinks(localUrl("/page"));
 
         // ASSERT
         Assertions.assertTrue(urls.size() > 1);
-        // let's make the assumption the help page will always be in the main page
         Assertions.assertTrue(urls.stream().anyMatch(url -> StringUtils.equals(url, "https://monzo.com/help")));
     }
 
+    private static final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private static final CrawlMetrics crawlMetrics = new CrawlMetrics(meterRegistry);
+
+    static Stream<PageFetcher> pageFetchers() {
+        return Stream.of(new JsoupPageFetcher(3000, crawlMetrics), new HttpClientPageFetcher(3000, 10, 10 * 1024 * 1024, crawlMetrics));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void getDocumentLinks_htmlPage_fetchesPageOnce_countsRequestAndBytes(PageFetcher pageFetcher) throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        List<String> urls = new WebService(pageFetcher, disabledPageCache()).getDocumentLinks(localUrl("/page"), statistics);
+
+        // ASSERT
+        Assertions.assertTrue(urls.contains(localUrl("/current-account/personal")));
+        Assertions.assertEquals(1, requestCount.get());
+        Assertions.assertEquals(1, statistics.getRequestCount());
+        Assertions.assertEquals(monzoPage.length, statistics.getBytesDownloaded());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void getDocumentLinks_htmlPage_recordsEveryPhaseOfTheFetch(PageFetcher pageFetcher) throws IOException, TimeoutException {
+        // ARRANGE
+        long[] countsBefore = phaseCounts();
+
+        // ACT
+        new WebService(pageFetcher, disabledPageCache()).getDocumentLinks(localUrl("/page"), new CrawlStatistics());
+
+        // ASSERT
+        long[] countsAfter = phaseCounts();
+        for (int phase = 0; phase < countsAfter.length; phase++) {
+            Assertions.assertEquals(countsBefore[phase] + 1, countsAfter[phase]);
+        }
+    }
+
+    private static long[] phaseCounts() {
+        return new long[]{
+                meterRegistry.get("crawler.fetch.time-to-first-byte").timer().count(),
+                meterRegistry.get("crawler.fetch.download").timer().count(),
+                meterRegistry.get("crawler.page.parse").timer().count()
+        };
+    }
+
+    @Test
+    public void fetchPage_bodyOverMaxSize_stopsDownloadAtMaxSize_countsBytesRead() throws IOException, TimeoutException {
+        // ARRANGE
+        int maxBodyBytes = 256 * 1024;
+        PageFetcher pageFetcher = new HttpClientPageFetcher(3000, 10, maxBodyBytes, crawlMetrics);
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        FetchedPage page = pageFetcher.fetchPage(localUrl("/endless"), statistics, null);
+
+        // ASSERT
+        Assertions.assertTrue(page.links().contains(localUrl("/more")));
+        Assertions.assertTrue(statistics.getBytesDownloaded() >= maxBodyBytes);
+        // the byte read to find out whether the body went on
+        Assertions.assertTrue(statistics.getBytesDownloaded() <= maxBodyBytes + 1);
+    }
+
+    @Test
+    public void fetchDocumentAsync_cancelledWhileBodyTrickles_closesConnection() throws Exception {
+        // ARRANGE
+        WebService httpClientWebService = new WebService(new HttpClientPageFetcher(3000, 30, 10 * 1024 * 1024, crawlMetrics), disabledPageCache());
+        CompletableFuture<FetchedDocument> document = httpClientWebService.fetchDocumentAsync(localUrl("/trickle"), new CrawlStatistics());
+        TimeUnit.MILLISECONDS.sleep(300);
+
+        // ACT
+        long cancelledAt = System.nanoTime();
+        document.cancel(true);
+
+        // ASSERT
+        long closedAt = trickleClosedAt.get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(closedAt - cancelledAt < TimeUnit.SECONDS.toNanos(1), "Closed after " + (closedAt - cancelledAt) / 1_000_000 + " ms");
+    }
+
+    @Test
+    public void fetchPage_bodyTricklingPastWorkerTimeout_timesOutAndClosesConnection() {
+        // ARRANGE
+        PageFetcher pageFetcher = new HttpClientPageFetcher(3000, 1, 10 * 1024 * 1024, crawlMetrics);
+        long start = System.nanoTime();
+
+        // ACT / ASSERT
+        Assertions.assertThrows(TimeoutException.class, () -> pageFetcher.fetchPage(localUrl("/trickle"), new CrawlStatistics(), null));
+        long closedAt = Assertions.assertDoesNotThrow(() -> trickleClosedAt.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(closedAt - start < TimeUnit.SECONDS.toNanos(2), "Closed after " + (closedAt - start) / 1_000_000 + " ms");
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void getDocumentLinks_nonHtmlDocument_returnsNoLinks_doesNotReadBody(PageFetcher pageFetcher) throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        List<String> urls = new WebService(pageFetcher, disabledPageCache()).getDocumentLinks(localUrl("/image.png"), statistics);
+
+        // ASSERT
+        Assertions.assertTrue(urls.isEmpty());
+        Assertions.assertEquals(1, requestCount.get());
+        Assertions.assertEquals(1, statistics.getRequestCount());
+        Assertions.assertEquals(0, statistics.getBytesDownloaded());
+        Assertions.assertTrue(meterRegistry.get("crawler.fetch.failures").tag("cause", "non-html").counter().count() > 0);
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void getDocumentLinksAsync_htmlPage_completesWithLinks(PageFetcher pageFetcher) throws Exception {
+        // ARRANGE
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        List<String> urls = new WebService(pageFetcher, disabledPageCache()).getDocumentLinksAsync(localUrl("/page"), statistics).get(5, TimeUnit.SECONDS);
+
+        // ASSERT
+        Assertions.assertTrue(urls.contains(localUrl("/current-account/personal")));
+        Assertions.assertEquals(1, requestCount.get());
+        Assertions.assertEquals(monzoPage.length, statistics.getBytesDownloaded());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void getDocumentLinks_missingPage_throwsException(PageFetcher pageFetcher) {
+        // ACT / ASSERT
+        Assertions.assertThrows(RuntimeException.class, () -> new WebService(pageFetcher, disabledPageCache()).getDocumentLinks(localUrl("/missing"), new CrawlStatistics()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void fetchLinks_throttledPage_throwsHttpErrorWithRetryAfter(PageFetcher pageFetcher) {
+        // ACT
+        HttpErrorStatusException error = Assertions.assertThrows(HttpErrorStatusException.class,
+                () -> pageFetcher.fetchLinks(localUrl("/throttled"), new CrawlStatistics()));
+
+        // ASSERT
+        Assertions.assertEquals(429, error.getStatusCode());
+        Assertions.assertTrue(error.isThrottled());
+        Assertions.assertEquals(Duration.ofSeconds(7), error.getRetryAfter());
+        Assertions.assertEquals(1, requestCount.get());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void openDocument_nonHtmlDocument_streamsBody_countsRequestAndBytes(PageFetcher pageFetcher) throws IOException, TimeoutException {
+        // ARRANGE
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        byte[] body;
+        try (InputStream document = pageFetcher.openDocument(localUrl("/image.png"), statistics)) {
+            body = document.readAllBytes();
+        }
+
+        // ASSERT
+        Assertions.assertEquals(4096, body.length);
+        Assertions.assertEquals(1, statistics.getRequestCount());
+        Assertions.assertEquals(4096, statistics.getBytesDownloaded());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void openDocument_missingDocument_throwsHttpErrorWithStatus(PageFetcher pageFetcher) {
+        // ACT
+        HttpErrorStatusException error = Assertions.assertThrows(HttpErrorStatusException.class,
+                () -> pageFetcher.openDocument(localUrl("/robots.txt"), new CrawlStatistics()));
+
+        // ASSERT
+        Assertions.assertEquals(404, error.getStatusCode());
+    }
+
+    @ParameterizedTest
+    @MethodSource("pageFetchers")
+    public void fetchPage_cachedPageNotModified_returnsNotModifiedWithoutBody(PageFetcher pageFetcher) throws IOException, TimeoutException {
+        // ARRANGE
+        FetchedPage firstFetch = pageFetcher.fetchPage(localUrl("/cached"), new CrawlStatistics(), null);
+        CachedPage cached = new CachedPage(localUrl("/cached"), firstFetch.etag(), firstFetch.lastModified(), firstFetch.links());
+        CrawlStatistics statistics = new CrawlStatistics();
+
+        // ACT
+        FetchedPage secondFetch = pageFetcher.fetchPage(localUrl("/cached"), statistics, cached);
+
+        // ASSERT
+        Assertions.assertEquals("\"v1\"", firstFetch.etag());
+        Assertions.assertEquals("Wed, 01 Jan 2025 10:00:00 GMT", firstFetch.lastModified());
+        Assertions.assertFalse(firstFetch.links().isEmpty());
+        Assertions.assertTrue(secondFetch.notModified());
+        Assertions.assertEquals(1, statistics.getRequestCount());
+        Assertions.assertEquals(0, statistics.getBytesDownloaded());
+        Assertions.assertEquals(2, requestCount.get());
+    }
+
 }
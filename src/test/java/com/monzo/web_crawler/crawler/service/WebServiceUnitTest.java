@@ -0,0 +1,90 @@
+package com.monzo.web_crawler.crawler.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+public class WebServiceUnitTest {
+
+    private static final String URL = "https://monzo.com/help";
+
+    @Mock
+    private PageFetcher pageFetcher;
+
+    @TempDir
+    private Path cacheDirectory;
+
+    private WebService webService;
+
+    @BeforeEach
+    void setUp() {
+        webService = new WebService(pageFetcher, new PageCache(true, cacheDirectory.toString()));
+    }
+
+    @Test
+    public void getDocumentLinks_pageNotModified_returnsCachedLinksAndCountsHit() throws Exception {
+        // ARRANGE
+        Mockito.when(pageFetcher.fetchPage(Mockito.eq(URL), Mockito.any(), Mockito.isNull()))
+                .thenReturn(FetchedPage.of(List.of("https://monzo.com/faq"), "\"v1\"", null));
+        Mockito.when(pageFetcher.fetchPage(Mockito.eq(URL), Mockito.any(), Mockito.argThat(cached -> cached != null && "\"v1\"".equals(cached.etag()))))
+                .thenReturn(FetchedPage.NOT_MODIFIED);
+        CrawlStatistics firstCrawl = new CrawlStatistics();
+        CrawlStatistics secondCrawl = new CrawlStatistics();
+
+        // ACT
+        List<String> firstLinks = webService.getDocumentLinks(URL, firstCrawl);
+        List<String> secondLinks = webService.getDocumentLinks(URL, secondCrawl);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://monzo.com/faq"), firstLinks);
+        Assertions.assertEquals(List.of("https://monzo.com/faq"), secondLinks);
+        Assertions.assertEquals(0, firstCrawl.getCacheHitRatio());
+        Assertions.assertEquals(1, secondCrawl.getCacheHitRatio());
+    }
+
+    @Test
+    public void fetchDocument_redirectedPageNotModified_returnsFinalAndCachedCanonicalUrls() throws Exception {
+        // ARRANGE
+        Mockito.when(pageFetcher.fetchPage(Mockito.eq(URL), Mockito.any(), Mockito.isNull()))
+                .thenReturn(new FetchedPage(List.of("https://monzo.com/faq"), "\"v1\"", null, false, "https://monzo.com/help/", "https://monzo.com/support"));
+        Mockito.when(pageFetcher.fetchPage(Mockito.eq(URL), Mockito.any(), Mockito.notNull()))
+                .thenReturn(FetchedPage.notModified("https://monzo.com/help/"));
+        webService.fetchDocument(URL, new CrawlStatistics());
+
+        // ACT
+        FetchedDocument document = webService.fetchDocument(URL, new CrawlStatistics());
+
+        // ASSERT
+        Assertions.assertEquals(new FetchedDocument(List.of("https://monzo.com/faq"), "https://monzo.com/help/", "https://monzo.com/support"), document);
+    }
+
+    @Test
+    public void getDocumentLinksAsync_pageModified_replacesCachedLinks() throws Exception {
+        // ARRANGE
+        Mockito.when(pageFetcher.fetchPageAsync(Mockito.eq(URL), Mockito.any(), Mockito.isNull()))
+                .thenReturn(CompletableFuture.completedFuture(FetchedPage.of(List.of("https://monzo.com/faq"), "\"v1\"", null)));
+        Mockito.when(pageFetcher.fetchPageAsync(Mockito.eq(URL), Mockito.any(), Mockito.argThat(cached -> cached != null && "\"v1\"".equals(cached.etag()))))
+                .thenReturn(CompletableFuture.completedFuture(FetchedPage.of(List.of("https://monzo.com/fraud"), "\"v2\"", null)));
+        CrawlStatistics statistics = new CrawlStatistics();
+        webService.getDocumentLinksAsync(URL, new CrawlStatistics()).get(1, TimeUnit.SECONDS);
+
+        // ACT
+        List<String> links = webService.getDocumentLinksAsync(URL, statistics).get(1, TimeUnit.SECONDS);
+
+        // ASSERT
+        Assertions.assertEquals(List.of("https://monzo.com/fraud"), links);
+        Assertions.assertEquals(1, statistics.getCacheMisses());
+        Assertions.assertEquals(new CachedPage(URL, "\"v2\"", null, List.of("https://monzo.com/fraud")), new PageCache(true, cacheDirectory.toString()).get(URL));
+    }
+}